@@ -0,0 +1,139 @@
+package benchmark
+
+import java.lang.management.ManagementFactory
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * 🔥 INFO Small helpers shared by the benchmark tutorials.
+ *
+ * These are not a replacement for JMH, there is no forking or dead code elimination protection.
+ * They run every case a few times to warm up the JIT, then measure one round and report
+ * **throughput**, **GC count/time**, **heap used** and the bytes **allocated by the calling thread**
+ * so the cases in a single tutorial can be compared.
+ */
+data class BenchmarkResult(
+    val name: String,
+    val operations: Long,
+    val elapsedNanos: Long,
+    val gcCount: Long,
+    val gcTimeMillis: Long,
+    val heapUsedBytes: Long,
+    val allocatedBytes: Long
+) {
+
+    val opsPerSecond: Double
+        get() = if (elapsedNanos == 0L) 0.0 else operations * 1_000_000_000.0 / elapsedNanos
+
+    val nanosPerOp: Double
+        get() = if (operations == 0L) 0.0 else elapsedNanos.toDouble() / operations
+
+    override fun toString(): String {
+        return String.format(
+            "%-48s %,14.0f ops/s %10.1f ns/op  gc: %4d (%5d ms)  heap: %,6d KB  alloc: %,8d KB",
+            name, opsPerSecond, nanosPerOp, gcCount, gcTimeMillis, heapUsedBytes / 1024, allocatedBytes / 1024
+        )
+    }
+}
+
+/**
+ * Runs [block] [warmupRounds] times and then measures one more run.
+ * [block] should perform [operations] operations, the count is only used to compute ops/s.
+ */
+fun measure(name: String, operations: Long, warmupRounds: Int = 2, block: () -> Unit): BenchmarkResult {
+
+    repeat(warmupRounds) { block() }
+
+    System.gc()
+
+    val gcCountBefore = gcCount()
+    val gcTimeBefore = gcTimeMillis()
+    val allocatedBefore = threadAllocatedBytes()
+    val start = System.nanoTime()
+
+    block()
+
+    val elapsed = System.nanoTime() - start
+    val allocated = threadAllocatedBytes() - allocatedBefore
+    val runtime = Runtime.getRuntime()
+
+    return BenchmarkResult(
+        name,
+        operations,
+        elapsed,
+        gcCount() - gcCountBefore,
+        gcTimeMillis() - gcTimeBefore,
+        runtime.totalMemory() - runtime.freeMemory(),
+        allocated
+    ).also { println(it) }
+}
+
+/**
+ * Starts [threads] threads that run [block] with their index at the same moment
+ * and blocks until all of them are finished.
+ */
+fun runConcurrently(threads: Int, block: (threadIndex: Int) -> Unit) {
+
+    val startGate = CountDownLatch(1)
+    val endGate = CountDownLatch(threads)
+    var failure: Throwable? = null
+
+    repeat(threads) { index ->
+        Thread {
+            try {
+                startGate.await()
+                block(index)
+            } catch (e: Throwable) {
+                failure = e
+            } finally {
+                endGate.countDown()
+            }
+        }.apply {
+            name = "benchmark-$index"
+            isDaemon = true
+        }.start()
+    }
+
+    startGate.countDown()
+
+    if (!endGate.await(5, TimeUnit.MINUTES)) {
+        throw IllegalStateException("Benchmark threads did not finish in 5 minutes")
+    }
+
+    failure?.let { throw it }
+}
+
+/**
+ * Bytes allocated so far by the current thread, 0 when the JVM can not tell.
+ * Work done on other threads, like in [runConcurrently], is not included.
+ */
+fun threadAllocatedBytes(): Long {
+    val bean = ManagementFactory.getThreadMXBean()
+    return if (bean is com.sun.management.ThreadMXBean && bean.isThreadAllocatedMemorySupported) {
+        bean.getThreadAllocatedBytes(Thread.currentThread().id)
+    } else {
+        0
+    }
+}
+
+fun gcCount(): Long = ManagementFactory.getGarbageCollectorMXBeans().map { it.collectionCount.coerceAtLeast(0) }.sum()
+
+fun gcTimeMillis(): Long = ManagementFactory.getGarbageCollectorMXBeans().map { it.collectionTime.coerceAtLeast(0) }.sum()
+
+/**
+ * Used heap after a full GC, what is still reachable like items waiting in a queue.
+ */
+fun retainedHeapBytes(): Long {
+    val runtime = Runtime.getRuntime()
+    repeat(2) { System.gc() }
+    return runtime.totalMemory() - runtime.freeMemory()
+}
+
+/**
+ * CPU time used by all threads of the JVM so far, 0 when the JVM can not tell.
+ * Unlike the elapsed time it also counts the work of scheduler threads.
+ */
+fun processCpuNanos(): Long {
+    val bean = ManagementFactory.getOperatingSystemMXBean()
+    return if (bean is com.sun.management.OperatingSystemMXBean) bean.processCpuTime.coerceAtLeast(0) else 0
+}
@@ -0,0 +1,218 @@
+package chapter10testinganddebugging
+
+import io.reactivex.Flowable
+import io.reactivex.FlowableSubscriber
+import io.reactivex.Observable
+import io.reactivex.Observer
+import io.reactivex.disposables.Disposable
+import io.reactivex.functions.Function
+import io.reactivex.internal.disposables.DisposableHelper
+import io.reactivex.internal.subscriptions.SubscriptionHelper
+import io.reactivex.plugins.RxJavaPlugins
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
+
+/**
+ * Wraps the operators of one tool like [OperatorMetrics], gets the operator that was assembled as **source**
+ * and what the hooks before it made of it as **assembled**
+ */
+internal class AssemblyHook(
+    val observable: (source: Observable<*>, assembled: Observable<*>) -> Observable<*>,
+    val flowable: (source: Flowable<*>, assembled: Flowable<*>) -> Flowable<*>
+)
+
+/**
+ * 🔥 INFO AssemblyHooks
+ *
+ * **RxJavaPlugins** has one **Observable** and one **Flowable** assembly hook. Tools that each remember the hook
+ * before them and restore it break the chain when they are uninstalled in another order than they were installed.
+ *
+ * All tools of this chapter register their [AssemblyHook] here instead, one hook set in **RxJavaPlugins** calls
+ * the hook that was there before and then every registered one in the order they were installed.
+ * The previous hook is restored when the last one is removed, but only if nobody set another hook on top of
+ * this one in the meantime. Otherwise it stays in that chain and passes operators through.
+ */
+internal object AssemblyHooks {
+
+    // Copy on write, read for every assembled operator
+    @Volatile
+    private var hooks = emptyList<AssemblyHook>()
+
+    @Volatile
+    private var previousObservableHook: Function<in Observable<*>, out Observable<*>>? = null
+    @Volatile
+    private var previousFlowableHook: Function<in Flowable<*>, out Flowable<*>>? = null
+
+    // Guarded by this, whether the hooks below are set in RxJavaPlugins or in a chain of hooks set after them
+    private var observableHookSet = false
+    private var flowableHookSet = false
+
+    private val observableHook = Function<Observable<*>, Observable<*>> { source ->
+        var assembled: Observable<*> = previousObservableHook?.apply(source) ?: source
+        for (hook in hooks) {
+            assembled = hook.observable(source, assembled)
+        }
+        assembled
+    }
+
+    private val flowableHook = Function<Flowable<*>, Flowable<*>> { source ->
+        var assembled: Flowable<*> = previousFlowableHook?.apply(source) ?: source
+        for (hook in hooks) {
+            assembled = hook.flowable(source, assembled)
+        }
+        assembled
+    }
+
+    /**
+     * Returns false if [hook] was added already
+     */
+    @Synchronized
+    fun add(hook: AssemblyHook): Boolean {
+
+        if (hook in hooks) {
+            return false
+        }
+
+        // RxJavaPlugins.reset() removed the hooks
+        if (RxJavaPlugins.getOnObservableAssembly() == null) {
+            observableHookSet = false
+        }
+        if (RxJavaPlugins.getOnFlowableAssembly() == null) {
+            flowableHookSet = false
+        }
+
+        if (!observableHookSet) {
+            previousObservableHook = RxJavaPlugins.getOnObservableAssembly()
+            RxJavaPlugins.setOnObservableAssembly(observableHook)
+            observableHookSet = true
+        }
+        if (!flowableHookSet) {
+            previousFlowableHook = RxJavaPlugins.getOnFlowableAssembly()
+            RxJavaPlugins.setOnFlowableAssembly(flowableHook)
+            flowableHookSet = true
+        }
+
+        hooks = hooks + hook
+        return true
+    }
+
+    /**
+     * Returns false if [hook] was not added
+     */
+    @Synchronized
+    fun remove(hook: AssemblyHook): Boolean {
+
+        if (hook !in hooks) {
+            return false
+        }
+        hooks = hooks - hook
+
+        if (hooks.isEmpty()) {
+            if (RxJavaPlugins.getOnObservableAssembly() === observableHook) {
+                RxJavaPlugins.setOnObservableAssembly(previousObservableHook)
+                previousObservableHook = null
+                observableHookSet = false
+            }
+            if (RxJavaPlugins.getOnFlowableAssembly() === flowableHook) {
+                RxJavaPlugins.setOnFlowableAssembly(previousFlowableHook)
+                previousFlowableHook = null
+                flowableHookSet = false
+            }
+        }
+        return true
+    }
+}
+
+/**
+ * Observer of a wrapped operator that passes every signal on, subclasses add what happens around them
+ */
+internal abstract class HookObserver<T>(protected val downstream: Observer<in T>) : Observer<T>, Disposable {
+
+    private var upstream: Disposable? = null
+
+    override fun onSubscribe(d: Disposable) {
+        if (DisposableHelper.validate(upstream, d)) {
+            upstream = d
+            onStart()
+            downstream.onSubscribe(this)
+        }
+    }
+
+    override fun onNext(t: T) {
+        downstream.onNext(t)
+    }
+
+    override fun onError(e: Throwable) {
+        onTerminate(e)
+        downstream.onError(e)
+    }
+
+    override fun onComplete() {
+        onTerminate(null)
+        downstream.onComplete()
+    }
+
+    override fun dispose() {
+        onDispose()
+        upstream!!.dispose()
+    }
+
+    override fun isDisposed() = upstream!!.isDisposed
+
+    protected open fun onStart() {}
+
+    /**
+     * Before **onError()** with its error or **onComplete()** with null
+     */
+    protected open fun onTerminate(error: Throwable?) {}
+
+    /**
+     * Before the upstream is disposed
+     */
+    protected open fun onDispose() {}
+}
+
+/**
+ * [HookObserver] for a **Flowable**, [onDispose] is called when it is cancelled
+ */
+internal abstract class HookSubscriber<T>(protected val downstream: Subscriber<in T>) : FlowableSubscriber<T>, Subscription {
+
+    private var upstream: Subscription? = null
+
+    override fun onSubscribe(s: Subscription) {
+        if (SubscriptionHelper.validate(upstream, s)) {
+            upstream = s
+            onStart()
+            downstream.onSubscribe(this)
+        }
+    }
+
+    override fun onNext(t: T) {
+        downstream.onNext(t)
+    }
+
+    override fun onError(t: Throwable) {
+        onTerminate(t)
+        downstream.onError(t)
+    }
+
+    override fun onComplete() {
+        onTerminate(null)
+        downstream.onComplete()
+    }
+
+    override fun request(n: Long) {
+        upstream!!.request(n)
+    }
+
+    override fun cancel() {
+        onDispose()
+        upstream!!.cancel()
+    }
+
+    protected open fun onStart() {}
+
+    protected open fun onTerminate(error: Throwable?) {}
+
+    protected open fun onDispose() {}
+}
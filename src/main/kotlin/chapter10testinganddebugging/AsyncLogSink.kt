@@ -0,0 +1,248 @@
+package chapter10testinganddebugging
+
+import io.reactivex.Flowable
+import io.reactivex.Observable
+import io.reactivex.disposables.Disposable
+import java.io.Closeable
+import java.io.PrintStream
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.AtomicReferenceArray
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * What [AsyncLogSink.log] does when the ring buffer is full
+ *
+ * * **DROP** discards the line and counts it in [AsyncLogSink.dropped], the caller never waits
+ * * **WAIT** waits until the writer made room, no line is lost but a slow output slows the caller down.
+ * A caller still waiting when the sink is closed drops its line.
+ */
+enum class FullPolicy {
+    DROP,
+    WAIT
+}
+
+/**
+ * 🔥 INFO AsyncLogSink
+ *
+ * **println()** in **doOnNext()** or **subscribe()** takes the lock of **System.out** and flushes for every line,
+ * parallel pipelines end up waiting for each other and for the console instead of doing their work.
+ *
+ * [log] only puts the line into a bounded **lock-free ring buffer**. One background writer thread takes up to
+ * [batchSize] lines at a time, writes them to [out] with one **print()** and flushes once per batch.
+ * Lines of one thread keep their order, lines of different threads are ordered by when they got their slot.
+ *
+ * @param capacity size of the ring buffer, rounded up to a power of 2
+ * @param fullPolicy what [log] does when the writer can not keep up
+ */
+class AsyncLogSink @JvmOverloads constructor(
+    private val out: PrintStream = System.out,
+    capacity: Int = 8192,
+    private val batchSize: Int = 256,
+    private val fullPolicy: FullPolicy = FullPolicy.DROP
+) : Closeable {
+
+    private val ring = LogRing(capacity)
+
+    private val droppedCount = AtomicLong()
+    private val writtenCount = AtomicLong()
+
+    // log() calls in flight, the writer does not stop after close() before they are done
+    private val producers = AtomicInteger()
+
+    @Volatile
+    private var writerWaiting = false
+
+    @Volatile
+    private var closed = false
+
+    init {
+        require(batchSize > 0) { "batchSize > 0 required but it was $batchSize" }
+    }
+
+    private val writer = Thread(::drainLoop, "AsyncLogSink-writer").apply {
+        isDaemon = true
+        start()
+    }
+
+    /**
+     * Lines discarded because the ring buffer was full
+     */
+    val dropped: Long
+        get() = droppedCount.get()
+
+    /**
+     * Lines written to [out]
+     */
+    val written: Long
+        get() = writtenCount.get()
+
+    /**
+     * Hands [line] to the writer, returns false if it was dropped
+     */
+    fun log(line: String): Boolean {
+
+        // Counted before closed is read, a writer that sees no producer after close() sees every offered line
+        producers.incrementAndGet()
+        try {
+            if (closed) {
+                droppedCount.incrementAndGet()
+                return false
+            }
+
+            while (!ring.offer(line)) {
+                if (fullPolicy == FullPolicy.DROP || closed) {
+                    droppedCount.incrementAndGet()
+                    return false
+                }
+                wakeUpWriter()
+                Thread.yield()
+            }
+        } finally {
+            producers.decrementAndGet()
+        }
+
+        wakeUpWriter()
+        return true
+    }
+
+    /**
+     * Waits for the [log] calls in flight, writes the lines that are still in the ring buffer and stops the writer.
+     * Every line is either written or counted in [dropped].
+     */
+    override fun close() {
+        if (closed) {
+            return
+        }
+        closed = true
+        LockSupport.unpark(writer)
+        writer.join()
+    }
+
+    private fun wakeUpWriter() {
+        if (writerWaiting) {
+            writerWaiting = false
+            LockSupport.unpark(writer)
+        }
+    }
+
+    private fun drainLoop() {
+
+        val batch = StringBuilder(batchSize * 64)
+
+        while (true) {
+
+            var count = 0
+            while (count < batchSize) {
+                val line = ring.poll() ?: break
+                batch.append(line).append(System.lineSeparator())
+                count++
+            }
+
+            if (count > 0) {
+                out.print(batch)
+                out.flush()
+                batch.setLength(0)
+                writtenCount.addAndGet(count.toLong())
+                continue
+            }
+
+            if (closed) {
+                // log() calls that passed the closed check before close() may still be storing their line
+                if (producers.get() == 0 && ring.isEmpty()) {
+                    return
+                }
+                Thread.yield()
+                continue
+            }
+
+            writerWaiting = true
+            // Check again, a line offered before the flag was visible would not unpark the writer
+            if (ring.isEmpty()) {
+                LockSupport.parkNanos(this, PARK_NANOS)
+            }
+            writerWaiting = false
+        }
+    }
+
+    companion object {
+        // Upper bound of the wait if an unpark is missed
+        private val PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10)
+    }
+}
+
+/**
+ * Bounded multi producer single consumer ring buffer. Each slot has a sequence number, a producer claims a slot
+ * with a CAS on [tail] and publishes it by advancing the sequence of the slot, the consumer frees it the same way.
+ */
+internal class LogRing(capacity: Int) {
+
+    private val size = Integer.highestOneBit(maxOf(capacity, 2) - 1) shl 1
+    private val mask = size - 1
+
+    private val lines = AtomicReferenceArray<String>(size)
+    private val sequences = AtomicLongArray(size).apply {
+        for (i in 0 until size) {
+            set(i, i.toLong())
+        }
+    }
+
+    private val tail = AtomicLong()
+
+    // Only read and moved by the consumer thread
+    private var head = 0L
+
+    fun offer(line: String): Boolean {
+        while (true) {
+            val position = tail.get()
+            val index = (position and mask.toLong()).toInt()
+            val sequence = sequences.get(index)
+            when {
+                sequence == position -> if (tail.compareAndSet(position, position + 1)) {
+                    lines.lazySet(index, line)
+                    sequences.set(index, position + 1)
+                    return true
+                }
+                sequence < position -> return false
+            }
+        }
+    }
+
+    fun poll(): String? {
+        val position = head
+        val index = (position and mask.toLong()).toInt()
+        if (sequences.get(index) != position + 1) {
+            return null
+        }
+        val line = lines.get(index)
+        lines.lazySet(index, null)
+        sequences.set(index, position + size)
+        head = position + 1
+        return line
+    }
+
+    /**
+     * Only for the consumer thread
+     */
+    fun isEmpty() = sequences.get((head and mask.toLong()).toInt()) != head + 1
+}
+
+/**
+ * Subscribes and logs every item with [format] to [sink] instead of printing it
+ */
+fun <T> Observable<T>.subscribeLog(sink: AsyncLogSink, format: (T) -> String = { it.toString() }): Disposable =
+    subscribe(
+        { sink.log(format(it)) },
+        { sink.log("onError() $it") }
+    )
+
+/**
+ * Subscribes and logs every item with [format] to [sink] instead of printing it
+ */
+fun <T> Flowable<T>.subscribeLog(sink: AsyncLogSink, format: (T) -> String = { it.toString() }): Disposable =
+    subscribe(
+        { sink.log(format(it)) },
+        { sink.log("onError() $it") }
+    )
@@ -0,0 +1,170 @@
+package chapter10testinganddebugging
+
+import io.reactivex.Observable
+import io.reactivex.Scheduler
+import io.reactivex.internal.disposables.SequentialDisposable
+import java.util.Random
+import java.util.concurrent.TimeUnit
+
+/**
+ * Time between two arrivals of simulated requests
+ */
+interface ArrivalProcess {
+    fun nextGapNanos(random: Random): Long
+}
+
+/**
+ * Time a simulated call takes
+ */
+interface LatencyDistribution {
+    fun sampleNanos(random: Random): Long
+}
+
+object Arrivals {
+
+    /**
+     * Exactly [perSecond] arrivals per second, evenly spaced
+     */
+    @JvmStatic
+    fun constant(perSecond: Double): ArrivalProcess {
+        require(perSecond > 0) { "perSecond > 0 required but it was $perSecond" }
+        val gap = (NANOS_PER_SECOND / perSecond).toLong()
+        return object : ArrivalProcess {
+            override fun nextGapNanos(random: Random) = gap
+        }
+    }
+
+    /**
+     * Independent arrivals with [perSecond] on average, like users of a service, the gaps are exponentially distributed
+     */
+    @JvmStatic
+    fun poisson(perSecond: Double): ArrivalProcess {
+        require(perSecond > 0) { "perSecond > 0 required but it was $perSecond" }
+        val meanGap = NANOS_PER_SECOND / perSecond
+        return object : ArrivalProcess {
+            override fun nextGapNanos(random: Random) = (-Math.log(1 - random.nextDouble()) * meanGap).toLong()
+        }
+    }
+
+    /**
+     * [burstSize] arrivals at the same time, [perSecond] arrivals per second on average.
+     * It counts the arrivals of the current burst, use a new one for every simulation.
+     */
+    @JvmStatic
+    fun bursts(perSecond: Double, burstSize: Int): ArrivalProcess {
+        require(burstSize > 0) { "burstSize > 0 required but it was $burstSize" }
+        val burstGap = (NANOS_PER_SECOND * burstSize / perSecond).toLong()
+        return object : ArrivalProcess {
+            private var inBurst = 0
+            override fun nextGapNanos(random: Random): Long {
+                inBurst = (inBurst + 1) % burstSize
+                return if (inBurst == 0) burstGap else 0
+            }
+        }
+    }
+}
+
+object Latency {
+
+    @JvmStatic
+    fun fixed(time: Long, unit: TimeUnit): LatencyDistribution {
+        val nanos = unit.toNanos(time)
+        return object : LatencyDistribution {
+            override fun sampleNanos(random: Random) = nanos
+        }
+    }
+
+    @JvmStatic
+    fun uniform(min: Long, max: Long, unit: TimeUnit): LatencyDistribution {
+        val minNanos = unit.toNanos(min)
+        val range = unit.toNanos(max) - minNanos
+        return object : LatencyDistribution {
+            override fun sampleNanos(random: Random) = minNanos + (random.nextDouble() * range).toLong()
+        }
+    }
+
+    @JvmStatic
+    fun exponential(mean: Long, unit: TimeUnit): LatencyDistribution {
+        val meanNanos = unit.toNanos(mean).toDouble()
+        return object : LatencyDistribution {
+            override fun sampleNanos(random: Random) = (-Math.log(1 - random.nextDouble()) * meanNanos).toLong()
+        }
+    }
+
+    /**
+     * Half of the calls are faster than [median], a larger [sigma] gives a longer tail,
+     * which is how response times of real services usually look
+     */
+    @JvmStatic
+    fun logNormal(median: Long, unit: TimeUnit, sigma: Double): LatencyDistribution {
+        val mu = Math.log(unit.toNanos(median).toDouble())
+        return object : LatencyDistribution {
+            override fun sampleNanos(random: Random) = Math.exp(mu + sigma * random.nextGaussian()).toLong()
+        }
+    }
+}
+
+/**
+ * 🔥 INFO Load simulation
+ *
+ * Emits 0, 1, 2... at the times of [arrivals] on [scheduler] for [duration] and completes.
+ * Only the next arrival is scheduled at any time, so even hours of traffic do not fill the scheduler.
+ * With a [VirtualTimeScheduler] hours of simulated traffic run in seconds.
+ *
+ * The same [seed] gives the same arrivals.
+ */
+@JvmOverloads
+fun simulatedArrivals(
+    scheduler: Scheduler,
+    arrivals: ArrivalProcess,
+    duration: Long,
+    unit: TimeUnit,
+    seed: Long = 42
+): Observable<Long> = Observable.create { emitter ->
+
+    val random = Random(seed)
+    val worker = scheduler.createWorker()
+    val end = worker.now(TimeUnit.NANOSECONDS) + unit.toNanos(duration)
+    val next = SequentialDisposable()
+
+    emitter.setCancellable {
+        next.dispose()
+        worker.dispose()
+    }
+
+    var index = 0L
+
+    val arrive = object : Runnable {
+        override fun run() {
+            if (emitter.isDisposed) {
+                return
+            }
+            emitter.onNext(index++)
+
+            val gap = arrivals.nextGapNanos(random)
+            if (worker.now(TimeUnit.NANOSECONDS) + gap >= end) {
+                emitter.onComplete()
+            } else {
+                next.replace(worker.schedule(this, gap, TimeUnit.NANOSECONDS))
+            }
+        }
+    }
+
+    next.replace(worker.schedule(arrive, arrivals.nextGapNanos(random), TimeUnit.NANOSECONDS))
+}
+
+/**
+ * Emits every item after a delay taken from [latency], like a call to a service that takes that long.
+ * Items can overtake each other like real responses do.
+ */
+@JvmOverloads
+fun <T> Observable<T>.simulateLatency(
+    scheduler: Scheduler,
+    latency: LatencyDistribution,
+    seed: Long = 42
+): Observable<T> = Observable.defer {
+    val random = Random(seed)
+    flatMap { item -> Observable.timer(latency.sampleNanos(random), TimeUnit.NANOSECONDS, scheduler).map { item } }
+}
+
+private const val NANOS_PER_SECOND = 1_000_000_000.0
@@ -0,0 +1,237 @@
+package chapter10testinganddebugging
+
+import io.reactivex.Flowable
+import io.reactivex.Observable
+import io.reactivex.Observer
+import org.reactivestreams.Subscriber
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * Metrics of one stage at the time of [OperatorMetrics.snapshot].
+ *
+ * @param stage operator class and the line that created it, like **ObservableMap at Tutorial.kt:42**
+ * @param onNextCount items the stage emitted
+ * @param onNextNanos time spent in **onNext()** of everything below the stage, so it includes the
+ * stages below it. The difference to the stage below is the time of the stage itself.
+ * @param errorCount **onError()** calls the stage emitted
+ * @param activeSubscriptions subscriptions that did not terminate and were not disposed yet
+ */
+data class StageSnapshot(
+    val stage: String,
+    val onNextCount: Long,
+    val onNextNanos: Long,
+    val errorCount: Long,
+    val activeSubscriptions: Long
+) {
+    override fun toString() =
+        String.format(
+            "%-60s onNext: %,10d  downstream: %,8d µs  errors: %,4d  active: %,4d",
+            stage, onNextCount, onNextNanos / 1000, errorCount, activeSubscriptions
+        )
+}
+
+/**
+ * 🔥 INFO OperatorMetrics
+ *
+ * Every operator like **map()** or **flatMap()** goes through **RxJavaPlugins.onAssembly()** when the chain is
+ * built. [install] sets the **Observable** and **Flowable** assembly hooks so each operator is wrapped with a
+ * stage that counts its **onNext()** and **onError()** signals, measures the time spent in the **onNext()** of
+ * its downstream and keeps the number of active subscriptions.
+ *
+ * * Only chains assembled after [install] are measured, hooks set before are called first
+ * * With [enabled] false a wrapped stage only reads a volatile flag per signal, and without [install]
+ * nothing is wrapped at all
+ * * 🔥🔥 A wrapped operator is no longer **Callable** or fuseable, so optimizations like
+ * **flatMap(Observable.just())** without a subscription do not apply while metrics are installed
+ */
+object OperatorMetrics {
+
+    private val stages = ConcurrentHashMap<String, StageMetrics>()
+
+    private val hook = AssemblyHook(
+        { source, assembled -> if (enabled) MetricsObservable(assembled, stageFor(source)) else assembled },
+        { source, assembled -> if (enabled) MetricsFlowable(assembled, stageFor(source)) else assembled }
+    )
+
+    /**
+     * Turns recording on and off for stages that are already wrapped, installing is not changed
+     */
+    @Volatile
+    @JvmStatic
+    var enabled = true
+
+    /**
+     * Whether the line creating an operator is part of its stage name. Finding it needs a stack trace for
+     * every assembled operator, without it all operators of the same type share one stage.
+     */
+    @Volatile
+    @JvmStatic
+    var captureAssemblySite = true
+
+    @JvmStatic
+    fun install() {
+        AssemblyHooks.add(hook)
+    }
+
+    /**
+     * Removes the hook, chains that are already wrapped keep recording
+     */
+    @JvmStatic
+    fun uninstall() {
+        AssemblyHooks.remove(hook)
+    }
+
+    /**
+     * Current metrics of every stage, the slowest downstream first
+     */
+    @JvmStatic
+    fun snapshot(): List<StageSnapshot> =
+        stages.values
+            .map { it.snapshot() }
+            .sortedByDescending { it.onNextNanos }
+
+    @JvmStatic
+    fun reset() {
+        stages.clear()
+    }
+
+    private fun stageFor(operator: Any): StageMetrics {
+        val name = operator.javaClass.simpleName
+        val key = if (captureAssemblySite) "$name at ${assemblySite()}" else name
+        return stages.computeIfAbsent(key) { StageMetrics(it) }
+    }
+
+    /**
+     * First stack frame outside of RxJava, the assembly hooks and this class, the line of the operator call
+     */
+    private fun assemblySite(): String {
+        for (element in Throwable().stackTrace) {
+            val className = element.className
+            if (!className.startsWith("io.reactivex.") &&
+                !className.startsWith(AssemblyHooks::class.java.name) &&
+                !className.startsWith(OperatorMetrics::class.java.name)
+            ) {
+                return "${element.fileName}:${element.lineNumber}"
+            }
+        }
+        return "unknown"
+    }
+}
+
+internal class StageMetrics(val stage: String) {
+
+    val onNextCount = LongAdder()
+    val onNextNanos = LongAdder()
+    val errorCount = LongAdder()
+    val activeSubscriptions = LongAdder()
+
+    fun snapshot() = StageSnapshot(
+        stage,
+        onNextCount.sum(),
+        onNextNanos.sum(),
+        errorCount.sum(),
+        activeSubscriptions.sum()
+    )
+
+    /**
+     * Counts an active subscription, one that starts while disabled is never counted and [done] right away
+     */
+    fun start(done: AtomicBoolean) {
+        if (OperatorMetrics.enabled) {
+            activeSubscriptions.increment()
+        } else {
+            done.set(true)
+        }
+    }
+
+    inline fun onNext(onNext: () -> Unit) {
+        if (!OperatorMetrics.enabled) {
+            onNext()
+            return
+        }
+        onNextCount.increment()
+        val start = System.nanoTime()
+        onNext()
+        onNextNanos.add(System.nanoTime() - start)
+    }
+
+    fun end(done: AtomicBoolean, error: Throwable?) {
+        if (error != null && OperatorMetrics.enabled) {
+            errorCount.increment()
+        }
+        if (done.compareAndSet(false, true)) {
+            activeSubscriptions.decrement()
+        }
+    }
+}
+
+private class MetricsObservable<T>(
+    private val source: Observable<T>,
+    private val stage: StageMetrics
+) : Observable<T>() {
+
+    override fun subscribeActual(observer: Observer<in T>) {
+        source.subscribe(MetricsObserver(observer, stage))
+    }
+
+    private class MetricsObserver<T>(
+        downstream: Observer<in T>,
+        private val stage: StageMetrics
+    ) : HookObserver<T>(downstream) {
+
+        // Set once when the subscription ends, by a terminal event or by dispose()
+        private val done = AtomicBoolean()
+
+        override fun onStart() {
+            stage.start(done)
+        }
+
+        override fun onNext(t: T) {
+            stage.onNext { downstream.onNext(t) }
+        }
+
+        override fun onTerminate(error: Throwable?) {
+            stage.end(done, error)
+        }
+
+        override fun onDispose() {
+            stage.end(done, null)
+        }
+    }
+}
+
+private class MetricsFlowable<T>(
+    private val source: Flowable<T>,
+    private val stage: StageMetrics
+) : Flowable<T>() {
+
+    override fun subscribeActual(subscriber: Subscriber<in T>) {
+        source.subscribe(MetricsSubscriber(subscriber, stage))
+    }
+
+    private class MetricsSubscriber<T>(
+        downstream: Subscriber<in T>,
+        private val stage: StageMetrics
+    ) : HookSubscriber<T>(downstream) {
+
+        private val done = AtomicBoolean()
+
+        override fun onStart() {
+            stage.start(done)
+        }
+
+        override fun onNext(t: T) {
+            stage.onNext { downstream.onNext(t) }
+        }
+
+        override fun onTerminate(error: Throwable?) {
+            stage.end(done, error)
+        }
+
+        override fun onDispose() {
+            stage.end(done, null)
+        }
+    }
+}
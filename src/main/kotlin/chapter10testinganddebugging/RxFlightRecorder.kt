@@ -0,0 +1,275 @@
+package chapter10testinganddebugging
+
+import io.reactivex.Flowable
+import io.reactivex.Observable
+import io.reactivex.Observer
+import jdk.jfr.Category
+import jdk.jfr.Description
+import jdk.jfr.Event
+import jdk.jfr.EventType
+import jdk.jfr.Label
+import jdk.jfr.Name
+import jdk.jfr.Threshold
+import org.reactivestreams.Subscriber
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+
+@Name("rx.Subscribe")
+@Label("Subscribe")
+@Category("RxJava")
+@Description("An operator was subscribed, the stack trace shows the operators it was subscribed through")
+class RxSubscribeEvent : Event() {
+
+    @field:Label("Operator")
+    var operator: String? = null
+
+    @field:Label("Chain Id")
+    @field:Description("Same for every operator subscribed on one thread for one subscribe() call")
+    var chainId = 0L
+}
+
+@Name("rx.Dispose")
+@Label("Dispose")
+@Category("RxJava")
+@Description("A subscription of an operator was disposed or cancelled before it terminated")
+class RxDisposeEvent : Event() {
+
+    @field:Label("Operator")
+    var operator: String? = null
+
+    @field:Label("Chain Id")
+    var chainId = 0L
+}
+
+@Name("rx.Error")
+@Label("Error")
+@Category("RxJava")
+@Description("An operator emitted onError()")
+class RxErrorEvent : Event() {
+
+    @field:Label("Operator")
+    var operator: String? = null
+
+    @field:Label("Chain Id")
+    var chainId = 0L
+
+    @field:Label("Error Class")
+    var errorClass: String? = null
+
+    @field:Label("Message")
+    var message: String? = null
+}
+
+@Name("rx.SlowOnNext")
+@Label("Slow onNext")
+@Category("RxJava")
+@Description("onNext() of the operators below took longer than the threshold")
+@Threshold("10 ms")
+class RxSlowOnNextEvent : Event() {
+
+    @field:Label("Operator")
+    var operator: String? = null
+
+    @field:Label("Chain Id")
+    var chainId = 0L
+}
+
+/**
+ * 🔥 INFO RxFlightRecorder
+ *
+ * Printing in **doOnSubscribe()** or **doOnDispose()** like **Tutorial1_2RxJavaLifeCycles** shows the
+ * life cycle of one chain, under load it is far too slow and too much output. [install] wraps every operator
+ * assembled afterwards, like [OperatorMetrics], and commits **JDK Flight Recorder** events instead:
+ *
+ * * [RxSubscribeEvent] when an operator is subscribed, its stack trace is the chain of operators
+ * * [RxDisposeEvent] when a subscription is disposed or cancelled
+ * * [RxErrorEvent] when an operator emits **onError()**
+ * * [RxSlowOnNextEvent] when **onNext()** of the operators below takes longer than its threshold,
+ * 10 ms by default and changed with **Recording.enable(RxSlowOnNextEvent::class.java).withThreshold()**
+ *
+ * JFR adds the thread of every event. The **chainId** groups the operators subscribed by one **subscribe()** call
+ * on one thread, operators above **subscribeOn()** are subscribed on another thread and get their own id.
+ *
+ * While no recording has an event type enabled its wrapper only reads a flag, start a recording with
+ * **-XX:StartFlightRecording** or the **Recording** API and open the file in **JDK Mission Control**.
+ * Needs **jdk.jfr**, which is in JDK 11 and later and in OpenJDK 8 since 8u262.
+ */
+object RxFlightRecorder {
+
+    private val subscribeType = EventType.getEventType(RxSubscribeEvent::class.java)
+    private val disposeType = EventType.getEventType(RxDisposeEvent::class.java)
+    private val errorType = EventType.getEventType(RxErrorEvent::class.java)
+    private val slowOnNextType = EventType.getEventType(RxSlowOnNextEvent::class.java)
+
+    private val chainIds = AtomicLong()
+
+    /**
+     * Chain id of the subscribe() call that is running on this thread, 0 if there is none
+     */
+    private val currentChain = ThreadLocal<LongArray>()
+
+    private val hook = AssemblyHook(
+        { source, assembled -> FlightRecorderObservable(assembled, source.javaClass.simpleName) },
+        { source, assembled -> FlightRecorderFlowable(assembled, source.javaClass.simpleName) }
+    )
+
+    @JvmStatic
+    fun install() {
+        AssemblyHooks.add(hook)
+    }
+
+    /**
+     * Removes the hook, chains that are already wrapped keep committing events
+     */
+    @JvmStatic
+    fun uninstall() {
+        AssemblyHooks.remove(hook)
+    }
+
+    /**
+     * Calls [subscribe] with the chain id of the running subscribe() call on this thread or with a new one
+     */
+    internal inline fun subscribeInChain(operator: String, subscribe: (chainId: Long) -> Unit) {
+
+        var holder = currentChain.get()
+        if (holder == null) {
+            holder = LongArray(1)
+            currentChain.set(holder)
+        }
+
+        val outer = holder[0]
+        val chainId = if (outer == 0L) chainIds.incrementAndGet() else outer
+
+        if (subscribeType.isEnabled) {
+            val event = RxSubscribeEvent()
+            event.operator = operator
+            event.chainId = chainId
+            event.commit()
+        }
+
+        holder[0] = chainId
+        try {
+            subscribe(chainId)
+        } finally {
+            holder[0] = outer
+        }
+    }
+
+    internal fun disposed(operator: String, chainId: Long) {
+        if (disposeType.isEnabled) {
+            val event = RxDisposeEvent()
+            event.operator = operator
+            event.chainId = chainId
+            event.commit()
+        }
+    }
+
+    internal fun error(operator: String, chainId: Long, error: Throwable) {
+        if (errorType.isEnabled) {
+            val event = RxErrorEvent()
+            event.operator = operator
+            event.chainId = chainId
+            event.errorClass = error.javaClass.name
+            event.message = error.message
+            event.commit()
+        }
+    }
+
+    internal inline fun onNext(operator: String, chainId: Long, onNext: () -> Unit) {
+        if (!slowOnNextType.isEnabled) {
+            onNext()
+            return
+        }
+        val event = RxSlowOnNextEvent()
+        event.begin()
+        onNext()
+        event.end()
+        // Only true if the duration is over the threshold of the recording
+        if (event.shouldCommit()) {
+            event.operator = operator
+            event.chainId = chainId
+            event.commit()
+        }
+    }
+}
+
+private class FlightRecorderObservable<T>(
+    private val source: Observable<T>,
+    private val operator: String
+) : Observable<T>() {
+
+    override fun subscribeActual(observer: Observer<in T>) {
+        RxFlightRecorder.subscribeInChain(operator) { chainId ->
+            source.subscribe(FlightRecorderObserver(observer, operator, chainId))
+        }
+    }
+
+    private class FlightRecorderObserver<T>(
+        downstream: Observer<in T>,
+        private val operator: String,
+        private val chainId: Long
+    ) : HookObserver<T>(downstream) {
+
+        @Volatile
+        private var done = false
+
+        override fun onNext(t: T) {
+            RxFlightRecorder.onNext(operator, chainId) { downstream.onNext(t) }
+        }
+
+        override fun onTerminate(error: Throwable?) {
+            done = true
+            if (error != null) {
+                RxFlightRecorder.error(operator, chainId, error)
+            }
+        }
+
+        override fun onDispose() {
+            if (!done && !isDisposed) {
+                RxFlightRecorder.disposed(operator, chainId)
+            }
+        }
+    }
+}
+
+private class FlightRecorderFlowable<T>(
+    private val source: Flowable<T>,
+    private val operator: String
+) : Flowable<T>() {
+
+    override fun subscribeActual(subscriber: Subscriber<in T>) {
+        RxFlightRecorder.subscribeInChain(operator) { chainId ->
+            source.subscribe(FlightRecorderSubscriber(subscriber, operator, chainId))
+        }
+    }
+
+    private class FlightRecorderSubscriber<T>(
+        downstream: Subscriber<in T>,
+        private val operator: String,
+        private val chainId: Long
+    ) : HookSubscriber<T>(downstream) {
+
+        @Volatile
+        private var done = false
+
+        // A Subscription has no isCancelled, only the first cancel() is recorded
+        private val cancelled = AtomicBoolean()
+
+        override fun onNext(t: T) {
+            RxFlightRecorder.onNext(operator, chainId) { downstream.onNext(t) }
+        }
+
+        override fun onTerminate(error: Throwable?) {
+            done = true
+            if (error != null) {
+                RxFlightRecorder.error(operator, chainId, error)
+            }
+        }
+
+        override fun onDispose() {
+            if (!done && cancelled.compareAndSet(false, true)) {
+                RxFlightRecorder.disposed(operator, chainId)
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package chapter10testinganddebugging
+
+import io.reactivex.Observer
+import io.reactivex.disposables.Disposable
+import java.util.concurrent.CyclicBarrier
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * What the arbiter of a [StressTest] saw after one round, [forbidden] outcomes fail the test
+ */
+data class Outcome(val description: String, val forbidden: Boolean) {
+
+    companion object {
+
+        @JvmStatic
+        fun acceptable(description: String) = Outcome(description, false)
+
+        @JvmStatic
+        fun forbidden(description: String) = Outcome(description, true)
+    }
+}
+
+/**
+ * How often each [Outcome] was seen in [rounds] rounds
+ */
+class StressResult(val name: String, val rounds: Int, val outcomes: Map<Outcome, Int>) {
+
+    val forbiddenCount: Int
+        get() = outcomes.filterKeys { it.forbidden }.values.sum()
+
+    fun assertNoForbidden(): StressResult {
+        if (forbiddenCount > 0) {
+            throw AssertionError("$forbiddenCount of $rounds rounds had forbidden outcomes\n$this")
+        }
+        return this
+    }
+
+    override fun toString() = buildString {
+        append("$name, $rounds rounds")
+        outcomes.entries.sortedByDescending { it.value }.forEach { (outcome, count) ->
+            append(String.format("%n  %-10s %,10d  %s", if (outcome.forbidden) "FORBIDDEN" else "ok", count, outcome.description))
+        }
+    }
+}
+
+/**
+ * 🔥 INFO StressTest
+ *
+ * Works like **jcstress**: every round gets a new state from [newState], each [actor] runs on its own thread
+ * against it, and after all actors of the round are done the **arbiter** turns the state into an [Outcome].
+ * The outcomes of all rounds are counted, a single forbidden one shows a race.
+ *
+ * The states are created in batches of [batchSize]. The actor threads go through a batch without waiting for each
+ * other and only meet at the end of the batch, so they hit the same state at slightly different moments every round,
+ * which gives far more interleavings than starting new threads for every round.
+ *
+ * Use [InvariantObserver] in the state to check that emissions are serialized and terminal events are not lost.
+ */
+class StressTest<S> @JvmOverloads constructor(
+    private val name: String,
+    private val batchSize: Int = 1024,
+    private val newState: () -> S
+) {
+
+    private val actors = ArrayList<(S) -> Unit>()
+
+    init {
+        require(batchSize > 0) { "batchSize > 0 required but it was $batchSize" }
+    }
+
+    /**
+     * Adds an action that runs on its own thread in every round
+     */
+    fun actor(action: (S) -> Unit): StressTest<S> {
+        actors.add(action)
+        return this
+    }
+
+    /**
+     * Runs [rounds] rounds, [arbiter] runs on the calling thread after the actors of a round are done
+     */
+    fun run(rounds: Int, arbiter: (S) -> Outcome): StressResult {
+
+        require(actors.isNotEmpty()) { "A stress test needs at least one actor" }
+
+        val outcomes = HashMap<Outcome, Int>()
+        val batches = (rounds + batchSize - 1) / batchSize
+
+        @Suppress("UNCHECKED_CAST")
+        var states = arrayOfNulls<Any>(batchSize) as Array<S>
+        var batchRounds = 0
+
+        val start = CyclicBarrier(actors.size + 1)
+        val end = CyclicBarrier(actors.size + 1)
+        val error = AtomicReference<Throwable>()
+
+        val threads = actors.mapIndexed { index, actor ->
+            Thread {
+                try {
+                    repeat(batches) {
+                        start.await()
+                        try {
+                            for (i in 0 until batchRounds) {
+                                actor(states[i])
+                            }
+                        } catch (e: Throwable) {
+                            error.compareAndSet(null, e)
+                        }
+                        end.await()
+                    }
+                } catch (e: Exception) {
+                    // Interrupted or broken barrier, run() failed and stops the actors
+                }
+            }.apply {
+                this.name = "$name-actor-$index"
+                isDaemon = true
+                start()
+            }
+        }
+
+        try {
+            var remaining = rounds
+            repeat(batches) {
+                batchRounds = minOf(remaining, batchSize)
+                remaining -= batchRounds
+
+                @Suppress("UNCHECKED_CAST")
+                states = Array<Any?>(batchSize) { if (it < batchRounds) newState() else null } as Array<S>
+
+                // The barriers make the new states and batchRounds visible to the actors and their writes to the arbiter
+                start.await(1, TimeUnit.MINUTES)
+                end.await(1, TimeUnit.MINUTES)
+
+                error.get()?.let { throw it }
+
+                for (i in 0 until batchRounds) {
+                    outcomes.merge(arbiter(states[i]), 1, Int::plus)
+                }
+            }
+        } finally {
+            threads.forEach { it.interrupt() }
+        }
+
+        return StressResult(name, rounds, outcomes)
+    }
+}
+
+/**
+ * 🔥 INFO InvariantObserver
+ *
+ * Checks the rules of the **Observable contract** while actors call it from many threads:
+ *
+ * * **onSubscribe** comes first and only once
+ * * **onNext**, **onError** and **onComplete** never run at the same time, emissions are serialized
+ * * nothing comes after **onError** or **onComplete** and there is at most one of them
+ *
+ * Broken rules are collected in [violations] instead of thrown, an exception would only reach the actor.
+ * [onNextWork] runs inside **onNext** and can make the race window wider, like a slow subscriber does.
+ */
+class InvariantObserver<T> @JvmOverloads constructor(
+    private val onNextWork: (T) -> Unit = {}
+) : Observer<T> {
+
+    private val inside = AtomicInteger()
+
+    private val subscribed = AtomicBoolean()
+
+    private val violationList = ArrayList<String>()
+
+    private val valueCounter = AtomicInteger()
+    private val terminalCounter = AtomicInteger()
+
+    @Volatile
+    var upstream: Disposable? = null
+        private set
+
+    val valueCount: Int
+        get() = valueCounter.get()
+
+    /**
+     * Number of **onError** and **onComplete** calls, more than 1 is also a violation
+     */
+    val terminalEvents: Int
+        get() = terminalCounter.get()
+
+    val violations: List<String>
+        get() = synchronized(violationList) { ArrayList(violationList) }
+
+    /**
+     * Forbidden outcome with the first violation, or null if there was none
+     */
+    fun violationOutcome(): Outcome? = violations.firstOrNull()?.let { Outcome.forbidden(it) }
+
+    override fun onSubscribe(d: Disposable) {
+        // Set and checked at once, two racing calls must not both pass
+        if (subscribed.getAndSet(true)) {
+            violation("onSubscribe called twice")
+            d.dispose()
+            return
+        }
+        upstream = d
+    }
+
+    override fun onNext(t: T) {
+        enter("onNext")
+        try {
+            valueCounter.incrementAndGet()
+            onNextWork(t)
+        } finally {
+            inside.decrementAndGet()
+        }
+    }
+
+    override fun onError(e: Throwable) {
+        terminate("onError")
+    }
+
+    override fun onComplete() {
+        terminate("onComplete")
+    }
+
+    private fun terminate(event: String) {
+        enter(event)
+        try {
+            terminalCounter.incrementAndGet()
+        } finally {
+            inside.decrementAndGet()
+        }
+    }
+
+    private fun enter(event: String) {
+        if (!subscribed.get()) {
+            violation("$event before onSubscribe")
+        }
+        if (inside.getAndIncrement() != 0) {
+            violation("$event while another signal was running")
+        }
+        if (terminalCounter.get() > 0) {
+            violation("$event after a terminal event")
+        }
+    }
+
+    private fun violation(message: String) {
+        synchronized(violationList) {
+            violationList.add(message)
+        }
+    }
+}
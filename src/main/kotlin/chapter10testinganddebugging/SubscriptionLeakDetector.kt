@@ -0,0 +1,245 @@
+package chapter10testinganddebugging
+
+import io.reactivex.Flowable
+import io.reactivex.Observable
+import io.reactivex.Observer
+import io.reactivex.Scheduler
+import io.reactivex.disposables.Disposable
+import io.reactivex.internal.operators.flowable.FlowableInterval
+import io.reactivex.internal.operators.flowable.FlowableIntervalRange
+import io.reactivex.internal.operators.flowable.FlowableNever
+import io.reactivex.internal.operators.observable.ObservableInterval
+import io.reactivex.internal.operators.observable.ObservableIntervalRange
+import io.reactivex.internal.operators.observable.ObservableNever
+import io.reactivex.schedulers.Schedulers
+import org.reactivestreams.Subscriber
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Live subscriptions that were created at the same place and are older than the threshold of the report.
+ *
+ * @param site where the source was assembled and where it was subscribed to
+ * @param count number of tracked subscriptions, with sampling the real number is about count * sampleEvery
+ * @param oldestMillis age of the oldest one
+ */
+data class LeakSite(val site: String, val count: Int, val oldestMillis: Long) {
+    override fun toString() = "$count subscriptions, oldest ${oldestMillis} ms: $site"
+}
+
+/**
+ * 🔥 INFO SubscriptionLeakDetector
+ *
+ * A subscription to **Observable.interval()** that is never disposed, like the ignored **Disposable** of
+ * **testResourceObserver()** in **Tutorial2_6Disposing**, keeps its timer running and its observer, with everything
+ * the lambdas captured, reachable forever. Finding it usually needs a heap dump.
+ *
+ * [install] sets the assembly hooks and wraps endless or long-running timer sources, [isTracked] decides which.
+ * Every subscription to a wrapped source is kept with the line that assembled and the line that subscribed it
+ * until it terminates or is disposed. [report] groups the ones older than a threshold by these lines,
+ * [startReporting] does it periodically.
+ *
+ * * Only every [sampleEvery]th assembled source is wrapped, the others cost nothing after assembly
+ * * Finding the lines needs 2 stack traces, one at assembly and one at every subscription of a wrapped source
+ */
+object SubscriptionLeakDetector {
+
+    /**
+     * Wrap 1 of this many assembled sources, 1 tracks all of them
+     */
+    @Volatile
+    @JvmStatic
+    var sampleEvery = 1
+        set(value) {
+            require(value > 0) { "sampleEvery > 0 required but it was $value" }
+            field = value
+        }
+
+    /**
+     * Sources that are tracked, by default endless or long-running timer sources: interval(), never() and
+     * intervalRange(), which completes but may run for a long time
+     */
+    @Volatile
+    @JvmStatic
+    var isTracked: (Any) -> Boolean = { source ->
+        source is ObservableInterval || source is ObservableIntervalRange || source is ObservableNever ||
+                source is FlowableInterval || source is FlowableIntervalRange || source is FlowableNever
+    }
+
+    private val live: MutableSet<LiveSubscription> = ConcurrentHashMap.newKeySet()
+
+    private val assembled = AtomicLong()
+
+    // Frames of these classes are skipped when looking for the call site
+    private val detectorClasses = listOf(
+        SubscriptionLeakDetector::class.java.name,
+        AssemblyHooks::class.java.name,
+        LeakTrackingObservable::class.java.name,
+        LeakTrackingFlowable::class.java.name
+    )
+
+    private val hook = AssemblyHook(
+        { source, assembled -> if (shouldTrack(source)) LeakTrackingObservable(assembled, callSite()) else assembled },
+        { source, assembled -> if (shouldTrack(source)) LeakTrackingFlowable(assembled, callSite()) else assembled }
+    )
+
+    private var reporting: Disposable? = null
+
+    @JvmStatic
+    fun install() {
+        AssemblyHooks.add(hook)
+    }
+
+    /**
+     * Removes the hook and stops [startReporting], subscriptions that are already tracked stay in [report]
+     * until they end
+     */
+    @Synchronized
+    @JvmStatic
+    fun uninstall() {
+        reporting?.dispose()
+        reporting = null
+        AssemblyHooks.remove(hook)
+    }
+
+    /**
+     * Live subscriptions older than [olderThan] grouped by their lines, most subscriptions first
+     */
+    @JvmStatic
+    fun report(olderThan: Long, unit: TimeUnit): List<LeakSite> {
+
+        val now = System.nanoTime()
+        val threshold = unit.toNanos(olderThan)
+
+        return live
+            .filter { now - it.subscribedAt >= threshold }
+            .groupBy { it.site }
+            .map { (site, subscriptions) ->
+                val oldest = subscriptions.minBy { it.subscribedAt }!!
+                LeakSite(site, subscriptions.size, TimeUnit.NANOSECONDS.toMillis(now - oldest.subscribedAt))
+            }
+            .sortedByDescending { it.count }
+    }
+
+    /**
+     * Calls [reporter] every [period] with the [report] of subscriptions older than [olderThan] if there are any
+     */
+    @Synchronized
+    @JvmStatic
+    @JvmOverloads
+    fun startReporting(
+        period: Long,
+        olderThan: Long,
+        unit: TimeUnit,
+        scheduler: Scheduler = Schedulers.single(),
+        reporter: (List<LeakSite>) -> Unit = { sites -> sites.forEach { System.err.println("Possible leak: $it") } }
+    ) {
+        reporting?.dispose()
+        // schedulePeriodicallyDirect() is no Observable, so the detector does not track itself
+        reporting = scheduler.schedulePeriodicallyDirect({
+            val sites = report(olderThan, unit)
+            if (sites.isNotEmpty()) {
+                reporter(sites)
+            }
+        }, period, period, unit)
+    }
+
+    @JvmStatic
+    fun liveCount() = live.size
+
+    internal fun track(subscription: LiveSubscription) {
+        live.add(subscription)
+    }
+
+    internal fun untrack(subscription: LiveSubscription) {
+        live.remove(subscription)
+    }
+
+    private fun isDetectorClass(className: String) =
+        detectorClasses.any { className == it || className.startsWith("$it$") }
+
+    private fun shouldTrack(source: Any) =
+        isTracked(source) && assembled.getAndIncrement() % sampleEvery == 0L
+
+    /**
+     * First stack frame outside of RxJava, the JDK, Kotlin and this detector
+     */
+    internal fun callSite(): String {
+        for (element in Throwable().stackTrace) {
+            val className = element.className
+            if (!className.startsWith("io.reactivex.") &&
+                !className.startsWith("java.") &&
+                !className.startsWith("kotlin.") &&
+                !isDetectorClass(className)
+            ) {
+                return "${element.className}.${element.methodName}(${element.fileName}:${element.lineNumber})"
+            }
+        }
+        return "unknown"
+    }
+}
+
+internal class LiveSubscription(val site: String) {
+
+    val subscribedAt = System.nanoTime()
+
+    private val ended = AtomicBoolean()
+
+    fun start() {
+        SubscriptionLeakDetector.track(this)
+    }
+
+    fun end() {
+        if (ended.compareAndSet(false, true)) {
+            SubscriptionLeakDetector.untrack(this)
+        }
+    }
+}
+
+internal class LeakTrackingObservable<T>(
+    private val source: Observable<T>,
+    private val assemblySite: String
+) : Observable<T>() {
+
+    override fun subscribeActual(observer: Observer<in T>) {
+        val subscription = LiveSubscription("assembled at $assemblySite, subscribed at ${SubscriptionLeakDetector.callSite()}")
+        source.subscribe(LeakTrackingObserver(observer, subscription))
+    }
+
+    private class LeakTrackingObserver<T>(
+        downstream: Observer<in T>,
+        private val subscription: LiveSubscription
+    ) : HookObserver<T>(downstream) {
+
+        override fun onStart() = subscription.start()
+
+        override fun onTerminate(error: Throwable?) = subscription.end()
+
+        override fun onDispose() = subscription.end()
+    }
+}
+
+internal class LeakTrackingFlowable<T>(
+    private val source: Flowable<T>,
+    private val assemblySite: String
+) : Flowable<T>() {
+
+    override fun subscribeActual(subscriber: Subscriber<in T>) {
+        val subscription = LiveSubscription("assembled at $assemblySite, subscribed at ${SubscriptionLeakDetector.callSite()}")
+        source.subscribe(LeakTrackingSubscriber(subscriber, subscription))
+    }
+
+    private class LeakTrackingSubscriber<T>(
+        downstream: Subscriber<in T>,
+        private val subscription: LiveSubscription
+    ) : HookSubscriber<T>(downstream) {
+
+        override fun onStart() = subscription.start()
+
+        override fun onTerminate(error: Throwable?) = subscription.end()
+
+        override fun onDispose() = subscription.end()
+    }
+}
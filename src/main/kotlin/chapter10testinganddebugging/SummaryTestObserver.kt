@@ -0,0 +1,271 @@
+package chapter10testinganddebugging
+
+import io.reactivex.Flowable
+import io.reactivex.FlowableSubscriber
+import io.reactivex.Observable
+import io.reactivex.Observer
+import io.reactivex.disposables.Disposable
+import io.reactivex.internal.disposables.DisposableHelper
+import org.reactivestreams.Subscription
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * 🔥 INFO SummaryTestObserver
+ *
+ * **TestObserver** keeps every value in a list, a soak test with hundreds of millions of values runs out of memory.
+ * [SummaryTestObserver] keeps a summary with a size that does not depend on the number of values:
+ *
+ * * the number of values, errors and completions
+ * * an order sensitive [checksum] of the values, compare it with [checksumOf] of the expected values
+ * * the first [firstCount] and the last [lastCount] values
+ * * a [LatencyHistogram] of the time between two values, or of [latencyNanos] of each value if it is given
+ *
+ * The assertions work like the ones of **TestObserver**, they throw an [AssertionError] and return this observer.
+ * It is an **Observer** and a **Subscriber** that requests everything, use [testSummary] to subscribe one.
+ */
+class SummaryTestObserver<T> @JvmOverloads constructor(
+    private val firstCount: Int = 10,
+    private val lastCount: Int = 10,
+    private val latencyNanos: ((T) -> Long)? = null
+) : Observer<T>, FlowableSubscriber<T>, Disposable {
+
+    private val upstream = AtomicReference<Any>()
+
+    private val done = CountDownLatch(1)
+
+    private val first = ArrayList<T>(firstCount)
+
+    // Ring of the last values, lastIndex is where the next one goes
+    private val last = arrayOfNulls<Any>(lastCount)
+    private var lastIndex = 0
+
+    private var previousNanos = 0L
+
+    val latencies = LatencyHistogram()
+
+    // Plain fields like the value list of TestObserver, awaitTerminalEvent() makes them visible to the caller
+    var valueCount = 0L
+        private set
+
+    var checksum = CHECKSUM_SEED
+        private set
+
+    @Volatile
+    var errors = emptyList<Throwable>()
+        private set
+
+    @Volatile
+    var completions = 0L
+        private set
+
+    override fun onSubscribe(d: Disposable) {
+        if (!upstream.compareAndSet(null, d)) {
+            d.dispose()
+            if (upstream.get() !== DisposableHelper.DISPOSED) {
+                errors = errors + IllegalStateException("onSubscribe received multiple subscriptions: $d")
+            }
+        }
+    }
+
+    override fun onSubscribe(s: Subscription) {
+        if (upstream.compareAndSet(null, s)) {
+            s.request(Long.MAX_VALUE)
+        } else {
+            s.cancel()
+            if (upstream.get() !== DisposableHelper.DISPOSED) {
+                errors = errors + IllegalStateException("onSubscribe received multiple subscriptions: $s")
+            }
+        }
+    }
+
+    override fun onNext(t: T) {
+
+        val now = System.nanoTime()
+        val latency = latencyNanos
+        if (latency != null) {
+            latencies.record(latency(t))
+        } else if (valueCount > 0) {
+            latencies.record(now - previousNanos)
+        }
+        previousNanos = now
+
+        if (first.size < firstCount) {
+            first.add(t)
+        }
+        if (lastCount > 0) {
+            last[lastIndex] = t
+            if (++lastIndex == lastCount) {
+                lastIndex = 0
+            }
+        }
+
+        checksum = nextChecksum(checksum, t)
+        valueCount++
+    }
+
+    override fun onError(e: Throwable) {
+        errors = errors + e
+        done.countDown()
+    }
+
+    override fun onComplete() {
+        completions++
+        done.countDown()
+    }
+
+    override fun dispose() {
+        when (val current = upstream.getAndSet(DisposableHelper.DISPOSED)) {
+            is Disposable -> current.dispose()
+            is Subscription -> current.cancel()
+        }
+    }
+
+    override fun isDisposed() = upstream.get() === DisposableHelper.DISPOSED
+
+    /**
+     * Waits until the source terminated, returns false if it did not within [timeout]
+     */
+    fun awaitTerminalEvent(timeout: Long, unit: TimeUnit): Boolean = done.await(timeout, unit)
+
+    fun firstValues(): List<T> = ArrayList(first)
+
+    @Suppress("UNCHECKED_CAST")
+    fun lastValues(): List<T> {
+        val count = minOf(valueCount, lastCount.toLong()).toInt()
+        return (0 until count).map { last[(lastIndex - count + it + lastCount) % lastCount] as T }
+    }
+
+    fun assertValueCount(count: Long) = check(valueCount == count) { "Value counts differ; expected: $count, actual: $valueCount" }
+
+    fun assertNoErrors() = check(errors.isEmpty()) { "Error(s) present: $errors" }
+
+    fun assertComplete() = check(completions == 1L) { "Expected one completion but there were $completions" }
+
+    fun assertNotComplete() = check(completions == 0L) { "Expected no completion but there were $completions" }
+
+    fun assertError(errorClass: Class<out Throwable>) =
+        check(errors.size == 1 && errorClass.isInstance(errors[0])) { "Expected one ${errorClass.name} but errors were $errors" }
+
+    fun assertFirstValues(vararg values: T) =
+        check(firstValues() == values.toList()) { "First values differ; expected: ${values.toList()}, actual: ${firstValues()}" }
+
+    fun assertLastValues(vararg values: T) =
+        check(lastValues() == values.toList()) { "Last values differ; expected: ${values.toList()}, actual: ${lastValues()}" }
+
+    /**
+     * Asserts that the values were the same as [expected], in the same order, by comparing checksums
+     */
+    fun assertChecksum(expected: Long) =
+        check(checksum == expected) { "Checksums differ; expected: $expected, actual: $checksum" }
+
+    /**
+     * Asserts that [percentile] percent of the latencies were at or below [max]
+     */
+    fun assertLatencyPercentile(percentile: Double, max: Long, unit: TimeUnit) = check(
+        latencies.percentileNanos(percentile) <= unit.toNanos(max)
+    ) {
+        "p$percentile is ${latencies.percentileNanos(percentile)} ns but should be at most ${unit.toNanos(max)} ns"
+    }
+
+    private inline fun check(condition: Boolean, message: () -> String): SummaryTestObserver<T> {
+        if (!condition) {
+            throw AssertionError("${message()} (values = $valueCount, errors = ${errors.size}, completions = $completions)")
+        }
+        return this
+    }
+
+    companion object {
+
+        private const val CHECKSUM_SEED = 17L
+
+        /**
+         * The [checksum] a [SummaryTestObserver] has after receiving [values]
+         */
+        @JvmStatic
+        fun <T> checksumOf(values: Iterable<T>): Long = values.fold(CHECKSUM_SEED) { sum, value -> nextChecksum(sum, value) }
+
+        // Multiply and add like List.hashCode() but on 64 bits and with an odd multiplier that mixes better
+        private fun nextChecksum(checksum: Long, value: Any?) = checksum * -0x61c8864680b583ebL + (value?.hashCode() ?: 0)
+    }
+}
+
+/**
+ * Histogram of latencies in nanoseconds with a fixed size, the buckets are powers of 2 each split into
+ * [SUB_BUCKETS] parts, so a percentile is within 1 / [SUB_BUCKETS] of the real value.
+ */
+class LatencyHistogram {
+
+    private val counts = LongArray(64 * SUB_BUCKETS)
+
+    var count = 0L
+        private set
+
+    var maxNanos = 0L
+        private set
+
+    fun record(nanos: Long) {
+        val value = maxOf(nanos, 0L)
+        counts[bucketOf(value)]++
+        count++
+        if (value > maxNanos) {
+            maxNanos = value
+        }
+    }
+
+    /**
+     * Upper end of the bucket that holds the [percentile], 0 if nothing was recorded
+     */
+    fun percentileNanos(percentile: Double): Long {
+        if (count == 0L) {
+            return 0
+        }
+        val rank = maxOf(1L, Math.ceil(count * percentile / 100.0).toLong())
+        var seen = 0L
+        for (bucket in counts.indices) {
+            seen += counts[bucket]
+            if (seen >= rank) {
+                return minOf(upperBoundOf(bucket), maxNanos)
+            }
+        }
+        return maxNanos
+    }
+
+    override fun toString() =
+        "count: $count, p50: ${percentileNanos(50.0)} ns, p99: ${percentileNanos(99.0)} ns, max: $maxNanos ns"
+
+    companion object {
+
+        const val SUB_BUCKETS = 16
+
+        private const val SUB_BITS = 4
+
+        private fun bucketOf(value: Long): Int {
+            if (value < SUB_BUCKETS) {
+                return value.toInt()
+            }
+            val magnitude = 63 - java.lang.Long.numberOfLeadingZeros(value)
+            val sub = (value ushr (magnitude - SUB_BITS)).toInt() and (SUB_BUCKETS - 1)
+            return (magnitude - SUB_BITS + 1) * SUB_BUCKETS + sub
+        }
+
+        private fun upperBoundOf(bucket: Int): Long {
+            if (bucket < SUB_BUCKETS) {
+                return bucket.toLong()
+            }
+            val magnitude = bucket / SUB_BUCKETS + SUB_BITS - 1
+            val sub = (bucket % SUB_BUCKETS).toLong()
+            val width = 1L shl (magnitude - SUB_BITS)
+            return (1L shl magnitude) + (sub + 1) * width - 1
+        }
+    }
+}
+
+@JvmOverloads
+fun <T> Observable<T>.testSummary(firstCount: Int = 10, lastCount: Int = 10, latencyNanos: ((T) -> Long)? = null) =
+    subscribeWith(SummaryTestObserver(firstCount, lastCount, latencyNanos))
+
+@JvmOverloads
+fun <T> Flowable<T>.testSummary(firstCount: Int = 10, lastCount: Int = 10, latencyNanos: ((T) -> Long)? = null) =
+    subscribeWith(SummaryTestObserver(firstCount, lastCount, latencyNanos))
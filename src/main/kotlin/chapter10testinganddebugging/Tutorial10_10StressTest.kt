@@ -0,0 +1,142 @@
+package chapter10testinganddebugging
+
+import io.reactivex.subjects.PublishSubject
+import io.reactivex.subjects.Subject
+
+fun main() {
+
+    // INFO Serialized emissions
+//    testPublishSubjectFromTwoThreads()
+//    testSerializedSubjectFromTwoThreads()
+
+    // INFO Lost terminal events
+//    testSubscribeRacingOnComplete()
+    testRefCountRacingOnComplete()
+}
+
+private class SubjectState(val subject: Subject<Int>) {
+    val observer = InvariantObserver<Int> { Thread.yield() }.also { subject.subscribe(it) }
+}
+
+/**
+ * 🔥 INFO StressTest
+ *
+ * **PublishSubject** is not thread safe, two threads calling **onNext()** run the Observer at the same time.
+ * **Thread.yield()** inside **onNext()** gives the other thread a chance to come in, like a slow Observer would.
+ */
+private fun testPublishSubjectFromTwoThreads() {
+
+    val result = StressTest("PublishSubject") { SubjectState(PublishSubject.create()) }
+        .actor { state -> (1..10).forEach { state.subject.onNext(it) } }
+        .actor { state -> (11..20).forEach { state.subject.onNext(it) } }
+        .run(100_000) { state ->
+            state.observer.violationOutcome() ?: Outcome.acceptable("${state.observer.valueCount} values")
+        }
+
+    println(result)
+
+    /*
+        Prints on a single core machine:
+        PublishSubject, 100000 rounds
+          FORBIDDEN      99,005  onNext while another signal was running
+          ok                995  20 values
+     */
+}
+
+/**
+ * Same test with **toSerialized()**, the second thread hands its value to the one that is already emitting
+ */
+private fun testSerializedSubjectFromTwoThreads() {
+
+    val result = StressTest("SerializedSubject") { SubjectState(PublishSubject.create<Int>().toSerialized()) }
+        .actor { state -> (1..10).forEach { state.subject.onNext(it) } }
+        .actor { state -> (11..20).forEach { state.subject.onNext(it) } }
+        .run(100_000) { state ->
+            state.observer.violationOutcome() ?: Outcome.acceptable("${state.observer.valueCount} values")
+        }
+
+    println(result.assertNoForbidden())
+
+    /*
+        Prints on a single core machine:
+        SerializedSubject, 100000 rounds
+          ok            100,000  20 values
+     */
+}
+
+/**
+ * An Observer that subscribes while the Subject completes either gets **onComplete()** from the Subject
+ * or right away in **subscribe()**, but it must never miss it
+ */
+private fun testSubscribeRacingOnComplete() {
+
+    class State {
+        val subject = PublishSubject.create<Int>()
+        val observer = InvariantObserver<Int>()
+    }
+
+    val result = StressTest("subscribe vs onComplete", newState = ::State)
+        .actor { state -> state.subject.subscribe(state.observer) }
+        .actor { state ->
+            state.subject.onNext(1)
+            state.subject.onComplete()
+        }
+        .run(1_000_000) { state ->
+            state.observer.violationOutcome() ?: when (state.observer.terminalEvents) {
+                1 -> Outcome.acceptable("completed with ${state.observer.valueCount} values")
+                else -> Outcome.forbidden("onComplete was lost")
+            }
+        }
+
+    println(result.assertNoForbidden())
+
+    /*
+        Prints on a single core machine:
+        subscribe vs onComplete, 1000000 rounds
+          ok            507,612  completed with 0 values
+          ok            492,388  completed with 1 values
+     */
+}
+
+/**
+ * **publish().refCount()** connects with the first Observer and disconnects when the last one disposes.
+ * The second Observer subscribes while the first one disposes and the source completes, it has to see the
+ * **onComplete()** of either the old or a new connection.
+ */
+private fun testRefCountRacingOnComplete() {
+
+    class State {
+        val source = PublishSubject.create<Int>()
+        val shared = source.publish().refCount()
+        val first = InvariantObserver<Int>().also { shared.subscribe(it) }
+        val second = InvariantObserver<Int>()
+    }
+
+    val result = StressTest("refCount() subscribe vs dispose vs onComplete", newState = ::State)
+        .actor { state -> state.first.upstream?.dispose() }
+        .actor { state -> state.shared.subscribe(state.second) }
+        .actor { state ->
+            state.source.onNext(1)
+            state.source.onComplete()
+        }
+        .run(1_000_000) { state ->
+            state.second.violationOutcome() ?: state.first.violationOutcome() ?: when (state.second.terminalEvents) {
+                1 -> Outcome.acceptable("second completed with ${state.second.valueCount} values")
+                else -> Outcome.forbidden("second did not complete")
+            }
+        }
+
+    println(result)
+
+    /*
+        Prints on a single core machine:
+        refCount() subscribe vs dispose vs onComplete, 1000000 rounds
+          ok            508,834  second completed with 0 values
+          ok            491,163  second completed with 1 values
+          FORBIDDEN            3  second did not complete
+
+        🔥 3 rounds in a million where the second Observer waits forever, the refCount() of RxJava 2.2.0
+        has a race between the last dispose, a new subscriber and the source terminating.
+        Single threaded demos never show it, this is why lock-free replacements need a test like this one.
+     */
+}
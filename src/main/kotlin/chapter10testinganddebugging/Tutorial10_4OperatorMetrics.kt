@@ -0,0 +1,113 @@
+package chapter10testinganddebugging
+
+import benchmark.measure
+import io.reactivex.Observable
+import io.reactivex.schedulers.Schedulers
+
+private const val BENCHMARK_ITEMS = 5_000_000
+
+fun main() {
+
+//    testOperatorMetrics()
+
+    // INFO Benchmark
+    testOperatorMetricsOverhead()
+}
+
+/**
+ * 🔥 INFO OperatorMetrics
+ *
+ * **observableLifeCycleWithFlatMap()** of **Tutorial1_2RxJavaLifeCycles** without the prints but with a slow
+ * second **flatMap()**. The snapshot shows which stage the time goes to, **downstream** of a stage includes
+ * every stage below it so the slow stage is where the time drops.
+ */
+private fun testOperatorMetrics() {
+
+    OperatorMetrics.install()
+
+    Observable.just("Alpha", "Beta", "Gamma")
+        .subscribeOn(Schedulers.io())
+        .observeOn(Schedulers.newThread())
+        .doOnNext { }
+        .flatMap { Observable.just("$it-🏪") }
+        .flatMap {
+            Thread.sleep(50)
+            Observable.just("$it-🎂")
+        }
+        .blockingSubscribe { }
+
+    OperatorMetrics.uninstall()
+
+    OperatorMetrics.snapshot().forEach { println(it) }
+
+    /*
+        Prints:
+        ObservableObserveOn at Tutorial10_4OperatorMetrics.kt:30     onNext:          3  downstream:  157,322 µs  errors:    0  active:    0
+        ObservableDoOnEach at Tutorial10_4OperatorMetrics.kt:31      onNext:          3  downstream:  157,297 µs  errors:    0  active:    0
+        ObservableJust at Tutorial10_4OperatorMetrics.kt:32          onNext:          3  downstream:  154,406 µs  errors:    0  active:    0
+        ObservableFlatMap at Tutorial10_4OperatorMetrics.kt:32       onNext:          3  downstream:  154,320 µs  errors:    0  active:    0
+        ObservableJust at Tutorial10_4OperatorMetrics.kt:35          onNext:          3  downstream:    1,293 µs  errors:    0  active:    0
+        ObservableFlatMap at Tutorial10_4OperatorMetrics.kt:33       onNext:          3  downstream:    1,266 µs  errors:    0  active:    0
+        ObservableFromArray at Tutorial10_4OperatorMetrics.kt:28     onNext:          3  downstream:      266 µs  errors:    0  active:    0
+        ObservableSubscribeOn at Tutorial10_4OperatorMetrics.kt:29   onNext:          3  downstream:      252 µs  errors:    0  active:    0
+
+        🔥 The first flatMap() at line 32 spends 154 ms downstream but the second one at line 33 only 1 ms,
+        so the ~150 ms are spent in the second flatMap() itself, the 3 x 50 ms sleep.
+     */
+}
+
+/**
+ * **range()** with 3 operators, assembled once and subscribed in every round:
+ * * **No hooks** without [OperatorMetrics.install]
+ * * **Disabled at assembly** installed while [OperatorMetrics.enabled] is false, nothing is wrapped
+ * * **Wrapped, disabled** the chain is wrapped but [OperatorMetrics.enabled] is false when it runs
+ * * **Wrapped, enabled** every stage records its signals
+ */
+private fun testOperatorMetricsOverhead() {
+
+    fun chain() = Observable.range(0, BENCHMARK_ITEMS)
+        .map { it + 1 }
+        .filter { it % 3 != 0 }
+        .map { it * 2L }
+
+    val plain = chain()
+
+    OperatorMetrics.install()
+    OperatorMetrics.enabled = false
+    val notWrapped = chain()
+    OperatorMetrics.enabled = true
+    val wrapped = chain()
+    OperatorMetrics.uninstall()
+
+    measure("No hooks", BENCHMARK_ITEMS.toLong()) {
+        plain.subscribe()
+    }
+
+    measure("Disabled at assembly", BENCHMARK_ITEMS.toLong()) {
+        notWrapped.subscribe()
+    }
+
+    OperatorMetrics.enabled = false
+    measure("Wrapped, disabled", BENCHMARK_ITEMS.toLong()) {
+        wrapped.subscribe()
+    }
+
+    OperatorMetrics.enabled = true
+    measure("Wrapped, enabled", BENCHMARK_ITEMS.toLong()) {
+        wrapped.subscribe()
+    }
+
+    OperatorMetrics.reset()
+
+    /*
+        Prints on a single core machine:
+        No hooks                  57,110,087 ops/s       17.5 ns/op  gc:    9 (    6 ms)  heap:  5,831 KB  alloc:  234,371 KB
+        Disabled at assembly      61,001,795 ops/s       16.4 ns/op  gc:    9 (    1 ms)  heap:  5,153 KB  alloc:  234,371 KB
+        Wrapped, disabled         20,314,352 ops/s       49.2 ns/op  gc:    9 (    1 ms)  heap:  5,156 KB  alloc:  234,371 KB
+        Wrapped, enabled           2,250,915 ops/s      444.3 ns/op  gc:    9 (    2 ms)  heap:  5,155 KB  alloc:  234,371 KB
+
+        🔥 Chains assembled while disabled cost nothing. A wrapped but disabled stage adds a volatile read and a
+        call per signal, ~8 ns per stage. Recording needs two System.nanoTime() calls per item and stage,
+        which is what most of the enabled cost is, so enable it to find a slow stage, not all the time.
+     */
+}
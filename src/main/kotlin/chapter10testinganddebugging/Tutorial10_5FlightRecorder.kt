@@ -0,0 +1,145 @@
+package chapter10testinganddebugging
+
+import benchmark.measure
+import io.reactivex.Observable
+import io.reactivex.schedulers.Schedulers
+import jdk.jfr.Recording
+import jdk.jfr.consumer.RecordingFile
+import java.nio.file.Files
+import java.time.Duration
+import java.util.concurrent.TimeUnit
+
+private const val BENCHMARK_ITEMS = 5_000_000
+
+fun main() {
+
+//    testFlightRecorderEvents()
+
+    // INFO Benchmark
+    testFlightRecorderOverhead()
+}
+
+/**
+ * 🔥 INFO RxFlightRecorder
+ *
+ * The life cycle of **Tutorial1_2RxJavaLifeCycles** as JFR events instead of prints. A recording is started
+ * with the **Recording** API, in production it would be **-XX:StartFlightRecording** or **jcmd JFR.start**,
+ * and the events are read back from the file here instead of opening it in **JDK Mission Control**.
+ */
+private fun testFlightRecorderEvents() {
+
+    RxFlightRecorder.install()
+
+    val recording = Recording()
+    recording.enable(RxSubscribeEvent::class.java).withoutStackTrace()
+    recording.enable(RxDisposeEvent::class.java)
+    recording.enable(RxErrorEvent::class.java)
+    recording.enable(RxSlowOnNextEvent::class.java).withThreshold(Duration.ofMillis(20))
+    recording.start()
+
+    // Completes, but one item takes 50 ms
+    Observable.just("Alpha", "Beta", "Gamma")
+        .subscribeOn(Schedulers.io())
+        .map { if (it == "Beta") Thread.sleep(50); it }
+        .blockingSubscribe()
+
+    // Disposed before it ends
+    Observable.interval(10, TimeUnit.MILLISECONDS)
+        .take(100)
+        .subscribe()
+        .also { Thread.sleep(30) }
+        .dispose()
+
+    // Fails
+    Observable.just(1, 0)
+        .map { 10 / it }
+        .subscribe({ }, { })
+
+    recording.stop()
+    RxFlightRecorder.uninstall()
+
+    val file = Files.createTempFile("rx", ".jfr")
+    recording.dump(file)
+    recording.close()
+
+    RecordingFile.readAllEvents(file)
+        .sortedBy { it.startTime }
+        .forEach { event ->
+            val error = if (event.hasField("errorClass")) " error: ${event.getString("errorClass")}" else ""
+            println(
+                "${event.eventType.label} chain: ${event.getLong("chainId")} ${event.getString("operator")} " +
+                        "thread: ${event.thread?.javaName} duration: ${event.duration.toMillis()} ms$error"
+            )
+        }
+
+    Files.delete(file)
+
+    /*
+        Prints:
+        Subscribe chain: 1 ObservableMap thread: main duration: 0 ms
+        Subscribe chain: 1 ObservableSubscribeOn thread: main duration: 0 ms
+        Subscribe chain: 2 ObservableFromArray thread: RxCachedThreadScheduler-1 duration: 0 ms
+        Slow onNext chain: 2 ObservableFromArray thread: RxCachedThreadScheduler-1 duration: 50 ms
+        Slow onNext chain: 1 ObservableSubscribeOn thread: RxCachedThreadScheduler-1 duration: 50 ms
+        Subscribe chain: 3 ObservableTake thread: main duration: 0 ms
+        Subscribe chain: 3 ObservableInterval thread: main duration: 0 ms
+        Dispose chain: 3 ObservableTake thread: main duration: 0 ms
+        Dispose chain: 3 ObservableInterval thread: main duration: 0 ms
+        Subscribe chain: 4 ObservableMap thread: main duration: 0 ms
+        Subscribe chain: 4 ObservableFromArray thread: main duration: 0 ms
+        Dispose chain: 4 ObservableFromArray thread: main duration: 0 ms 🔥 map() disposes its upstream when it fails
+        Error chain: 4 ObservableMap thread: main duration: 0 ms error: java.lang.ArithmeticException
+
+        🔥 just() above subscribeOn() is subscribed on the io thread and gets chain 2
+     */
+}
+
+/**
+ * **range()** with 3 operators like **testOperatorMetricsOverhead()** of **Tutorial10_4OperatorMetrics**:
+ * * **No hooks** without [RxFlightRecorder.install]
+ * * **Not recording** the chain is wrapped but no recording is running
+ * * **Recording** a recording with every Rx event enabled is running, no **onNext()** is over the threshold
+ */
+private fun testFlightRecorderOverhead() {
+
+    fun chain() = Observable.range(0, BENCHMARK_ITEMS)
+        .map { it + 1 }
+        .filter { it % 3 != 0 }
+        .map { it * 2L }
+
+    val plain = chain()
+
+    RxFlightRecorder.install()
+    val wrapped = chain()
+    RxFlightRecorder.uninstall()
+
+    measure("No hooks", BENCHMARK_ITEMS.toLong()) {
+        plain.subscribe()
+    }
+
+    measure("Not recording", BENCHMARK_ITEMS.toLong()) {
+        wrapped.subscribe()
+    }
+
+    Recording().use { recording ->
+        recording.enable(RxSubscribeEvent::class.java)
+        recording.enable(RxDisposeEvent::class.java)
+        recording.enable(RxErrorEvent::class.java)
+        recording.enable(RxSlowOnNextEvent::class.java)
+        recording.start()
+
+        measure("Recording", BENCHMARK_ITEMS.toLong()) {
+            wrapped.subscribe()
+        }
+    }
+
+    /*
+        Prints on a single core machine:
+        No hooks         64,927,003 ops/s       15.4 ns/op  gc:    9 (    5 ms)  heap:  6,607 KB  alloc:  234,371 KB
+        Not recording    27,076,872 ops/s       36.9 ns/op  gc:    9 (    1 ms)  heap:  5,817 KB  alloc:  234,371 KB
+        Recording         2,791,179 ops/s      358.3 ns/op  gc:    9 (    3 ms)  heap:  6,677 KB  alloc:  234,371 KB
+
+        🔥 Without a recording a stage costs ~5 ns per item. While recording, every onNext() is timed to compare
+        it with the threshold, which costs like the timing of OperatorMetrics, only slow ones are written.
+     */
+}
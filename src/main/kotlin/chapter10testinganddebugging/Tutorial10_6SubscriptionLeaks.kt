@@ -0,0 +1,60 @@
+package chapter10testinganddebugging
+
+import io.reactivex.Observable
+import io.reactivex.observers.ResourceObserver
+import java.lang.Thread.sleep
+import java.util.concurrent.TimeUnit
+
+fun main() {
+
+    testSubscriptionLeakDetector()
+}
+
+/**
+ * 🔥 INFO SubscriptionLeakDetector
+ *
+ * **testResourceObserver()** of **Tutorial2_6Disposing** called 3 times without disposing and
+ * **testDisposableInterval()** which disposes. Only the 3 forgotten subscriptions are reported,
+ * all of them with the lines where the interval was created and subscribed.
+ */
+private fun testSubscriptionLeakDetector() {
+
+    SubscriptionLeakDetector.install()
+    SubscriptionLeakDetector.startReporting(1, 2, TimeUnit.SECONDS)
+
+    repeat(3) { resourceObserverWithoutDispose() }
+
+    val disposable = Observable.interval(1, TimeUnit.SECONDS).subscribe { }
+
+    sleep(1500)
+    disposable.dispose()
+
+    sleep(2000)
+
+    SubscriptionLeakDetector.uninstall()
+
+    /*
+        Prints:
+        Possible leak: 3 subscriptions, oldest 2874 ms: assembled at chapter10testinganddebugging.Tutorial10_6SubscriptionLeaksKt.resourceObserverWithoutDispose(Tutorial10_6SubscriptionLeaks.kt:44), subscribed at chapter10testinganddebugging.Tutorial10_6SubscriptionLeaksKt.resourceObserverWithoutDispose(Tutorial10_6SubscriptionLeaks.kt:59)
+     */
+}
+
+private fun resourceObserverWithoutDispose() {
+
+    val source = Observable.interval(1, TimeUnit.SECONDS)
+
+    val myObserver = object : ResourceObserver<Long>() {
+
+        override fun onNext(value: Long) {
+        }
+
+        override fun onError(e: Throwable) {
+        }
+
+        override fun onComplete() {
+        }
+    }
+
+    // 🔥 The Disposable is ignored, the interval keeps running
+    source.subscribeWith(myObserver)
+}
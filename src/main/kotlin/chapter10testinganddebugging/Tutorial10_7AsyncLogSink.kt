@@ -0,0 +1,136 @@
+package chapter10testinganddebugging
+
+import benchmark.measure
+import io.reactivex.Flowable
+import io.reactivex.Observable
+import io.reactivex.schedulers.Schedulers
+import java.io.FileOutputStream
+import java.io.PrintStream
+import java.lang.Thread.sleep
+import java.nio.file.Files
+import java.util.concurrent.TimeUnit
+
+private const val BENCHMARK_LINES = 400_000
+
+fun main() {
+
+//    testAsyncLogSinkDoOnNext()
+//    testAsyncLogSinkMergeInterval()
+
+    // INFO Benchmark
+    testAsyncLogSinkVsPrintln()
+}
+
+/**
+ * 🔥 INFO AsyncLogSink
+ *
+ * **testDoOnNextOperator()** of **Tutorial3_6ActionOperators** with an [AsyncLogSink]. The pipeline only hands
+ * the lines over, the writer thread prints them. Lines of one thread keep their order.
+ */
+private fun testAsyncLogSinkDoOnNext() {
+
+    AsyncLogSink().use { sink ->
+        Observable.just("Alpha", "Beta", "Gamma", "Delta", "Epsilon")
+            .doOnNext { s -> sink.log("doOnNext(): Processing: $s") }
+            .map(String::length)
+            .subscribeLog(sink) { i -> "onNext(): Received: $i" }
+    }
+
+    /*
+        Prints:
+        doOnNext(): Processing: Alpha
+        onNext(): Received: 5
+        doOnNext(): Processing: Beta
+        onNext(): Received: 4
+        doOnNext(): Processing: Gamma
+        onNext(): Received: 5
+        doOnNext(): Processing: Delta
+        onNext(): Received: 5
+        doOnNext(): Processing: Epsilon
+        onNext(): Received: 7
+     */
+}
+
+/**
+ * **testMergeOperatorInterval()** of **Tutorial4_1Merging** with [subscribeLog]
+ */
+private fun testAsyncLogSinkMergeInterval() {
+
+    AsyncLogSink().use { sink ->
+
+        val source1 = Observable.interval(1, TimeUnit.SECONDS)
+            .map { l -> "Source1: ${l + 1} seconds" }
+
+        val source2 = Observable.interval(300, TimeUnit.MILLISECONDS)
+            .map { l -> "Source2: ${(l + 1) * 300} milliseconds" }
+
+        val disposable = Observable.merge(source1, source2).subscribeLog(sink)
+
+        sleep(2100)
+        disposable.dispose()
+    }
+
+    /*
+        Prints:
+        Source2: 300 milliseconds
+        Source2: 600 milliseconds
+        Source2: 900 milliseconds
+        Source1: 1 seconds
+        Source2: 1200 milliseconds
+        Source2: 1500 milliseconds
+        Source2: 1800 milliseconds
+        Source1: 2 seconds
+        Source2: 2100 milliseconds
+     */
+}
+
+/**
+ * 4 rails on the computation scheduler log every item. The output goes to a temp file
+ * through a **PrintStream** with autoflush, like **System.out**.
+ */
+private fun testAsyncLogSinkVsPrintln() {
+
+    val file = Files.createTempFile("async-log", ".txt")
+
+    fun pipeline(log: (String) -> Unit) =
+        Flowable.range(0, BENCHMARK_LINES)
+            .parallel(4)
+            .runOn(Schedulers.computation())
+            .map { "item $it processed on ${Thread.currentThread().name}" }
+            .doOnNext { log(it) }
+            .sequential()
+            .blockingLast()
+
+    PrintStream(FileOutputStream(file.toFile()), true).use { out ->
+
+        measure("println()", BENCHMARK_LINES.toLong()) {
+            pipeline { out.println(it) }
+        }
+
+        for (policy in FullPolicy.values()) {
+            var dropped = 0L
+            measure("AsyncLogSink $policy", BENCHMARK_LINES.toLong()) {
+                AsyncLogSink(out, fullPolicy = policy).use { sink ->
+                    pipeline { sink.log(it) }
+                    dropped = sink.dropped
+                }
+            }
+            println("dropped: $dropped")
+        }
+    }
+
+    Files.delete(file)
+
+    /*
+        Prints on a single core machine:
+        println()                  813,399 ops/s     1229.4 ns/op  gc:    4 (    4 ms)  heap: 22,593 KB  alloc:       12 KB
+        AsyncLogSink DROP        2,309,389 ops/s      433.0 ns/op  gc:    5 (    3 ms)  heap:  6,358 KB  alloc:      112 KB
+        dropped: 200139
+        AsyncLogSink WAIT        2,864,814 ops/s      349.1 ns/op  gc:    5 (    2 ms)  heap: 16,761 KB  alloc:      108 KB
+        dropped: 0
+
+        🔥 Both are ~3 times faster than println(). With one core the writer only runs when the rails give up
+        the CPU, so DROP loses half of the lines, WAIT yields to the writer and keeps all of them.
+        DROP is for logs that may lose lines under load, WAIT for output that has to be complete.
+     */
+}
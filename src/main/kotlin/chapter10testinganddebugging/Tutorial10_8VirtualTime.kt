@@ -0,0 +1,142 @@
+package chapter10testinganddebugging
+
+import benchmark.measure
+import io.reactivex.Observable
+import io.reactivex.Scheduler
+import io.reactivex.schedulers.TestScheduler
+import java.util.Random
+import java.util.concurrent.TimeUnit
+
+fun main() {
+
+//    testVirtualTimeScheduler()
+//    testSimulatedTraffic()
+
+    // INFO Benchmark
+    testVirtualTimeSchedulerVsTestScheduler()
+}
+
+/**
+ * 🔥 INFO VirtualTimeScheduler
+ *
+ * **usingTestScheduler()** of **Tutorial10_3TestScheduler** with a [VirtualTimeScheduler], the same methods work the same way.
+ */
+private fun testVirtualTimeScheduler() {
+
+    val scheduler = VirtualTimeScheduler()
+
+    val testObserver = Observable.interval(1, TimeUnit.MINUTES, scheduler).test()
+
+    scheduler.advanceTimeBy(30, TimeUnit.SECONDS)
+    println("After 30 seconds: ${testObserver.valueCount()}")
+
+    scheduler.advanceTimeTo(70, TimeUnit.SECONDS)
+    println("After 70 seconds: ${testObserver.valueCount()}")
+
+    scheduler.advanceTimeTo(90, TimeUnit.MINUTES)
+    println("After 90 minutes: ${testObserver.valueCount()}")
+
+    testObserver.dispose()
+
+    /*
+        Prints:
+        After 30 seconds: 0
+        After 70 seconds: 1
+        After 90 minutes: 90
+     */
+}
+
+/**
+ * 🔥 INFO Load simulation
+ *
+ * One hour of requests arriving 200 times a second, answered by a service with a median response time of 20 ms
+ * and a long tail. The response time of each request is measured in virtual time.
+ */
+private fun testSimulatedTraffic() {
+
+    val scheduler = VirtualTimeScheduler()
+    val responseTimes = ArrayList<Long>()
+
+    val start = System.nanoTime()
+
+    simulatedArrivals(scheduler, Arrivals.poisson(200.0), 1, TimeUnit.HOURS)
+        .map { scheduler.now(TimeUnit.MILLISECONDS) }
+        .simulateLatency(scheduler, Latency.logNormal(20, TimeUnit.MILLISECONDS, 0.8))
+        .subscribe { arrivedAt -> responseTimes.add(scheduler.now(TimeUnit.MILLISECONDS) - arrivedAt) }
+
+    scheduler.advanceTimeBy(1, TimeUnit.HOURS)
+    scheduler.advanceTimeBy(1, TimeUnit.MINUTES)
+
+    val wallTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+    responseTimes.sort()
+    println("Requests: ${responseTimes.size} in ${wallTime} ms")
+    println("p50: ${responseTimes[responseTimes.size / 2]} ms, p99: ${responseTimes[responseTimes.size * 99 / 100]} ms, max: ${responseTimes.last()} ms")
+
+    /*
+        Prints on a single core machine:
+        Requests: 719300 in 1465 ms
+        p50: 20 ms, p99: 128 ms, max: 1439 ms
+
+        🔥 One hour of traffic in one and a half seconds
+     */
+}
+
+/**
+ * * **schedule** 1 million tasks with random delays up to 10 seconds and run them
+ * * **interval** one emission every millisecond for one hour, 3.6 million emissions
+ */
+private fun testVirtualTimeSchedulerVsTestScheduler() {
+
+    val tasks = 1_000_000
+
+    fun scheduleAndRun(scheduler: Scheduler, advance: (Long) -> Unit) {
+        val worker = scheduler.createWorker()
+        val random = Random(42)
+        var ran = 0
+        val task = Runnable { ran++ }
+        for (i in 0 until tasks) {
+            worker.schedule(task, random.nextInt(10_000).toLong(), TimeUnit.MILLISECONDS)
+        }
+        advance(10_000)
+        check(ran == tasks)
+    }
+
+    measure("TestScheduler schedule", tasks.toLong()) {
+        val scheduler = TestScheduler()
+        scheduleAndRun(scheduler) { scheduler.advanceTimeBy(it, TimeUnit.MILLISECONDS) }
+    }
+
+    measure("VirtualTimeScheduler schedule", tasks.toLong()) {
+        val scheduler = VirtualTimeScheduler()
+        scheduleAndRun(scheduler) { scheduler.advanceTimeBy(it, TimeUnit.MILLISECONDS) }
+    }
+
+    val ticks = TimeUnit.HOURS.toMillis(1)
+
+    measure("TestScheduler interval", ticks) {
+        val scheduler = TestScheduler()
+        val disposable = Observable.interval(1, TimeUnit.MILLISECONDS, scheduler).subscribe()
+        scheduler.advanceTimeBy(1, TimeUnit.HOURS)
+        disposable.dispose()
+    }
+
+    measure("VirtualTimeScheduler interval", ticks) {
+        val scheduler = VirtualTimeScheduler()
+        val disposable = Observable.interval(1, TimeUnit.MILLISECONDS, scheduler).subscribe()
+        scheduler.advanceTimeBy(1, TimeUnit.HOURS)
+        disposable.dispose()
+    }
+
+    /*
+        Prints on a single core machine:
+        TestScheduler schedule                   811,676 ops/s     1232.0 ns/op  gc:    3 (   75 ms)  heap: 50,643 KB  alloc:   91,469 KB
+        VirtualTimeScheduler schedule          5,780,746 ops/s      173.0 ns/op  gc:    1 (   59 ms)  heap: 48,519 KB  alloc:   47,020 KB
+        TestScheduler interval                 7,277,763 ops/s      137.4 ns/op  gc:   11 (    2 ms)  heap: 28,693 KB  alloc:  365,623 KB
+        VirtualTimeScheduler interval         21,792,236 ops/s       45.9 ns/op  gc:    8 (    1 ms)  heap: 25,312 KB  alloc:  253,267 KB
+
+        🔥 With many tasks waiting the heap of TestScheduler gets deep and every poll sifts through it,
+        the wheel only sorts the tasks of one slot. With a single periodic task the queue is tiny for both,
+        the difference there is the lock and the allocation of TestScheduler.
+     */
+}
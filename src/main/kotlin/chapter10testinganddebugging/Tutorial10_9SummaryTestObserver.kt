@@ -0,0 +1,107 @@
+package chapter10testinganddebugging
+
+import benchmark.measure
+import benchmark.retainedHeapBytes
+import io.reactivex.Flowable
+import io.reactivex.Observable
+import io.reactivex.disposables.Disposable
+import io.reactivex.schedulers.Schedulers
+import java.util.concurrent.TimeUnit
+
+fun main() {
+
+//    testSummaryTestObserver()
+//    testLatencyPercentiles()
+
+    // INFO Benchmark
+    testTestObserverVsSummaryTestObserver()
+}
+
+/**
+ * 🔥 INFO SummaryTestObserver
+ *
+ * Same assertions as **TestObserver** without keeping the values, the order of all the values is checked
+ * with a checksum of the expected values.
+ */
+private fun testSummaryTestObserver() {
+
+    val observer = Observable.range(1, 10_000_000)
+        .map { it * 2 }
+        .testSummary(firstCount = 3, lastCount = 2)
+
+    observer.assertNoErrors()
+        .assertComplete()
+        .assertValueCount(10_000_000)
+        .assertFirstValues(2, 4, 6)
+        .assertLastValues(19_999_998, 20_000_000)
+        .assertChecksum(SummaryTestObserver.checksumOf((1..10_000_000).map { it * 2 }))
+
+    println("First: ${observer.firstValues()}, last: ${observer.lastValues()}, checksum: ${observer.checksum}")
+
+    /*
+        Prints:
+        First: [2, 4, 6], last: [19999998, 20000000], checksum: 8245932158101101201
+     */
+}
+
+/**
+ * Each value carries the time it was created, [SummaryTestObserver] records how long it took to arrive
+ */
+private fun testLatencyPercentiles() {
+
+    val observer = Flowable.range(1, 1_000_000)
+        .map { System.nanoTime() }
+        .observeOn(Schedulers.computation())
+        .testSummary { created -> System.nanoTime() - created }
+
+    observer.awaitTerminalEvent(10, TimeUnit.SECONDS)
+
+    observer.assertComplete()
+        .assertValueCount(1_000_000)
+        .assertLatencyPercentile(50.0, 100, TimeUnit.MILLISECONDS)
+
+    println(observer.latencies)
+
+    /*
+        Prints on a single core machine:
+        count: 1000000, p50: 12287 ns, p99: 61439 ns, max: 5866114 ns
+     */
+}
+
+/**
+ * 10 million values into **TestObserver** and into [SummaryTestObserver], retained is the heap still reachable
+ * after a full GC while the observer is alive
+ */
+private fun testTestObserverVsSummaryTestObserver() {
+
+    val values = 10_000_000
+
+    measure("TestObserver", values.toLong()) {
+        Observable.range(0, values).test().assertValueCount(values)
+    }
+
+    measure("SummaryTestObserver", values.toLong()) {
+        Observable.range(0, values).testSummary().assertValueCount(values.toLong())
+    }
+
+    fun retainedKB(subscribe: () -> Disposable): Long {
+        val observer = subscribe()
+        val retained = retainedHeapBytes() / 1024
+        observer.dispose()
+        return retained
+    }
+
+    println("TestObserver retained: ${retainedKB { Observable.range(0, values).test() }} KB")
+    println("SummaryTestObserver retained: ${retainedKB { Observable.range(0, values).testSummary() }} KB")
+
+    /*
+        Prints on a single core machine:
+        TestObserver                                         21,344,489 ops/s       46.9 ns/op  gc:    2 (  293 ms)  heap: 266,147 KB  alloc:  318,497 KB
+        SummaryTestObserver                                  15,968,110 ops/s       62.6 ns/op  gc:    1 (    0 ms)  heap: 49,267 KB  alloc:  156,257 KB
+        TestObserver retained: 211863 KB
+        SummaryTestObserver retained: 1543 KB
+
+        🔥 TestObserver keeps 10 million boxed Integers, SummaryTestObserver stays at the same size for any number of values.
+        It is a bit slower per value because it reads System.nanoTime() for the latency histogram.
+     */
+}
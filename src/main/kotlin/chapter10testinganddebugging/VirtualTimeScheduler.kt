@@ -0,0 +1,320 @@
+package chapter10testinganddebugging
+
+import io.reactivex.Scheduler
+import io.reactivex.disposables.Disposable
+import io.reactivex.internal.disposables.EmptyDisposable
+import io.reactivex.plugins.RxJavaPlugins
+import java.util.PriorityQueue
+import java.util.concurrent.TimeUnit
+
+/**
+ * 🔥 INFO VirtualTimeScheduler
+ *
+ * Works like **TestScheduler**: time only moves with [advanceTimeBy] or [advanceTimeTo] and the tasks that are due
+ * run on the calling thread in time order, tasks with the same time in the order they were scheduled.
+ *
+ * **TestScheduler** keeps its tasks in a **PriorityBlockingQueue**, every schedule and every poll takes a lock and
+ * sifts through a heap. Here the tasks go into a **hashed timing wheel**, an array of [wheelSize] slots that are
+ * [resolution] nanoseconds wide each, every slot a linked list of its tasks:
+ *
+ * * Scheduling into the wheel is **O(1)**, a slot whose tasks did not arrive in time order is sorted once when
+ * the wheel reaches it
+ * * Tasks further away than one turn of the wheel wait in an overflow heap and move into the wheel when it gets there
+ * * Empty stretches of time are skipped when the wheel is empty
+ * * The task itself is the linked list node and the returned [Disposable], there is no other allocation
+ *
+ * 🔥🔥 Not thread safe. Schedule and advance from one thread, which is the case when everything runs on this
+ * scheduler, like with **TestScheduler**.
+ */
+class VirtualTimeScheduler @JvmOverloads constructor(
+    private val resolution: Long = TimeUnit.MILLISECONDS.toNanos(1),
+    wheelSize: Int = 16384
+) : Scheduler() {
+
+    private val size = Integer.highestOneBit(maxOf(wheelSize, 2) - 1) shl 1
+    private val mask = size - 1
+
+    private val heads = arrayOfNulls<VirtualTask>(size)
+    private val tails = arrayOfNulls<VirtualTask>(size)
+
+    // Slots that have to be sorted before their first task runs
+    private val unsorted = BooleanArray(size)
+
+    private val overflow = PriorityQueue<VirtualTask>(64, TASK_ORDER)
+
+    // First node of a merged list in mergeSort(), only used between the recursive calls
+    private val mergeStart = VirtualTask(Runnable { }, 0, EmptyDisposable.INSTANCE)
+
+    private var currentTick = 0L
+
+    private var wheelCount = 0
+
+    private var sequence = 0L
+
+    private var nowNanos = 0L
+
+    init {
+        require(resolution > 0) { "resolution > 0 required but it was $resolution" }
+    }
+
+    /**
+     * Tasks that are scheduled and did not run yet, including disposed ones that were not reached yet
+     */
+    val pendingTasks: Int
+        get() = wheelCount + overflow.size
+
+    override fun now(unit: TimeUnit) = unit.convert(nowNanos, TimeUnit.NANOSECONDS)
+
+    override fun createWorker(): Worker = VirtualWorker()
+
+    fun advanceTimeBy(delayTime: Long, unit: TimeUnit) {
+        advanceTimeTo(nowNanos + unit.toNanos(delayTime), TimeUnit.NANOSECONDS)
+    }
+
+    /**
+     * Runs every task due until [delayTime], each one with its own time as [now], and then sets the time to [delayTime]
+     */
+    fun advanceTimeTo(delayTime: Long, unit: TimeUnit) {
+
+        val target = unit.toNanos(delayTime)
+
+        while (true) {
+            val task = pollDue(target) ?: break
+            if (task.time > nowNanos) {
+                nowNanos = task.time
+            }
+            task.run()
+        }
+
+        if (target > nowNanos) {
+            nowNanos = target
+        }
+    }
+
+    /**
+     * Runs the tasks due at the current time
+     */
+    fun triggerActions() {
+        advanceTimeTo(nowNanos, TimeUnit.NANOSECONDS)
+    }
+
+    internal fun schedule(task: VirtualTask) {
+
+        task.sequence = sequence++
+
+        val tick = task.time / resolution
+        if (tick - currentTick >= size) {
+            overflow.offer(task)
+        } else {
+            insert(task, maxOf(tick, currentTick))
+        }
+    }
+
+    /**
+     * Next task due at or before [limit] that is not disposed, removed from the wheel
+     */
+    private fun pollDue(limit: Long): VirtualTask? {
+
+        val limitTick = limit / resolution
+
+        while (true) {
+
+            if (wheelCount == 0) {
+                val next = overflow.peek()
+                if (next == null || next.time > limit) {
+                    // Nothing can be in the wheel before the limit, so the wheel can move there right away
+                    if (limitTick > currentTick) {
+                        currentTick = limitTick
+                        migrateOverflow()
+                    }
+                    return null
+                }
+                currentTick = next.time / resolution
+                migrateOverflow()
+            }
+
+            val slot = (currentTick and mask.toLong()).toInt()
+            val head = heads[slot]
+
+            if (head == null) {
+                if (currentTick >= limitTick) {
+                    return null
+                }
+                currentTick++
+                migrateOverflow()
+                continue
+            }
+
+            if (unsorted[slot]) {
+                sortSlot(slot)
+                continue
+            }
+
+            if (head.time > limit) {
+                return null
+            }
+
+            heads[slot] = head.next
+            if (head.next == null) {
+                tails[slot] = null
+            }
+            head.next = null
+            wheelCount--
+
+            if (!head.isDisposed) {
+                return head
+            }
+        }
+    }
+
+    private fun migrateOverflow() {
+        while (true) {
+            val next = overflow.peek() ?: return
+            if (next.time / resolution - currentTick >= size) {
+                return
+            }
+            overflow.poll()
+            insert(next, maxOf(next.time / resolution, currentTick))
+        }
+    }
+
+    /**
+     * Adds [task] to the slot of [tick]. The slot that is running is kept sorted, the others are sorted when reached.
+     */
+    private fun insert(task: VirtualTask, tick: Long) {
+
+        val slot = (tick and mask.toLong()).toInt()
+        val tail = tails[slot]
+        wheelCount++
+
+        if (tail == null) {
+            heads[slot] = task
+            tails[slot] = task
+            return
+        }
+
+        if (unsorted[slot] || TASK_ORDER.compare(tail, task) <= 0 || tick != currentTick) {
+            if (TASK_ORDER.compare(tail, task) > 0) {
+                unsorted[slot] = true
+            }
+            tail.next = task
+            tails[slot] = task
+            return
+        }
+
+        var previous: VirtualTask? = null
+        var current = heads[slot]
+        while (current != null && TASK_ORDER.compare(current, task) <= 0) {
+            previous = current
+            current = current.next
+        }
+        task.next = current
+        if (previous == null) {
+            heads[slot] = task
+        } else {
+            previous.next = task
+        }
+    }
+
+    private fun sortSlot(slot: Int) {
+        val head = mergeSort(heads[slot])
+        var tail = head
+        while (tail?.next != null) {
+            tail = tail.next
+        }
+        heads[slot] = head
+        tails[slot] = tail
+        unsorted[slot] = false
+    }
+
+    private fun mergeSort(head: VirtualTask?): VirtualTask? {
+
+        if (head?.next == null) {
+            return head
+        }
+
+        // Split in the middle
+        var slow: VirtualTask = head
+        var fast = head.next
+        while (fast?.next != null) {
+            slow = slow.next!!
+            fast = fast.next!!.next
+        }
+        val second = slow.next
+        slow.next = null
+
+        var left = mergeSort(head)
+        var right = mergeSort(second)
+
+        // Stable merge, equal tasks keep the order of their sequence
+        var last = mergeStart
+        while (left != null && right != null) {
+            if (TASK_ORDER.compare(left, right) <= 0) {
+                last.next = left
+                left = left.next
+            } else {
+                last.next = right
+                right = right.next
+            }
+            last = last.next!!
+        }
+        last.next = left ?: right
+        val merged = mergeStart.next
+        mergeStart.next = null
+        return merged
+    }
+
+    private inner class VirtualWorker : Worker() {
+
+        @Volatile
+        private var disposed = false
+
+        override fun schedule(run: Runnable, delay: Long, unit: TimeUnit): Disposable {
+            if (disposed) {
+                return EmptyDisposable.INSTANCE
+            }
+            val time = nowNanos + maxOf(unit.toNanos(delay), 0L)
+            val task = VirtualTask(RxJavaPlugins.onSchedule(run), time, this)
+            schedule(task)
+            return task
+        }
+
+        override fun now(unit: TimeUnit) = this@VirtualTimeScheduler.now(unit)
+
+        override fun dispose() {
+            disposed = true
+        }
+
+        override fun isDisposed() = disposed
+    }
+
+    companion object {
+        private val TASK_ORDER = Comparator<VirtualTask> { a, b ->
+            if (a.time != b.time) a.time.compareTo(b.time) else a.sequence.compareTo(b.sequence)
+        }
+    }
+}
+
+internal class VirtualTask(
+    private val run: Runnable,
+    val time: Long,
+    private val worker: Disposable
+) : Disposable {
+
+    var sequence = 0L
+
+    var next: VirtualTask? = null
+
+    @Volatile
+    private var disposed = false
+
+    fun run() {
+        run.run()
+    }
+
+    override fun dispose() {
+        disposed = true
+    }
+
+    override fun isDisposed() = disposed || worker.isDisposed
+}
@@ -0,0 +1,125 @@
+package chapter2observables
+
+import io.reactivex.Observable
+import io.reactivex.ObservableEmitter
+import io.reactivex.disposables.Disposable
+import io.reactivex.exceptions.OnErrorNotImplementedException
+import io.reactivex.functions.Cancellable
+import io.reactivex.plugins.RxJavaPlugins
+
+/**
+ * 🔥 INFO createBatched
+ *
+ * Every **emitter.onNext()** of **Observable.create()** checks if the emitter was disposed and then goes through
+ * every operator of the chain for a single item. When a source produces its items in chunks anyway, like a read
+ * from a socket or a database page, that overhead is paid for every item.
+ *
+ * [createBatched] gives the [source] a [BatchEmitter] that takes **whole lists and arrays**. The result is an
+ * **Observable<List<T>>**, one **onNext()** per batch, and the operators below work on whole batches:
+ * * [mapEach] and [filterEach] loop over a batch in one call
+ * * [rebatch] cuts the batches into batches of a fixed size, like **buffer(count)** does for single items
+ * * [forEachItem] is a sink that loops over every batch, [unbatch] goes back to single items
+ *
+ * A batch belongs to downstream once it was emitted, the source must not change it afterwards. Empty batches are
+ * not emitted.
+ */
+fun <T> createBatched(source: (BatchEmitter<T>) -> Unit): Observable<List<T>> =
+    Observable.create { emitter -> source(BatchEmitter(emitter)) }
+
+class BatchEmitter<T> internal constructor(private val emitter: ObservableEmitter<List<T>>) {
+
+    fun onNext(value: T) {
+        emitter.onNext(listOf(value))
+    }
+
+    fun onNextBatch(batch: List<T>) {
+        if (batch.isNotEmpty()) {
+            emitter.onNext(batch)
+        }
+    }
+
+    /**
+     * The array is wrapped and not copied
+     */
+    fun onNextBatch(batch: Array<T>) {
+        if (batch.isNotEmpty()) {
+            emitter.onNext(batch.asList())
+        }
+    }
+
+    fun onError(error: Throwable) {
+        emitter.onError(error)
+    }
+
+    fun onComplete() {
+        emitter.onComplete()
+    }
+
+    fun isDisposed() = emitter.isDisposed
+
+    fun setCancellable(cancellable: Cancellable) {
+        emitter.setCancellable(cancellable)
+    }
+
+    fun setDisposable(disposable: Disposable) {
+        emitter.setDisposable(disposable)
+    }
+}
+
+fun <T, R> Observable<List<T>>.mapEach(mapper: (T) -> R): Observable<List<R>> =
+    map { batch ->
+        val mapped = ArrayList<R>(batch.size)
+        for (item in batch) {
+            mapped.add(mapper(item))
+        }
+        mapped
+    }
+
+/**
+ * Batches where no item passed [predicate] are dropped
+ */
+fun <T> Observable<List<T>>.filterEach(predicate: (T) -> Boolean): Observable<List<T>> =
+    map { batch -> batch.filter(predicate) }
+        .filter { it.isNotEmpty() }
+
+/**
+ * Batches of [size] items, the last one may have less
+ */
+fun <T> Observable<List<T>>.rebatch(size: Int): Observable<List<T>> {
+
+    require(size > 0) { "size > 0 required but it was $size" }
+
+    return Observable.defer {
+
+        var current = ArrayList<T>(size)
+
+        flatMapIterable { batch ->
+            var full: MutableList<List<T>>? = null
+            for (item in batch) {
+                current.add(item)
+                if (current.size == size) {
+                    full = (full ?: ArrayList(1)).apply { add(current) }
+                    current = ArrayList(size)
+                }
+            }
+            full ?: emptyList<List<T>>()
+        }
+            .concatWith(Observable.defer { if (current.isEmpty()) Observable.empty() else Observable.just(current) })
+    }
+}
+
+fun <T> Observable<List<T>>.unbatch(): Observable<T> = concatMapIterable { it }
+
+fun <T> Observable<List<T>>.forEachItem(
+    onNext: (T) -> Unit,
+    onError: (Throwable) -> Unit = { RxJavaPlugins.onError(OnErrorNotImplementedException(it)) },
+    onComplete: () -> Unit = {}
+): Disposable = subscribe(
+    { batch ->
+        for (item in batch) {
+            onNext(item)
+        }
+    },
+    { onError(it) },
+    { onComplete() }
+)
@@ -0,0 +1,255 @@
+package chapter2observables
+
+import io.reactivex.BackpressureOverflowStrategy
+import io.reactivex.Observable
+import io.reactivex.Observer
+import io.reactivex.disposables.Disposable
+import io.reactivex.exceptions.Exceptions
+import io.reactivex.exceptions.MissingBackpressureException
+import io.reactivex.functions.Cancellable
+import io.reactivex.internal.disposables.CancellableDisposable
+import io.reactivex.internal.disposables.DisposableHelper
+import io.reactivex.internal.fuseable.SimplePlainQueue
+import io.reactivex.internal.queue.MpscLinkedQueue
+import io.reactivex.plugins.RxJavaPlugins
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * 🔥 INFO createConcurrent
+ *
+ * The emitter of **Observable.create()** may only be called from one thread at a time. Callbacks that arrive on
+ * several threads need **emitter.serialize()** or **serialize()**, both queue the items that can not be emitted
+ * right away under a **lock**.
+ *
+ * The [ConcurrentEmitter] of [createConcurrent] can be called from any number of threads:
+ * * When nobody else is emitting the item goes downstream right away after a single compare and set
+ * * Otherwise it goes to a **lock-free MPSC queue** and the thread that is emitting takes it from there
+ * * With a [capacity] the queue is bounded, [overflow] decides what happens to the items that do not fit:
+ * **ERROR** fails with **MissingBackpressureException**, **DROP_LATEST** drops the new item and **DROP_OLDEST**
+ * the oldest queued one. [onDropped] receives the dropped items.
+ * * **DROP_OLDEST** needs producers that take items out of the queue too, it uses a lock-free **MPMC queue** and
+ * the producer that overflows drops the oldest item right away. Under contention the queue may hold one item
+ * more than [capacity] for every producer that is still offering.
+ *
+ * Like **emitter.serialize()** an error is delivered right away, a completion after the queued items.
+ * The order of items emitted by the same thread is kept.
+ */
+@JvmOverloads
+fun <T> createConcurrent(
+    capacity: Int = Int.MAX_VALUE,
+    overflow: BackpressureOverflowStrategy = BackpressureOverflowStrategy.ERROR,
+    onDropped: (T) -> Unit = {},
+    source: (ConcurrentEmitter<T>) -> Unit
+): Observable<T> = ObservableCreateConcurrent(capacity, overflow, onDropped, source)
+
+class ObservableCreateConcurrent<T>(
+    private val capacity: Int,
+    private val overflow: BackpressureOverflowStrategy,
+    private val onDropped: (T) -> Unit,
+    private val source: (ConcurrentEmitter<T>) -> Unit
+) : Observable<T>() {
+
+    init {
+        require(capacity > 0) { "capacity > 0 required but it was $capacity" }
+    }
+
+    override fun subscribeActual(observer: Observer<in T>) {
+
+        val emitter = ConcurrentEmitter(observer, capacity, overflow, onDropped)
+        observer.onSubscribe(emitter)
+
+        try {
+            source(emitter)
+        } catch (ex: Throwable) {
+            Exceptions.throwIfFatal(ex)
+            emitter.onError(ex)
+        }
+    }
+}
+
+class ConcurrentEmitter<T> internal constructor(
+    private val downstream: Observer<in T>,
+    private val capacity: Int,
+    private val overflow: BackpressureOverflowStrategy,
+    private val onDropped: (T) -> Unit
+) : Disposable {
+
+    private val evicting = capacity != Int.MAX_VALUE && overflow == BackpressureOverflowStrategy.DROP_OLDEST
+
+    private val queue: SimplePlainQueue<T> = if (evicting) ConcurrentPlainQueue() else MpscLinkedQueue()
+
+    private val wip = AtomicInteger()
+
+    // Items in the queue, only counted when it is bounded
+    private val queued = AtomicInteger()
+
+    private val bounded = capacity != Int.MAX_VALUE
+
+    private val error = AtomicReference<Throwable>()
+
+    private val resource = AtomicReference<Disposable>()
+
+    @Volatile
+    private var done = false
+
+    @Volatile
+    private var disposed = false
+
+    fun onNext(value: T) {
+
+        if (done || disposed) {
+            return
+        }
+
+        // Fast path, nobody else is emitting and nothing is queued
+        if (wip.get() == 0 && wip.compareAndSet(0, 1)) {
+            downstream.onNext(value)
+            if (wip.decrementAndGet() == 0) {
+                return
+            }
+        } else {
+            if (evicting) {
+                offerEvicting(value)
+            } else {
+                if (bounded && queued.incrementAndGet() > capacity) {
+                    queued.decrementAndGet()
+                    if (overflow == BackpressureOverflowStrategy.ERROR) {
+                        onError(MissingBackpressureException("Queue of $capacity items is full"))
+                    } else {
+                        onDropped(value)
+                    }
+                    return
+                }
+                queue.offer(value)
+            }
+            if (wip.getAndIncrement() != 0) {
+                return
+            }
+        }
+        drainLoop()
+    }
+
+    /**
+     * Offers first and counts afterwards, so that the oldest item can always be taken out when the count
+     * is over [capacity]
+     */
+    private fun offerEvicting(value: T) {
+        queue.offer(value)
+        if (queued.incrementAndGet() > capacity) {
+            val oldest = queue.poll()
+            if (oldest != null) {
+                queued.decrementAndGet()
+                onDropped(oldest)
+            }
+        }
+    }
+
+    fun onError(throwable: Throwable) {
+        if (!done && !disposed && error.compareAndSet(null, throwable)) {
+            done = true
+            drain()
+        } else {
+            RxJavaPlugins.onError(throwable)
+        }
+    }
+
+    fun onComplete() {
+        if (!done && !disposed) {
+            done = true
+            drain()
+        }
+    }
+
+    fun setCancellable(cancellable: Cancellable) {
+        DisposableHelper.set(resource, CancellableDisposable(cancellable))
+    }
+
+    fun setDisposable(disposable: Disposable) {
+        DisposableHelper.set(resource, disposable)
+    }
+
+    override fun dispose() {
+        if (!disposed) {
+            disposed = true
+            DisposableHelper.dispose(resource)
+            if (wip.getAndIncrement() == 0) {
+                queue.clear()
+            }
+        }
+    }
+
+    override fun isDisposed() = disposed
+
+    private fun drain() {
+        if (wip.getAndIncrement() == 0) {
+            drainLoop()
+        }
+    }
+
+    private fun drainLoop() {
+
+        var missed = 1
+
+        while (true) {
+
+            while (true) {
+                if (disposed) {
+                    queue.clear()
+                    return
+                }
+
+                val throwable = error.get()
+                if (throwable != null) {
+                    queue.clear()
+                    downstream.onError(throwable)
+                    dispose()
+                    return
+                }
+
+                // Read before the queue, after onComplete() nothing is offered anymore
+                val d = done
+                val value = queue.poll()
+
+                if (value == null) {
+                    if (d) {
+                        downstream.onComplete()
+                        dispose()
+                        return
+                    }
+                    break
+                }
+
+                if (bounded) {
+                    queued.decrementAndGet()
+                }
+
+                downstream.onNext(value)
+            }
+
+            missed = wip.addAndGet(-missed)
+            if (missed == 0) {
+                return
+            }
+        }
+    }
+}
+
+/**
+ * **ConcurrentLinkedQueue** for the drain loop, producers may poll it too
+ */
+private class ConcurrentPlainQueue<T> : SimplePlainQueue<T> {
+
+    private val queue = ConcurrentLinkedQueue<T>()
+
+    override fun offer(value: T) = queue.offer(value)
+
+    override fun offer(v1: T, v2: T) = queue.offer(v1) && queue.offer(v2)
+
+    override fun poll(): T? = queue.poll()
+
+    override fun isEmpty() = queue.isEmpty()
+
+    override fun clear() = queue.clear()
+}
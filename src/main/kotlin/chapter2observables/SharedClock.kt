@@ -0,0 +1,180 @@
+package chapter2observables
+
+import io.reactivex.Observable
+import io.reactivex.ObservableEmitter
+import io.reactivex.Scheduler
+import io.reactivex.disposables.Disposable
+import io.reactivex.schedulers.Schedulers
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * 🔥 INFO SharedClock
+ *
+ * Every subscription to **Observable.interval()** schedules its own periodic task, 10,000 subscribers of
+ * **interval(1, SECONDS)** wake the scheduler 10,000 times a second. [interval] of this clock shares **one timer**
+ * for all subscribers with the same period and fans every tick out to them.
+ *
+ * * Like **interval()** every subscriber counts its ticks from 0
+ * * A subscriber's first tick is the shared tick closest to one period after it subscribed. If that is more than
+ * **phaseTolerance** away a new timer with its own phase is started. The default accepts any phase, so
+ * the first tick may come sooner than one period.
+ * * A timer is stopped when its last subscriber is disposed
+ * * [activeTimers], [timersStarted], [wakeups] and [deliveries] show how many timers run and how often they fired
+ */
+class SharedClock @JvmOverloads constructor(private val scheduler: Scheduler = Schedulers.computation()) {
+
+    // Guarded by this
+    private val timersByPeriod = HashMap<Long, MutableList<SharedTimer>>()
+    private var active = 0L
+    private var started = 0L
+
+    private val wakeupCount = LongAdder()
+    private val deliveryCount = LongAdder()
+
+    @JvmOverloads
+    fun interval(period: Long, unit: TimeUnit, phaseTolerance: Long = period): Observable<Long> {
+
+        require(period > 0) { "period > 0 required but it was $period" }
+        require(phaseTolerance >= 0) { "phaseTolerance >= 0 required but it was $phaseTolerance" }
+
+        val periodNanos = unit.toNanos(period)
+        val toleranceNanos = unit.toNanos(phaseTolerance)
+
+        return Observable.create { emitter ->
+            val subscriber = join(periodNanos, toleranceNanos, emitter)
+            emitter.setCancellable { leave(subscriber) }
+        }
+    }
+
+    val activeTimers: Long
+        get() = synchronized(this) { active }
+
+    val timersStarted: Long
+        get() = synchronized(this) { started }
+
+    /**
+     * How often the timers fired, one wakeup of the scheduler each
+     */
+    val wakeups: Long
+        get() = wakeupCount.sum()
+
+    /**
+     * Ticks delivered to subscribers
+     */
+    val deliveries: Long
+        get() = deliveryCount.sum()
+
+    override fun toString() =
+        "activeTimers: $activeTimers, timersStarted: $timersStarted, wakeups: $wakeups, deliveries: $deliveries"
+
+    private fun join(periodNanos: Long, toleranceNanos: Long, emitter: ObservableEmitter<Long>): TickSubscriber =
+        synchronized(this) {
+
+            val now = scheduler.now(TimeUnit.NANOSECONDS)
+            val wanted = now + periodNanos
+            val timers = timersByPeriod.getOrPut(periodNanos) { ArrayList(1) }
+
+            // The timer whose ticks come closest to one period from now
+            var closest: SharedTimer? = null
+            var closestDistance = Long.MAX_VALUE
+            for (timer in timers) {
+                val offset = Math.floorMod(wanted - timer.nextTickNanos, periodNanos)
+                val distance = minOf(offset, periodNanos - offset)
+                if (distance < closestDistance) {
+                    closest = timer
+                    closestDistance = distance
+                }
+            }
+
+            val timer = if (closest != null && closestDistance <= toleranceNanos) {
+                closest
+            } else {
+                SharedTimer(periodNanos, now).also {
+                    timers.add(it)
+                    active++
+                    started++
+                }
+            }
+
+            timer.add(TickSubscriber(timer, emitter), wanted)
+        }
+
+    private fun leave(subscriber: TickSubscriber) {
+        synchronized(this) {
+            val timer = subscriber.timer
+            if (timer.subscribers.remove(subscriber) && timer.subscribers.isEmpty()) {
+                timer.stop()
+                timersByPeriod[timer.periodNanos]?.let {
+                    it.remove(timer)
+                    if (it.isEmpty()) {
+                        timersByPeriod.remove(timer.periodNanos)
+                    }
+                }
+                active--
+            }
+        }
+    }
+
+    private inner class SharedTimer(val periodNanos: Long, startNanos: Long) : Runnable {
+
+        val subscribers: MutableSet<TickSubscriber> = ConcurrentHashMap.newKeySet()
+
+        // Guarded by this, ticks are numbered from 1
+        private var fired = 0L
+        var nextTickNanos = startNanos + periodNanos
+            get() = synchronized(this) { field }
+            private set
+
+        private val task: Disposable =
+            scheduler.schedulePeriodicallyDirect(this, periodNanos, periodNanos, TimeUnit.NANOSECONDS)
+
+        /**
+         * Adds [subscriber] so that its first tick is the one closest to [wantedNanos]
+         */
+        fun add(subscriber: TickSubscriber, wantedNanos: Long): TickSubscriber {
+            synchronized(this) {
+                val ticksAhead = Math.round((wantedNanos - nextTickNanos).toDouble() / periodNanos)
+                subscriber.firstTick = fired + 1 + maxOf(ticksAhead, 0L)
+            }
+            subscribers.add(subscriber)
+            return subscriber
+        }
+
+        override fun run() {
+
+            val tick = synchronized(this) {
+                nextTickNanos += periodNanos
+                ++fired
+            }
+            wakeupCount.increment()
+
+            var delivered = 0L
+            for (subscriber in subscribers) {
+                if (subscriber.onTick(tick)) {
+                    delivered++
+                }
+            }
+            deliveryCount.add(delivered)
+        }
+
+        fun stop() {
+            task.dispose()
+        }
+    }
+
+    private class TickSubscriber(val timer: SharedClock.SharedTimer, private val emitter: ObservableEmitter<Long>) {
+
+        // Written before the subscriber is added to the timer
+        var firstTick = 0L
+
+        fun onTick(tick: Long): Boolean {
+            if (tick < firstTick) {
+                return false
+            }
+            emitter.onNext(tick - firstTick)
+            return true
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package chapter2observables
+
+import io.reactivex.disposables.CompositeDisposable
+import io.reactivex.disposables.Disposable
+import io.reactivex.exceptions.CompositeException
+import io.reactivex.exceptions.Exceptions
+import io.reactivex.internal.disposables.DisposableContainer
+import io.reactivex.internal.util.ExceptionHelper
+import io.reactivex.internal.util.OpenHashSet
+
+/**
+ * 🔥 INFO StripedCompositeDisposable
+ *
+ * [CompositeDisposable] keeps every [Disposable] in one set and takes **one monitor** on every
+ * **add()**, **remove()** and **delete()**. When many threads subscribe and dispose short lived
+ * subscriptions at the same time that monitor becomes the bottleneck.
+ *
+ * This container splits the set into **stripes**, each with its own lock. A [Disposable] always goes
+ * to the stripe picked from its identity hash, so threads that work on different disposables
+ * rarely touch the same lock.
+ *
+ * Same as [CompositeDisposable]
+ * * A [Disposable] added after **dispose()** is disposed immediately
+ * * Every [Disposable] is disposed **exactly once**, either by **dispose()**, **clear()** or **remove()**
+ *
+ * @param stripeCount number of stripes, rounded up to a power of 2
+ */
+class StripedCompositeDisposable @JvmOverloads constructor(
+    stripeCount: Int = defaultStripeCount()
+) : Disposable, DisposableContainer {
+
+    private val mask: Int
+
+    private val stripes: Array<Stripe>
+
+    @Volatile
+    private var disposed = false
+
+    init {
+        require(stripeCount > 0) { "stripeCount > 0 required but it was $stripeCount" }
+        val size = roundToPowerOfTwo(stripeCount)
+        mask = size - 1
+        stripes = Array(size) { Stripe() }
+    }
+
+    override fun add(d: Disposable): Boolean {
+
+        if (!disposed) {
+            val stripe = stripeOf(d)
+            synchronized(stripe) {
+                if (!disposed) {
+                    val set = stripe.resources ?: OpenHashSet<Disposable>().also { stripe.resources = it }
+                    set.add(d)
+                    return true
+                }
+            }
+        }
+
+        d.dispose()
+        return false
+    }
+
+    fun addAll(vararg ds: Disposable): Boolean {
+        var allAdded = true
+        for (d in ds) {
+            allAdded = add(d) && allAdded
+        }
+        return allAdded
+    }
+
+    /**
+     * Removes and disposes [d] if it was part of this container
+     */
+    override fun remove(d: Disposable): Boolean {
+        if (delete(d)) {
+            d.dispose()
+            return true
+        }
+        return false
+    }
+
+    /**
+     * Removes [d] without disposing it
+     */
+    override fun delete(d: Disposable): Boolean {
+
+        if (disposed) {
+            return false
+        }
+
+        val stripe = stripeOf(d)
+        synchronized(stripe) {
+            if (disposed) {
+                return false
+            }
+            return stripe.resources?.remove(d) ?: false
+        }
+    }
+
+    /**
+     * Disposes every contained [Disposable] but keeps this container usable
+     */
+    fun clear() {
+        if (!disposed) {
+            disposeAll(detachAll())
+        }
+    }
+
+    override fun dispose() {
+
+        if (disposed) {
+            return
+        }
+
+        // 🔥 Every stripe is detached under its own lock after disposed is set, so a concurrent add() either
+        // lands in a set detached here or sees disposed and disposes its Disposable itself.
+        disposed = true
+
+        disposeAll(detachAll())
+    }
+
+    override fun isDisposed(): Boolean = disposed
+
+    /**
+     * Number of currently contained disposables. Stripes are counted one by one
+     * so the result is only a snapshot while other threads keep adding and removing.
+     */
+    fun size(): Int {
+
+        if (disposed) {
+            return 0
+        }
+
+        var count = 0
+        for (stripe in stripes) {
+            synchronized(stripe) {
+                count += stripe.resources?.size() ?: 0
+            }
+        }
+        return count
+    }
+
+    private fun stripeOf(d: Disposable): Stripe {
+        val h = System.identityHashCode(d)
+        return stripes[(h xor (h ushr 16)) and mask]
+    }
+
+    private fun detachAll(): List<OpenHashSet<Disposable>> {
+        val detached = ArrayList<OpenHashSet<Disposable>>()
+        for (stripe in stripes) {
+            synchronized(stripe) {
+                stripe.resources?.let {
+                    detached.add(it)
+                    stripe.resources = null
+                }
+            }
+        }
+        return detached
+    }
+
+    private fun disposeAll(sets: List<OpenHashSet<Disposable>>) {
+
+        var errors: MutableList<Throwable>? = null
+
+        for (set in sets) {
+            for (o in set.keys()) {
+                if (o is Disposable) {
+                    try {
+                        o.dispose()
+                    } catch (ex: Throwable) {
+                        Exceptions.throwIfFatal(ex)
+                        errors = (errors ?: ArrayList()).apply { add(ex) }
+                    }
+                }
+            }
+        }
+
+        errors?.let {
+            if (it.size == 1) {
+                throw ExceptionHelper.wrapOrThrow(it[0])
+            }
+            throw CompositeException(it)
+        }
+    }
+
+    private class Stripe {
+        var resources: OpenHashSet<Disposable>? = null
+    }
+
+    companion object {
+
+        @JvmStatic
+        fun defaultStripeCount(): Int = roundToPowerOfTwo(Runtime.getRuntime().availableProcessors() * 4)
+
+        private fun roundToPowerOfTwo(value: Int): Int {
+            val highest = Integer.highestOneBit(value)
+            return if (highest == value) value else highest shl 1
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package chapter2observables
+
+import benchmark.measure
+import benchmark.runConcurrently
+import io.reactivex.BackpressureOverflowStrategy
+import io.reactivex.Observable
+import io.reactivex.schedulers.Schedulers
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+
+fun main() {
+
+//    testCreateConcurrent()
+//    testCreateConcurrentOverflow()
+
+    // INFO Benchmark
+    testSerializeVsCreateConcurrent()
+}
+
+/**
+ * 🔥 INFO createConcurrent
+ *
+ * Three callback threads emit to the same emitter without **serialize()**, the observer still gets one item
+ * at a time and the items of each thread in their order
+ */
+private fun testCreateConcurrent() {
+
+    createConcurrent<String> { emitter ->
+        runConcurrently(3) { thread ->
+            repeat(3) { emitter.onNext("thread $thread item $it") }
+        }
+        emitter.onComplete()
+    }
+        .toList()
+        .subscribe { list ->
+            list.groupBy { it.substringBefore(" item") }.forEach { (thread, items) -> println("$thread: $items") }
+        }
+
+    /*
+        Prints:
+        thread 2: [thread 2 item 0, thread 2 item 1, thread 2 item 2]
+        thread 0: [thread 0 item 0, thread 0 item 1, thread 0 item 2]
+        thread 1: [thread 1 item 0, thread 1 item 1, thread 1 item 2]
+     */
+}
+
+/**
+ * The consumer needs 1 ms for an item, only 5 items fit into the queue while it is busy and the newer ones
+ * are dropped
+ */
+private fun testCreateConcurrentOverflow() {
+
+    val dropped = AtomicInteger()
+    val done = CountDownLatch(1)
+
+    createConcurrent<Int>(capacity = 5, overflow = BackpressureOverflowStrategy.DROP_LATEST, onDropped = {
+        dropped.incrementAndGet()
+    }) { emitter ->
+        runConcurrently(2) { thread ->
+            repeat(50) { emitter.onNext(thread * 100 + it) }
+        }
+        emitter.onComplete()
+    }
+        .subscribeOn(Schedulers.io())
+        .doOnTerminate { done.countDown() }
+        .subscribe { Thread.sleep(1) }
+
+    done.await()
+    println("Dropped: ${dropped.get()} of 100")
+
+    /*
+        Prints:
+        Dropped: 45 of 100
+
+        🔥 The thread that took the fast path emits its own items itself and waits for the consumer like with
+        create(), none of its items are dropped. Only the other thread finds the queue full.
+     */
+}
+
+/**
+ * Every thread emits 1 million items to the same emitter, once to **emitter.serialize()** of **create()** and
+ * once to the emitter of [createConcurrent]
+ */
+private fun testSerializeVsCreateConcurrent() {
+
+    val itemsPerThread = 1_000_000
+
+    for (threads in listOf(1, 2, 4, 8)) {
+
+        val operations = threads.toLong() * itemsPerThread
+
+        measure("create() serialize()  threads: $threads", operations) {
+            var count = 0L
+            Observable.create<Int> { emitter ->
+                val serialized = emitter.serialize()
+                runConcurrently(threads) { repeat(itemsPerThread) { serialized.onNext(it) } }
+                serialized.onComplete()
+            }
+                .subscribe { count++ }
+        }
+
+        measure("createConcurrent()    threads: $threads", operations) {
+            var count = 0L
+            createConcurrent<Int> { emitter ->
+                runConcurrently(threads) { repeat(itemsPerThread) { emitter.onNext(it) } }
+                emitter.onComplete()
+            }
+                .subscribe { count++ }
+        }
+    }
+
+    /*
+        Prints on a single core machine:
+        create() serialize()  threads: 1                     40,449,178 ops/s       24.7 ns/op  gc:    0 (    0 ms)  heap: 17,980 KB  alloc:        2 KB
+        createConcurrent()    threads: 1                     39,786,756 ops/s       25.1 ns/op  gc:    0 (    0 ms)  heap: 17,391 KB  alloc:        2 KB
+        create() serialize()  threads: 2                     34,623,184 ops/s       28.9 ns/op  gc:    1 (    0 ms)  heap: 10,269 KB  alloc:        2 KB
+        createConcurrent()    threads: 2                     38,204,832 ops/s       26.2 ns/op  gc:    1 (    0 ms)  heap: 10,837 KB  alloc:        2 KB
+        create() serialize()  threads: 4                     28,963,427 ops/s       34.5 ns/op  gc:    3 (   14 ms)  heap:  7,496 KB  alloc:        4 KB
+        createConcurrent()    threads: 4                     12,636,268 ops/s       79.1 ns/op  gc:    5 (  175 ms)  heap: 44,617 KB  alloc:        4 KB
+        create() serialize()  threads: 8                     27,501,825 ops/s       36.4 ns/op  gc:    5 (   33 ms)  heap: 43,026 KB  alloc:        7 KB
+        createConcurrent()    threads: 8                      8,652,522 ops/s      115.6 ns/op  gc:   15 (  627 ms)  heap: 38,733 KB  alloc:        7 KB
+
+        🔥 With one core only one thread runs at a time. serialize() makes the other producers wait for its lock,
+        createConcurrent() lets them keep queueing while the emitting thread is not scheduled. The queue grows,
+        every queued item is a node of the linked queue and GC takes over. Use a capacity to bound it, the lock-free
+        queue only pays off when the producers really run in parallel on several cores.
+     */
+}
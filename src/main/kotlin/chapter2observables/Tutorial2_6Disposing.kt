@@ -21,6 +21,8 @@ fun main() {
 //        testResourceObserver()
 
     testCompositeDisposable()
+
+//    testStripedCompositeDisposable()
 }
 
 @Throws(InterruptedException::class)
@@ -123,6 +125,33 @@ private fun testCompositeDisposable() {
 }
 
 
+/**
+ * [StripedCompositeDisposable] is used exactly like [CompositeDisposable],
+ * it only spreads disposables over several locks for high subscription churn.
+ */
+@Throws(InterruptedException::class)
+private fun testStripedCompositeDisposable() {
+
+    val stripedDisposables = StripedCompositeDisposable()
+
+    val seconds = Observable.interval(1, TimeUnit.SECONDS)
+
+    stripedDisposables.addAll(
+        seconds.subscribe { l -> println("Observer 1: $l") },
+        seconds.subscribe { l -> println("Observer 2: $l") }
+    )
+
+    sleep(5000)
+
+    stripedDisposables.dispose()
+
+    if (stripedDisposables.isDisposed) {
+        println("StripedCompositeDisposable is disposed!")
+    }
+
+    sleep(5000)
+}
+
 private fun testDisposableFromCreate() {
 
     val source = Observable.create(ObservableOnSubscribe<Int> { observableEmitter ->
@@ -0,0 +1,78 @@
+package chapter2observables
+
+import benchmark.measure
+import benchmark.runConcurrently
+import io.reactivex.disposables.CompositeDisposable
+import io.reactivex.disposables.Disposable
+import io.reactivex.disposables.Disposables
+
+private const val OPERATIONS_PER_THREAD = 200_000
+private const val LIVE_DISPOSABLES_PER_THREAD = 16
+
+fun main() {
+
+    testCompositeDisposableChurn()
+}
+
+/**
+ * 🔥 INFO Subscription churn benchmark
+ *
+ * Every thread adds a short lived [Disposable] and deletes an older one, like subscriptions
+ * that are created and disposed thousands of times per second. Each thread keeps
+ * [LIVE_DISPOSABLES_PER_THREAD] subscriptions alive so the sets never get empty.
+ *
+ * [CompositeDisposable] takes the same lock for every thread while [StripedCompositeDisposable]
+ * spreads them over stripes, the difference grows with the number of threads.
+ */
+private fun testCompositeDisposableChurn() {
+
+    for (threads in listOf(1, 2, 4, 8, 16, 32)) {
+
+        val operations = threads.toLong() * OPERATIONS_PER_THREAD
+
+        measure("CompositeDisposable         threads: $threads", operations) {
+            val composite = CompositeDisposable()
+            churn(threads, composite::add, composite::delete)
+            composite.dispose()
+        }
+
+        measure("StripedCompositeDisposable  threads: $threads", operations) {
+            val composite = StripedCompositeDisposable()
+            churn(threads, composite::add, composite::delete)
+            composite.dispose()
+        }
+
+        println()
+    }
+
+    /*
+        Prints on a single core machine, where threads never run in parallel:
+        CompositeDisposable         threads: 1                7,286,239 ops/s      137.2 ns/op ...
+        StripedCompositeDisposable  threads: 1                4,843,491 ops/s      206.5 ns/op ...
+        ...
+        CompositeDisposable         threads: 32               7,296,596 ops/s      137.1 ns/op ...
+        StripedCompositeDisposable  threads: 32               6,993,956 ops/s      143.0 ns/op ...
+
+        🔥 With one core there is no lock contention so striping only adds the cost of picking a stripe.
+        Striping pays off when threads really run in parallel, so run it on a multi core machine.
+     */
+}
+
+private fun churn(
+    threads: Int,
+    add: (Disposable) -> Boolean,
+    delete: (Disposable) -> Boolean
+) {
+    runConcurrently(threads) {
+
+        val live = arrayOfNulls<Disposable>(LIVE_DISPOSABLES_PER_THREAD)
+
+        for (i in 0 until OPERATIONS_PER_THREAD) {
+            val slot = i and (LIVE_DISPOSABLES_PER_THREAD - 1)
+            live[slot]?.let { delete(it) }
+            val d = Disposables.empty()
+            add(d)
+            live[slot] = d
+        }
+    }
+}
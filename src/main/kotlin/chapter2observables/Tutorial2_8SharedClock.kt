@@ -0,0 +1,136 @@
+package chapter2observables
+
+import benchmark.processCpuNanos
+import io.reactivex.Observable
+import io.reactivex.disposables.CompositeDisposable
+import io.reactivex.schedulers.TestScheduler
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.LongAdder
+
+fun main() {
+
+//    testSharedClock()
+//    testSharedClockPhaseTolerance()
+
+    // INFO Benchmark
+    testIntervalVsSharedClock()
+}
+
+/**
+ * 🔥 INFO SharedClock
+ *
+ * Three subscribers of a 1 second interval subscribe at 0, 300 and 600 ms and share the timer started for the
+ * first one. Each gets its first tick from the shared tick closest to one second after it subscribed,
+ * B after 700 ms and C after 1400 ms.
+ */
+private fun testSharedClock() {
+
+    val scheduler = TestScheduler()
+    val clock = SharedClock(scheduler)
+    val disposables = CompositeDisposable()
+
+    for (name in listOf("A", "B", "C")) {
+        disposables.add(
+            clock.interval(1, TimeUnit.SECONDS)
+                .subscribe { println("$name $it at ${scheduler.now(TimeUnit.MILLISECONDS)} ms") }
+        )
+        scheduler.advanceTimeBy(300, TimeUnit.MILLISECONDS)
+    }
+
+    scheduler.advanceTimeTo(2100, TimeUnit.MILLISECONDS)
+    println(clock)
+
+    disposables.dispose()
+    println(clock)
+
+    /*
+        Prints:
+        A 0 at 1000 ms
+        B 0 at 1000 ms
+        A 1 at 2000 ms
+        C 0 at 2000 ms
+        B 1 at 2000 ms
+        activeTimers: 1, timersStarted: 1, wakeups: 2, deliveries: 5
+        activeTimers: 0, timersStarted: 1, wakeups: 2, deliveries: 5
+     */
+}
+
+/**
+ * With a phase tolerance of 100 ms the subscribers at 300 and 600 ms are too far from the ticks of the first timer,
+ * each gets its own. D subscribes at 1050 ms, 50 ms from a tick of the first timer, and shares it.
+ */
+private fun testSharedClockPhaseTolerance() {
+
+    val scheduler = TestScheduler()
+    val clock = SharedClock(scheduler)
+
+    for (name in listOf("A", "B", "C", "D")) {
+        clock.interval(1000, TimeUnit.MILLISECONDS, phaseTolerance = 100)
+            .subscribe { println("$name $it at ${scheduler.now(TimeUnit.MILLISECONDS)} ms") }
+        scheduler.advanceTimeBy(if (name == "C") 450 else 300, TimeUnit.MILLISECONDS)
+    }
+
+    scheduler.advanceTimeTo(2000, TimeUnit.MILLISECONDS)
+    println(clock)
+
+    /*
+        Prints:
+        A 0 at 1000 ms
+        B 0 at 1300 ms
+        C 0 at 1600 ms
+        A 1 at 2000 ms
+        D 0 at 2000 ms
+        activeTimers: 3, timersStarted: 3, wakeups: 4, deliveries: 5
+     */
+}
+
+/**
+ * 10,000 subscribers of an interval of 100 ms for 3 seconds, once with **Observable.interval()** and once
+ * with [SharedClock]. The CPU time includes the scheduler threads.
+ */
+private fun testIntervalVsSharedClock() {
+
+    val subscribers = 10_000
+
+    // Without a clock every subscriber has its own timer that wakes up for each of its ticks
+    fun run(name: String, clock: SharedClock?) {
+
+        val deliveries = LongAdder()
+        val disposables = CompositeDisposable()
+        val cpuBefore = processCpuNanos()
+
+        repeat(subscribers) {
+            val interval = clock?.interval(100, TimeUnit.MILLISECONDS)
+                ?: Observable.interval(100, TimeUnit.MILLISECONDS)
+            disposables.add(interval.subscribe { deliveries.increment() })
+        }
+        Thread.sleep(3000)
+        val timers = clock?.activeTimers ?: subscribers.toLong()
+        disposables.dispose()
+
+        println(
+            String.format(
+                "%-22s cpu: %,5d ms  timers: %,6d  wakeups: %,7d  deliveries: %,7d",
+                name, (processCpuNanos() - cpuBefore) / 1_000_000, timers,
+                clock?.wakeups ?: deliveries.sum(), deliveries.sum()
+            )
+        )
+    }
+
+    // The first round warms up
+    repeat(2) {
+        run("Observable.interval()", null)
+        run("SharedClock", SharedClock())
+    }
+
+    /*
+        Prints on a single core machine:
+        Observable.interval()  cpu:   740 ms  timers: 10,000  wakeups: 300,571  deliveries: 300,571
+        SharedClock            cpu:   390 ms  timers:      1  wakeups:      31  deliveries: 301,999
+        Observable.interval()  cpu:   290 ms  timers: 10,000  wakeups: 300,000  deliveries: 300,000
+        SharedClock            cpu:   160 ms  timers:      1  wakeups:      30  deliveries: 300,000
+
+        🔥 The first two lines are the warm up. Every tick of interval() is a task of its own that the scheduler has
+        to queue and wake up for, the shared clock wakes up once per tick and loops over its subscribers.
+     */
+}
@@ -0,0 +1,123 @@
+package chapter2observables
+
+import benchmark.measure
+import io.reactivex.Observable
+
+fun main() {
+
+//    testCreateBatched()
+//    testRebatch()
+
+    // INFO Benchmark
+    testCreateVsCreateBatched()
+}
+
+/**
+ * 🔥 INFO createBatched
+ *
+ * A source that reads its items in pages emits every page with one call
+ */
+private fun testCreateBatched() {
+
+    createBatched<String> { emitter ->
+        emitter.onNextBatch(listOf("Alpha", "Beta", "Gamma"))
+        emitter.onNextBatch(arrayOf("Delta", "Epsilon"))
+        emitter.onNext("Zeta")
+        emitter.onComplete()
+    }
+        .doOnNext { println("Batch: $it") }
+        .mapEach { it.length }
+        .forEachItem(
+            { println("RECEIVED: $it") },
+            { println("onError() $it") },
+            { println("onComplete()") }
+        )
+
+    /*
+        Prints:
+        Batch: [Alpha, Beta, Gamma]
+        RECEIVED: 5
+        RECEIVED: 4
+        RECEIVED: 5
+        Batch: [Delta, Epsilon]
+        RECEIVED: 5
+        RECEIVED: 7
+        Batch: [Zeta]
+        RECEIVED: 4
+        onComplete()
+     */
+}
+
+/**
+ * Batches of any size become batches of 4, the last one has what is left
+ */
+private fun testRebatch() {
+
+    createBatched<Int> { emitter ->
+        emitter.onNextBatch((1..3).toList())
+        emitter.onNextBatch((4..10).toList())
+        emitter.onComplete()
+    }
+        .filterEach { it != 5 }
+        .rebatch(4)
+        .subscribe { println(it) }
+
+    /*
+        Prints:
+        [1, 2, 3, 4]
+        [6, 7, 8, 9]
+        [10]
+     */
+}
+
+/**
+ * 10 million numbers are doubled and summed, once emitted one by one with **Observable.create()** and once
+ * with [createBatched] in batches of 1, 64 and 1,024. The batches are created before the measurement
+ * like pages that a source read anyway.
+ */
+private fun testCreateVsCreateBatched() {
+
+    val count = 10_000_000
+    val numbers = Array(count) { it }
+
+    measure("create() onNext()", count.toLong()) {
+        var sum = 0L
+        Observable.create<Int> { emitter ->
+            for (number in numbers) {
+                emitter.onNext(number)
+            }
+            emitter.onComplete()
+        }
+            .map { it * 2 }
+            .subscribe { sum += it }
+    }
+
+    for (batchSize in listOf(1, 64, 1024)) {
+
+        val batches = numbers.toList().chunked(batchSize)
+
+        measure("createBatched() batch size $batchSize", count.toLong()) {
+            var sum = 0L
+            createBatched<Int> { emitter ->
+                for (batch in batches) {
+                    emitter.onNextBatch(batch)
+                }
+                emitter.onComplete()
+            }
+                .mapEach { it * 2 }
+                .forEachItem({ sum += it })
+        }
+    }
+
+    /*
+        Prints on a single core machine:
+        create() onNext()                                   103,781,377 ops/s        9.6 ns/op  gc:    2 (    2 ms)  heap: 251,783 KB  alloc:  312,497 KB
+        createBatched() batch size 1                         46,272,785 ops/s       21.6 ns/op  gc:    1 (    1 ms)  heap: 863,157 KB  alloc:  625,000 KB
+        createBatched() batch size 64                       147,224,958 ops/s        6.8 ns/op  gc:    0 (    0 ms)  heap: 448,310 KB  alloc:  201,416 KB
+        createBatched() batch size 1024                     122,142,613 ops/s        8.2 ns/op  gc:    0 (    0 ms)  heap: 433,164 KB  alloc:  195,694 KB
+
+        🔥 With batches of 1 every item pays for a list and the chain on top of the work of create(). With 64 the
+        chain runs once for 64 items and mapEach() is a plain loop. Larger batches do not help anymore, the cost of
+        the chain is already spread over enough items.
+     */
+}
@@ -0,0 +1,255 @@
+package chapter3basicoperators
+
+import io.reactivex.Observable
+import io.reactivex.ObservableEmitter
+import io.reactivex.disposables.Disposable
+import java.util.TreeMap
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Input of an [IndexedStore], [Put] inserts or updates the value of a key and [Remove] deletes it
+ */
+sealed class StoreChange<K, T> {
+    data class Put<K, T>(val key: K, val value: T) : StoreChange<K, T>()
+    data class Remove<K, T>(val key: K) : StoreChange<K, T>()
+}
+
+/**
+ * Change of the entries an index query matches
+ */
+sealed class IndexDelta<K, T> {
+    data class Added<K, T>(val key: K, val value: T) : IndexDelta<K, T>()
+    data class Updated<K, T>(val key: K, val old: T, val value: T) : IndexDelta<K, T>()
+    data class Removed<K, T>(val key: K, val value: T) : IndexDelta<K, T>()
+}
+
+/**
+ * 🔥 INFO IndexedStore
+ *
+ * **toMultimap()** builds the whole map again from all the items, keeping a lookup up to date that way costs **O(n)**
+ * for every change. [IndexedStore] keeps its values by a primary key and updates its indexes with each change:
+ *
+ * * [hashIndex] finds the values with one index key in **O(1)** and updates in **O(1)**
+ * * [sortedIndex] finds the values in a range of index keys and updates in **O(log n)**
+ * * **watch** methods of the indexes return an **Observable** of [IndexDelta] that starts with the current matches
+ * as [IndexDelta.Added] and then only emits what changed
+ *
+ * Changes come from [put], [remove] or an **Observable** given to [connect]. All methods lock the store,
+ * deltas are emitted while the lock is held so every watcher sees the changes in the same order.
+ */
+class IndexedStore<K, T : Any> {
+
+    private val values = HashMap<K, T>()
+
+    private val indexes = ArrayList<StoreIndex<K, T>>()
+
+    val size: Int
+        get() = synchronized(this) { values.size }
+
+    operator fun get(key: K): T? = synchronized(this) { values[key] }
+
+    /**
+     * Index of the values by [indexKey], an index added later also covers the values that are already in the store
+     */
+    fun <I> hashIndex(indexKey: (T) -> I): HashIndex<I, K, T> = addIndex(HashIndex(this, indexKey))
+
+    fun <I : Comparable<I>> sortedIndex(indexKey: (T) -> I): SortedIndex<I, K, T> = addIndex(SortedIndex(this, indexKey))
+
+    fun put(key: K, value: T) {
+        synchronized(this) {
+            val old = values.put(key, value)
+            indexes.forEach { it.onChange(key, old, value) }
+        }
+    }
+
+    fun remove(key: K) {
+        synchronized(this) {
+            val old = values.remove(key) ?: return
+            indexes.forEach { it.onChange(key, old, null) }
+        }
+    }
+
+    /**
+     * Applies every change of [changes] until the returned **Disposable** is disposed
+     */
+    fun connect(changes: Observable<StoreChange<K, T>>): Disposable = changes.subscribe { change ->
+        when (change) {
+            is StoreChange.Put -> put(change.key, change.value)
+            is StoreChange.Remove -> remove(change.key)
+        }
+    }
+
+    private fun <X : StoreIndex<K, T>> addIndex(index: X): X {
+        synchronized(this) {
+            values.forEach { (key, value) -> index.onChange(key, null, value) }
+            indexes.add(index)
+        }
+        return index
+    }
+}
+
+internal interface StoreIndex<K, T : Any> {
+
+    /**
+     * [old] is null for an insert and [new] is null for a delete
+     */
+    fun onChange(key: K, old: T?, new: T?)
+}
+
+/**
+ * Values of an [IndexedStore] grouped by an index key in a **HashMap**
+ */
+class HashIndex<I, K, T : Any> internal constructor(
+    private val store: IndexedStore<K, T>,
+    private val indexKey: (T) -> I
+) : StoreIndex<K, T> {
+
+    private val buckets = HashMap<I, LinkedHashMap<K, T>>()
+
+    // Index key each value was filed under, a value changed in place no longer gives the same one
+    private val filedUnder = HashMap<K, I>()
+
+    // Copy on write, a watcher disposed by the delta it gets removes itself while its list is iterated
+    private val watchers = HashMap<I, CopyOnWriteArrayList<ObservableEmitter<IndexDelta<K, T>>>>()
+
+    fun lookup(key: I): List<T> = synchronized(store) { buckets[key]?.values?.toList() ?: emptyList() }
+
+    /**
+     * Values with index key [key] as [IndexDelta.Added] and then the changes of them
+     */
+    fun watch(key: I): Observable<IndexDelta<K, T>> = Observable.create { emitter ->
+        synchronized(store) {
+            buckets[key]?.forEach { (primaryKey, value) -> emitter.onNext(IndexDelta.Added(primaryKey, value)) }
+            watchers.getOrPut(key) { CopyOnWriteArrayList() }.add(emitter)
+        }
+        emitter.setCancellable {
+            synchronized(store) {
+                val list = watchers[key] ?: return@synchronized
+                list.remove(emitter)
+                if (list.isEmpty()) {
+                    watchers.remove(key)
+                }
+            }
+        }
+    }
+
+    override fun onChange(key: K, old: T?, new: T?) {
+
+        if (new == null) {
+            if (old != null) {
+                removeFiled(key, old)
+            }
+            return
+        }
+
+        val newIndexKey = indexKey(new)
+
+        if (old != null) {
+            val oldIndexKey = filedUnder.getValue(key)
+            if (oldIndexKey == newIndexKey) {
+                buckets.getValue(newIndexKey)[key] = new
+                watchers[newIndexKey]?.forEach { it.onNext(IndexDelta.Updated(key, old, new)) }
+                return
+            }
+            removeFiled(key, old)
+        }
+
+        buckets.getOrPut(newIndexKey) { LinkedHashMap() }[key] = new
+        filedUnder[key] = newIndexKey
+        watchers[newIndexKey]?.forEach { it.onNext(IndexDelta.Added(key, new)) }
+    }
+
+    private fun removeFiled(key: K, old: T) {
+        val oldIndexKey = filedUnder.getValue(key)
+        filedUnder.remove(key)
+        val bucket = buckets.getValue(oldIndexKey)
+        bucket.remove(key)
+        if (bucket.isEmpty()) {
+            buckets.remove(oldIndexKey)
+        }
+        watchers[oldIndexKey]?.forEach { it.onNext(IndexDelta.Removed(key, old)) }
+    }
+}
+
+/**
+ * Values of an [IndexedStore] ordered by an index key in a **TreeMap**
+ */
+class SortedIndex<I : Comparable<I>, K, T : Any> internal constructor(
+    private val store: IndexedStore<K, T>,
+    private val indexKey: (T) -> I
+) : StoreIndex<K, T> {
+
+    private val tree = TreeMap<I, LinkedHashMap<K, T>>()
+
+    // Index key each value was filed under, a value changed in place no longer gives the same one
+    private val filedUnder = HashMap<K, I>()
+
+    // Copy on write, a watcher disposed by the delta it gets removes itself while the list is iterated
+    private val watchers = CopyOnWriteArrayList<RangeWatcher>()
+
+    /**
+     * Values with an index key from [from] inclusive to [to] exclusive, in index key order
+     */
+    fun range(from: I, to: I): List<T> = synchronized(store) {
+        tree.subMap(from, true, to, false).values.flatMap { it.values }
+    }
+
+    fun first(): T? = synchronized(store) { tree.firstEntry()?.value?.values?.first() }
+
+    fun last(): T? = synchronized(store) { tree.lastEntry()?.value?.values?.last() }
+
+    /**
+     * Values with an index key from [from] inclusive to [to] exclusive as [IndexDelta.Added] and then the changes
+     * of the values in the range. Each change checks every range watched, it suits a few long lived watchers.
+     */
+    fun watchRange(from: I, to: I): Observable<IndexDelta<K, T>> = Observable.create { emitter ->
+        val watcher = RangeWatcher(from, to, emitter)
+        synchronized(store) {
+            tree.subMap(from, true, to, false).values.forEach { bucket ->
+                bucket.forEach { (primaryKey, value) -> emitter.onNext(IndexDelta.Added(primaryKey, value)) }
+            }
+            watchers.add(watcher)
+        }
+        emitter.setCancellable {
+            synchronized(store) {
+                watchers.remove(watcher)
+            }
+        }
+    }
+
+    override fun onChange(key: K, old: T?, new: T?) {
+
+        val oldIndexKey = if (old != null) filedUnder.remove(key) else null
+        val newIndexKey = new?.let(indexKey)
+
+        if (oldIndexKey != null) {
+            val bucket = tree.getValue(oldIndexKey)
+            bucket.remove(key)
+            if (bucket.isEmpty()) {
+                tree.remove(oldIndexKey)
+            }
+        }
+        if (new != null && newIndexKey != null) {
+            tree.getOrPut(newIndexKey) { LinkedHashMap() }[key] = new
+            filedUnder[key] = newIndexKey
+        }
+
+        watchers.forEach { watcher ->
+            val wasIn = oldIndexKey != null && watcher.contains(oldIndexKey)
+            val isIn = newIndexKey != null && watcher.contains(newIndexKey)
+            when {
+                old != null && new != null && wasIn && isIn -> watcher.emitter.onNext(IndexDelta.Updated(key, old, new))
+                old != null && wasIn -> watcher.emitter.onNext(IndexDelta.Removed(key, old))
+                new != null && isIn -> watcher.emitter.onNext(IndexDelta.Added(key, new))
+            }
+        }
+    }
+
+    private inner class RangeWatcher(
+        private val from: I,
+        private val to: I,
+        val emitter: ObservableEmitter<IndexDelta<K, T>>
+    ) {
+        fun contains(key: I) = key >= from && key < to
+    }
+}
@@ -0,0 +1,139 @@
+package chapter3basicoperators
+
+import io.reactivex.Observable
+import io.reactivex.ObservableOperator
+import io.reactivex.ObservableSource
+import io.reactivex.Observer
+import io.reactivex.disposables.Disposable
+import io.reactivex.exceptions.Exceptions
+import io.reactivex.internal.disposables.DisposableHelper
+import io.reactivex.plugins.RxJavaPlugins
+
+/**
+ * 🔥 INFO SignalException
+ *
+ * Creating an exception calls **fillInStackTrace()** which walks the whole stack, in an Rx chain that is easily
+ * 50 frames. For a real bug that is what we want, for an **expected** failure like a missing record or an invalid
+ * input that is recovered right away nobody ever looks at it.
+ *
+ * A [SignalException] does not capture its stack trace, suppressed exceptions are not recorded either.
+ * With [SignalExceptions.debug] they are captured again, set it with **-Drx.signals.debug=true**
+ * or at runtime while looking for where a signal comes from.
+ */
+open class SignalException @JvmOverloads constructor(
+    message: String?,
+    cause: Throwable? = null
+) : RuntimeException(message, cause, false, SignalExceptions.debug)
+
+class RecordNotFoundSignal(val key: Any?) : SignalException("No record for $key")
+
+class InvalidValueSignal(val value: Any?, message: String) : SignalException(message)
+
+object SignalExceptions {
+
+    /**
+     * Only read when a signal is created, signals created before a change keep their stack trace or not
+     */
+    @JvmStatic
+    @Volatile
+    var debug: Boolean = java.lang.Boolean.getBoolean("rx.signals.debug")
+
+    private val sharedDivideByZero = InvalidValueSignal(0, "/ by zero")
+
+    /**
+     * The same preallocated instance every time, a new one with a stack trace in [debug] mode
+     */
+    @JvmStatic
+    fun divideByZero(): InvalidValueSignal = if (debug) InvalidValueSignal(0, "/ by zero") else sharedDivideByZero
+}
+
+/**
+ * Like **onErrorReturn()** but only for [SignalException]s, every other error still terminates the chain
+ */
+fun <T> Observable<T>.onSignalReturn(valueSupplier: (SignalException) -> T): Observable<T> =
+    onErrorResumeNext { error: Throwable ->
+        if (error is SignalException) Observable.just(valueSupplier(error)) else Observable.error(error)
+    }
+
+/**
+ * Like **onErrorResumeNext()** but only for [SignalException]s
+ */
+fun <T> Observable<T>.onSignalResumeNext(next: (SignalException) -> ObservableSource<out T>): Observable<T> =
+    onErrorResumeNext { error: Throwable ->
+        if (error is SignalException) next(error) else Observable.error(error)
+    }
+
+/**
+ * **onErrorReturn()** ends the stream at the first error, recovering every item means a **flatMap()** with an
+ * inner Observable for each item. This maps every item and only recovers the one whose [mapper] threw a
+ * [SignalException], [onSignal] returns the item to emit instead or null to skip it.
+ * Any other exception terminates the chain like in **map()**.
+ */
+fun <T, R> Observable<T>.mapRecovering(
+    mapper: (T) -> R,
+    onSignal: (item: T, signal: SignalException) -> R?
+): Observable<R> = lift(ObservableOperator<R, T> { downstream -> MapRecoveringObserver(downstream, mapper, onSignal) })
+
+private class MapRecoveringObserver<T, R>(
+    private val downstream: Observer<in R>,
+    private val mapper: (T) -> R,
+    private val onSignal: (T, SignalException) -> R?
+) : Observer<T>, Disposable {
+
+    private lateinit var upstream: Disposable
+
+    private var done = false
+
+    override fun onSubscribe(d: Disposable) {
+        if (DisposableHelper.validate(null, d)) {
+            upstream = d
+            downstream.onSubscribe(this)
+        }
+    }
+
+    override fun onNext(t: T) {
+
+        if (done) {
+            return
+        }
+
+        val result = try {
+            try {
+                mapper(t)
+            } catch (signal: SignalException) {
+                onSignal(t, signal)
+            }
+        } catch (ex: Throwable) {
+            Exceptions.throwIfFatal(ex)
+            upstream.dispose()
+            onError(ex)
+            return
+        }
+
+        if (result != null) {
+            downstream.onNext(result)
+        }
+    }
+
+    override fun onError(e: Throwable) {
+        if (done) {
+            RxJavaPlugins.onError(e)
+            return
+        }
+        done = true
+        downstream.onError(e)
+    }
+
+    override fun onComplete() {
+        if (!done) {
+            done = true
+            downstream.onComplete()
+        }
+    }
+
+    override fun dispose() {
+        upstream.dispose()
+    }
+
+    override fun isDisposed() = upstream.isDisposed
+}
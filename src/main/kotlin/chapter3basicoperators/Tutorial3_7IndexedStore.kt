@@ -0,0 +1,113 @@
+package chapter3basicoperators
+
+import benchmark.measure
+import io.reactivex.Observable
+import model.Person
+
+fun main() {
+
+//    testHashIndex()
+//    testSortedIndex()
+
+    // INFO Benchmark
+    testToMultimapVsHashIndex()
+}
+
+/**
+ * 🔥 INFO IndexedStore
+ *
+ * People keyed by an id, looked up by surname. **watch()** starts with the Smiths already in the store
+ * and then emits a delta for every change of a Smith, including the one who married and left the index.
+ */
+private fun testHashIndex() {
+
+    val store = IndexedStore<Int, Person>()
+    val bySurName = store.hashIndex(Person::surName)
+
+    store.put(1, Person("Jane", "Smith"))
+    store.put(2, Person("John", "Doe"))
+
+    bySurName.watch("Smith").subscribe { println("Smith delta: $it") }
+
+    store.connect(
+        Observable.just(
+            StoreChange.Put(3, Person("Anna", "Smith")),
+            StoreChange.Put(1, Person("Janet", "Smith")),
+            StoreChange.Put(3, Person("Anna", "Doe")),
+            StoreChange.Remove<Int, Person>(1)
+        )
+    )
+
+    println("Does: ${bySurName.lookup("Doe")}")
+
+    /*
+        Prints:
+        Smith delta: Added(key=1, value=Person(firstName=Jane, surName=Smith))
+        Smith delta: Added(key=3, value=Person(firstName=Anna, surName=Smith))
+        Smith delta: Updated(key=1, old=Person(firstName=Jane, surName=Smith), value=Person(firstName=Janet, surName=Smith))
+        Smith delta: Removed(key=3, value=Person(firstName=Anna, surName=Smith))
+        Smith delta: Removed(key=1, value=Person(firstName=Janet, surName=Smith))
+        Does: [Person(firstName=John, surName=Doe), Person(firstName=Anna, surName=Doe)]
+     */
+}
+
+/**
+ * A sorted index answers range queries, here the people whose first name starts with A or B
+ */
+private fun testSortedIndex() {
+
+    val store = IndexedStore<Int, Person>()
+    val byFirstName = store.sortedIndex(Person::firstName)
+
+    byFirstName.watchRange("A", "C").subscribe { println("A-B delta: $it") }
+
+    listOf("Carol", "Bob", "Alice", "Dave", "Ben").forEachIndexed { id, name -> store.put(id, Person(name, "Smith")) }
+    store.put(1, Person("Charles", "Smith"))
+
+    println("A-B: ${byFirstName.range("A", "C").map { it.firstName }}, first: ${byFirstName.first()?.firstName}")
+
+    /*
+        Prints:
+        A-B delta: Added(key=1, value=Person(firstName=Bob, surName=Smith))
+        A-B delta: Added(key=2, value=Person(firstName=Alice, surName=Smith))
+        A-B delta: Added(key=4, value=Person(firstName=Ben, surName=Smith))
+        A-B delta: Removed(key=1, value=Person(firstName=Bob, surName=Smith))
+        A-B: [Alice, Ben], first: Alice
+     */
+}
+
+/**
+ * 10,000 people arrive one by one and the surname lookup has to be up to date after each of them,
+ * once by running **toMultimap()** again and once with a [HashIndex]
+ */
+private fun testToMultimapVsHashIndex() {
+
+    val people = (0 until 10_000).map { Person("Name $it", "Surname ${it % 100}") }
+
+    measure("toMultimap() after every person", people.size.toLong(), warmupRounds = 1) {
+        val seen = ArrayList<Person>()
+        people.forEach { person ->
+            seen.add(person)
+            val bySurName = Observable.fromIterable(seen).toMultimap(Person::surName).blockingGet()
+            check(bySurName.getValue(person.surName).isNotEmpty())
+        }
+    }
+
+    measure("IndexedStore hash index", people.size.toLong()) {
+        val store = IndexedStore<Int, Person>()
+        val bySurName = store.hashIndex(Person::surName)
+        people.forEachIndexed { id, person ->
+            store.put(id, person)
+            check(bySurName.lookup(person.surName).isNotEmpty())
+        }
+    }
+
+    /*
+        Prints on a single core machine:
+        toMultimap() after every person                           6,712 ops/s   148992.4 ns/op  gc:   31 (   17 ms)  heap: 22,277 KB  alloc:  814,753 KB
+        IndexedStore hash index                                 302,520 ops/s     3305.6 ns/op  gc:    0 (    0 ms)  heap:  9,180 KB  alloc:    5,730 KB
+
+        🔥 toMultimap() gets slower with every person, the index costs the same for the first and the last one.
+        Most of its time here is copying the up to 100 people of a surname that lookup() returns.
+     */
+}
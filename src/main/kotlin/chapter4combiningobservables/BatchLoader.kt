@@ -0,0 +1,158 @@
+package chapter4combiningobservables
+
+import io.reactivex.Observable
+import io.reactivex.Scheduler
+import io.reactivex.Single
+import io.reactivex.SingleEmitter
+import io.reactivex.disposables.Disposable
+import io.reactivex.schedulers.Schedulers
+import java.util.SortedMap
+import java.util.TreeMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * 🔥 INFO BatchLoader
+ *
+ * **flatMap { getUser(it) }** makes one call for every item, N items are N round trips.
+ * [load] does not call anything right away, it collects the keys requested within [window] and loads them
+ * with one call of [batchLoad], like the **DataLoader** of GraphQL:
+ *
+ * * A batch is sent when the [window] after its first key ended or when it has [maxBatchSize] different keys
+ * * A key requested more than once in a batch is loaded once and its value goes to every caller
+ * * A key missing from the returned map fails its callers with **NoSuchElementException**,
+ * an error of [batchLoad] fails every caller of the batch
+ * * [batchSizes] counts how many keys the batches had
+ *
+ * [load] is lazy like any **Single**, the key is added when it is subscribed. A caller disposed before its batch
+ * was sent is taken out again, a key without callers is not loaded.
+ */
+class BatchLoader<K, V> @JvmOverloads constructor(
+    window: Long,
+    unit: TimeUnit,
+    private val maxBatchSize: Int = 100,
+    private val scheduler: Scheduler = Schedulers.computation(),
+    private val batchLoad: (Set<K>) -> Single<Map<K, V>>
+) {
+
+    private val windowNanos = unit.toNanos(window)
+
+    // Guarded by this
+    private var pending = LinkedHashMap<K, MutableList<SingleEmitter<V>>>()
+    private var timer: Disposable? = null
+    private val sizeCounts = LongArray(maxBatchSize + 1)
+    private var requests = 0L
+
+    init {
+        require(maxBatchSize > 0) { "maxBatchSize > 0 required but it was $maxBatchSize" }
+    }
+
+    fun load(key: K): Single<V> = Single.create { emitter ->
+
+        var full: Map<K, MutableList<SingleEmitter<V>>>? = null
+
+        synchronized(this) {
+            requests++
+            pending.getOrPut(key) { ArrayList(1) }.add(emitter)
+
+            if (pending.size >= maxBatchSize) {
+                full = takePending()
+            } else if (timer == null) {
+                timer = scheduler.scheduleDirect({ flush() }, windowNanos, TimeUnit.NANOSECONDS)
+            }
+        }
+
+        emitter.setCancellable { remove(key, emitter) }
+
+        full?.let { dispatch(it) }
+    }
+
+    /**
+     * Takes a disposed caller out of the batch that was not sent yet, after that it is a no-op
+     */
+    private fun remove(key: K, emitter: SingleEmitter<V>) {
+        synchronized(this) {
+            val emitters = pending[key] ?: return
+            if (emitters.remove(emitter) && emitters.isEmpty()) {
+                pending.remove(key)
+                if (pending.isEmpty()) {
+                    timer?.dispose()
+                    timer = null
+                }
+            }
+        }
+    }
+
+    /**
+     * Values of [keys] in the same order, all of them go into the current batch
+     */
+    fun loadMany(keys: Iterable<K>): Single<List<V>> =
+        Observable.fromIterable(keys).concatMapEager({ load(it).toObservable() }, Int.MAX_VALUE, 1).toList()
+
+    /**
+     * Sends the keys collected so far without waiting for the window to end
+     */
+    fun flush() {
+        val batch = synchronized(this) { takePending() }
+        if (batch.isNotEmpty()) {
+            dispatch(batch)
+        }
+    }
+
+    /**
+     * Number of batches for each batch size, the size counts different keys
+     */
+    fun batchSizes(): SortedMap<Int, Long> = synchronized(this) {
+        TreeMap<Int, Long>().apply {
+            sizeCounts.forEachIndexed { size, count ->
+                if (count > 0) {
+                    put(size, count)
+                }
+            }
+        }
+    }
+
+    /**
+     * Calls of [load] including the duplicates that were not sent
+     */
+    val requestCount: Long
+        get() = synchronized(this) { requests }
+
+    private fun takePending(): Map<K, MutableList<SingleEmitter<V>>> {
+        val batch = pending
+        if (batch.isEmpty()) {
+            return batch
+        }
+        pending = LinkedHashMap()
+        timer?.dispose()
+        timer = null
+        sizeCounts[batch.size]++
+        return batch
+    }
+
+    private fun dispatch(batch: Map<K, List<SingleEmitter<V>>>) {
+
+        val result = try {
+            batchLoad(batch.keys)
+        } catch (e: Throwable) {
+            Single.error<Map<K, V>>(e)
+        }
+
+        result.subscribe(
+            { values ->
+                batch.forEach { (key, emitters) ->
+                    val value = values[key]
+                    emitters.forEach {
+                        if (value != null) {
+                            it.onSuccess(value)
+                        } else {
+                            it.tryOnError(NoSuchElementException("No value for key $key"))
+                        }
+                    }
+                }
+            },
+            { error ->
+                batch.values.forEach { emitters -> emitters.forEach { it.tryOnError(error) } }
+            }
+        )
+    }
+}
@@ -0,0 +1,205 @@
+package chapter4combiningobservables
+
+import io.reactivex.Observable
+import io.reactivex.Scheduler
+import io.reactivex.schedulers.Schedulers
+import java.util.ArrayDeque
+import java.util.PriorityQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * State of [joinByKey] operators, shared by all their subscriptions
+ *
+ * * **leftEntries**, **rightEntries** and **keys** is what is held right now
+ * * **joined** counts emitted pairs and **expired** the entries dropped because they got too old
+ */
+class JoinMetrics {
+
+    internal val left = LongAdder()
+    internal val right = LongAdder()
+    internal val keyCount = LongAdder()
+    internal val joinedCount = LongAdder()
+    internal val expiredCount = LongAdder()
+
+    val leftEntries: Long
+        get() = left.sum()
+
+    val rightEntries: Long
+        get() = right.sum()
+
+    val keys: Long
+        get() = keyCount.sum()
+
+    val joined: Long
+        get() = joinedCount.sum()
+
+    val expired: Long
+        get() = expiredCount.sum()
+
+    override fun toString() =
+        "leftEntries: $leftEntries, rightEntries: $rightEntries, keys: $keys, joined: $joined, expired: $expired"
+}
+
+/**
+ * 🔥 INFO joinByKey
+ *
+ * **zip()** pairs items by position and **combineLatest()** by arrival, neither can find the item of the other
+ * stream with the same key. This emits [combiner] for every left and right item with the same key that arrived at
+ * most [within] apart, as soon as the second one of them arrives.
+ *
+ * Items wait in a hash map by key until they are older than [within], so the state only holds the items of the
+ * last [within] and not the whole streams. [metrics] shows how much it holds.
+ */
+@JvmOverloads
+fun <L, R, K, O> Observable<L>.joinByKey(
+    other: Observable<R>,
+    leftKey: (L) -> K,
+    rightKey: (R) -> K,
+    within: Long,
+    unit: TimeUnit,
+    scheduler: Scheduler = Schedulers.computation(),
+    metrics: JoinMetrics = JoinMetrics(),
+    combiner: (L, R) -> O
+): Observable<O> = joinByKeyEventTime(
+    other, leftKey, rightKey,
+    { scheduler.now(TimeUnit.MILLISECONDS) }, { scheduler.now(TimeUnit.MILLISECONDS) },
+    within, unit, metrics, combiner
+)
+
+/**
+ * [joinByKey] with the times read from the items, [leftTime] and [rightTime] in milliseconds.
+ * Entries expire when they are [within] older than the newest item of either stream, a late item with an old
+ * time expires with the next item even if newer ones arrived before it.
+ */
+@JvmOverloads
+fun <L, R, K, O> Observable<L>.joinByKeyEventTime(
+    other: Observable<R>,
+    leftKey: (L) -> K,
+    rightKey: (R) -> K,
+    leftTime: (L) -> Long,
+    rightTime: (R) -> Long,
+    within: Long,
+    unit: TimeUnit,
+    metrics: JoinMetrics = JoinMetrics(),
+    combiner: (L, R) -> O
+): Observable<O> = Observable.defer {
+
+    val state = KeyedJoinState<L, R, K, O>(unit.toMillis(within), metrics, combiner)
+
+    Observable.merge(
+        map { JoinEntry(leftKey(it), it, leftTime(it), true) },
+        other.map { JoinEntry(rightKey(it), it, rightTime(it), false) }
+    )
+        .flatMapIterable { state.onEntry(it) }
+        .doFinally { state.clear() }
+}
+
+private class JoinEntry<K>(val key: K, val value: Any?, val time: Long, val left: Boolean)
+
+/**
+ * Both sides of one key, left and right entries in arrival order
+ */
+private class KeyEntries<K> {
+    val left = ArrayDeque<JoinEntry<K>>(2)
+    val right = ArrayDeque<JoinEntry<K>>(2)
+}
+
+private class KeyedJoinState<L, R, K, O>(
+    private val within: Long,
+    private val metrics: JoinMetrics,
+    private val combiner: (L, R) -> O
+) {
+
+    private val byKey = HashMap<K, KeyEntries<K>>()
+
+    // All entries by time, the oldest expire first. Items in time order are added at the end without sifting.
+    private val arrivals = PriorityQueue<JoinEntry<K>>(compareBy { it.time })
+
+    private var newest = Long.MIN_VALUE
+
+    // Guarded by this, set by clear() which runs on the thread disposing while items may still arrive on another
+    private var cleared = false
+
+    @Synchronized
+    @Suppress("UNCHECKED_CAST")
+    fun onEntry(entry: JoinEntry<K>): List<O> {
+
+        if (cleared) {
+            return emptyList()
+        }
+
+        newest = maxOf(newest, entry.time)
+        expire()
+
+        val entries = byKey.getOrPut(entry.key) {
+            metrics.keyCount.increment()
+            KeyEntries()
+        }
+
+        val others = if (entry.left) entries.right else entries.left
+        var results: MutableList<O>? = null
+
+        for (other in others) {
+            if (Math.abs(other.time - entry.time) <= within) {
+                val result = if (entry.left) {
+                    combiner(entry.value as L, other.value as R)
+                } else {
+                    combiner(other.value as L, entry.value as R)
+                }
+                results = (results ?: ArrayList()).apply { add(result) }
+            }
+        }
+
+        if (entry.left) {
+            entries.left.add(entry)
+            metrics.left.increment()
+        } else {
+            entries.right.add(entry)
+            metrics.right.increment()
+        }
+        arrivals.add(entry)
+
+        results?.let { metrics.joinedCount.add(it.size.toLong()) }
+        return results ?: emptyList()
+    }
+
+    @Synchronized
+    fun clear() {
+        cleared = true
+        while (arrivals.isNotEmpty()) {
+            remove(arrivals.poll())
+        }
+    }
+
+    private fun expire() {
+        while (true) {
+            val oldest = arrivals.peek() ?: return
+            if (newest - oldest.time <= within) {
+                return
+            }
+            arrivals.poll()
+            remove(oldest)
+            metrics.expiredCount.increment()
+        }
+    }
+
+    private fun remove(entry: JoinEntry<K>) {
+
+        val entries = byKey[entry.key] ?: return
+
+        // Entries of a key usually arrive in time order too, so this is almost always the first one
+        if (entry.left) {
+            entries.left.removeFirstOccurrence(entry)
+            metrics.left.decrement()
+        } else {
+            entries.right.removeFirstOccurrence(entry)
+            metrics.right.decrement()
+        }
+
+        if (entries.left.isEmpty() && entries.right.isEmpty()) {
+            byKey.remove(entry.key)
+            metrics.keyCount.decrement()
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package chapter4combiningobservables
+
+import io.reactivex.Flowable
+import io.reactivex.FlowableSubscriber
+import io.reactivex.exceptions.MissingBackpressureException
+import io.reactivex.internal.queue.SpscArrayQueue
+import io.reactivex.internal.subscriptions.SubscriptionHelper
+import io.reactivex.internal.util.BackpressureHelper
+import io.reactivex.plugins.RxJavaPlugins
+import org.reactivestreams.Publisher
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * 🔥 INFO mergeSorted
+ *
+ * **merge()** emits items of time ordered feeds as they arrive, the result is not ordered anymore.
+ * **sorted()** after it fixes that but keeps every item until all sources complete.
+ *
+ * Every one of [sources] has to be sorted by [comparator] already. The next item is only emitted when every source
+ * that did not complete has one waiting, the smallest of these heads is emitted. The heads are kept in a
+ * **min-heap**, one item costs **O(log k)** for k sources.
+ *
+ * * Each source is requested at most [prefetch] items ahead, the memory is bounded by k x [prefetch]
+ * * Equal items are emitted in the order of their sources
+ * * A source that is slow to emit holds back all the others, like it has to for the global order
+ */
+@JvmOverloads
+fun <T> mergeSorted(
+    comparator: Comparator<in T>,
+    sources: List<Publisher<out T>>,
+    prefetch: Int = Flowable.bufferSize()
+): Flowable<T> = FlowableMergeSorted(sources, comparator, prefetch)
+
+fun <T> mergeSorted(comparator: Comparator<in T>, vararg sources: Publisher<out T>): Flowable<T> =
+    mergeSorted(comparator, sources.asList())
+
+class FlowableMergeSorted<T>(
+    private val sources: List<Publisher<out T>>,
+    private val comparator: Comparator<in T>,
+    private val prefetch: Int
+) : Flowable<T>() {
+
+    init {
+        require(prefetch > 0) { "prefetch > 0 required but it was $prefetch" }
+    }
+
+    override fun subscribeActual(s: Subscriber<in T>) {
+        val coordinator = MergeSortedCoordinator(s, sources.size, comparator, prefetch)
+        s.onSubscribe(coordinator)
+        coordinator.subscribe(sources)
+    }
+
+    /**
+     * The head of one source while it is in the heap, reused for every item of the source
+     */
+    private class Head<T>(val source: Int) {
+        var value: T? = null
+    }
+
+    private class MergeSortedCoordinator<T>(
+        private val downstream: Subscriber<in T>,
+        sourceCount: Int,
+        private val comparator: Comparator<in T>,
+        prefetch: Int
+    ) : Subscription {
+
+        private val subscribers = Array(sourceCount) { SourceSubscriber(this, prefetch) }
+
+        private val heads = Array(sourceCount) { Head<T>(it) }
+
+        // Binary min-heap of the heads, only accessed by the drain
+        private val heap = arrayOfNulls<Head<T>>(sourceCount)
+        private var heapSize = 0
+
+        // Sources that have no head in the heap and did not complete, all of them at the start
+        private val missingHeads = IntArray(sourceCount) { it }
+        private var missingCount = sourceCount
+
+        private val wip = AtomicInteger()
+
+        private val requested = AtomicLong()
+
+        private val error = AtomicReference<Throwable>()
+
+        @Volatile
+        private var cancelled = false
+
+        private var emitted = 0L
+
+        fun subscribe(sources: List<Publisher<out T>>) {
+            sources.forEachIndexed { index, source ->
+                if (!cancelled) {
+                    source.subscribe(subscribers[index])
+                }
+            }
+            drain()
+        }
+
+        fun onError(throwable: Throwable) {
+            if (error.compareAndSet(null, throwable)) {
+                drain()
+            } else {
+                RxJavaPlugins.onError(throwable)
+            }
+        }
+
+        override fun request(n: Long) {
+            if (SubscriptionHelper.validate(n)) {
+                BackpressureHelper.add(requested, n)
+                drain()
+            }
+        }
+
+        override fun cancel() {
+            if (!cancelled) {
+                cancelled = true
+                cancelSources()
+                if (wip.getAndIncrement() == 0) {
+                    clear()
+                }
+            }
+        }
+
+        fun drain() {
+            if (wip.getAndIncrement() != 0) {
+                return
+            }
+
+            var missed = 1
+            var e = emitted
+
+            while (true) {
+
+                val r = requested.get()
+
+                while (true) {
+                    if (cancelled) {
+                        clear()
+                        return
+                    }
+
+                    val throwable = error.get()
+                    if (throwable != null) {
+                        cancelled = true
+                        cancelSources()
+                        clear()
+                        downstream.onError(throwable)
+                        return
+                    }
+
+                    // Only the sources whose head was emitted are polled, not all k of them
+                    if (!fillHeads()) {
+                        break
+                    }
+
+                    if (heapSize == 0) {
+                        cancelled = true
+                        downstream.onComplete()
+                        return
+                    }
+
+                    if (e == r) {
+                        break
+                    }
+
+                    val smallest = heap[0]!!
+                    @Suppress("UNCHECKED_CAST")
+                    val value = smallest.value as T
+                    val subscriber = subscribers[smallest.source]
+                    val done = subscriber.done
+                    val next = subscriber.queue.poll()
+
+                    // Usually the source has its next item already, it replaces the top with one sift down
+                    if (next != null) {
+                        smallest.value = next
+                        siftDown(smallest)
+                    } else {
+                        smallest.value = null
+                        val last = heap[--heapSize]!!
+                        heap[heapSize] = null
+                        if (heapSize > 0) {
+                            siftDown(last)
+                        }
+                        if (!done) {
+                            missingHeads[missingCount++] = smallest.source
+                        }
+                    }
+                    subscriber.consumed()
+
+                    downstream.onNext(value)
+                    e++
+                }
+
+                emitted = e
+                missed = wip.addAndGet(-missed)
+                if (missed == 0) {
+                    return
+                }
+            }
+        }
+
+        /**
+         * Moves the next item of every source without a head into the heap.
+         * False if a source that did not complete has nothing to offer yet.
+         */
+        private fun fillHeads(): Boolean {
+
+            var index = 0
+            while (index < missingCount) {
+                val source = missingHeads[index]
+                val subscriber = subscribers[source]
+                // Read before the queue, a completed source has offered all its items already
+                val done = subscriber.done
+                val value = subscriber.queue.poll()
+
+                if (value != null) {
+                    heads[source].value = value
+                    siftUp(heads[source])
+                } else if (!done) {
+                    index++
+                    continue
+                }
+                missingHeads[index] = missingHeads[--missingCount]
+            }
+            return missingCount == 0
+        }
+
+        private fun siftUp(head: Head<T>) {
+            var index = heapSize++
+            while (index > 0) {
+                val parent = (index - 1) shr 1
+                val parentHead = heap[parent]!!
+                if (less(parentHead, head)) {
+                    break
+                }
+                heap[index] = parentHead
+                index = parent
+            }
+            heap[index] = head
+        }
+
+        /**
+         * Places [head] at the top and moves it down to where it belongs
+         */
+        private fun siftDown(head: Head<T>) {
+            var index = 0
+            val half = heapSize shr 1
+            while (index < half) {
+                var child = (index shl 1) + 1
+                var childHead = heap[child]!!
+                val right = child + 1
+                if (right < heapSize && less(heap[right]!!, childHead)) {
+                    child = right
+                    childHead = heap[right]!!
+                }
+                if (less(head, childHead)) {
+                    break
+                }
+                heap[index] = childHead
+                index = child
+            }
+            heap[index] = head
+        }
+
+        // Equal values are ordered by their source
+        @Suppress("UNCHECKED_CAST")
+        private fun less(a: Head<T>, b: Head<T>): Boolean {
+            val result = comparator.compare(a.value as T, b.value as T)
+            return if (result != 0) result < 0 else a.source < b.source
+        }
+
+        private fun cancelSources() {
+            subscribers.forEach { it.cancel() }
+        }
+
+        private fun clear() {
+            subscribers.forEach { it.queue.clear() }
+            for (index in 0 until heapSize) {
+                heap[index]!!.value = null
+                heap[index] = null
+            }
+            heapSize = 0
+        }
+    }
+
+    private class SourceSubscriber<T>(
+        private val parent: MergeSortedCoordinator<T>,
+        private val prefetch: Int
+    ) : AtomicReference<Subscription>(), FlowableSubscriber<T> {
+
+        val queue = SpscArrayQueue<T>(prefetch)
+
+        @Volatile
+        var done = false
+
+        // Requests more once three quarters of the prefetch were consumed, only accessed by the drain
+        private val limit = prefetch - (prefetch shr 2)
+        private var consumed = 0
+
+        override fun onSubscribe(s: Subscription) {
+            if (SubscriptionHelper.setOnce(this, s)) {
+                s.request(prefetch.toLong())
+            }
+        }
+
+        override fun onNext(t: T) {
+            if (!queue.offer(t)) {
+                onError(MissingBackpressureException("Queue is full?!"))
+                return
+            }
+            parent.drain()
+        }
+
+        override fun onError(t: Throwable) {
+            parent.onError(t)
+        }
+
+        override fun onComplete() {
+            done = true
+            parent.drain()
+        }
+
+        fun consumed() {
+            if (++consumed == limit) {
+                consumed = 0
+                get().request(limit.toLong())
+            }
+        }
+
+        fun cancel() {
+            SubscriptionHelper.cancel(this)
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package chapter4combiningobservables
+
+import chapter10testinganddebugging.LatencyHistogram
+import io.reactivex.Observable
+import io.reactivex.ObservableSource
+import io.reactivex.Observer
+import io.reactivex.Scheduler
+import io.reactivex.disposables.Disposable
+import io.reactivex.internal.disposables.DisposableHelper
+import io.reactivex.internal.queue.SpscLinkedArrayQueue
+import io.reactivex.plugins.RxJavaPlugins
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * 🔥 INFO mergeByPriority
+ *
+ * **merge()** emits items in the order they arrive, a flood of bulk items delays the few important items behind it.
+ * Here every one of [lanes] has its own queue and **lane 0 has the highest priority**. Every time the consumer on
+ * [scheduler] is ready for the next item it takes it from the highest lane that has one waiting.
+ *
+ * * Without [weights] a lane only gets its turn when every higher lane is empty, a busy high lane starves the others
+ * * With [weights] a lane emits at most **weights[lane]** items in a row while lower lanes are waiting, then the
+ * lower lanes get theirs. **8, 1** gives a flooded lane 1 at least every 9th item.
+ * * [metrics] records how many items each lane emitted and how long they waited in its queue
+ *
+ * Like **observeOn()** an error is delivered right away, the items still waiting are dropped.
+ */
+@JvmOverloads
+fun <T> mergeByPriority(
+    lanes: List<ObservableSource<out T>>,
+    scheduler: Scheduler,
+    weights: IntArray? = null,
+    metrics: PriorityMergeMetrics = PriorityMergeMetrics(lanes.size)
+): Observable<T> = ObservablePriorityMerge(lanes, scheduler, weights, metrics)
+
+/**
+ * Metrics of every lane of [mergeByPriority], shared by all its subscriptions
+ */
+class PriorityMergeMetrics(laneCount: Int) {
+
+    val lanes: List<LaneMetrics> = List(laneCount) { LaneMetrics() }
+
+    override fun toString() = lanes.withIndex().joinToString("\n") { (lane, metrics) -> "lane $lane: $metrics" }
+}
+
+/**
+ * * **emitted** items of this lane sent downstream and **waiting** the ones in its queue right now
+ * * [waitPercentileNanos] is how long the items waited in the queue before they were emitted
+ */
+class LaneMetrics {
+
+    internal val enqueued = LongAdder()
+    internal val emittedCount = LongAdder()
+
+    // Guarded by this, written by the draining thread
+    private val waits = LatencyHistogram()
+
+    val emitted: Long
+        get() = emittedCount.sum()
+
+    val waiting: Long
+        get() = enqueued.sum() - emitted
+
+    internal fun onEmitted(waitNanos: Long) {
+        synchronized(this) { waits.record(waitNanos) }
+        emittedCount.increment()
+    }
+
+    fun waitPercentileNanos(percentile: Double): Long = synchronized(this) { waits.percentileNanos(percentile) }
+
+    val maxWaitNanos: Long
+        get() = synchronized(this) { waits.maxNanos }
+
+    override fun toString() =
+        "emitted: $emitted, waiting: $waiting, wait p50: ${waitPercentileNanos(50.0) / 1000} µs, " +
+                "p99: ${waitPercentileNanos(99.0) / 1000} µs, max: ${maxWaitNanos / 1000} µs"
+}
+
+class ObservablePriorityMerge<T>(
+    private val lanes: List<ObservableSource<out T>>,
+    private val scheduler: Scheduler,
+    private val weights: IntArray?,
+    private val metrics: PriorityMergeMetrics
+) : Observable<T>() {
+
+    init {
+        require(lanes.isNotEmpty()) { "at least one lane required" }
+        require(metrics.lanes.size == lanes.size) {
+            "metrics for ${lanes.size} lanes required but it has ${metrics.lanes.size}"
+        }
+        if (weights != null) {
+            require(weights.size == lanes.size) { "a weight for each of ${lanes.size} lanes required but got ${weights.size}" }
+            require(weights.all { it > 0 }) { "weights > 0 required but they were ${weights.contentToString()}" }
+        }
+    }
+
+    override fun subscribeActual(observer: Observer<in T>) {
+        val coordinator = PriorityMergeCoordinator(observer, lanes.size, scheduler.createWorker(), weights, metrics)
+        observer.onSubscribe(coordinator)
+        coordinator.subscribe(lanes)
+    }
+
+    private class PriorityMergeCoordinator<T>(
+        private val downstream: Observer<in T>,
+        private val laneCount: Int,
+        private val worker: Scheduler.Worker,
+        private val weights: IntArray?,
+        private val metrics: PriorityMergeMetrics
+    ) : Disposable, Runnable {
+
+        // Every item is offered together with the System.nanoTime() it arrived at
+        private val queues = Array(laneCount) { SpscLinkedArrayQueue<Any>(Observable.bufferSize()) }
+
+        private val observers = Array(laneCount) { LaneObserver(this, it) }
+
+        private val wip = AtomicInteger()
+
+        private val completedLanes = AtomicInteger()
+
+        private val error = AtomicReference<Throwable>()
+
+        @Volatile
+        private var cancelled = false
+
+        // Only accessed by the drain thread
+        private val credits = weights?.copyOf()
+
+        fun subscribe(lanes: List<ObservableSource<out T>>) {
+            lanes.forEachIndexed { lane, source ->
+                if (!cancelled) {
+                    source.subscribe(observers[lane])
+                }
+            }
+        }
+
+        fun onNext(lane: Int, value: T) {
+            queues[lane].offer(System.nanoTime(), value as Any)
+            metrics.lanes[lane].enqueued.increment()
+            schedule()
+        }
+
+        fun onError(throwable: Throwable) {
+            if (error.compareAndSet(null, throwable)) {
+                schedule()
+            } else {
+                RxJavaPlugins.onError(throwable)
+            }
+        }
+
+        fun onComplete() {
+            completedLanes.incrementAndGet()
+            schedule()
+        }
+
+        override fun dispose() {
+            if (!cancelled) {
+                cancelled = true
+                disposeLanes()
+                worker.dispose()
+                if (wip.getAndIncrement() == 0) {
+                    clear()
+                }
+            }
+        }
+
+        override fun isDisposed() = cancelled
+
+        private fun schedule() {
+            if (wip.getAndIncrement() == 0) {
+                worker.schedule(this)
+            }
+        }
+
+        override fun run() {
+
+            var missed = 1
+
+            while (true) {
+
+                while (true) {
+                    if (cancelled) {
+                        clear()
+                        return
+                    }
+
+                    val throwable = error.get()
+                    if (throwable != null) {
+                        cancelled = true
+                        disposeLanes()
+                        clear()
+                        downstream.onError(throwable)
+                        worker.dispose()
+                        return
+                    }
+
+                    // Read before the queues, a completed lane has offered all its items already
+                    val done = completedLanes.get() == laneCount
+                    val lane = nextLane()
+
+                    if (lane < 0) {
+                        if (done) {
+                            cancelled = true
+                            downstream.onComplete()
+                            worker.dispose()
+                            return
+                        }
+                        break
+                    }
+
+                    val queue = queues[lane]
+                    val arrivedAt = queue.poll() as Long
+                    @Suppress("UNCHECKED_CAST")
+                    val value = queue.poll() as T
+
+                    metrics.lanes[lane].onEmitted(System.nanoTime() - arrivedAt)
+                    downstream.onNext(value)
+                }
+
+                missed = wip.addAndGet(-missed)
+                if (missed == 0) {
+                    return
+                }
+            }
+        }
+
+        /**
+         * The highest lane with a waiting item, with [weights] the highest one that also has credit left.
+         * Credits are refilled once every waiting lane used up its credit.
+         */
+        private fun nextLane(): Int {
+
+            val credits = credits ?: return queues.indexOfFirst { !it.isEmpty }
+
+            repeat(2) {
+                var waiting = false
+                for (lane in 0 until laneCount) {
+                    if (!queues[lane].isEmpty) {
+                        if (credits[lane] > 0) {
+                            credits[lane]--
+                            return lane
+                        }
+                        waiting = true
+                    }
+                }
+                if (!waiting) {
+                    return -1
+                }
+                weights!!.copyInto(credits)
+            }
+            return -1
+        }
+
+        private fun disposeLanes() {
+            observers.forEach { it.dispose() }
+        }
+
+        private fun clear() {
+            queues.forEach { it.clear() }
+        }
+    }
+
+    private class LaneObserver<T>(
+        private val parent: PriorityMergeCoordinator<T>,
+        private val lane: Int
+    ) : AtomicReference<Disposable>(), Observer<T>, Disposable {
+
+        override fun onSubscribe(d: Disposable) {
+            DisposableHelper.setOnce(this, d)
+        }
+
+        override fun onNext(t: T) {
+            parent.onNext(lane, t)
+        }
+
+        override fun onError(e: Throwable) {
+            parent.onError(e)
+        }
+
+        override fun onComplete() {
+            parent.onComplete()
+        }
+
+        override fun dispose() {
+            DisposableHelper.dispose(this)
+        }
+
+        override fun isDisposed() = DisposableHelper.isDisposed(get())
+    }
+}
@@ -0,0 +1,230 @@
+package chapter4combiningobservables
+
+import chapter2observables.StripedCompositeDisposable
+import io.reactivex.Observable
+import io.reactivex.ObservableSource
+import io.reactivex.Observer
+import io.reactivex.disposables.Disposable
+import io.reactivex.exceptions.Exceptions
+import io.reactivex.internal.disposables.DisposableHelper
+import io.reactivex.internal.queue.MpscLinkedQueue
+import io.reactivex.plugins.RxJavaPlugins
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * 🔥 INFO flatMapScalable
+ *
+ * **flatMap()** keeps its inner observers in an array that is **copied** every time an inner source is added or
+ * completes, with n live inner sources that is O(n) for each of them. Each inner also gets its own queue when
+ * it can not emit right away, and the drain loop walks all of them.
+ *
+ * This version is for many long lived inner sources, like one stream per device:
+ * * The inner observers are kept in a [StripedCompositeDisposable], adding and removing one is **O(1)**
+ * * Items that can not be emitted right away go to **one shared MPSC queue** and not to a queue per inner
+ *
+ * There is no **maxConcurrency**, every inner source is subscribed right away. Like **flatMap()** the first error
+ * is delivered right away and disposes everything else.
+ */
+fun <T, R> Observable<T>.flatMapScalable(mapper: (T) -> ObservableSource<out R>): Observable<R> =
+    ObservableFlatMapScalable(this, mapper)
+
+fun <T> mergeScalable(sources: ObservableSource<out ObservableSource<out T>>): Observable<T> =
+    ObservableFlatMapScalable(sources) { it }
+
+class ObservableFlatMapScalable<T, R>(
+    private val source: ObservableSource<out T>,
+    private val mapper: (T) -> ObservableSource<out R>
+) : Observable<R>() {
+
+    override fun subscribeActual(observer: Observer<in R>) {
+        source.subscribe(MergeScalableObserver(observer, mapper))
+    }
+
+    private class MergeScalableObserver<T, R>(
+        private val downstream: Observer<in R>,
+        private val mapper: (T) -> ObservableSource<out R>
+    ) : Observer<T>, Disposable {
+
+        private val inners = StripedCompositeDisposable()
+
+        private val queue = MpscLinkedQueue<R>()
+
+        private val wip = AtomicInteger()
+
+        // The upstream counts as one, every inner source that did not terminate as one more
+        private val active = AtomicInteger(1)
+
+        private val error = AtomicReference<Throwable>()
+
+        private lateinit var upstream: Disposable
+
+        @Volatile
+        private var cancelled = false
+
+        override fun onSubscribe(d: Disposable) {
+            if (DisposableHelper.validate(null, d)) {
+                upstream = d
+                downstream.onSubscribe(this)
+            }
+        }
+
+        override fun onNext(t: T) {
+
+            val inner = try {
+                mapper(t)
+            } catch (ex: Throwable) {
+                Exceptions.throwIfFatal(ex)
+                upstream.dispose()
+                onError(ex)
+                return
+            }
+
+            val observer = InnerObserver(this)
+            if (inners.add(observer)) {
+                active.incrementAndGet()
+                inner.subscribe(observer)
+            }
+        }
+
+        override fun onError(e: Throwable) {
+            innerError(e)
+        }
+
+        override fun onComplete() {
+            terminated()
+        }
+
+        fun innerNext(value: R) {
+            if (cancelled) {
+                return
+            }
+            // Fast path, nobody else is emitting and nothing is queued
+            if (wip.get() == 0 && wip.compareAndSet(0, 1)) {
+                downstream.onNext(value)
+                if (wip.decrementAndGet() == 0) {
+                    return
+                }
+            } else {
+                queue.offer(value)
+                if (wip.getAndIncrement() != 0) {
+                    return
+                }
+            }
+            drainLoop()
+        }
+
+        fun innerError(e: Throwable) {
+            if (error.compareAndSet(null, e)) {
+                drain()
+            } else {
+                RxJavaPlugins.onError(e)
+            }
+        }
+
+        fun innerComplete(inner: InnerObserver<R>) {
+            inners.delete(inner)
+            terminated()
+        }
+
+        private fun terminated() {
+            if (active.decrementAndGet() == 0) {
+                drain()
+            }
+        }
+
+        override fun dispose() {
+            if (!cancelled) {
+                cancelled = true
+                disposeAll()
+                if (wip.getAndIncrement() == 0) {
+                    queue.clear()
+                }
+            }
+        }
+
+        override fun isDisposed() = cancelled
+
+        private fun drain() {
+            if (wip.getAndIncrement() == 0) {
+                drainLoop()
+            }
+        }
+
+        private fun drainLoop() {
+
+            var missed = 1
+
+            while (true) {
+
+                while (true) {
+                    if (cancelled) {
+                        queue.clear()
+                        return
+                    }
+
+                    val throwable = error.get()
+                    if (throwable != null) {
+                        cancelled = true
+                        disposeAll()
+                        queue.clear()
+                        downstream.onError(throwable)
+                        return
+                    }
+
+                    // Read before the queue, a terminated inner source has offered all its items already
+                    val done = active.get() == 0
+                    val value = queue.poll()
+
+                    if (value == null) {
+                        if (done) {
+                            cancelled = true
+                            downstream.onComplete()
+                            return
+                        }
+                        break
+                    }
+
+                    downstream.onNext(value)
+                }
+
+                missed = wip.addAndGet(-missed)
+                if (missed == 0) {
+                    return
+                }
+            }
+        }
+
+        private fun disposeAll() {
+            upstream.dispose()
+            inners.dispose()
+        }
+    }
+
+    private class InnerObserver<R>(
+        private val parent: MergeScalableObserver<*, R>
+    ) : AtomicReference<Disposable>(), Observer<R>, Disposable {
+
+        override fun onSubscribe(d: Disposable) {
+            DisposableHelper.setOnce(this, d)
+        }
+
+        override fun onNext(t: R) {
+            parent.innerNext(t)
+        }
+
+        override fun onError(e: Throwable) {
+            parent.innerError(e)
+        }
+
+        override fun onComplete() {
+            parent.innerComplete(this)
+        }
+
+        override fun dispose() {
+            DisposableHelper.dispose(this)
+        }
+
+        override fun isDisposed() = DisposableHelper.isDisposed(get())
+    }
+}
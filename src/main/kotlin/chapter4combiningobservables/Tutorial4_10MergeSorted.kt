@@ -0,0 +1,103 @@
+package chapter4combiningobservables
+
+import benchmark.measure
+import io.reactivex.Flowable
+import java.util.concurrent.TimeUnit
+
+fun main() {
+
+//    testMergeVsMergeSorted()
+//    testMergeSortedWithInterval()
+
+    // INFO Benchmark
+    testSortedVsMergeSorted()
+}
+
+private data class Trade(val time: Long, val exchange: String)
+
+/**
+ * 🔥 INFO mergeSorted
+ *
+ * Three exchanges send their trades ordered by time. **merge()** emits one feed after the other because they
+ * are synchronous, [mergeSorted] emits all trades ordered by time.
+ */
+private fun testMergeVsMergeSorted() {
+
+    val london = Flowable.just(Trade(1, "LSE"), Trade(4, "LSE"), Trade(9, "LSE"))
+    val newYork = Flowable.just(Trade(2, "NYSE"), Trade(3, "NYSE"), Trade(10, "NYSE"))
+    val tokyo = Flowable.just(Trade(4, "TSE"), Trade(5, "TSE"))
+
+    Flowable.merge(london, newYork, tokyo)
+        .map { "${it.time} ${it.exchange}" }
+        .toList()
+        .subscribe { list -> println("merge():       $list") }
+
+    mergeSorted(compareBy<Trade> { it.time }, london, newYork, tokyo)
+        .map { "${it.time} ${it.exchange}" }
+        .toList()
+        .subscribe { list -> println("mergeSorted(): $list") }
+
+    /*
+        Prints:
+        merge():       [1 LSE, 4 LSE, 9 LSE, 2 NYSE, 3 NYSE, 10 NYSE, 4 TSE, 5 TSE]
+        mergeSorted(): [1 LSE, 2 NYSE, 3 NYSE, 4 LSE, 4 TSE, 5 TSE, 9 LSE, 10 NYSE]
+
+        🔥 The trades at 4 are emitted in the order of their sources
+     */
+}
+
+/**
+ * Sources with an interval emit the multiples of 3 and of 5 ms, the one that is ahead waits for the other
+ */
+private fun testMergeSortedWithInterval() {
+
+    val threes = Flowable.interval(3, TimeUnit.MILLISECONDS).map { (it + 1) * 3 }.take(5)
+    val fives = Flowable.interval(5, TimeUnit.MILLISECONDS).map { (it + 1) * 5 }.take(3)
+
+    mergeSorted(naturalOrder(), threes, fives)
+        .blockingSubscribe { print("$it ") }
+
+    /*
+        Prints:
+        3 5 6 9 10 12 15 15
+     */
+}
+
+/**
+ * 1 million numbers in 10 and in 1,000 sorted sources. Once sorted with **merge()** and **sorted()** that
+ * keeps everything until all sources completed and once with [mergeSorted] that only keeps the heads
+ * and the prefetched items.
+ */
+private fun testSortedVsMergeSorted() {
+
+    val count = 1_000_000
+
+    for (k in listOf(10, 1_000)) {
+
+        // Source i emits i, i + k, i + 2k ...
+        val sources = (0 until k).map { source -> Flowable.range(0, count / k).map { it * k + source } }
+
+        measure("merge() + sorted() k = $k", count.toLong()) {
+            Flowable.merge(sources, k)
+                .sorted()
+                .blockingSubscribe()
+        }
+
+        measure("mergeSorted() k = $k", count.toLong()) {
+            mergeSorted(naturalOrder(), sources, prefetch = 32)
+                .blockingSubscribe()
+        }
+    }
+
+    /*
+        Prints on a single core machine:
+        merge() + sorted() k = 10                             8,182,409 ops/s      122.2 ns/op  gc:    2 (   33 ms)  heap: 25,194 KB  alloc:   49,061 KB
+        mergeSorted() k = 10                                 15,850,564 ops/s       63.1 ns/op  gc:    1 (    1 ms)  heap:  7,211 KB  alloc:   31,232 KB
+        merge() + sorted() k = 1000                          10,406,423 ops/s       96.1 ns/op  gc:    1 (   14 ms)  heap: 37,890 KB  alloc:   47,750 KB
+        mergeSorted() k = 1000                                3,029,519 ops/s      330.1 ns/op  gc:    1 (    1 ms)  heap:  6,341 KB  alloc:   29,631 KB
+
+        🔥 sorted() emits nothing before the last source completed and holds all 1 million items.
+        mergeSorted() emits right away and holds at most 32 items of each source. With 1,000 sources that take
+        turns every item sifts through the 10 levels of the heap, sorting all at once is faster if it fits in memory.
+     */
+}
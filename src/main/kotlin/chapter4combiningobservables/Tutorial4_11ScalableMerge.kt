@@ -0,0 +1,90 @@
+package chapter4combiningobservables
+
+import benchmark.measure
+import io.reactivex.Observable
+import io.reactivex.ObservableSource
+import io.reactivex.subjects.PublishSubject
+import java.util.concurrent.TimeUnit
+
+fun main() {
+
+//    testFlatMapScalable()
+
+    // INFO Benchmark
+    testFlatMapVsFlatMapScalable()
+}
+
+/**
+ * 🔥 INFO flatMapScalable
+ *
+ * Every device has its own stream of readings, all of them are merged into one
+ */
+private fun testFlatMapScalable() {
+
+    Observable.just("thermostat", "door", "camera")
+        .flatMapScalable { device ->
+            Observable.interval(100, TimeUnit.MILLISECONDS)
+                .take(2)
+                .map { "$device reading $it" }
+        }
+        .blockingSubscribe { println(it) }
+
+    /*
+        Prints:
+        thermostat reading 0
+        door reading 0
+        camera reading 0
+        thermostat reading 1
+        door reading 1
+        camera reading 1
+     */
+}
+
+/**
+ * n devices subscribe, each sends 10 readings and then they complete one after the other.
+ * The devices are subjects so they stay subscribed until they complete, like long lived device streams.
+ */
+private fun testFlatMapVsFlatMapScalable() {
+
+    fun run(devices: Int, merge: (Observable<PublishSubject<Int>>) -> Observable<Int>) {
+
+        val subjects = List(devices) { PublishSubject.create<Int>() }
+        val observer = merge(Observable.fromIterable(subjects)).test()
+
+        repeat(10) { reading ->
+            subjects.forEach { it.onNext(reading) }
+        }
+        subjects.forEach { it.onComplete() }
+
+        observer.assertValueCount(devices * 10).assertComplete()
+    }
+
+    for (devices in listOf(10, 1_000, 10_000, 100_000)) {
+
+        // 100,000 devices with flatMap() take more than a minute, once is enough
+        val warmupRounds = if (devices > 10_000) 0 else 2
+
+        measure("flatMap() $devices devices", devices * 11L, warmupRounds) {
+            run(devices) { sources -> sources.flatMap { it } }
+        }
+
+        measure("flatMapScalable() $devices devices", devices * 11L, warmupRounds) {
+            run(devices) { sources -> sources.flatMapScalable<PublishSubject<Int>, Int> { it } }
+        }
+    }
+
+    /*
+        Prints on a single core machine:
+        flatMap() 10 devices                                     53,843 ops/s    18572.5 ns/op  gc:    0 (    0 ms)  heap:  2,598 KB  alloc:        4 KB
+        flatMapScalable() 10 devices                            177,747 ops/s     5626.0 ns/op  gc:    0 (    0 ms)  heap:  2,137 KB  alloc:        4 KB
+        flatMap() 1000 devices                                  614,967 ops/s     1626.1 ns/op  gc:    0 (    0 ms)  heap:  6,279 KB  alloc:    4,236 KB
+        flatMapScalable() 1000 devices                        6,168,001 ops/s      162.1 ns/op  gc:    0 (    0 ms)  heap:  2,133 KB  alloc:      296 KB
+        flatMap() 10000 devices                                 163,765 ops/s     6106.3 ns/op  gc:   15 (   19 ms)  heap: 14,389 KB  alloc:  393,517 KB
+        flatMapScalable() 10000 devices                       9,811,257 ops/s      101.9 ns/op  gc:    0 (    0 ms)  heap:  6,458 KB  alloc:    2,513 KB
+        flatMap() 100000 devices                                 13,840 ops/s    72255.0 ns/op  gc: 1535 (  599 ms)  heap: 37,777 KB  alloc: 39,093,152 KB
+        flatMapScalable() 100000 devices                      4,813,121 ops/s      207.8 ns/op  gc:    1 (   40 ms)  heap: 22,396 KB  alloc:   27,623 KB
+
+        🔥 flatMap() copies the array of inner observers for every device that subscribes and completes,
+        100,000 devices allocate 39 GB of arrays. flatMapScalable() costs about the same for every device count.
+     */
+}
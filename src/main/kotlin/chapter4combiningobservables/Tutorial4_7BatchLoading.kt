@@ -0,0 +1,99 @@
+package chapter4combiningobservables
+
+import io.reactivex.Observable
+import io.reactivex.Single
+import io.reactivex.functions.BiFunction
+import model.Person
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+fun main() {
+
+//    testBatchLoaderWithZipAndFlatMap()
+
+    // INFO Benchmark
+    testFlatMapVsBatchLoader()
+}
+
+/**
+ * 🔥 INFO BatchLoader
+ *
+ * **testZipOperatorAndFlatMap()** of **Tutorial4_4Zipping** with a [BatchLoader], the five people are loaded with
+ * one call of **getUsers()** instead of five calls of **getUser()**
+ */
+private fun testBatchLoaderWithZipAndFlatMap() {
+
+    val loader = BatchLoader(10, TimeUnit.MILLISECONDS) { names: Set<String> -> getUsers(names) }
+
+    Observable.zip(
+        Observable.just("Alpha", "Beta", "Gamma", "Delta", "Epsilon"),
+        Observable.range(1, 6),
+        BiFunction { str: String, integer: Int -> "$str-$integer" }
+    )
+        .concatMapEager { loader.load(it).toObservable() }
+        .blockingSubscribe {
+            println("🚙zip() onNext() $it")
+        }
+
+    println("Batch sizes: ${loader.batchSizes()}")
+
+    /*
+        Prints:
+        getUsers() [Alpha-1, Beta-2, Gamma-3, Delta-4, Epsilon-5]
+        🚙zip() onNext() Person(firstName=Alpha-1, surName=Alpha-1)
+        🚙zip() onNext() Person(firstName=Beta-2, surName=Beta-2)
+        🚙zip() onNext() Person(firstName=Gamma-3, surName=Gamma-3)
+        🚙zip() onNext() Person(firstName=Delta-4, surName=Delta-4)
+        🚙zip() onNext() Person(firstName=Epsilon-5, surName=Epsilon-5)
+        Batch sizes: {5=1}
+     */
+}
+
+/**
+ * 2,000 lookups of 500 different people, every call to the service takes 20 ms however many people it returns
+ */
+private fun testFlatMapVsBatchLoader() {
+
+    val names = (0 until 2_000).map { "Person ${it % 500}" }
+    val calls = AtomicInteger()
+
+    fun getUser(name: String): Single<Person> = Single.timer(20, TimeUnit.MILLISECONDS)
+        .doOnSubscribe { calls.incrementAndGet() }
+        .map { Person(name, name) }
+
+    fun getUsers(names: Set<String>): Single<Map<String, Person>> = Single.timer(20, TimeUnit.MILLISECONDS)
+        .doOnSubscribe { calls.incrementAndGet() }
+        .map { names.associateWith { Person(it, it) } }
+
+    var start = System.nanoTime()
+    var count = Observable.fromIterable(names)
+        .flatMap({ getUser(it).toObservable() }, 16)
+        .count()
+        .blockingGet()
+    println("flatMap:     $count people, ${calls.getAndSet(0)} calls in ${TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)} ms")
+
+    val loader = BatchLoader(5, TimeUnit.MILLISECONDS, maxBatchSize = 100) { keys: Set<String> -> getUsers(keys) }
+
+    start = System.nanoTime()
+    count = Observable.fromIterable(names)
+        .flatMapSingle { loader.load(it) }
+        .count()
+        .blockingGet()
+    println("BatchLoader: $count people, ${calls.getAndSet(0)} calls in ${TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)} ms")
+    println("Batch sizes: ${loader.batchSizes()}, requests: ${loader.requestCount}")
+
+    /*
+        Prints on a single core machine:
+        flatMap:     2000 people, 2000 calls in 2772 ms
+        BatchLoader: 2000 people, 22 calls in 71 ms
+        Batch sizes: {3=1, 43=1, 54=1, 100=19}, requests: 2000
+
+        🔥 Most batches are sent because they reached 100 keys, a few because their window ended
+     */
+}
+
+private fun getUsers(names: Set<String>): Single<Map<String, Person>> {
+    println("getUsers() $names")
+    return Single.timer(200, TimeUnit.MILLISECONDS)
+        .map { names.associateWith { Person(it, it) } }
+}
@@ -0,0 +1,155 @@
+package chapter4combiningobservables
+
+import benchmark.measure
+import io.reactivex.Observable
+import io.reactivex.Single
+import io.reactivex.functions.BiFunction
+import io.reactivex.subjects.PublishSubject
+import java.util.concurrent.TimeUnit
+
+fun main() {
+
+//    testJoinByKeyEventTime()
+//    testJoinByKeyProcessingTime()
+
+    // INFO Benchmark
+    testMapsVsJoinByKey()
+}
+
+private data class Order(val id: Int, val time: Long, val item: String)
+
+private data class Payment(val orderId: Int, val time: Long, val amount: Int)
+
+/**
+ * 🔥 INFO joinByKey
+ *
+ * Orders and payments come from two streams in any order, a payment belongs to an order with the same id
+ * if it came at most 5 seconds before or after it. Order 3 is paid too late and order 4 never.
+ *
+ * **just()** emits everything at once, so all orders arrive before the first payment.
+ */
+private fun testJoinByKeyEventTime() {
+
+    val orders = Observable.just(
+        Order(1, 1_000, "Book"), Order(2, 2_000, "Pen"), Order(3, 3_000, "Lamp"), Order(4, 4_000, "Desk")
+    )
+    val payments = Observable.just(
+        Payment(2, 2_500, 3), Payment(1, 4_000, 20), Payment(3, 9_000, 40)
+    )
+
+    val metrics = JoinMetrics()
+
+    orders.joinByKeyEventTime(
+        payments,
+        leftKey = { it.id }, rightKey = { it.orderId },
+        leftTime = { it.time }, rightTime = { it.time },
+        within = 5, unit = TimeUnit.SECONDS,
+        metrics = metrics
+    ) { order, payment -> "${order.item} paid ${payment.amount}" }
+        .subscribe(
+            { println(it) },
+            { println("onError() $it") },
+            { println("onComplete() $metrics") }
+        )
+
+    /*
+        Prints:
+        Pen paid 3
+        Book paid 20
+        onComplete() leftEntries: 1, rightEntries: 3, keys: 4, joined: 2, expired: 3
+
+        🔥 The payment at 9000 expired the orders up to 3000, the rest is released when the join completes
+     */
+}
+
+/**
+ * Join by arrival time, every 100 ms a left item and every 150 ms a right item, the same key every 3 items
+ */
+private fun testJoinByKeyProcessingTime() {
+
+    val metrics = JoinMetrics()
+
+    Observable.interval(100, TimeUnit.MILLISECONDS).take(9)
+        .joinByKey(
+            Observable.interval(150, TimeUnit.MILLISECONDS).take(6),
+            leftKey = { it % 3 }, rightKey = { it % 3 },
+            within = 100, unit = TimeUnit.MILLISECONDS,
+            metrics = metrics
+        ) { left, right -> "left $left + right $right" }
+        .blockingSubscribe { println("$it, $metrics") }
+
+    /*
+        Prints:
+        left 0 + right 0, leftEntries: 1, rightEntries: 1, keys: 1, joined: 1, expired: 0
+        left 6 + right 3, leftEntries: 2, rightEntries: 1, keys: 2, joined: 2, expired: 8
+        left 7 + right 4, leftEntries: 2, rightEntries: 1, keys: 2, joined: 3, expired: 10
+        left 8 + right 5, leftEntries: 1, rightEntries: 1, keys: 1, joined: 4, expired: 13
+     */
+}
+
+/**
+ * 200,000 orders and payments with 1,000 different ids arriving one after the other, each payment 5 ms after its
+ * order. Once by collecting both streams into maps with **toMultimap()** and once with [joinByKeyEventTime].
+ */
+private fun testMapsVsJoinByKey() {
+
+    val count = 200_000
+
+    // Subjects so orders and payments alternate, two synchronous sources would be merged one after the other
+    fun emitAll(orders: PublishSubject<Order>, payments: PublishSubject<Payment>) {
+        for (i in 0 until count) {
+            orders.onNext(Order(i % 1_000, i.toLong(), ""))
+            payments.onNext(Payment(i % 1_000, i + 5L, 0))
+        }
+        orders.onComplete()
+        payments.onComplete()
+    }
+
+    measure("toMultimap() both", count * 2L) {
+        val orders = PublishSubject.create<Order>()
+        val payments = PublishSubject.create<Payment>()
+        val joined = Single.zip(
+            orders.toMultimap { it.id },
+            payments.toMultimap { it.orderId },
+            BiFunction { ordersById: Map<Int, Collection<Order>>, paymentsById: Map<Int, Collection<Payment>> ->
+                ordersById.entries.sumBy { (id, ordersOfId) ->
+                    val paymentsOfId = paymentsById[id] ?: emptyList<Payment>()
+                    ordersOfId.sumBy { order -> paymentsOfId.count { Math.abs(it.time - order.time) <= 10 } }
+                }
+            }
+        ).test()
+        emitAll(orders, payments)
+        joined.assertValue(count)
+    }
+
+    val metrics = JoinMetrics()
+    var maxEntries = 0L
+
+    measure("joinByKeyEventTime()", count * 2L) {
+        val orders = PublishSubject.create<Order>()
+        val payments = PublishSubject.create<Payment>()
+        val joined = orders.joinByKeyEventTime(
+            payments,
+            leftKey = { it.id }, rightKey = { it.orderId },
+            leftTime = { it.time }, rightTime = { it.time },
+            within = 10, unit = TimeUnit.MILLISECONDS,
+            metrics = metrics
+        ) { order, payment -> order.id + payment.orderId }
+            .doOnNext { maxEntries = maxOf(maxEntries, metrics.leftEntries + metrics.rightEntries) }
+            .count()
+            .test()
+        emitAll(orders, payments)
+        joined.assertValue(count.toLong())
+    }
+
+    println("Most entries held: $maxEntries, $metrics")
+
+    /*
+        Prints on a single core machine:
+        toMultimap() both                                     3,834,125 ops/s      260.8 ns/op  gc:    0 (    0 ms)  heap: 26,547 KB  alloc:   24,044 KB
+        joinByKeyEventTime()                                  6,018,514 ops/s      166.2 ns/op  gc:    3 (    1 ms)  heap: 12,942 KB  alloc:   88,065 KB
+        Most entries held: 21, leftEntries: 0, rightEntries: 0, keys: 0, joined: 600000, expired: 1199937
+
+        🔥 The maps hold all 400,000 items until both streams complete, the join never more than 21
+     */
+}
@@ -0,0 +1,150 @@
+package chapter4combiningobservables
+
+import chapter10testinganddebugging.LatencyHistogram
+import io.reactivex.Observable
+import io.reactivex.schedulers.Schedulers
+import io.reactivex.schedulers.TestScheduler
+import io.reactivex.subjects.PublishSubject
+import java.util.concurrent.CountDownLatch
+
+fun main() {
+
+//    testStrictPriority()
+//    testWeightedPriority()
+
+    // INFO Benchmark
+    testMergeVsMergeByPriority()
+}
+
+/**
+ * 🔥 INFO mergeByPriority
+ *
+ * All three lanes emitted everything before the consumer runs, **TestScheduler** only drains when
+ * **triggerActions()** is called. The higher lanes are emptied first.
+ */
+private fun testStrictPriority() {
+
+    val scheduler = TestScheduler()
+
+    mergeByPriority(
+        listOf(
+            Observable.just("ALERT-1", "ALERT-2"),
+            Observable.just("order-1", "order-2", "order-3"),
+            Observable.just("log-1", "log-2", "log-3")
+        ),
+        scheduler
+    )
+        .toList()
+        .subscribe { list -> println(list) }
+
+    scheduler.triggerActions()
+
+    /*
+        Prints:
+        [ALERT-1, ALERT-2, order-1, order-2, order-3, log-1, log-2, log-3]
+     */
+}
+
+/**
+ * With weights 3, 2, 1 lane 0 emits 3 items in a row while the others wait, then lane 1 emits 2 and lane 2 one.
+ * The logs are not starved by the orders and alerts.
+ */
+private fun testWeightedPriority() {
+
+    val scheduler = TestScheduler()
+    val metrics = PriorityMergeMetrics(3)
+
+    mergeByPriority(
+        listOf(
+            Observable.range(1, 6).map { "A$it" },
+            Observable.range(1, 6).map { "O$it" },
+            Observable.range(1, 6).map { "L$it" }
+        ),
+        scheduler,
+        weights = intArrayOf(3, 2, 1),
+        metrics = metrics
+    )
+        .toList()
+        .subscribe { list -> println(list) }
+
+    scheduler.triggerActions()
+    println(metrics)
+
+    /*
+        Prints:
+        [A1, A2, A3, O1, O2, L1, A4, A5, A6, O3, O4, L2, O5, O6, L3, L4, L5, L6]
+        lane 0: emitted: 6, waiting: 0, wait p50: 4456 µs, p99: 11048 µs, max: 11048 µs
+        lane 1: emitted: 6, waiting: 0, wait p50: 4178 µs, p99: 4178 µs, max: 4178 µs
+        lane 2: emitted: 6, waiting: 0, wait p50: 819 µs, p99: 4118 µs, max: 4118 µs
+
+        🔥 The waits are long because the first run of the drain loop is interpreted, not compiled yet
+     */
+}
+
+private class Message(val alert: Boolean, val createdNanos: Long = System.nanoTime())
+
+/**
+ * A bulk producer sends 100,000 messages as fast as it can while an alert is sent every millisecond, the consumer
+ * needs about 2 µs for each message. Once with **merge()** and **observeOn()** and once with [mergeByPriority],
+ * the histograms show how long the alerts took from their producer to the consumer.
+ */
+private fun testMergeVsMergeByPriority() {
+
+    fun run(name: String, report: Boolean, merge: (Observable<Message>, Observable<Message>) -> Observable<Message>) {
+
+        val alerts = PublishSubject.create<Message>()
+        val bulk = PublishSubject.create<Message>()
+        val alertLatency = LatencyHistogram()
+        val bulkLatency = LatencyHistogram()
+        val done = CountDownLatch(1)
+
+        merge(alerts, bulk)
+            .doOnTerminate { done.countDown() }
+            .subscribe { message ->
+                val spinUntil = System.nanoTime() + 2_000
+                while (System.nanoTime() < spinUntil) {
+                    // the work of the consumer
+                }
+                (if (message.alert) alertLatency else bulkLatency).record(System.nanoTime() - message.createdNanos)
+            }
+
+        val alertThread = Thread {
+            repeat(50) {
+                alerts.onNext(Message(true))
+                Thread.sleep(1)
+            }
+            alerts.onComplete()
+        }
+        alertThread.start()
+        repeat(100_000) { bulk.onNext(Message(false)) }
+        bulk.onComplete()
+        alertThread.join()
+        done.await()
+
+        if (report) {
+            println("$name alerts: ${alertLatency.micros()}")
+            println("$name bulk:   ${bulkLatency.micros()}")
+        }
+    }
+
+    // The first round warms up
+    repeat(2) { round ->
+        run("merge()          ", round > 0) { alerts, bulk -> Observable.merge(alerts, bulk).observeOn(Schedulers.single()) }
+        run("mergeByPriority()", round > 0) { alerts, bulk -> mergeByPriority(listOf(alerts, bulk), Schedulers.single()) }
+    }
+
+    /*
+        Prints on a single core machine:
+        merge()           alerts: p50: 268435 µs, p99: 287676 µs, max: 287676 µs
+        merge()           bulk:   p50: 201326 µs, p99: 288054 µs, max: 288054 µs
+        mergeByPriority() alerts: p50: 1114 µs, p99: 10387 µs, max: 10387 µs
+        mergeByPriority() bulk:   p50: 209715 µs, p99: 292847 µs, max: 292847 µs
+
+        🔥 With merge() an alert waits behind every bulk message queued before it, like the bulk messages do.
+        mergeByPriority() takes an alert before the queued bulk messages, it waits about a millisecond
+        instead of the whole backlog. The bulk messages are consumed as fast as before.
+     */
+}
+
+private fun LatencyHistogram.micros() =
+    "p50: ${percentileNanos(50.0) / 1000} µs, p99: ${percentileNanos(99.0) / 1000} µs, max: ${maxNanos / 1000} µs"
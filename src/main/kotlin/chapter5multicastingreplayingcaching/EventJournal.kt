@@ -0,0 +1,349 @@
+package chapter5multicastingreplayingcaching
+
+import io.reactivex.Observable
+import io.reactivex.Scheduler
+import io.reactivex.schedulers.Schedulers
+import io.reactivex.subjects.PublishSubject
+import java.io.Closeable
+import java.nio.Buffer
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.TreeMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Writes values into and reads them from the payload of a journal record.
+ */
+interface JournalCodec<T> {
+
+    fun encodedSize(value: T): Int
+
+    /**
+     * Writes [value] at the position of [target], exactly [encodedSize] bytes
+     */
+    fun encode(value: T, target: ByteBuffer)
+
+    /**
+     * Reads a value from [source], its position and limit cover exactly one payload
+     */
+    fun decode(source: ByteBuffer): T
+}
+
+/**
+ * * **ASYNC** leaves writing dirty pages to the OS, records survive a crash of the process but not of the machine
+ * * **FSYNC_PER_BATCH** forces the segment to disk every **fsyncBatchSize** appends and on [EventJournal.flush]
+ */
+enum class Durability {
+    ASYNC,
+    FSYNC_PER_BATCH
+}
+
+data class JournalRecord<T>(val offset: Long, val timestamp: Long, val value: T)
+
+/**
+ * 🔥 INFO EventJournal
+ *
+ * A hot [Observable] like a **ConnectableObservable** emits only to the observers that are subscribed
+ * at that moment, **replay()** and **cache()** help late observers but keep everything in memory
+ * and lose it when the process restarts.
+ *
+ * [EventJournal] appends every value to memory mapped **segment files** in [directory]. Each record gets an
+ * increasing **offset** and a **timestamp**, so [replay] can start from any offset or time and then keep
+ * emitting new appends, and a restarted process continues from what is on disk.
+ *
+ * * Segments are named after the first offset they contain and are [segmentSize] bytes, a record must fit in one
+ * * Every [indexInterval]th record of a segment goes into a sparse in memory index, which is rebuilt by
+ * reading the record headers once when the journal is opened
+ * * A record with a wrong checksum, from a crash while writing, ends the journal and is overwritten.
+ * In an earlier segment it ends that segment, the offsets up to the next segment are lost, listed in [gaps]
+ * and skipped by [replay].
+ * * Appends are serialized with a lock, any number of replays can read at the same time
+ */
+class EventJournal<T> @JvmOverloads constructor(
+    private val directory: Path,
+    private val codec: JournalCodec<T>,
+    private val segmentSize: Int = 64 * 1024 * 1024,
+    private val durability: Durability = Durability.ASYNC,
+    private val fsyncBatchSize: Int = 256,
+    private val indexInterval: Int = 64
+) : Closeable {
+
+    private val segments = TreeMap<Long, JournalSegment>()
+
+    private lateinit var active: JournalSegment
+
+    private var unflushed = 0
+
+    /**
+     * Offsets lost because a segment other than the last one had a corrupt record, found when the journal was opened
+     */
+    var gaps: List<LongRange> = emptyList()
+        private set
+
+    /**
+     * Offset the next append gets. Volatile write after a record is complete so readers see its bytes.
+     */
+    @Volatile
+    var nextOffset = 0L
+        private set
+
+    private val appended = PublishSubject.create<Long>().toSerialized()
+
+    @Volatile
+    private var closed = false
+
+    init {
+        require(segmentSize > JournalSegment.HEADER_SIZE) { "segmentSize > ${JournalSegment.HEADER_SIZE} required" }
+        require(fsyncBatchSize > 0) { "fsyncBatchSize > 0 required but it was $fsyncBatchSize" }
+        require(indexInterval > 0) { "indexInterval > 0 required but it was $indexInterval" }
+
+        Files.createDirectories(directory)
+        open()
+    }
+
+    private fun open() {
+
+        val files = Files.list(directory).use { stream ->
+            stream.filter { it.fileName.toString().endsWith(SUFFIX) }.sorted().toArray().map { it as Path }
+        }
+
+        for (file in files) {
+            val baseOffset = file.fileName.toString().removeSuffix(SUFFIX).toLong()
+            val segment = JournalSegment(file, baseOffset, segmentSize, indexInterval)
+            segment.recover()
+            segments[baseOffset] = segment
+        }
+
+        gaps = segments.values.zipWithNext()
+            .filter { (segment, next) -> segment.nextOffset < next.baseOffset }
+            .map { (segment, next) -> segment.nextOffset until next.baseOffset }
+
+        active = segments.lastEntry()?.value ?: newSegment(0)
+        nextOffset = active.nextOffset
+    }
+
+    /**
+     * Appends [value] and returns its offset
+     */
+    fun append(value: T): Long {
+
+        val length = codec.encodedSize(value)
+        require(JournalSegment.HEADER_SIZE + length <= segmentSize) {
+            "Record of $length bytes does not fit into a segment of $segmentSize bytes"
+        }
+
+        val offset: Long
+
+        synchronized(this) {
+
+            check(!closed) { "Journal is closed" }
+
+            if (!active.hasRoomFor(length)) {
+                roll()
+            }
+
+            codec.encode(value, active.payloadView(length))
+
+            // Timestamps never go back so lookups by time can use binary search
+            val timestamp = maxOf(System.currentTimeMillis(), active.lastTimestamp)
+            offset = active.commit(length, timestamp)
+
+            if (durability == Durability.FSYNC_PER_BATCH && ++unflushed >= fsyncBatchSize) {
+                flushActive()
+            }
+
+            nextOffset = offset + 1
+        }
+
+        appended.onNext(offset)
+        return offset
+    }
+
+    /**
+     * Forces what was appended so far to disk
+     */
+    fun flush() {
+        synchronized(this) {
+            if (!closed) {
+                flushActive()
+            }
+        }
+    }
+
+    /**
+     * Emits the records from [fromOffset] on and then every new append until disposed or the journal is closed.
+     * With [tail] false it completes after the record that was the last one when it caught up.
+     *
+     * Records are read and emitted on [scheduler], new appends only signal the reader
+     * so the appending thread never waits for a slow observer.
+     */
+    @JvmOverloads
+    fun replay(fromOffset: Long = 0, tail: Boolean = true, scheduler: Scheduler = Schedulers.io()): Observable<JournalRecord<T>> =
+        Observable.create { emitter ->
+
+            // An offset that was not appended yet is waited for, records before it are skipped
+            val reader = Reader(fromOffset.coerceIn(firstOffset(), nextOffset))
+            val worker = scheduler.createWorker()
+            val wip = AtomicInteger()
+
+            val journalClosed = AtomicBoolean()
+
+            val drain = Runnable {
+                var missed = 1
+                while (true) {
+                    val end = nextOffset
+                    while (reader.offset < end && !emitter.isDisposed) {
+                        val record = reader.next()
+                        if (record.offset >= fromOffset) {
+                            emitter.onNext(record)
+                        }
+                    }
+                    if ((!tail || journalClosed.get()) && !emitter.isDisposed) {
+                        emitter.onComplete()
+                        return@Runnable
+                    }
+                    missed = wip.addAndGet(-missed)
+                    if (missed == 0) {
+                        break
+                    }
+                }
+            }
+
+            val schedule = {
+                if (wip.getAndIncrement() == 0) {
+                    worker.schedule(drain)
+                }
+            }
+
+            val signals = appended.subscribe(
+                { schedule() },
+                { },
+                {
+                    journalClosed.set(true)
+                    schedule()
+                }
+            )
+
+            emitter.setCancellable {
+                signals.dispose()
+                worker.dispose()
+            }
+
+            schedule()
+        }
+
+    /**
+     * Like [replay] but starts with the first record appended at or after [timestamp] in epoch milliseconds
+     */
+    @JvmOverloads
+    fun replayFromTimestamp(timestamp: Long, tail: Boolean = true, scheduler: Scheduler = Schedulers.io()): Observable<JournalRecord<T>> =
+        Observable.defer { replay(offsetAtOrAfter(timestamp), tail, scheduler) }
+
+    fun firstOffset(): Long = synchronized(this) { segments.firstKey() }
+
+    /**
+     * Offset of the first record with a timestamp at or after [timestamp], [nextOffset] if there is none
+     */
+    fun offsetAtOrAfter(timestamp: Long): Long = synchronized(this) {
+        for (segment in segments.values) {
+            if (segment.lastTimestamp >= timestamp) {
+                return segment.offsetAtOrAfter(timestamp)
+            }
+        }
+        nextOffset
+    }
+
+    override fun close() {
+        synchronized(this) {
+            if (closed) {
+                return
+            }
+            if (durability == Durability.FSYNC_PER_BATCH) {
+                flushActive()
+            }
+            closed = true
+            segments.values.forEach { it.close() }
+        }
+        appended.onComplete()
+    }
+
+    private fun roll() {
+        if (durability == Durability.FSYNC_PER_BATCH) {
+            flushActive()
+        }
+        active = newSegment(active.nextOffset)
+    }
+
+    private fun flushActive() {
+        active.flush()
+        unflushed = 0
+    }
+
+    private fun newSegment(baseOffset: Long): JournalSegment {
+        val file = directory.resolve(String.format("%020d%s", baseOffset, SUFFIX))
+        return JournalSegment(file, baseOffset, segmentSize, indexInterval).also {
+            segments[baseOffset] = it
+        }
+    }
+
+    /**
+     * Segment with the record at [offset], the next one if [offset] is in a gap
+     */
+    private fun segmentFor(offset: Long): JournalSegment = synchronized(this) {
+        val segment = segments.floorEntry(offset).value
+        if (offset >= segment.nextOffset) segments.higherEntry(segment.baseOffset)?.value ?: segment else segment
+    }
+
+    private fun segmentAfter(segment: JournalSegment): JournalSegment = synchronized(this) {
+        segments.higherEntry(segment.baseOffset).value
+    }
+
+    /**
+     * Reads records one after the other, used by a single replay
+     */
+    private inner class Reader(fromOffset: Long) {
+
+        private var segment = segmentFor(fromOffset)
+
+        var offset = maxOf(fromOffset, segment.baseOffset)
+            private set
+
+        // Cast keeps the Java 8 signature, newer JDKs return MappedByteBuffer here
+        private var view = (segment.buffer as ByteBuffer).duplicate()
+
+        private var position = segment.positionOf(offset)
+
+        fun next(): JournalRecord<T> {
+
+            var length = segment.payloadLengthAt(position)
+            if (length < 0) {
+                // The rest of the segment is empty, the record is in the next one.
+                // It starts later if this segment was cut at a corrupt record, the gap is skipped.
+                segment = segmentAfter(segment)
+                offset = segment.baseOffset
+                view = (segment.buffer as ByteBuffer).duplicate()
+                position = 0
+                length = segment.payloadLengthAt(position)
+            }
+
+            val timestamp = segment.timestampAt(position)
+            val start = position + JournalSegment.HEADER_SIZE
+
+            // Buffer casts keep the Java 8 signatures, newer JDKs return ByteBuffer here
+            (view as Buffer).limit(start + length)
+            (view as Buffer).position(start)
+            val value = codec.decode(view)
+
+            val record = JournalRecord(offset, timestamp, value)
+            position = start + length
+            offset++
+            return record
+        }
+    }
+
+    companion object {
+        private const val SUFFIX = ".journal"
+    }
+}
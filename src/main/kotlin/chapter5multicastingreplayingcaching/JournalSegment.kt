@@ -0,0 +1,251 @@
+package chapter5multicastingreplayingcaching
+
+import java.io.Closeable
+import java.nio.Buffer
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.zip.CRC32
+
+/**
+ * One memory mapped file of an [EventJournal], holding the records from [baseOffset] on.
+ *
+ * Record layout, the length is written last so a record is only visible once it is complete:
+ * ```
+ * | length + 1 (int) | crc32 of payload (int) | offset (long) | timestamp (long) | payload |
+ * ```
+ * The file is preallocated with zeros, a length of 0 marks the end of the written records. Every record is
+ * followed by a length of 0 before it is published, so records left behind a cut by [recover] are never read.
+ *
+ * Every [indexInterval] records the offset, position and timestamp are kept in a **sparse index**
+ * so a lookup only scans at most [indexInterval] records after a binary search.
+ */
+internal class JournalSegment(
+    val path: Path,
+    val baseOffset: Long,
+    private val size: Int,
+    private val indexInterval: Int
+) : Closeable {
+
+    private val channel = FileChannel.open(
+        path,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.READ,
+        StandardOpenOption.WRITE
+    )
+
+    val buffer: MappedByteBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size.toLong())
+
+    // Views with their own position and limit for the appending thread, casts keep the Java 8 signature
+    private val writeView = (buffer as ByteBuffer).duplicate()
+    private val checksumView = (buffer as ByteBuffer).duplicate()
+
+    // Sparse index, only written by the appending thread and read after the committed offset was published
+    private var indexOffsets = LongArray(64)
+    private var indexPositions = IntArray(64)
+    private var indexTimestamps = LongArray(64)
+
+    @Volatile
+    private var indexSize = 0
+
+    /**
+     * Position where the next record is written
+     */
+    var writePosition = 0
+        private set
+
+    /**
+     * Offset the next record appended to this segment gets
+     */
+    var nextOffset = baseOffset
+        private set
+
+    var lastTimestamp = Long.MIN_VALUE
+        private set
+
+    private val crc = CRC32()
+
+    /**
+     * Scans the records written before, stops at the first empty or corrupt one
+     * and makes this segment continue from there.
+     */
+    fun recover() {
+
+        var position = 0
+        var offset = baseOffset
+
+        while (true) {
+            val length = payloadLengthAt(position)
+            if (length < 0 || position.toLong() + HEADER_SIZE + length > size) {
+                break
+            }
+            if (buffer.getLong(position + OFFSET_FIELD) != offset || checksum(position, length) != buffer.getInt(position + CRC_FIELD)) {
+                break
+            }
+            addToIndex(offset, position, buffer.getLong(position + TIMESTAMP_FIELD))
+            lastTimestamp = buffer.getLong(position + TIMESTAMP_FIELD)
+            position += HEADER_SIZE + length
+            offset++
+        }
+
+        // Clear a torn record so it is not mistaken for a complete one later
+        if (position + 4 <= size) {
+            buffer.putInt(position, 0)
+        }
+
+        writePosition = position
+        nextOffset = offset
+    }
+
+    fun hasRoomFor(payloadLength: Int) = writePosition + HEADER_SIZE + payloadLength <= size
+
+    /**
+     * View of the payload of the next record, [commit] finishes the record once it was written
+     */
+    fun payloadView(payloadLength: Int): ByteBuffer {
+        // Buffer casts keep the Java 8 signatures, newer JDKs return ByteBuffer here
+        (writeView as Buffer).limit(writePosition + HEADER_SIZE + payloadLength)
+        (writeView as Buffer).position(writePosition + HEADER_SIZE)
+        return writeView
+    }
+
+    /**
+     * Writes the header of the record at [writePosition], the payload must already be written with [payloadView]
+     */
+    fun commit(payloadLength: Int, timestamp: Long): Long {
+
+        val position = writePosition
+        val offset = nextOffset
+
+        buffer.putInt(position + CRC_FIELD, checksum(position, payloadLength))
+        buffer.putLong(position + OFFSET_FIELD, offset)
+        buffer.putLong(position + TIMESTAMP_FIELD, timestamp)
+
+        // End marker after the record, records of an earlier run that recover() cut off may still follow it
+        val next = position + HEADER_SIZE + payloadLength
+        if (next + 4 <= size) {
+            buffer.putInt(next, 0)
+        }
+        buffer.putInt(position, payloadLength + 1)
+
+        addToIndex(offset, position, timestamp)
+
+        writePosition = next
+        nextOffset = offset + 1
+        lastTimestamp = timestamp
+        return offset
+    }
+
+    /**
+     * Position of the record with [offset], which must be in this segment and committed
+     */
+    fun positionOf(offset: Long): Int {
+
+        if (indexSize == 0) {
+            return 0
+        }
+
+        val entry = floorIndex { indexOffsets[it] <= offset }
+        var position = indexPositions[entry]
+        var current = indexOffsets[entry]
+
+        while (current < offset) {
+            position += HEADER_SIZE + payloadLengthAt(position)
+            current++
+        }
+        return position
+    }
+
+    /**
+     * Offset of the first record with a timestamp at or after [timestamp], or [nextOffset] if there is none
+     */
+    fun offsetAtOrAfter(timestamp: Long): Long {
+
+        if (indexSize == 0) {
+            return nextOffset
+        }
+
+        val entry = floorIndex { indexTimestamps[it] < timestamp }
+        if (indexTimestamps[entry] >= timestamp) {
+            return indexOffsets[entry]
+        }
+
+        var position = indexPositions[entry]
+        var offset = indexOffsets[entry]
+        val end = nextOffset
+
+        while (offset < end && buffer.getLong(position + TIMESTAMP_FIELD) < timestamp) {
+            position += HEADER_SIZE + payloadLengthAt(position)
+            offset++
+        }
+        return offset
+    }
+
+    fun payloadLengthAt(position: Int): Int =
+        if (position + HEADER_SIZE > size) -1 else buffer.getInt(position) - 1
+
+    fun timestampAt(position: Int): Long = buffer.getLong(position + TIMESTAMP_FIELD)
+
+    fun flush() {
+        buffer.force()
+    }
+
+    override fun close() {
+        channel.close()
+    }
+
+    private fun checksum(position: Int, payloadLength: Int): Int {
+        // Buffer casts keep the Java 8 signatures, newer JDKs return ByteBuffer here
+        (checksumView as Buffer).limit(position + HEADER_SIZE + payloadLength)
+        (checksumView as Buffer).position(position + HEADER_SIZE)
+        crc.reset()
+        crc.update(checksumView)
+        return crc.value.toInt()
+    }
+
+    private fun addToIndex(offset: Long, position: Int, timestamp: Long) {
+
+        if ((offset - baseOffset) % indexInterval != 0L) {
+            return
+        }
+
+        val i = indexSize
+        if (i == indexOffsets.size) {
+            indexOffsets = indexOffsets.copyOf(i * 2)
+            indexPositions = indexPositions.copyOf(i * 2)
+            indexTimestamps = indexTimestamps.copyOf(i * 2)
+        }
+        indexOffsets[i] = offset
+        indexPositions[i] = position
+        indexTimestamps[i] = timestamp
+        indexSize = i + 1
+    }
+
+    /**
+     * Binary search for the last index entry matching [predicate], 0 if none does
+     */
+    private inline fun floorIndex(predicate: (Int) -> Boolean): Int {
+        var low = 0
+        var high = indexSize - 1
+        var result = 0
+        while (low <= high) {
+            val mid = (low + high) ushr 1
+            if (predicate(mid)) {
+                result = mid
+                low = mid + 1
+            } else {
+                high = mid - 1
+            }
+        }
+        return result
+    }
+
+    companion object {
+        const val HEADER_SIZE = 24
+        const val CRC_FIELD = 4
+        const val OFFSET_FIELD = 8
+        const val TIMESTAMP_FIELD = 16
+    }
+}
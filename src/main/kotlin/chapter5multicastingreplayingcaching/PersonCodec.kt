@@ -0,0 +1,239 @@
+package chapter5multicastingreplayingcaching
+
+import model.Person
+import java.nio.Buffer
+import java.nio.ByteBuffer
+
+/**
+ * 🔥 INFO PersonCodec
+ *
+ * Binary encoding of a [Person] that is written straight into a [ByteBuffer], without reflection,
+ * an intermediate **String.getBytes()** array or an **ObjectOutputStream**.
+ * ```
+ * | firstName length (int) | firstName UTF-8 | surName length (int) | surName UTF-8 |
+ * ```
+ * Lengths are in bytes. All reads and writes use the position of the buffer so records can follow each other,
+ * and it can be used as the [JournalCodec] of an **EventJournal**. Use [PersonFlyweight] to read the names
+ * without creating Strings.
+ */
+object PersonCodec : JournalCodec<Person> {
+
+    override fun encodedSize(value: Person) =
+        2 * Integer.BYTES + Utf8.encodedLength(value.firstName) + Utf8.encodedLength(value.surName)
+
+    override fun encode(value: Person, target: ByteBuffer) {
+        Utf8.write(value.firstName, target)
+        Utf8.write(value.surName, target)
+    }
+
+    override fun decode(source: ByteBuffer): Person {
+        val firstName = Utf8.read(source)
+        val surName = Utf8.read(source)
+        return Person(firstName, surName)
+    }
+}
+
+/**
+ * Reads a [Person] encoded by [PersonCodec] in place. [firstName] and [surName] are views on the bytes
+ * of the buffer, [wrap] points the same object to another record so reading many records allocates nothing.
+ *
+ * 🔥🔥 The names are valid only until the next [wrap] or until the buffer is changed, call
+ * **toString()** or [toPerson] to keep them.
+ */
+class PersonFlyweight {
+
+    private val first = Utf8Sequence()
+    private val sur = Utf8Sequence()
+
+    val firstName: CharSequence
+        get() = first
+
+    val surName: CharSequence
+        get() = sur
+
+    /**
+     * Size of the wrapped record in bytes, the next record starts there
+     */
+    var encodedSize = 0
+        private set
+
+    /**
+     * Points this flyweight to the record at [position] of [buffer], the position of [buffer] is not changed
+     */
+    @JvmOverloads
+    fun wrap(buffer: ByteBuffer, position: Int = buffer.position()): PersonFlyweight {
+        val firstLength = buffer.getInt(position)
+        first.reset(buffer, position + Integer.BYTES, firstLength)
+
+        val surPosition = position + Integer.BYTES + firstLength
+        val surLength = buffer.getInt(surPosition)
+        sur.reset(buffer, surPosition + Integer.BYTES, surLength)
+
+        encodedSize = 2 * Integer.BYTES + firstLength + surLength
+        return this
+    }
+
+    fun toPerson() = Person(first.toString(), sur.toString())
+
+    override fun toString() = "PersonFlyweight(firstName=$first, surName=$sur)"
+}
+
+/**
+ * [CharSequence] over UTF-8 bytes of a [ByteBuffer]. ASCII text, one byte for each char, is read directly,
+ * other text is decoded once on first access because chars can not be found by index in UTF-8 bytes.
+ */
+internal class Utf8Sequence : CharSequence {
+
+    private var buffer: ByteBuffer? = null
+    private var start = 0
+    private var byteLength = 0
+    private var ascii = true
+    private var decoded: String? = null
+
+    fun reset(buffer: ByteBuffer, start: Int, byteLength: Int) {
+        this.buffer = buffer
+        this.start = start
+        this.byteLength = byteLength
+        this.decoded = null
+
+        var ascii = true
+        for (i in start until start + byteLength) {
+            if (buffer.get(i) < 0) {
+                ascii = false
+                break
+            }
+        }
+        this.ascii = ascii
+    }
+
+    override val length: Int
+        get() = if (ascii) byteLength else decoded().length
+
+    override fun get(index: Int): Char {
+        if (!ascii) {
+            return decoded()[index]
+        }
+        if (index < 0 || index >= byteLength) {
+            throw IndexOutOfBoundsException("index: $index, length: $byteLength")
+        }
+        return buffer!!.get(start + index).toChar()
+    }
+
+    override fun subSequence(startIndex: Int, endIndex: Int): CharSequence =
+        if (ascii) {
+            if (startIndex < 0 || endIndex > byteLength || startIndex > endIndex) {
+                throw IndexOutOfBoundsException("start: $startIndex, end: $endIndex, length: $byteLength")
+            }
+            Utf8Sequence().also { it.reset(buffer!!, start + startIndex, endIndex - startIndex) }
+        } else {
+            decoded().subSequence(startIndex, endIndex)
+        }
+
+    override fun toString(): String =
+        if (ascii) {
+            val chars = CharArray(byteLength)
+            for (i in 0 until byteLength) {
+                chars[i] = buffer!!.get(start + i).toChar()
+            }
+            String(chars)
+        } else {
+            decoded()
+        }
+
+    private fun decoded(): String {
+        var text = decoded
+        if (text == null) {
+            val bytes = ByteArray(byteLength)
+            for (i in 0 until byteLength) {
+                bytes[i] = buffer!!.get(start + i)
+            }
+            text = String(bytes, Charsets.UTF_8)
+            decoded = text
+        }
+        return text
+    }
+}
+
+/**
+ * Length prefixed UTF-8 that is encoded char by char into the buffer. Unpaired surrogates
+ * are written as **?** like **String.getBytes()** does.
+ */
+internal object Utf8 {
+
+    fun encodedLength(text: CharSequence): Int {
+        var length = 0
+        var i = 0
+        while (i < text.length) {
+            val c = text[i]
+            length += when {
+                c.toInt() < 0x80 -> 1
+                c.toInt() < 0x800 -> 2
+                Character.isHighSurrogate(c) && i + 1 < text.length && Character.isLowSurrogate(text[i + 1]) -> {
+                    i++
+                    4
+                }
+                Character.isSurrogate(c) -> 1
+                else -> 3
+            }
+            i++
+        }
+        return length
+    }
+
+    fun write(text: CharSequence, target: ByteBuffer) {
+
+        val lengthPosition = target.position()
+        target.putInt(0)
+
+        var i = 0
+        while (i < text.length) {
+            val c = text[i]
+            val code = c.toInt()
+            when {
+                code < 0x80 -> target.put(code.toByte())
+                code < 0x800 -> {
+                    target.put((0xC0 or (code shr 6)).toByte())
+                    target.put((0x80 or (code and 0x3F)).toByte())
+                }
+                Character.isHighSurrogate(c) && i + 1 < text.length && Character.isLowSurrogate(text[i + 1]) -> {
+                    val codePoint = Character.toCodePoint(c, text[++i])
+                    target.put((0xF0 or (codePoint shr 18)).toByte())
+                    target.put((0x80 or ((codePoint shr 12) and 0x3F)).toByte())
+                    target.put((0x80 or ((codePoint shr 6) and 0x3F)).toByte())
+                    target.put((0x80 or (codePoint and 0x3F)).toByte())
+                }
+                Character.isSurrogate(c) -> target.put('?'.toByte())
+                else -> {
+                    target.put((0xE0 or (code shr 12)).toByte())
+                    target.put((0x80 or ((code shr 6) and 0x3F)).toByte())
+                    target.put((0x80 or (code and 0x3F)).toByte())
+                }
+            }
+            i++
+        }
+
+        target.putInt(lengthPosition, target.position() - lengthPosition - Integer.BYTES)
+    }
+
+    fun read(source: ByteBuffer): String {
+
+        val length = source.getInt()
+        val chars = CharArray(length)
+        val start = source.position()
+
+        // ASCII names, the common case, need no decoder
+        for (i in 0 until length) {
+            val b = source.get(start + i)
+            if (b < 0) {
+                val bytes = ByteArray(length)
+                source.get(bytes)
+                return String(bytes, Charsets.UTF_8)
+            }
+            chars[i] = b.toChar()
+        }
+
+        // Buffer cast keeps the Java 8 signature, newer JDKs return ByteBuffer here
+        (source as Buffer).position(start + length)
+        return String(chars)
+    }
+}
@@ -0,0 +1,163 @@
+package chapter5multicastingreplayingcaching
+
+import benchmark.measure
+import io.reactivex.Observable
+import java.lang.Thread.sleep
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.TimeUnit
+
+fun main() {
+
+//    testLateObserverWithJournal()
+    testJournalAfterRestart()
+
+    // INFO Benchmark
+//    testJournalDurabilityModes()
+}
+
+/**
+ * 🔥 INFO Late observer
+ *
+ * **testConnectObservableInterval()** of **Tutorial2_3ColdHotObservables** with an [EventJournal].
+ * Every emission of the hot source is appended before it reaches its observers, so Observer 2,
+ * which subscribes 3 seconds later, replays what it missed and then continues with live values.
+ */
+private fun testLateObserverWithJournal() {
+
+    val directory = Files.createTempDirectory("journal")
+
+    EventJournal(directory, LongCodec).use { journal ->
+
+        val connectableObservable = Observable.interval(1, TimeUnit.SECONDS)
+            .doOnNext { journal.append(it) }
+            .publish()
+
+        connectableObservable.subscribe { item -> println("Observer 1 Received: $item") }
+
+        connectableObservable.connect()
+
+        sleep(3500)
+
+        journal.replay(0)
+            .subscribe { record -> println("Observer 2 Received: ${record.value} offset: ${record.offset}") }
+
+        sleep(3000)
+    }
+
+    deleteDirectory(directory)
+
+    /*
+        Prints:
+        Observer 1 Received: 0
+        Observer 1 Received: 1
+        Observer 1 Received: 2
+        Observer 2 Received: 0 offset: 0 🔥🔥 Observer 2 gets the emissions from before it subscribed
+        Observer 2 Received: 1 offset: 1
+        Observer 2 Received: 2 offset: 2
+        Observer 2 Received: 3 offset: 3
+        Observer 1 Received: 3
+        Observer 1 Received: 4
+        Observer 2 Received: 4 offset: 4
+        Observer 1 Received: 5
+        Observer 2 Received: 5 offset: 5
+     */
+}
+
+/**
+ * 🔥 INFO Restart
+ *
+ * The journal is closed, like a process that stops, and opened again. Records from before
+ * the restart can be replayed by offset or by time and new appends continue with the next offset.
+ */
+private fun testJournalAfterRestart() {
+
+    val directory = Files.createTempDirectory("journal")
+
+    val restartedAt = EventJournal(directory, LongCodec).use { journal ->
+        (1L..5L).forEach { journal.append(it * 100) }
+        sleep(10)
+        System.currentTimeMillis()
+    }
+
+    EventJournal(directory, LongCodec).use { journal ->
+
+        journal.append(600)
+
+        journal.replay(fromOffset = 3, tail = false)
+            .blockingSubscribe { println("From offset 3: ${it.value} offset: ${it.offset}") }
+
+        journal.replayFromTimestamp(restartedAt, tail = false)
+            .blockingSubscribe { println("After restart: ${it.value} offset: ${it.offset}") }
+    }
+
+    deleteDirectory(directory)
+
+    /*
+        Prints:
+        From offset 3: 400 offset: 3
+        From offset 3: 500 offset: 4
+        From offset 3: 600 offset: 5
+        After restart: 600 offset: 5
+     */
+}
+
+/**
+ * Appends 8 byte values with each [Durability]. **FSYNC_PER_BATCH** with a batch of 1
+ * forces every record to disk and is limited by the disk, bigger batches amortize the cost.
+ */
+private fun testJournalDurabilityModes() {
+
+    val cases = listOf(
+        Triple("ASYNC", Durability.ASYNC, 1),
+        Triple("FSYNC_PER_BATCH batch: 1", Durability.FSYNC_PER_BATCH, 1),
+        Triple("FSYNC_PER_BATCH batch: 256", Durability.FSYNC_PER_BATCH, 256),
+        Triple("FSYNC_PER_BATCH batch: 4096", Durability.FSYNC_PER_BATCH, 4096)
+    )
+
+    for ((name, durability, batch) in cases) {
+
+        val appends = if (batch == 1 && durability == Durability.FSYNC_PER_BATCH) 2_000L else 1_000_000L
+
+        measure(name, appends, warmupRounds = 1) {
+            val directory = Files.createTempDirectory("journal")
+            EventJournal(directory, LongCodec, 16 * 1024 * 1024, durability, batch).use { journal ->
+                for (i in 0 until appends) {
+                    journal.append(i)
+                }
+            }
+            deleteDirectory(directory)
+        }
+    }
+
+    /*
+        Prints on a single core machine:
+        ASYNC                          4,406,487 ops/s      226.9 ns/op  gc:    1 (    1 ms)  heap: 24,819 KB  alloc:   47,516 KB
+        FSYNC_PER_BATCH batch: 1          14,959 ops/s    66848.5 ns/op  gc:    0 (    0 ms)  heap:  2,034 KB  alloc:       95 KB
+        FSYNC_PER_BATCH batch: 256     1,545,496 ops/s      647.0 ns/op  gc:    1 (    0 ms)  heap: 23,729 KB  alloc:   47,516 KB
+        FSYNC_PER_BATCH batch: 4096    3,409,348 ops/s      293.3 ns/op  gc:    1 (    0 ms)  heap: 23,759 KB  alloc:   47,516 KB
+
+        🔥 Forcing every record to disk is ~300 times slower, with a batch of 4096 records it is close to ASYNC.
+        The numbers for fsync depend completely on the disk. The allocation is boxing of the Long values.
+     */
+}
+
+/**
+ * Stores a [Long] in 8 bytes
+ */
+object LongCodec : JournalCodec<Long> {
+
+    override fun encodedSize(value: Long) = 8
+
+    override fun encode(value: Long, target: ByteBuffer) {
+        target.putLong(value)
+    }
+
+    override fun decode(source: ByteBuffer): Long = source.getLong()
+}
+
+private fun deleteDirectory(directory: Path) {
+    Files.list(directory).use { files -> files.forEach { Files.delete(it) } }
+    Files.delete(directory)
+}
@@ -0,0 +1,147 @@
+package chapter5multicastingreplayingcaching
+
+import benchmark.measure
+import io.reactivex.Observable
+import model.Person
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.ObjectInputStream
+import java.io.ObjectOutputStream
+import java.nio.Buffer
+import java.nio.ByteBuffer
+import java.nio.file.Files
+
+private const val BENCHMARK_PERSONS = 100_000
+
+fun main() {
+
+//    testPersonJournal()
+//    testPersonFlyweight()
+
+    // INFO Benchmark
+    testPersonCodecVsJavaSerialization()
+}
+
+/**
+ * 🔥 INFO PersonCodec
+ *
+ * [PersonCodec] is a [JournalCodec] so persons can be appended to an [EventJournal] without any other mapping.
+ */
+private fun testPersonJournal() {
+
+    val directory = Files.createTempDirectory("journal")
+
+    EventJournal(directory, PersonCodec).use { journal ->
+
+        Observable.just(Person("James", "Bond"), Person("Jason", "Bourne"), Person("Jürgen", "Großmann"))
+            .subscribe { journal.append(it) }
+
+        journal.replay(tail = false)
+            .blockingSubscribe { println("offset: ${it.offset} ${it.value}") }
+    }
+
+    Files.list(directory).use { files -> files.forEach { Files.delete(it) } }
+    Files.delete(directory)
+
+    /*
+        Prints:
+        offset: 0 Person(firstName=James, surName=Bond)
+        offset: 1 Person(firstName=Jason, surName=Bourne)
+        offset: 2 Person(firstName=Jürgen, surName=Großmann)
+     */
+}
+
+/**
+ * 🔥 INFO PersonFlyweight
+ *
+ * A [PersonFlyweight] reads the names directly from the buffer, **filter()** gets the same object
+ * pointed to each record in turn and only the matching one is turned into a [Person].
+ */
+private fun testPersonFlyweight() {
+
+    val buffer = ByteBuffer.allocate(1024)
+    listOf(Person("James", "Bond"), Person("Jason", "Bourne"), Person("Ethan", "Hunt"))
+        .forEach { PersonCodec.encode(it, buffer) }
+    (buffer as Buffer).flip()
+
+    val flyweight = PersonFlyweight()
+
+    Observable.generate<PersonFlyweight> { emitter ->
+        if (buffer.hasRemaining()) {
+            flyweight.wrap(buffer)
+            // Buffer cast keeps the Java 8 signature, newer JDKs return ByteBuffer here
+            (buffer as Buffer).position(buffer.position() + flyweight.encodedSize)
+            emitter.onNext(flyweight)
+        } else {
+            emitter.onComplete()
+        }
+    }
+        .filter { it.surName.startsWith("B") && it.firstName.startsWith("Ja") }
+        .map { it.toPerson() }
+        .subscribe { println("onNext() $it") }
+
+    /*
+        Prints:
+        onNext() Person(firstName=James, surName=Bond)
+        onNext() Person(firstName=Jason, surName=Bourne)
+     */
+}
+
+/**
+ * Encodes and decodes [BENCHMARK_PERSONS] persons with Java serialization, which needs [Person] to be
+ * **Serializable**, with [PersonCodec] and with [PersonCodec] plus [PersonFlyweight], which only reads the names.
+ */
+private fun testPersonCodecVsJavaSerialization() {
+
+    val persons = (0 until BENCHMARK_PERSONS).map { Person("firstName$it", "surName$it") }
+
+    var serializedSize = 0
+    measure("Java serialization", BENCHMARK_PERSONS.toLong()) {
+        var found = 0
+        for (person in persons) {
+            val bytes = ByteArrayOutputStream()
+            ObjectOutputStream(bytes).use { it.writeObject(person) }
+            serializedSize = bytes.size()
+            val copy = ObjectInputStream(ByteArrayInputStream(bytes.toByteArray())).use { it.readObject() as Person }
+            if (copy.surName.endsWith("7")) found++
+        }
+    }
+
+    val buffer = ByteBuffer.allocate(1024)
+
+    measure("PersonCodec", BENCHMARK_PERSONS.toLong()) {
+        var found = 0
+        for (person in persons) {
+            (buffer as Buffer).clear()
+            PersonCodec.encode(person, buffer)
+            (buffer as Buffer).flip()
+            val copy = PersonCodec.decode(buffer)
+            if (copy.surName.endsWith("7")) found++
+        }
+    }
+
+    val flyweight = PersonFlyweight()
+
+    measure("PersonCodec + PersonFlyweight", BENCHMARK_PERSONS.toLong()) {
+        var found = 0
+        for (person in persons) {
+            (buffer as Buffer).clear()
+            PersonCodec.encode(person, buffer)
+            if (flyweight.wrap(buffer, 0).surName.endsWith("7")) found++
+        }
+    }
+
+    println("Encoded size Java serialization: $serializedSize bytes, PersonCodec: ${PersonCodec.encodedSize(persons.last())} bytes")
+
+    /*
+        Prints on a single core machine:
+        Java serialization                130,587 ops/s     7657.7 ns/op  gc:   24 (   10 ms)  heap: 37,194 KB  alloc:  637,422 KB
+        PersonCodec                     4,407,735 ops/s      226.9 ns/op  gc:    0 (    0 ms)  heap: 37,765 KB  alloc:   21,867 KB
+        PersonCodec + PersonFlyweight   3,330,804 ops/s      300.2 ns/op  gc:    0 (    0 ms)  heap: 15,961 KB  alloc:        0 KB
+        Encoded size Java serialization: 113 bytes, PersonCodec: 34 bytes
+
+        🔥 PersonCodec is ~30 times faster than Java serialization with a third of the size. The flyweight
+        allocates nothing, but like MappedFileLines Kotlin's endsWith() on a CharSequence that is not a String
+        compares char by char, so it only pays off when the names are not read completely or GC matters.
+     */
+}
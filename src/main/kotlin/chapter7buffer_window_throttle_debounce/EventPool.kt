@@ -0,0 +1,291 @@
+package chapter7buffer_window_throttle_debounce
+
+import io.reactivex.Observable
+import io.reactivex.disposables.Disposable
+import io.reactivex.exceptions.OnErrorNotImplementedException
+import io.reactivex.plugins.RxJavaPlugins
+import java.lang.ref.ReferenceQueue
+import java.lang.ref.WeakReference
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.LongAdder
+
+/**
+ * 🔥 INFO PooledEvent
+ *
+ * A mutable event that goes back to its [EventPool] instead of becoming garbage. It starts with a reference
+ * count of 1 when it is acquired, [retain] adds one for every additional holder, like a second subscriber,
+ * and [release] removes one. The last [release] calls [reset] and returns it to the pool.
+ *
+ * After the last release the event belongs to the pool again and may already be reused, do not keep it.
+ */
+abstract class PooledEvent {
+
+    private val references = AtomicInteger()
+
+    @Volatile
+    internal var pool: EventPool<*>? = null
+
+    // Only with debug, where the event was acquired until it is released
+    @Volatile
+    internal var tracked: TrackedEvent? = null
+
+    val refCount: Int
+        get() = references.get()
+
+    fun retain(): PooledEvent {
+        while (true) {
+            val current = references.get()
+            check(current > 0) { "retain() of a released event" }
+            if (references.compareAndSet(current, current + 1)) {
+                return this
+            }
+        }
+    }
+
+    /**
+     * True if this was the last reference and the event went back to its pool
+     */
+    fun release(): Boolean {
+        while (true) {
+            val current = references.get()
+            check(current > 0) { "release() of an event that was released already" }
+            if (references.compareAndSet(current, current - 1)) {
+                if (current > 1) {
+                    return false
+                }
+                reset()
+                pool?.recycle(this)
+                return true
+            }
+        }
+    }
+
+    internal fun acquired() {
+        references.set(1)
+    }
+
+    /**
+     * Clears the fields before the event goes back to the pool
+     */
+    protected open fun reset() {}
+}
+
+/**
+ * Events acquired at [site] and not released
+ *
+ * @param outstanding events that are still reachable and older than the threshold of [EventPool.leaks]
+ * @param oldestMillis age of the oldest outstanding one
+ * @param collected events the GC collected without a release
+ */
+data class EventLeak(val site: String, val outstanding: Int, val oldestMillis: Long, val collected: Long) {
+    override fun toString() = "$outstanding events out, oldest $oldestMillis ms, $collected collected: $site"
+}
+
+/**
+ * Weak reference to an acquired event, equal only to itself so events that override equals() do not collide
+ */
+internal class TrackedEvent(
+    event: PooledEvent,
+    queue: ReferenceQueue<PooledEvent>,
+    val site: String,
+    val acquiredAt: Long
+) : WeakReference<PooledEvent>(event, queue)
+
+/**
+ * 🔥 INFO EventPool
+ *
+ * Pipelines that create a new object for every item, like **buffer()** with its lists or a **Person** per row,
+ * keep the GC busy at high rates. A source can [acquire] its events from a pool instead, fill them and emit them.
+ * Whoever consumes an event last releases it, with [subscribeReleasing], [mapReleasing] or [filterReleasing].
+ *
+ * * At most [capacity] released events are kept, [acquire] creates a new one with [factory] when the pool is empty
+ * * [created], [acquired], [recycled] and [outstanding] show how well the pool works
+ * * With [debug] every acquired event is tracked with the line that acquired it until it is released,
+ * [leaks] groups the ones that are still out like **SubscriptionLeakDetector**. It costs a stack trace per event.
+ * Events are only tracked with weak references, a leaked event is still collected and counted for its line.
+ *
+ * Operators that drop items without telling anybody leak them: a plain **filter()**, **take()**, **distinct()**,
+ * or a dispose while items wait in the queue of **observeOn()**. So does a disposed emitter, a source checks
+ * **isDisposed** before it acquires the next event. A leaked event is not lost, it is collected
+ * by the GC like any other object, only the pool has to create a new one.
+ */
+class EventPool<E : PooledEvent> @JvmOverloads constructor(
+    private val capacity: Int,
+    private val debug: Boolean = java.lang.Boolean.getBoolean("rx.pool.debug"),
+    private val factory: () -> E
+) {
+
+    private val free = ArrayBlockingQueue<E>(capacity)
+
+    private val createdCount = LongAdder()
+    private val acquiredCount = LongAdder()
+    private val recycledCount = LongAdder()
+
+    // Only with debug, events that are out, and leaked ones the GC collected by the line that acquired them
+    private val live: MutableSet<TrackedEvent> = ConcurrentHashMap.newKeySet()
+    private val collected = ConcurrentHashMap<String, LongAdder>()
+    private val collectedQueue = ReferenceQueue<PooledEvent>()
+
+    init {
+        require(capacity > 0) { "capacity > 0 required but it was $capacity" }
+    }
+
+    fun acquire(): E {
+
+        val event = free.poll() ?: factory().also {
+            it.pool = this
+            createdCount.increment()
+        }
+        event.acquired()
+        acquiredCount.increment()
+
+        if (debug) {
+            expungeCollected()
+            val tracked = TrackedEvent(event, collectedQueue, callSite(), System.nanoTime())
+            event.tracked = tracked
+            live.add(tracked)
+        }
+        return event
+    }
+
+    internal fun recycle(event: PooledEvent) {
+
+        event.tracked?.let {
+            live.remove(it)
+            // A cleared reference is not enqueued
+            it.clear()
+            event.tracked = null
+        }
+        recycledCount.increment()
+
+        @Suppress("UNCHECKED_CAST")
+        free.offer(event as E)
+    }
+
+    val created: Long
+        get() = createdCount.sum()
+
+    val acquired: Long
+        get() = acquiredCount.sum()
+
+    val recycled: Long
+        get() = recycledCount.sum()
+
+    /**
+     * Events acquired and not released yet, in use or leaked
+     */
+    val outstanding: Long
+        get() = acquired - recycled
+
+    /**
+     * With [debug] the events that are out longer than [olderThan] and the ones collected without a release,
+     * grouped by where they were acquired. Always empty without it.
+     */
+    fun leaks(olderThan: Long, unit: TimeUnit): List<EventLeak> {
+
+        expungeCollected()
+
+        val now = System.nanoTime()
+        val threshold = unit.toNanos(olderThan)
+
+        val out = live
+            .filter { now - it.acquiredAt >= threshold }
+            .groupBy { it.site }
+
+        return (out.keys + collected.keys)
+            .map { site ->
+                val events = out[site].orEmpty()
+                val oldest = events.map { it.acquiredAt }.min()
+                EventLeak(
+                    site,
+                    events.size,
+                    if (oldest == null) 0 else TimeUnit.NANOSECONDS.toMillis(now - oldest),
+                    collected[site]?.sum() ?: 0
+                )
+            }
+            .sortedByDescending { it.outstanding + it.collected }
+    }
+
+    override fun toString() =
+        "created: $created, acquired: $acquired, recycled: $recycled, outstanding: $outstanding, pooled: ${free.size}"
+
+    /**
+     * Moves the events the GC collected before they were released from [live] to [collected]
+     */
+    private fun expungeCollected() {
+        while (true) {
+            val tracked = collectedQueue.poll() as TrackedEvent? ?: return
+            if (live.remove(tracked)) {
+                collected.computeIfAbsent(tracked.site) { LongAdder() }.increment()
+            }
+        }
+    }
+
+    /**
+     * First stack frame outside of RxJava, the JDK, Kotlin and this file
+     */
+    private fun callSite(): String {
+        for (element in Throwable().stackTrace) {
+            val className = element.className
+            if (!className.startsWith("io.reactivex.") &&
+                !className.startsWith("java.") &&
+                !className.startsWith("kotlin.") &&
+                element.fileName != "EventPool.kt"
+            ) {
+                return "${element.className}.${element.methodName}(${element.fileName}:${element.lineNumber})"
+            }
+        }
+        return "unknown"
+    }
+}
+
+/**
+ * Terminal consumer that releases every event after [onNext], also when it throws
+ */
+fun <E : PooledEvent> Observable<E>.subscribeReleasing(
+    onNext: (E) -> Unit,
+    onError: (Throwable) -> Unit = { RxJavaPlugins.onError(OnErrorNotImplementedException(it)) },
+    onComplete: () -> Unit = {}
+): Disposable = subscribe(
+    { event ->
+        try {
+            onNext(event)
+        } finally {
+            event.release()
+        }
+    },
+    { onError(it) },
+    { onComplete() }
+)
+
+/**
+ * Copies what is needed out of the event with [mapper] and releases it
+ */
+fun <E : PooledEvent, R> Observable<E>.mapReleasing(mapper: (E) -> R): Observable<R> =
+    map { event ->
+        try {
+            mapper(event)
+        } finally {
+            event.release()
+        }
+    }
+
+/**
+ * **filter()** that releases the events it drops
+ */
+fun <E : PooledEvent> Observable<E>.filterReleasing(predicate: (E) -> Boolean): Observable<E> =
+    filter { event ->
+        val keep = try {
+            predicate(event)
+        } catch (ex: Throwable) {
+            event.release()
+            throw ex
+        }
+        if (!keep) {
+            event.release()
+        }
+        keep
+    }
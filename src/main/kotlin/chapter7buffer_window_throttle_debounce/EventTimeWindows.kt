@@ -0,0 +1,244 @@
+package chapter7buffer_window_throttle_debounce
+
+import io.reactivex.Observable
+import java.util.TreeMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * How [windowByEventTime] puts events into windows, all times are in milliseconds of event time
+ *
+ * * **tumbling** windows of one size follow each other without gaps, every event is in exactly one of them
+ * * **sliding** windows of one size start every **slide**, an event is in size / slide of them
+ * * **session** windows grow while events are less than **gap** apart, the window ends **gap** after its last event
+ */
+class EventTimeWindows private constructor(internal val session: Boolean, internal val size: Long, internal val slide: Long) {
+
+    companion object {
+
+        @JvmStatic
+        fun tumbling(size: Long, unit: TimeUnit) = sliding(size, size, unit)
+
+        /**
+         * [slide] may not be larger than [size], events between windows that do not overlap would not be in any
+         */
+        @JvmStatic
+        fun sliding(size: Long, slide: Long, unit: TimeUnit): EventTimeWindows {
+            val sizeMillis = unit.toMillis(size)
+            val slideMillis = unit.toMillis(slide)
+            require(sizeMillis > 0 && slideMillis > 0) {
+                "size and slide of at least 1 ms required but they were $size and $slide $unit"
+            }
+            require(slideMillis <= sizeMillis) { "slide <= size required but they were $slide and $size $unit" }
+            return EventTimeWindows(false, sizeMillis, slideMillis)
+        }
+
+        @JvmStatic
+        fun session(gap: Long, unit: TimeUnit): EventTimeWindows {
+            val gapMillis = unit.toMillis(gap)
+            require(gapMillis > 0) { "gap of at least 1 ms required but it was $gap $unit" }
+            return EventTimeWindows(true, gapMillis, 0)
+        }
+    }
+}
+
+/**
+ * Result of one window from [start] inclusive to [end] exclusive, [update] is true when a late event changed
+ * a window that was already emitted
+ */
+data class WindowResult<A>(val start: Long, val end: Long, val value: A, val count: Long, val update: Boolean)
+
+/**
+ * 🔥 INFO Event time windows
+ *
+ * **buffer(1, TimeUnit.SECONDS)** and **window()** group by the time items **arrive**. Events from batched or
+ * retrying producers arrive late and out of order and end up in the wrong window. This operator groups by the time
+ * [timestamp] reads from each event:
+ *
+ * * The **watermark** is the largest timestamp seen minus [maxOutOfOrderness], the promise that no older
+ * events will come. A window is emitted when the watermark passes its end.
+ * * Events older than the watermark still update their window for [allowedLateness] after its end,
+ * the window is emitted again with **update = true**
+ * * Events that are too late for every window go to [onLate] instead
+ * * Each window only keeps its accumulator, [accumulate] folds events into it one by one like **reduce()**,
+ * nothing is buffered. Session windows need [merge] to join two sessions that a new event connects.
+ *
+ * Windows still open when the source completes are emitted then.
+ * The watermark only moves with events, a source that goes quiet keeps its last windows open.
+ */
+fun <T, A> Observable<T>.windowByEventTime(
+    windows: EventTimeWindows,
+    maxOutOfOrderness: Long,
+    unit: TimeUnit,
+    timestamp: (T) -> Long,
+    initial: () -> A,
+    accumulate: (A, T) -> A,
+    merge: ((A, A) -> A)? = null,
+    allowedLateness: Long = 0,
+    onLate: (T) -> Unit = {}
+): Observable<WindowResult<A>> {
+
+    require(!windows.session || merge != null) { "Session windows need merge" }
+
+    return Observable.defer {
+        val state = EventTimeWindowState(
+            windows, unit.toMillis(maxOutOfOrderness), unit.toMillis(allowedLateness),
+            timestamp, initial, accumulate, merge, onLate
+        )
+        flatMapIterable { state.onEvent(it) }
+            .concatWith(Observable.defer { Observable.fromIterable(state.onComplete()) })
+    }
+}
+
+private class WindowState<A>(val start: Long, val end: Long, var value: A) {
+    var count = 0L
+    // Emitted at least once and changed since it was emitted last
+    var emitted = false
+    var changed = true
+}
+
+/**
+ * Open windows by start, their ends are in the same order since windows of one size and sessions never overlap
+ */
+private class EventTimeWindowState<T, A>(
+    private val windows: EventTimeWindows,
+    private val maxOutOfOrderness: Long,
+    private val allowedLateness: Long,
+    private val timestamp: (T) -> Long,
+    private val initial: () -> A,
+    private val accumulate: (A, T) -> A,
+    private val merge: ((A, A) -> A)?,
+    private val onLate: (T) -> Unit
+) {
+
+    private val open = TreeMap<Long, WindowState<A>>()
+
+    private var watermark = Long.MIN_VALUE
+
+    fun onEvent(event: T): List<WindowResult<A>> {
+
+        val time = timestamp(event)
+        var results: MutableList<WindowResult<A>>? = null
+
+        val accepted = addEvent(event, time) { window ->
+            // A window behind the watermark that takes a late event is emitted right away
+            if (window.end <= watermark) {
+                results = (results ?: ArrayList()).apply { add(window.emit()) }
+            }
+        }
+
+        if (!accepted) {
+            onLate(event)
+        }
+
+        if (time - maxOutOfOrderness > watermark) {
+            watermark = time - maxOutOfOrderness
+            results = advance(results)
+        }
+
+        return results ?: emptyList()
+    }
+
+    fun onComplete(): List<WindowResult<A>> {
+        watermark = Long.MAX_VALUE
+        return advance(null) ?: emptyList()
+    }
+
+    /**
+     * Adds the event to every window of its time that is not too late, returns false if there was none
+     */
+    private inline fun addEvent(event: T, time: Long, onUpdated: (WindowState<A>) -> Unit): Boolean {
+
+        if (windows.session) {
+            val session = addToSession(event, time) ?: return false
+            onUpdated(session)
+            return true
+        }
+
+        var accepted = false
+        var start = Math.floorDiv(time, windows.slide) * windows.slide
+
+        while (start > time - windows.size) {
+            val end = start + windows.size
+            if (!isExpired(end)) {
+                val window = open.getOrPut(start) { WindowState(start, end, initial()) }
+                window.value = accumulate(window.value, event)
+                window.count++
+                window.changed = true
+                onUpdated(window)
+                accepted = true
+            }
+            start -= windows.slide
+        }
+        return accepted
+    }
+
+    private fun addToSession(event: T, time: Long): WindowState<A>? {
+
+        var start = time
+        var end = time + windows.size
+        if (isExpired(end)) {
+            return null
+        }
+
+        var value = accumulate(initial(), event)
+        var count = 1L
+        var emitted = false
+
+        // Sessions this one overlaps: at most one that starts before it, any number that start inside it
+        val before = open.floorEntry(time)?.value
+        val overlapping = ArrayList<WindowState<A>>()
+        if (before != null && before.end > time) {
+            overlapping.add(before)
+        }
+        overlapping.addAll(open.subMap(time, false, end, false).values)
+
+        for (session in overlapping) {
+            open.remove(session.start)
+            start = minOf(start, session.start)
+            end = maxOf(end, session.end)
+            // Keep event time order for accumulators where it matters, like a list
+            value = if (session.start <= time) merge!!(session.value, value) else merge!!(value, session.value)
+            count += session.count
+            emitted = emitted || session.emitted
+        }
+
+        val session = WindowState(start, end, value)
+        session.count = count
+        session.emitted = emitted
+        open[start] = session
+        return session
+    }
+
+    /**
+     * Emits the windows the watermark passed and drops the ones that can not change anymore
+     */
+    private fun advance(results: MutableList<WindowResult<A>>?): MutableList<WindowResult<A>>? {
+
+        var list = results
+        val iterator = open.values.iterator()
+
+        while (iterator.hasNext()) {
+            val window = iterator.next()
+            if (window.end > watermark) {
+                break
+            }
+            if (window.changed) {
+                list = (list ?: ArrayList()).apply { add(window.emit()) }
+            }
+            if (isExpired(window.end)) {
+                iterator.remove()
+            }
+        }
+        return list
+    }
+
+    // The window can not take events anymore, watermark >= end + allowedLateness without overflowing
+    private fun isExpired(end: Long) = watermark != Long.MIN_VALUE && watermark - allowedLateness >= end
+
+    private fun WindowState<A>.emit(): WindowResult<A> {
+        val result = WindowResult(start, end, value, count, emitted)
+        emitted = true
+        changed = false
+        return result
+    }
+}
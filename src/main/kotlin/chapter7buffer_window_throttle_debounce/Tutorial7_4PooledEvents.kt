@@ -0,0 +1,143 @@
+package chapter7buffer_window_throttle_debounce
+
+import benchmark.measure
+import io.reactivex.Observable
+import java.util.concurrent.TimeUnit
+
+fun main() {
+
+//    testPooledEvents()
+//    testPooledEventLeaks()
+
+    // INFO Benchmark
+    testNewEventsVsPooledEvents()
+}
+
+private class SensorSample : PooledEvent() {
+
+    var sensor = 0
+    var value = 0L
+
+    // Raw values of the sample, what makes a new event per item expensive
+    val samples = LongArray(32)
+
+    override fun reset() {
+        sensor = 0
+        value = 0
+        samples.fill(0)
+    }
+}
+
+private fun samples(pool: EventPool<SensorSample>?, count: Int): Observable<SensorSample> =
+    Observable.create { emitter ->
+        for (i in 0 until count) {
+            // A disposed emitter drops the event without releasing it
+            if (emitter.isDisposed) {
+                return@create
+            }
+            val sample = pool?.acquire() ?: SensorSample()
+            sample.sensor = i % 10
+            sample.value = i.toLong()
+            sample.samples[i and 31] = i.toLong()
+            emitter.onNext(sample)
+        }
+        emitter.onComplete()
+    }
+
+/**
+ * 🔥 INFO EventPool
+ *
+ * Every sample is released at the end of the chain before the next one is acquired, so a single event is reused
+ * for all of them. The samples filtered out are released by **filterReleasing()**.
+ */
+private fun testPooledEvents() {
+
+    val pool = EventPool(capacity = 16) { SensorSample() }
+
+    samples(pool, 10)
+        .filterReleasing { it.value % 3 != 0L }
+        .mapReleasing { "sensor ${it.sensor}: ${it.value}" }
+        .subscribe { println(it) }
+
+    println(pool)
+
+    /*
+        Prints:
+        sensor 1: 1
+        sensor 2: 2
+        sensor 4: 4
+        sensor 5: 5
+        sensor 7: 7
+        sensor 8: 8
+        created: 1, acquired: 10, recycled: 10, outstanding: 0, pooled: 1
+     */
+}
+
+/**
+ * A plain **filter()** drops events without releasing them, in debug mode the pool shows where they came from
+ */
+private fun testPooledEventLeaks() {
+
+    val pool = EventPool(capacity = 16, debug = true) { SensorSample() }
+
+    samples(pool, 10)
+        .filter { it.value % 3 != 0L }
+        .subscribeReleasing({ })
+
+    println(pool)
+    pool.leaks(0, TimeUnit.MILLISECONDS).forEach { println("Leak: $it") }
+
+    /*
+        Prints:
+        created: 4, acquired: 10, recycled: 6, outstanding: 4, pooled: 0
+        Leak: 4 events out, oldest 14 ms, 0 collected: chapter7buffer_window_throttle_debounce.Tutorial7_4PooledEventsKt$samples$1.subscribe(Tutorial7_4PooledEvents.kt:38)
+     */
+
+    // 🔥 Every item dropped by filter() is never released, the pool has to create a new event for the next one
+}
+
+/**
+ * 10 million samples of 300 bytes, half of them are filtered out and the rest is summed in buffers of 1,000.
+ * Once with a new sample for every item and once with samples from a pool.
+ */
+private fun testNewEventsVsPooledEvents() {
+
+    val count = 10_000_000
+
+    measure("new events", count.toLong()) {
+        var sum = 0L
+        samples(null, count)
+            .filter { it.sensor % 2 == 0 }
+            .buffer(1000)
+            .subscribe { buffer -> buffer.forEach { sum += it.value + it.samples[0] } }
+    }
+
+    val pool = EventPool(capacity = 2048) { SensorSample() }
+
+    measure("pooled events", count.toLong()) {
+        var sum = 0L
+        samples(pool, count)
+            .filterReleasing { it.sensor % 2 == 0 }
+            .buffer(1000)
+            .subscribe { buffer ->
+                buffer.forEach {
+                    sum += it.value + it.samples[0]
+                    it.release()
+                }
+            }
+    }
+
+    println(pool)
+
+    /*
+        Prints on a single core machine:
+        new events                                           25,662,703 ops/s       39.0 ns/op  gc:  127 (   25 ms)  heap: 16,615 KB  alloc: 3,276,485 KB
+        pooled events                                         7,818,294 ops/s      127.9 ns/op  gc:    2 (    1 ms)  heap: 24,601 KB  alloc:   73,360 KB
+        created: 1000, acquired: 30000000, recycled: 30000000, outstanding: 0, pooled: 1000
+     */
+
+    // 🔥 The pool allocates 45 times less and the GC runs twice instead of 127 times. Throughput is lower here,
+    // young collections of short-lived events are cheap and every acquire and release goes through the pool's
+    // queue and a compare and set on the reference count. The pool pays off when GC pauses matter more than
+    // throughput, or when the events are big or live long enough to be promoted.
+}
@@ -0,0 +1,324 @@
+package chapter8flowable
+
+import io.reactivex.Flowable
+import io.reactivex.FlowableSubscriber
+import io.reactivex.Scheduler
+import io.reactivex.exceptions.MissingBackpressureException
+import io.reactivex.internal.queue.SpscLinkedArrayQueue
+import io.reactivex.internal.subscriptions.SubscriptionHelper
+import io.reactivex.internal.util.BackpressureHelper
+import io.reactivex.plugins.RxJavaPlugins
+import org.reactivestreams.Subscriber
+import org.reactivestreams.Subscription
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * 🔥 INFO observeOn() with an adaptive prefetch
+ *
+ * **observeOn()** requests a fixed number of items from upstream, 128 by default, and then requests
+ * more when half of them were consumed. For an upstream with a long request round trip 128 is not
+ * enough to keep the consumer busy, for a memory constrained pipeline it is too many.
+ *
+ * This version changes its batch size every time it requests more:
+ * * It measures how fast the consumer **drains** the queue and how long upstream takes to
+ * deliver the first item after a **request()**, and aims for **drain rate x round trip x 2**
+ * * If the queue was **empty** the consumer waited for upstream so the batch grows
+ * * If nearly everything requested is **sitting in the queue** the consumer is the bottleneck so the batch shrinks
+ *
+ * The batch always stays between [minPrefetch] and [maxPrefetch]. Like **observeOn(scheduler)**
+ * an error is not delayed, it is delivered even if items are still waiting in the queue.
+ *
+ * @param stats optional, receives the current batch size and how often it changed
+ */
+fun <T> Flowable<T>.observeOnAdaptive(
+    scheduler: Scheduler,
+    minPrefetch: Int = 16,
+    maxPrefetch: Int = 1024,
+    initialPrefetch: Int = Flowable.bufferSize().coerceIn(minPrefetch, maxPrefetch),
+    stats: AdaptivePrefetchStats? = null
+): Flowable<T> = FlowableObserveOnAdaptive(this, scheduler, minPrefetch, maxPrefetch, initialPrefetch, stats)
+
+/**
+ * Snapshot of what [observeOnAdaptive] is doing, fields are updated by the consumer thread.
+ */
+class AdaptivePrefetchStats {
+
+    @Volatile
+    var currentPrefetch = 0
+        internal set
+
+    @Volatile
+    var increases = 0L
+        internal set
+
+    @Volatile
+    var decreases = 0L
+        internal set
+
+    @Volatile
+    var lastRoundTripNanos = 0L
+        internal set
+
+    override fun toString(): String =
+        "AdaptivePrefetchStats(currentPrefetch=$currentPrefetch, increases=$increases, " +
+                "decreases=$decreases, lastRoundTripMicros=${lastRoundTripNanos / 1000})"
+}
+
+class FlowableObserveOnAdaptive<T>(
+    private val source: Flowable<T>,
+    private val scheduler: Scheduler,
+    private val minPrefetch: Int,
+    private val maxPrefetch: Int,
+    private val initialPrefetch: Int,
+    private val stats: AdaptivePrefetchStats?
+) : Flowable<T>() {
+
+    init {
+        require(minPrefetch > 0) { "minPrefetch > 0 required but it was $minPrefetch" }
+        require(maxPrefetch >= minPrefetch) { "maxPrefetch >= minPrefetch required but it was $maxPrefetch" }
+        require(initialPrefetch in minPrefetch..maxPrefetch) {
+            "initialPrefetch in [$minPrefetch, $maxPrefetch] required but it was $initialPrefetch"
+        }
+    }
+
+    override fun subscribeActual(s: Subscriber<in T>) {
+        source.subscribe(
+            ObserveOnAdaptiveSubscriber(s, scheduler.createWorker(), minPrefetch, maxPrefetch, initialPrefetch, stats)
+        )
+    }
+
+    private class ObserveOnAdaptiveSubscriber<T>(
+        private val downstream: Subscriber<in T>,
+        private val worker: Scheduler.Worker,
+        private val minPrefetch: Int,
+        private val maxPrefetch: Int,
+        initialPrefetch: Int,
+        private val stats: AdaptivePrefetchStats?
+    ) : FlowableSubscriber<T>, Subscription, Runnable {
+
+        private val queue = SpscLinkedArrayQueue<T>(Flowable.bufferSize())
+
+        private val wip = AtomicInteger()
+
+        private val requested = AtomicLong()
+
+        private lateinit var upstream: Subscription
+
+        @Volatile
+        private var done = false
+
+        @Volatile
+        private var cancelled = false
+
+        private var error: Throwable? = null
+
+        // Round trip measurement, written by the drain thread when requesting and read by the upstream thread
+        @Volatile
+        private var requestedAtNanos = 0L
+
+        @Volatile
+        private var roundTripNanos = 0L
+
+        // Only accessed by the drain thread
+        private var emitted = 0L
+        private var prefetch = initialPrefetch
+        private var credit = initialPrefetch.toLong()
+        private var consumedSinceAdapt = 0L
+        private var lastAdaptNanos = 0L
+        private var drainRatePerNano = 0.0
+
+        override fun onSubscribe(s: Subscription) {
+            if (SubscriptionHelper.validate(null, s)) {
+                upstream = s
+                stats?.currentPrefetch = prefetch
+                downstream.onSubscribe(this)
+                lastAdaptNanos = System.nanoTime()
+                requestedAtNanos = lastAdaptNanos
+                s.request(prefetch.toLong())
+            }
+        }
+
+        override fun onNext(t: T) {
+            if (done) {
+                return
+            }
+
+            val requestedAt = requestedAtNanos
+            if (requestedAt != 0L) {
+                requestedAtNanos = 0L
+                roundTripNanos = System.nanoTime() - requestedAt
+            }
+
+            if (!queue.offer(t)) {
+                upstream.cancel()
+                onError(MissingBackpressureException("Queue is full?!"))
+                return
+            }
+            schedule()
+        }
+
+        override fun onError(t: Throwable) {
+            if (done) {
+                RxJavaPlugins.onError(t)
+                return
+            }
+            error = t
+            done = true
+            schedule()
+        }
+
+        override fun onComplete() {
+            if (!done) {
+                done = true
+                schedule()
+            }
+        }
+
+        override fun request(n: Long) {
+            if (SubscriptionHelper.validate(n)) {
+                BackpressureHelper.add(requested, n)
+                schedule()
+            }
+        }
+
+        override fun cancel() {
+            if (!cancelled) {
+                cancelled = true
+                upstream.cancel()
+                worker.dispose()
+                if (wip.getAndIncrement() == 0) {
+                    queue.clear()
+                }
+            }
+        }
+
+        private fun schedule() {
+            if (wip.getAndIncrement() == 0) {
+                worker.schedule(this)
+            }
+        }
+
+        override fun run() {
+
+            var missed = 1
+            var e = emitted
+
+            while (true) {
+
+                val r = requested.get()
+
+                while (e != r) {
+                    val d = done
+                    val v = queue.poll()
+
+                    if (checkTerminated(d, v == null)) {
+                        return
+                    }
+
+                    if (v == null) {
+                        break
+                    }
+
+                    downstream.onNext(v)
+                    e++
+                    consumed()
+                }
+
+                if (e == r && checkTerminated(done, queue.isEmpty)) {
+                    return
+                }
+
+                emitted = e
+                missed = wip.addAndGet(-missed)
+                if (missed == 0) {
+                    break
+                }
+            }
+        }
+
+        /**
+         * Requests a new batch once half of the outstanding credit was consumed
+         */
+        private fun consumed() {
+
+            consumedSinceAdapt++
+            credit--
+
+            if (credit <= prefetch shr 1) {
+                adapt()
+                if (credit < prefetch) {
+                    val n = prefetch - credit
+                    credit = prefetch.toLong()
+                    requestedAtNanos = System.nanoTime()
+                    upstream.request(n)
+                }
+            }
+        }
+
+        private fun adapt() {
+
+            val now = System.nanoTime()
+            val elapsed = now - lastAdaptNanos
+            if (elapsed > 0) {
+                val rate = consumedSinceAdapt.toDouble() / elapsed
+                drainRatePerNano = if (drainRatePerNano == 0.0) rate else (drainRatePerNano + rate) / 2
+            }
+            lastAdaptNanos = now
+            consumedSinceAdapt = 0
+
+            val rtt = roundTripNanos
+            var target = if (rtt > 0 && drainRatePerNano > 0.0) {
+                (drainRatePerNano * rtt * 2).toLong().coerceAtMost(Int.MAX_VALUE.toLong()).toInt()
+            } else {
+                prefetch
+            }
+
+            // credit is what is queued plus what is still on its way from upstream
+            val queued = queue.size().toLong()
+
+            if (queued == 0L) {
+                // starved, the consumer had to wait for upstream
+                target = maxOf(target, prefetch * 2)
+            } else if (queued * 4 >= credit * 3) {
+                // saturated, upstream delivered almost everything and the consumer could not keep up
+                target = minOf(target, prefetch / 2)
+            }
+
+            target = target.coerceIn(minPrefetch, maxPrefetch)
+
+            stats?.let {
+                if (target > prefetch) it.increases++
+                if (target < prefetch) it.decreases++
+                it.currentPrefetch = target
+                it.lastRoundTripNanos = rtt
+            }
+
+            prefetch = target
+        }
+
+        private fun checkTerminated(d: Boolean, empty: Boolean): Boolean {
+
+            if (cancelled) {
+                queue.clear()
+                return true
+            }
+
+            if (d) {
+                val e = error
+                if (e != null) {
+                    queue.clear()
+                    downstream.onError(e)
+                    worker.dispose()
+                    return true
+                }
+                if (empty) {
+                    downstream.onComplete()
+                    worker.dispose()
+                    return true
+                }
+            }
+            return false
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package chapter8flowable
+
+import io.reactivex.Emitter
+import io.reactivex.Flowable
+import io.reactivex.Observable
+import io.reactivex.functions.BiConsumer
+import io.reactivex.functions.Consumer
+import java.io.Closeable
+import java.nio.Buffer
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.Charset
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.util.concurrent.Callable
+
+/**
+ * 🔥 INFO Lines of a memory mapped file
+ *
+ * **BufferedReader.lines()** decodes every line into a new **String**, for a multi GB log file
+ * that is one allocation per line. These sources map the file with **FileChannel.map()** and emit
+ * a single reused [CharSequence] that points into the mapped bytes, so reading allocates almost nothing.
+ *
+ * 🔥🔥 The emitted [CharSequence] is **only valid until the next emission**. Consume it synchronously,
+ * or call **toString()** to keep it. Anything that queues items, like **observeOn()**, **buffer()** or
+ * **toList()**, must use **copy = true** which emits a new **String** for every line.
+ *
+ * * Lines end with **\n**, a trailing **\r** is removed
+ * * A line that contains a byte above 0x7F is not plain ASCII and is decoded with [charset] into a **String**
+ * even without copy, since its chars do not map 1 to 1 to bytes
+ * * Files larger than 2 GB are mapped in windows of [regionSize] bytes, a line must fit into one window
+ */
+object MappedFileLines {
+
+    const val DEFAULT_REGION_SIZE = 64 * 1024 * 1024
+
+    @JvmStatic
+    @JvmOverloads
+    fun flowable(
+        path: Path,
+        copy: Boolean = false,
+        charset: Charset = Charsets.UTF_8,
+        regionSize: Int = DEFAULT_REGION_SIZE
+    ): Flowable<CharSequence> = Flowable.generate(
+        Callable { MappedLineReader(path, copy, charset, regionSize) },
+        BiConsumer<MappedLineReader, Emitter<CharSequence>> { reader, emitter -> reader.next(emitter) },
+        Consumer { it.close() }
+    )
+
+    @JvmStatic
+    @JvmOverloads
+    fun observable(
+        path: Path,
+        copy: Boolean = false,
+        charset: Charset = Charsets.UTF_8,
+        regionSize: Int = DEFAULT_REGION_SIZE
+    ): Observable<CharSequence> = Observable.generate(
+        Callable { MappedLineReader(path, copy, charset, regionSize) },
+        BiConsumer<MappedLineReader, Emitter<CharSequence>> { reader, emitter -> reader.next(emitter) },
+        Consumer { it.close() }
+    )
+}
+
+/**
+ * Reads one line per [next] call, mapping a new window of the file when the current one is used up.
+ */
+class MappedLineReader(
+    path: Path,
+    private val copy: Boolean,
+    private val charset: Charset,
+    private val regionSize: Int
+) : Closeable {
+
+    private val channel = FileChannel.open(path, StandardOpenOption.READ)
+
+    private val fileSize = channel.size()
+
+    private val line = MappedLine()
+
+    private var buffer: MappedByteBuffer? = null
+
+    // Used only with copy or for non ASCII lines, reused for every line
+    private var copyView: ByteBuffer? = null
+    private var scratch = ByteArray(256)
+
+    // position of the window in the file
+    private var regionStart = 0L
+
+    // position of the next line inside the window
+    private var position = 0
+
+    init {
+        require(regionSize > 0) { "regionSize > 0 required but it was $regionSize" }
+    }
+
+    fun next(emitter: Emitter<CharSequence>) {
+
+        while (true) {
+
+            val current = buffer
+
+            if (current == null || position >= current.limit()) {
+                if (!map(regionStart + position)) {
+                    emitter.onComplete()
+                    return
+                }
+                continue
+            }
+
+            val limit = current.limit()
+            var end = position
+            var ascii = true
+
+            // 🔥 Check 8 bytes at a time, only fall back to single bytes for a word with a newline in it
+            while (end + 8 <= limit) {
+                val word = current.getLong(end)
+                if (word and HIGH_BITS != 0L) {
+                    ascii = false
+                }
+                if (hasNewline(word)) {
+                    break
+                }
+                end += 8
+            }
+
+            while (end < limit) {
+                val b = current.get(end).toInt()
+                if (b == '\n'.toInt()) {
+                    break
+                }
+                if (b < 0) {
+                    ascii = false
+                }
+                end++
+            }
+
+            val lastWindow = regionStart + limit >= fileSize
+
+            if (end == limit && !lastWindow) {
+                // The line continues in the next window, map again starting at this line
+                if (position == 0) {
+                    emitter.onError(IllegalStateException("Line at offset $regionStart is longer than regionSize $regionSize"))
+                    return
+                }
+                map(regionStart + position)
+                continue
+            }
+
+            val start = position
+            position = end + 1
+
+            var length = end - start
+            if (length > 0 && current.get(start + length - 1) == '\r'.toByte()) {
+                length--
+            }
+
+            emitter.onNext(emit(current, start, length, ascii))
+            return
+        }
+    }
+
+    private fun emit(buffer: MappedByteBuffer, start: Int, length: Int, ascii: Boolean): CharSequence {
+
+        if (!copy && ascii) {
+            line.reset(buffer, start, length)
+            return line
+        }
+
+        if (scratch.size < length) {
+            scratch = ByteArray(maxOf(length, scratch.size * 2))
+        }
+
+        // Buffer cast keeps the Java 8 signature, newer JDKs return ByteBuffer here
+        val view = copyView!!
+        (view as Buffer).position(start)
+        view.get(scratch, 0, length)
+        return String(scratch, 0, length, charset)
+    }
+
+    /**
+     * Maps the window starting at [fileOffset], returns false when the end of the file was reached
+     */
+    private fun map(fileOffset: Long): Boolean {
+
+        if (fileOffset >= fileSize) {
+            return false
+        }
+
+        val size = minOf(regionSize.toLong(), fileSize - fileOffset)
+        val mapped = channel.map(FileChannel.MapMode.READ_ONLY, fileOffset, size)
+        buffer = mapped
+        // Cast keeps the Java 8 signature, newer JDKs return MappedByteBuffer here
+        copyView = (mapped as ByteBuffer).duplicate()
+        regionStart = fileOffset
+        position = 0
+        return true
+    }
+
+    /**
+     * Closes the channel. 🔥 The mapping itself is released when the buffer is garbage collected,
+     * Java 8 has no public API to unmap it earlier.
+     */
+    override fun close() {
+        buffer = null
+        copyView = null
+        channel.close()
+    }
+
+    private companion object {
+
+        const val HIGH_BITS = -0x7f7f7f7f7f7f7f80L // 0x8080808080808080
+
+        const val NEWLINES = 0x0a0a0a0a0a0a0a0aL
+
+        const val LOW_BITS = 0x0101010101010101L
+
+        /**
+         * True if any byte of [word] is '\n', the usual "has zero byte" trick applied to word xor newlines
+         */
+        fun hasNewline(word: Long): Boolean {
+            val x = word xor NEWLINES
+            return (x - LOW_BITS) and x.inv() and HIGH_BITS != 0L
+        }
+    }
+}
+
+/**
+ * Flyweight view of plain ASCII bytes in a mapped buffer, every char is one byte.
+ */
+class MappedLine internal constructor() : CharSequence {
+
+    private var buffer: MappedByteBuffer? = null
+    private var offset = 0
+    private var size = 0
+
+    internal fun reset(buffer: MappedByteBuffer, offset: Int, length: Int) {
+        this.buffer = buffer
+        this.offset = offset
+        this.size = length
+    }
+
+    override val length: Int
+        get() = size
+
+    override fun get(index: Int): Char {
+        if (index < 0 || index >= size) {
+            throw IndexOutOfBoundsException("index: $index, length: $size")
+        }
+        return (buffer!!.get(offset + index).toInt() and 0xFF).toChar()
+    }
+
+    /**
+     * Returns a new view on the same bytes. Unlike the emitted line it is not reused,
+     * but it keeps the whole mapped window reachable while it is referenced.
+     */
+    override fun subSequence(startIndex: Int, endIndex: Int): CharSequence {
+        if (startIndex < 0 || endIndex > size || startIndex > endIndex) {
+            throw IndexOutOfBoundsException("start: $startIndex, end: $endIndex, length: $size")
+        }
+        return MappedLine().also { it.reset(buffer!!, offset + startIndex, endIndex - startIndex) }
+    }
+
+    override fun toString(): String {
+        val chars = CharArray(size)
+        for (i in 0 until size) {
+            chars[i] = get(i)
+        }
+        return String(chars)
+    }
+}
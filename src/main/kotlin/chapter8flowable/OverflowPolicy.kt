@@ -0,0 +1,43 @@
+package chapter8flowable
+
+import io.reactivex.BackpressureOverflowStrategy
+import io.reactivex.Flowable
+
+/**
+ * 🔥 INFO What to do when a producer is faster than its consumer
+ *
+ * * **BUFFER** keeps at most **capacity** items and drops the **oldest** one when it is full
+ * * **DROP** delivers only items the consumer requested, everything else is dropped
+ * * **LATEST** is like DROP but always keeps the **most recent** item for the next request
+ *
+ * All of them keep memory bounded, unlike an [io.reactivex.Observable] which queues without limit.
+ */
+enum class OverflowPolicy {
+    BUFFER,
+    DROP,
+    LATEST
+}
+
+/**
+ * Applies [policy] right after a source that can not be slowed down, like **interval()** or a hot source.
+ *
+ * [onDropped] is called for every dropped item with **DROP**, once per dropped item with **BUFFER**
+ * (the item itself is not available there so it receives null) and never with **LATEST** since
+ * **onBackpressureLatest()** has no callback.
+ */
+fun <T> Flowable<T>.onOverflow(
+    policy: OverflowPolicy,
+    capacity: Long = Flowable.bufferSize().toLong(),
+    onDropped: (T?) -> Unit = {}
+): Flowable<T> {
+
+    return when (policy) {
+        OverflowPolicy.BUFFER -> onBackpressureBuffer(
+            capacity,
+            { onDropped(null) },
+            BackpressureOverflowStrategy.DROP_OLDEST
+        )
+        OverflowPolicy.DROP -> onBackpressureDrop { onDropped(it) }
+        OverflowPolicy.LATEST -> onBackpressureLatest()
+    }
+}
@@ -0,0 +1,275 @@
+package chapter8flowable
+
+import io.reactivex.BackpressureOverflowStrategy
+import io.reactivex.Flowable
+import io.reactivex.Observable
+import io.reactivex.schedulers.Schedulers
+import java.lang.Thread.sleep
+import java.util.concurrent.TimeUnit
+
+
+fun main() {
+
+    // INFO Observable vs Flowable
+//    testObservableIntervalWithSlowConsumer()
+//    testFlowableIntervalMissingBackpressure()
+
+    // INFO onBackpressureXXX
+//    testOnBackpressureBuffer()
+//    testOnBackpressureDrop()
+    testOnBackpressureLatest()
+
+    // INFO Ports of chapter 2 and chapter 4 demos
+//    testConnectFlowableInterval()
+//    testMergeFlowableInterval()
+}
+
+/**
+ * 🔥 INFO Observable has no backpressure
+ *
+ * **Observable.interval()** keeps emitting no matter how slow the observer is.
+ * **observeOn()** puts every emission into an **unbounded queue**, so with a slow observer
+ * the queue and the latency grow until the application runs out of memory.
+ */
+private fun testObservableIntervalWithSlowConsumer() {
+
+    Observable.interval(1, TimeUnit.MILLISECONDS)
+        .map { System.nanoTime() }
+        .observeOn(Schedulers.single())
+        .subscribe { emittedAt ->
+            sleep(10)
+            println("Received, latency: ${(System.nanoTime() - emittedAt) / 1_000_000} ms")
+        }
+
+    sleep(3000)
+
+    /*
+        Prints:
+        Received, latency: 12 ms
+        Received, latency: 20 ms
+        Received, latency: 30 ms
+        Received, latency: 42 ms
+        ...
+        Received, latency: 136 ms
+        ...
+        🔥🔥 Latency grows with every item because nothing is ever dropped
+     */
+}
+
+/**
+ * 🔥 INFO Flowable
+ *
+ * A **Flowable** consumer requests how many items it can handle. **Flowable.interval()** is time based
+ * and can not slow down, so when the consumer did not request more it signals
+ * **MissingBackpressureException** instead of queuing silently.
+ */
+private fun testFlowableIntervalMissingBackpressure() {
+
+    Flowable.interval(1, TimeUnit.MILLISECONDS)
+        .observeOn(Schedulers.single())
+        .subscribe(
+            {
+                sleep(10)
+                println("Received: $it")
+            },
+            {
+                println("onError() $it")
+            }
+        )
+
+    sleep(3000)
+
+    /*
+        Prints:
+        Received: 0
+        Received: 1
+        ...
+        Received: 12
+        onError() io.reactivex.exceptions.MissingBackpressureException: Can't deliver value 128 due to lack of requests
+     */
+}
+
+/**
+ * 🔥 INFO onBackpressureBuffer
+ *
+ * Buffers items the consumer did not request yet. Without a capacity it is unbounded like an [Observable],
+ * with a capacity and [BackpressureOverflowStrategy.DROP_OLDEST] memory stays bounded and
+ * the consumer always gets the most recent **capacity** items.
+ */
+private fun testOnBackpressureBuffer() {
+
+    Flowable.interval(1, TimeUnit.MILLISECONDS)
+        .onBackpressureBuffer(
+            16,
+            { println("Buffer is full, dropping oldest") },
+            BackpressureOverflowStrategy.DROP_OLDEST
+        )
+        .observeOn(Schedulers.single(), false, 1)
+        .subscribe {
+            sleep(10)
+            println("Received: $it")
+        }
+
+    sleep(1000)
+
+    /*
+        Prints:
+        Received: 0
+        Buffer is full, dropping oldest
+        Buffer is full, dropping oldest
+        ...
+        Received: 1
+        Buffer is full, dropping oldest
+        ...
+     */
+}
+
+/**
+ * 🔥 INFO onBackpressureDrop
+ *
+ * Items that arrive while the consumer has no outstanding request are dropped.
+ */
+private fun testOnBackpressureDrop() {
+
+    Flowable.interval(1, TimeUnit.MILLISECONDS)
+        .onBackpressureDrop { println("Dropped: $it") }
+        .observeOn(Schedulers.single(), false, 1)
+        .subscribe {
+            sleep(10)
+            println("Received: $it")
+        }
+
+    sleep(1000)
+
+    /*
+        Prints:
+        Dropped: 1
+        Dropped: 2
+        ...
+        Dropped: 12
+        Received: 0
+        Dropped: 14
+        ...
+     */
+}
+
+/**
+ * 🔥 INFO onBackpressureLatest
+ *
+ * Like **onBackpressureDrop()** but the last item is kept and emitted when the consumer requests again,
+ * useful for values where only the most recent one matters like a sensor or a price.
+ */
+private fun testOnBackpressureLatest() {
+
+    Flowable.interval(1, TimeUnit.MILLISECONDS)
+        .onBackpressureLatest()
+        .observeOn(Schedulers.single(), false, 1)
+        .subscribe {
+            sleep(10)
+            println("Received: $it")
+        }
+
+    sleep(1000)
+
+    /*
+        Prints:
+        Received: 0
+        Received: 11
+        Received: 17
+        Received: 37
+        Received: 47
+        ...
+     */
+}
+
+/**
+ * Flowable version of **testConnectObservableInterval()** in **Tutorial2_3ColdHotObservables**
+ *
+ * 🔥🔥 A **ConnectableFlowable** emits only as fast as its **slowest** subscriber requests,
+ * so the overflow policy must be applied **before publish()**. **publish(1)** keeps its own
+ * buffer small, otherwise it queues 128 items before the source starts skipping.
+ * Here the second subscriber is slow, so both subscribers get the same latest values.
+ */
+private fun testConnectFlowableInterval() {
+
+    val connectableFlowable = Flowable.interval(100, TimeUnit.MILLISECONDS)
+        .onOverflow(OverflowPolicy.LATEST)
+        .publish(1)
+
+    connectableFlowable
+        .subscribe { item -> println("Observer 1 Received: $item") }
+
+    connectableFlowable.connect()
+
+    sleep(1000)
+
+    connectableFlowable
+        .observeOn(Schedulers.single(), false, 1)
+        .subscribe { item ->
+            sleep(500)
+            println("Observer 2 Received: $item")
+        }
+
+    sleep(3000)
+
+    /*
+        Prints:
+        Observer 1 Received: 0
+        ...
+        Observer 1 Received: 9
+        Observer 1 Received: 10
+        Observer 2 Received: 10
+        Observer 1 Received: 11
+        Observer 2 Received: 11
+        Observer 1 Received: 15
+        Observer 2 Received: 15 🔥🔥 Both observers skip values at the pace of the slow one
+        Observer 1 Received: 20
+        Observer 2 Received: 20
+     */
+}
+
+/**
+ * Flowable version of **testMergeOperatorInterval()** in **Tutorial4_1Merging**
+ *
+ * Each source gets its own overflow policy, **merge()** and **observeOn()** then only request
+ * what the slow consumer can handle. 🔥 **merge()** prefetches 128 items per source by default,
+ * with a prefetch of 1 the overflow policies kick in right away.
+ */
+private fun testMergeFlowableInterval() {
+
+    //emit every second
+    val source1 = Flowable.interval(1, TimeUnit.SECONDS)
+        .onOverflow(OverflowPolicy.BUFFER, 16)
+        .map { l -> l + 1 } // emit elapsed seconds
+        .map { l -> "Source1: $l seconds" }
+
+    //emit every 300 milliseconds
+    val source2 = Flowable.interval(300, TimeUnit.MILLISECONDS)
+        .onOverflow(OverflowPolicy.DROP, onDropped = { println("Source2 dropped: $it") })
+        .map { l -> (l + 1) * 300 } // emit elapsed milliseconds
+        .map { l -> "Source2: $l milliseconds" }
+
+    //merge with a prefetch of 1 per source and subscribe with a consumer slower than both sources
+    Flowable.merge(listOf(source1, source2), 2, 1)
+        .observeOn(Schedulers.single(), false, 1)
+        .subscribe {
+            sleep(700)
+            println(it)
+        }
+
+    sleep(5000)
+
+    /*
+        Prints:
+        Source2 dropped: 2
+        Source2: 300 milliseconds
+        Source2 dropped: 3
+        Source2 dropped: 4
+        Source1: 1 seconds
+        Source2 dropped: 6
+        Source2 dropped: 7
+        Source2: 600 milliseconds
+        ...
+        🔥 Source1 never loses a value because it is buffered, Source2 drops what can not be consumed
+     */
+}
@@ -0,0 +1,157 @@
+package chapter8flowable
+
+import benchmark.retainedHeapBytes
+import io.reactivex.processors.PublishProcessor
+import io.reactivex.schedulers.Schedulers
+import io.reactivex.subjects.PublishSubject
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.LockSupport
+
+private const val RUN_MILLIS = 3_000L
+private const val PRODUCER_PERIOD_NANOS = 20_000L // ~50k events per second
+private const val CONSUMER_WORK_NANOS = 200_000L // ~5k events per second
+private const val PAYLOAD_SIZE = 1024
+
+fun main() {
+
+    testRateMismatch()
+}
+
+/**
+ * 🔥 INFO Producer/consumer rate mismatch
+ *
+ * A producer thread pushes about 10 times more events than the consumer can process.
+ * Every event carries a 1 KB payload and the time it was produced, the consumer measures
+ * how old each event is when it finally gets processed.
+ *
+ * * **Observable** keeps everything, memory and latency grow for as long as the mismatch lasts
+ * * **Flowable** with any [OverflowPolicy] keeps memory bounded, **BUFFER** trades latency for
+ * losing fewer events, **DROP** and **LATEST** keep latency close to the processing time
+ */
+private fun testRateMismatch() {
+
+    println(String.format("%-22s %10s %10s %10s %12s %12s %12s", "case", "produced", "consumed", "dropped", "mean lat ms", "max lat ms", "retained MB"))
+
+    runCase("Observable") { events, _ ->
+        val subject = PublishSubject.create<Event>()
+        subject.observeOn(Schedulers.single()).subscribe(events)
+        subject::onNext
+    }
+
+    for (policy in OverflowPolicy.values()) {
+        runCase("Flowable $policy") { events, dropped ->
+            val processor = PublishProcessor.create<Event>()
+            processor
+                .onOverflow(policy, 1024) { dropped.incrementAndGet() }
+                .observeOn(Schedulers.single(), false, 16)
+                .subscribe(events)
+            processor::onNext
+        }
+    }
+
+    /*
+        Prints on a single core machine:
+        case                     produced   consumed    dropped  mean lat ms   max lat ms  retained MB
+        Observable                147,719     11,212          0       1385.4       3165.2          140
+        Flowable BUFFER           149,493     12,710    135,757         22.6         60.2            2
+        Flowable DROP             149,905     13,726    136,173          2.1         19.5            2
+        Flowable LATEST           149,981     13,613          0          2.2         19.8            1
+
+        🔥 Observable still holds more than 100k events with their payloads when the run ends and
+        latency keeps growing. LATEST shows 0 dropped only because onBackpressureLatest() can not report drops.
+     */
+}
+
+/**
+ * Runs one case for [RUN_MILLIS]. [setup] subscribes the consumer and returns the function the producer calls.
+ */
+private fun runCase(name: String, setup: (consumer: (Event) -> Unit, dropped: AtomicLong) -> ((Event) -> Unit)) {
+
+    System.gc()
+
+    val stats = ConsumerStats()
+    val dropped = AtomicLong()
+    val produced = AtomicLong()
+
+    val emit = setup({ stats.consume(it) }, dropped)
+
+    val end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS)
+
+    val producer = Thread {
+        var next = System.nanoTime()
+        while (System.nanoTime() < end) {
+            emit(Event(System.nanoTime(), ByteArray(PAYLOAD_SIZE)))
+            produced.incrementAndGet()
+            next += PRODUCER_PERIOD_NANOS
+            LockSupport.parkNanos(next - System.nanoTime())
+        }
+    }
+    producer.start()
+    producer.join()
+
+    // Whatever is still waiting for the consumer is reachable and survives GC
+    val retainedHeap = retainedHeapBytes()
+
+    // 🔥 Events still queued are skipped from now on so the next case starts with an idle consumer
+    stats.stop()
+
+    println(
+        String.format(
+            "%-22s %,10d %,10d %,10d %12.1f %12.1f %12d",
+            name,
+            produced.get(),
+            stats.consumed,
+            dropped.get(),
+            stats.meanLatencyMillis(),
+            stats.maxLatencyNanos / 1_000_000.0,
+            retainedHeap / (1024 * 1024)
+        )
+    )
+}
+
+private class Event(val createdAt: Long, val payload: ByteArray)
+
+private class ConsumerStats {
+
+    @Volatile
+    private var running = true
+
+    // Written only by the consumer thread, volatile so the main thread can read them
+    @Volatile
+    var consumed = 0L
+        private set
+
+    @Volatile
+    var maxLatencyNanos = 0L
+        private set
+
+    @Volatile
+    private var totalLatencyNanos = 0L
+
+    fun consume(event: Event) {
+
+        if (!running) {
+            return
+        }
+
+        val start = System.nanoTime()
+        // simulate work on the payload
+        while (System.nanoTime() - start < CONSUMER_WORK_NANOS) {
+            event.payload[0]++
+        }
+
+        val latency = System.nanoTime() - event.createdAt
+        totalLatencyNanos += latency
+        if (latency > maxLatencyNanos) {
+            maxLatencyNanos = latency
+        }
+        consumed++
+    }
+
+    fun stop() {
+        running = false
+    }
+
+    fun meanLatencyMillis(): Double = if (consumed == 0L) 0.0 else totalLatencyNanos / consumed / 1_000_000.0
+}
@@ -0,0 +1,226 @@
+package chapter8flowable
+
+import io.reactivex.Flowable
+import io.reactivex.schedulers.Schedulers
+import org.reactivestreams.Subscription
+import java.lang.Thread.sleep
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+
+fun main() {
+
+//    testObserveOnAdaptiveWithMerge()
+
+    // INFO Benchmarks
+    testHighLatencyUpstream()
+//    testSlowConsumer()
+}
+
+/**
+ * 🔥 INFO observeOnAdaptive
+ *
+ * The merge pattern of **Tutorial4_1Merging** with the thread hop done by [observeOnAdaptive].
+ * The consumer is slower than both sources so the batch it requests from **merge()** shrinks
+ * towards **minPrefetch** instead of keeping 128 items waiting.
+ *
+ * 🔥🔥 **flatMap()** and **merge()** still use their own fixed prefetch per inner source,
+ * the adaptive batch applies to the hop after them.
+ */
+private fun testObserveOnAdaptiveWithMerge() {
+
+    val stats = AdaptivePrefetchStats()
+
+    val source1 = Flowable.range(1, 1000).map { "Source1: $it" }
+    val source2 = Flowable.range(1, 1000).map { "Source2: $it" }
+
+    Flowable.merge(source1, source2)
+        .observeOnAdaptive(Schedulers.single(), minPrefetch = 8, maxPrefetch = 512, stats = stats)
+        .subscribe {
+            sleep(1)
+        }
+
+    repeat(5) {
+        sleep(500)
+        println(stats)
+    }
+
+    /*
+        Prints:
+        AdaptivePrefetchStats(currentPrefetch=8, increases=0, decreases=1, lastRoundTripMicros=9)
+        AdaptivePrefetchStats(currentPrefetch=8, increases=0, decreases=1, lastRoundTripMicros=4)
+        AdaptivePrefetchStats(currentPrefetch=8, increases=0, decreases=1, lastRoundTripMicros=4)
+        AdaptivePrefetchStats(currentPrefetch=8, increases=0, decreases=1, lastRoundTripMicros=2)
+        AdaptivePrefetchStats(currentPrefetch=16, increases=1, decreases=1, lastRoundTripMicros=2)
+     */
+}
+
+/**
+ * Upstream answers every **request()** after [ROUND_TRIP_MICROS], like a remote or disk backed source.
+ * A small prefetch spends most of the time waiting for the next batch.
+ */
+private fun testHighLatencyUpstream() {
+
+    println("High latency upstream, round trip: $ROUND_TRIP_MICROS µs")
+
+    val executor = Executors.newSingleThreadScheduledExecutor()
+
+    for (prefetch in listOf(16, 128, 1024)) {
+        runCase("observeOn prefetch $prefetch", REMOTE_ITEMS, null) { delivered ->
+            remoteSource(executor, REMOTE_ITEMS, delivered)
+                .observeOn(Schedulers.computation(), false, prefetch)
+        }
+    }
+
+    val stats = AdaptivePrefetchStats()
+    runCase("observeOnAdaptive 16..4096", REMOTE_ITEMS, stats) { delivered ->
+        remoteSource(executor, REMOTE_ITEMS, delivered)
+            .observeOnAdaptive(Schedulers.computation(), 16, 4096, 128, stats)
+    }
+
+    executor.shutdown()
+
+    /*
+        Prints on a single core machine:
+        High latency upstream, round trip: 500 µs
+        observeOn prefetch 16                17,862 items/s   buffered mean:     4.6 max:     15
+        observeOn prefetch 128              160,534 items/s   buffered mean:    47.4 max:    127
+        observeOn prefetch 1024           1,137,025 items/s   buffered mean:   384.3 max:  1,023
+        observeOnAdaptive 16..4096        2,233,180 items/s   buffered mean:  1909.0 max:  4,095   final prefetch: 4096
+
+        🔥 Throughput grows with the batch size, the adaptive hop goes up to maxPrefetch on its own
+     */
+}
+
+/**
+ * Upstream is fast and the consumer spends [CONSUMER_WORK_NANOS] per item,
+ * every requested item ends up waiting in the queue so a big prefetch only costs memory.
+ */
+private fun testSlowConsumer() {
+
+    println("Slow consumer, work per item: ${CONSUMER_WORK_NANOS / 1000} µs")
+
+    for (prefetch in listOf(16, 128, 1024)) {
+        runCase("observeOn prefetch $prefetch", LOCAL_ITEMS, null, CONSUMER_WORK_NANOS) { delivered ->
+            localSource(LOCAL_ITEMS, delivered)
+                .observeOn(Schedulers.computation(), false, prefetch)
+        }
+    }
+
+    val stats = AdaptivePrefetchStats()
+    runCase("observeOnAdaptive 16..4096", LOCAL_ITEMS, stats, CONSUMER_WORK_NANOS) { delivered ->
+        localSource(LOCAL_ITEMS, delivered)
+            .observeOnAdaptive(Schedulers.computation(), 16, 4096, 128, stats)
+    }
+
+    /*
+        Prints on a single core machine:
+        Slow consumer, work per item: 20 µs
+        observeOn prefetch 16                38,295 items/s   buffered mean:     9.1 max:     15
+        observeOn prefetch 128               46,758 items/s   buffered mean:    79.4 max:    127
+        observeOn prefetch 1024              48,034 items/s   buffered mean:   633.2 max:  1,023
+        observeOnAdaptive 16..4096           42,290 items/s   buffered mean:    11.8 max:    127   final prefetch: 16
+
+        🔥 Once it sees the queue full it shrinks to minPrefetch and buffers about as little as prefetch 16
+     */
+}
+
+private const val ROUND_TRIP_MICROS = 500L
+private const val REMOTE_ITEMS = 200_000L
+private const val LOCAL_ITEMS = 50_000L
+private const val CONSUMER_WORK_NANOS = 20_000L
+
+/**
+ * Runs [pipeline] once to warm up and once measured. Buffered items are the items upstream delivered
+ * that the consumer did not process yet, sampled on every item.
+ */
+private fun runCase(
+    name: String,
+    items: Long,
+    stats: AdaptivePrefetchStats?,
+    workNanos: Long = 0,
+    pipeline: (delivered: AtomicLong) -> Flowable<Long>
+) {
+    lateinit var result: String
+
+    repeat(2) {
+
+        val delivered = AtomicLong()
+        var consumed = 0L
+        var maxBuffered = 0L
+        var totalBuffered = 0L
+
+        val start = System.nanoTime()
+
+        // 🔥 The work runs in doOnNext on the thread of the hop, blockingLast() only waits for the end
+        pipeline(delivered)
+            .doOnNext {
+                val begin = System.nanoTime()
+                while (System.nanoTime() - begin < workNanos) {
+                    // busy work
+                }
+                consumed++
+                val buffered = delivered.get() - consumed
+                totalBuffered += buffered
+                if (buffered > maxBuffered) {
+                    maxBuffered = buffered
+                }
+            }
+            .blockingLast()
+
+        val elapsed = System.nanoTime() - start
+
+        result = String.format(
+            "%-30s %,12.0f items/s   buffered mean: %7.1f max: %,6d%s",
+            name,
+            items * 1_000_000_000.0 / elapsed,
+            totalBuffered.toDouble() / consumed,
+            maxBuffered,
+            stats?.let { "   final prefetch: ${it.currentPrefetch}" } ?: ""
+        )
+    }
+
+    println(result)
+}
+
+private fun localSource(count: Long, delivered: AtomicLong): Flowable<Long> =
+    Flowable.rangeLong(0, count)
+        .doOnNext { delivered.incrementAndGet() }
+        .subscribeOn(Schedulers.io())
+
+/**
+ * Emits the requested items on [executor] after [ROUND_TRIP_MICROS], one delayed task per **request()**.
+ * The executor has a single thread so emissions are serialized.
+ */
+private fun remoteSource(executor: ScheduledExecutorService, count: Long, delivered: AtomicLong): Flowable<Long> =
+    Flowable.fromPublisher { subscriber ->
+
+        var next = 0L
+
+        subscriber.onSubscribe(object : Subscription {
+
+            @Volatile
+            var cancelled = false
+
+            override fun request(n: Long) {
+                executor.schedule({
+                    var emitted = 0L
+                    while (emitted < n && next < count && !cancelled) {
+                        delivered.incrementAndGet()
+                        subscriber.onNext(next++)
+                        emitted++
+                    }
+                    if (next == count && !cancelled) {
+                        cancelled = true
+                        subscriber.onComplete()
+                    }
+                }, ROUND_TRIP_MICROS, TimeUnit.MICROSECONDS)
+            }
+
+            override fun cancel() {
+                cancelled = true
+            }
+        })
+    }
@@ -0,0 +1,154 @@
+package chapter8flowable
+
+import benchmark.measure
+import io.reactivex.Flowable
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.Random
+
+private const val BENCHMARK_LINES = 2_000_000
+
+fun main() {
+
+//    testMappedFileLines()
+//    testMappedFileLinesWithCopy()
+
+    // INFO Benchmark
+    testMappedFileLinesVsBufferedReader()
+}
+
+/**
+ * 🔥 INFO MappedFileLines
+ *
+ * Same pipeline as **testFromIterable()** in **Tutorial1_1RxJavaBasics** but the names come from a file.
+ * [MappedFileLines] emits one reused [CharSequence], **filter()** and **map()** run synchronously
+ * before the next line is read so they can use it directly.
+ */
+private fun testMappedFileLines() {
+
+    val file = createFile(listOf("Superman", "Batman", "Aquaman", "Asterix", "Captain America"))
+
+    MappedFileLines.flowable(file)
+        .filter { it.startsWith("A") }
+        .map { it.toString().toUpperCase() }
+        .subscribe { println("onNext() $it") }
+
+    Files.delete(file)
+
+    /*
+        Prints:
+        onNext() AQUAMAN
+        onNext() ASTERIX
+     */
+}
+
+/**
+ * 🔥🔥 **toList()** keeps every item, with the reused [CharSequence] it would end up with
+ * the same object 5 times. **copy = true** emits a new **String** for each line.
+ */
+private fun testMappedFileLinesWithCopy() {
+
+    val file = createFile(listOf("Superman", "Batman", "Aquaman", "Asterix", "Captain America"))
+
+    MappedFileLines.flowable(file)
+        .toList()
+        .subscribe { lines -> println("Without copy: $lines") }
+
+    MappedFileLines.flowable(file, copy = true)
+        .toList()
+        .subscribe { lines -> println("With copy: $lines") }
+
+    Files.delete(file)
+
+    /*
+        Prints:
+        Without copy: [Captain America, Captain America, Captain America, Captain America, Captain America]
+        With copy: [Superman, Batman, Aquaman, Asterix, Captain America]
+     */
+}
+
+/**
+ * Reads a file of [BENCHMARK_LINES] log like lines and counts the lines containing **ERROR**.
+ * **alloc** is what the reading thread allocated, which is what the GC has to clean up later.
+ */
+private fun testMappedFileLinesVsBufferedReader() {
+
+    val file = createLogFile(BENCHMARK_LINES)
+    println("File size: ${Files.size(file) / (1024 * 1024)} MB")
+
+    println("Read only")
+
+    measure("BufferedReader.lines()", BENCHMARK_LINES.toLong()) {
+        bufferedReaderLines(file).count().blockingGet()
+    }
+
+    measure("MappedFileLines copy", BENCHMARK_LINES.toLong()) {
+        MappedFileLines.flowable(file, copy = true).count().blockingGet()
+    }
+
+    measure("MappedFileLines", BENCHMARK_LINES.toLong()) {
+        MappedFileLines.flowable(file).count().blockingGet()
+    }
+
+    println("Read and filter lines containing ERROR")
+
+    measure("BufferedReader.lines()", BENCHMARK_LINES.toLong()) {
+        bufferedReaderLines(file).filter { it.contains("ERROR") }.count().blockingGet()
+    }
+
+    measure("MappedFileLines copy", BENCHMARK_LINES.toLong()) {
+        MappedFileLines.flowable(file, copy = true).filter { it.contains("ERROR") }.count().blockingGet()
+    }
+
+    measure("MappedFileLines", BENCHMARK_LINES.toLong()) {
+        MappedFileLines.flowable(file).filter { it.contains("ERROR") }.count().blockingGet()
+    }
+
+    Files.delete(file)
+
+    /*
+        Prints on a single core machine:
+        File size: 135 MB
+        Read only
+        BufferedReader.lines()       5,569,130 ops/s      179.6 ns/op  gc:    8 (    6 ms)  heap: 19,021 KB  alloc:  221,726 KB
+        MappedFileLines copy         8,312,470 ops/s      120.3 ns/op  gc:    8 (    2 ms)  heap: 14,963 KB  alloc:  218,752 KB
+        MappedFileLines             14,283,708 ops/s       70.0 ns/op  gc:    0 (    0 ms)  heap:  2,108 KB  alloc:       25 KB
+        Read and filter lines containing ERROR
+        BufferedReader.lines()       5,558,741 ops/s      179.9 ns/op  gc:    8 (    3 ms)  heap: 18,061 KB  alloc:  221,726 KB
+        MappedFileLines copy         7,233,319 ops/s      138.2 ns/op  gc:    8 (    1 ms)  heap: 14,949 KB  alloc:  218,752 KB
+        MappedFileLines              2,878,282 ops/s      347.4 ns/op  gc:    0 (    0 ms)  heap:  2,106 KB  alloc:        3 KB
+
+        🔥 Reading without copy allocates nothing and is the fastest. 🔥🔥 But Kotlin's contains() on a
+        CharSequence that is not a String compares char by char, String.contains() is much faster,
+        so operators that search a lot of text can be cheaper with copy = true.
+     */
+}
+
+private fun bufferedReaderLines(file: Path): Flowable<String> =
+    Flowable.using(
+        { Files.newBufferedReader(file) },
+        { reader -> Flowable.fromIterable(Iterable { reader.lines().iterator() }) },
+        { reader -> reader.close() }
+    )
+
+private fun createFile(lines: List<String>): Path {
+    val file = Files.createTempFile("mapped-lines", ".txt")
+    Files.write(file, lines)
+    return file
+}
+
+private fun createLogFile(lines: Int): Path {
+
+    val file = Files.createTempFile("mapped-lines", ".log")
+    val random = Random(42)
+    val levels = arrayOf("DEBUG", "INFO", "WARN", "ERROR")
+
+    Files.newBufferedWriter(file).use { writer ->
+        for (i in 0 until lines) {
+            writer.write("2020-07-08T10:15:${i % 60} ${levels[random.nextInt(levels.size)]} [worker-${i % 8}] ")
+            writer.write("request ${random.nextInt(1_000_000)} processed in ${random.nextInt(500)} ms")
+            writer.newLine()
+        }
+    }
+    return file
+}
@@ -1,7 +1,9 @@
 package model
 
+import java.io.Serializable
+
 data class Person(
     var firstName: String,
     var surName: String
 
-)
+) : Serializable
@@ -0,0 +1,90 @@
+package chapter10testinganddebugging
+
+import io.reactivex.Observable
+import io.reactivex.functions.Function
+import io.reactivex.plugins.RxJavaPlugins
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertSame
+import org.junit.jupiter.api.Test
+import java.util.concurrent.TimeUnit
+
+class AssemblyHooksTest {
+
+    @AfterEach
+    fun tearDown() {
+        OperatorMetrics.uninstall()
+        SubscriptionLeakDetector.uninstall()
+        OperatorMetrics.reset()
+        OperatorMetrics.captureAssemblySite = true
+        RxJavaPlugins.reset()
+    }
+
+    @Test
+    fun `tools can be uninstalled in any order`() {
+
+        OperatorMetrics.captureAssemblySite = false
+        OperatorMetrics.install()
+        SubscriptionLeakDetector.install()
+
+        // Uninstalling the first tool keeps the hook of the second one
+        OperatorMetrics.uninstall()
+
+        val disposable = Observable.interval(1, TimeUnit.HOURS).subscribe()
+        assertEquals(1, SubscriptionLeakDetector.liveCount())
+        disposable.dispose()
+
+        Observable.range(1, 3).test().assertValueCount(3)
+        assertEquals(0, OperatorMetrics.snapshot().size)
+
+        SubscriptionLeakDetector.uninstall()
+        assertNull(RxJavaPlugins.getOnObservableAssembly())
+        assertNull(RxJavaPlugins.getOnFlowableAssembly())
+    }
+
+    @Test
+    fun `restores the hook that was set before`() {
+
+        val assembled = ArrayList<String>()
+        val previous = Function<Observable<*>, Observable<*>> { source ->
+            assembled.add(source.javaClass.simpleName)
+            source
+        }
+        RxJavaPlugins.setOnObservableAssembly(previous)
+
+        OperatorMetrics.captureAssemblySite = false
+        OperatorMetrics.install()
+
+        Observable.just(1).map { it }.test().assertValue(1)
+        assertEquals(listOf("ObservableJust", "ObservableMap"), assembled)
+        assertEquals(1L, OperatorMetrics.snapshot().single { it.stage == "ObservableMap" }.onNextCount)
+
+        OperatorMetrics.uninstall()
+        assertSame(previous, RxJavaPlugins.getOnObservableAssembly())
+    }
+
+    @Test
+    fun `keeps a hook that was set on top`() {
+
+        SubscriptionLeakDetector.install()
+
+        val below = RxJavaPlugins.getOnObservableAssembly()!!
+        val onTop = Function<Observable<*>, Observable<*>> { source -> below.apply(source) }
+        RxJavaPlugins.setOnObservableAssembly(onTop)
+
+        SubscriptionLeakDetector.uninstall()
+        assertSame(onTop, RxJavaPlugins.getOnObservableAssembly())
+
+        // The hook below only passes operators through now
+        Observable.interval(1, TimeUnit.HOURS).subscribe().dispose()
+        assertEquals(0, SubscriptionLeakDetector.liveCount())
+
+        // Installing again does not set it a second time, which would call itself through the hook on top
+        SubscriptionLeakDetector.install()
+        assertSame(onTop, RxJavaPlugins.getOnObservableAssembly())
+        val disposable = Observable.interval(1, TimeUnit.HOURS).subscribe()
+        assertEquals(1, SubscriptionLeakDetector.liveCount())
+        disposable.dispose()
+    }
+}
@@ -0,0 +1,126 @@
+package chapter10testinganddebugging
+
+import io.reactivex.Observable
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import java.io.PrintStream
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicLong
+
+class AsyncLogSinkTest {
+
+    @Test
+    fun `ring is bounded and first in first out`() {
+
+        val ring = LogRing(3)
+
+        assertTrue(ring.isEmpty())
+        (1..4).forEach { assertTrue(ring.offer("$it")) }
+        assertFalse(ring.offer("5"))
+
+        assertEquals("1", ring.poll())
+        assertTrue(ring.offer("5"))
+        assertEquals(listOf("2", "3", "4", "5"), (1..4).map { ring.poll() })
+        assertNull(ring.poll())
+    }
+
+    @Test
+    fun `writes every line of every thread in order`() {
+
+        val bytes = ByteArrayOutputStream()
+        val threads = 4
+        val lines = 10_000
+
+        AsyncLogSink(PrintStream(bytes, true), capacity = 64, fullPolicy = FullPolicy.WAIT).use { sink ->
+            (0 until threads)
+                .map { t -> Thread { (0 until lines).forEach { sink.log("$t $it") } }.apply { start() } }
+                .forEach { it.join() }
+        }
+
+        val written = String(bytes.toByteArray()).lines().filter { it.isNotEmpty() }
+        assertEquals(threads * lines, written.size)
+
+        for (t in 0 until threads) {
+            assertEquals((0 until lines).toList(), written.filter { it.startsWith("$t ") }.map { it.substringAfter(' ').toInt() })
+        }
+    }
+
+    @Test
+    fun `drops lines when full and counts them`() {
+
+        val blocked = CountDownLatch(1)
+        val output = object : OutputStream() {
+            override fun write(b: Int) {
+                blocked.await()
+            }
+        }
+
+        val sink = AsyncLogSink(PrintStream(output), capacity = 4, batchSize = 1, fullPolicy = FullPolicy.DROP)
+
+        val accepted = (0 until 100).count { sink.log("line $it") }
+
+        assertEquals(100L - accepted, sink.dropped)
+        assertTrue(accepted <= 5, "accepted: $accepted")
+
+        blocked.countDown()
+        sink.close()
+
+        assertEquals(accepted.toLong(), sink.written)
+        assertFalse(sink.log("after close"))
+    }
+
+    @Test
+    fun `every line logged while closing is written or dropped`() {
+
+        val output = PrintStream(object : OutputStream() {
+            override fun write(b: Int) {}
+        })
+
+        for (policy in FullPolicy.values()) {
+            repeat(20) {
+                val sink = AsyncLogSink(output, capacity = 8, batchSize = 2, fullPolicy = policy)
+                val attempts = AtomicLong()
+                val start = CountDownLatch(1)
+
+                val producers = (0 until 3).map {
+                    Thread {
+                        start.await()
+                        repeat(2_000) {
+                            attempts.incrementAndGet()
+                            sink.log("line $it")
+                        }
+                    }.apply { start() }
+                }
+
+                start.countDown()
+                Thread.yield()
+                sink.close()
+                producers.forEach { it.join() }
+
+                assertEquals(attempts.get(), sink.written + sink.dropped, "$policy")
+            }
+        }
+    }
+
+    @Test
+    fun `subscribeLog logs items and errors`() {
+
+        val bytes = ByteArrayOutputStream()
+
+        AsyncLogSink(PrintStream(bytes, true)).use { sink ->
+            Observable.just(1, 2)
+                .concatWith(Observable.error(IllegalStateException("failed")))
+                .subscribeLog(sink) { "onNext() $it" }
+        }
+
+        assertEquals(
+            listOf("onNext() 1", "onNext() 2", "onError() java.lang.IllegalStateException: failed"),
+            String(bytes.toByteArray()).lines().filter { it.isNotEmpty() }
+        )
+    }
+}
@@ -0,0 +1,98 @@
+package chapter10testinganddebugging
+
+import io.reactivex.Flowable
+import io.reactivex.Observable
+import io.reactivex.plugins.RxJavaPlugins
+import io.reactivex.subjects.PublishSubject
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+
+class OperatorMetricsTest {
+
+    @BeforeEach
+    fun setUp() {
+        OperatorMetrics.enabled = true
+        OperatorMetrics.captureAssemblySite = false
+        OperatorMetrics.reset()
+        OperatorMetrics.install()
+    }
+
+    @AfterEach
+    fun tearDown() {
+        OperatorMetrics.uninstall()
+        OperatorMetrics.captureAssemblySite = true
+        OperatorMetrics.reset()
+    }
+
+    @Test
+    fun `counts onNext per stage`() {
+
+        Observable.range(1, 10)
+            .filter { it % 2 == 0 }
+            .test()
+            .assertValues(2, 4, 6, 8, 10)
+
+        assertEquals(10L, stage("ObservableRange").onNextCount)
+        assertEquals(5L, stage("ObservableFilter").onNextCount)
+        assertEquals(0L, stage("ObservableFilter").activeSubscriptions)
+    }
+
+    @Test
+    fun `counts errors and active subscriptions`() {
+
+        val subject = PublishSubject.create<Int>()
+        val testObserver = subject.map { 10 / it }.test()
+
+        assertEquals(1L, stage("ObservableMap").activeSubscriptions)
+
+        subject.onNext(0)
+
+        testObserver.assertError(ArithmeticException::class.java)
+        assertEquals(1L, stage("ObservableMap").errorCount)
+        assertEquals(0L, stage("ObservableMap").activeSubscriptions)
+    }
+
+    @Test
+    fun `dispose ends the subscription once`() {
+
+        val testObserver = PublishSubject.create<Int>().map { it }.test()
+        assertEquals(1L, stage("ObservableMap").activeSubscriptions)
+
+        testObserver.dispose()
+        testObserver.dispose()
+
+        assertEquals(0L, stage("ObservableMap").activeSubscriptions)
+    }
+
+    @Test
+    fun `measures downstream onNext time`() {
+
+        Flowable.range(1, 3)
+            .map { it }
+            .doOnNext { Thread.sleep(10) }
+            .test()
+            .assertValueCount(3)
+
+        assertTrue(stage("FlowableMap").onNextNanos >= 30_000_000L)
+        assertEquals(3L, stage("FlowableMap").onNextCount)
+    }
+
+    @Test
+    fun `does not wrap while disabled and restores previous hooks`() {
+
+        OperatorMetrics.enabled = false
+        Observable.just(1).map { it }.test().assertValue(1)
+        assertTrue(OperatorMetrics.snapshot().isEmpty())
+
+        OperatorMetrics.uninstall()
+        assertNull(RxJavaPlugins.getOnObservableAssembly())
+        assertNull(RxJavaPlugins.getOnFlowableAssembly())
+        OperatorMetrics.enabled = true
+    }
+
+    private fun stage(name: String) = OperatorMetrics.snapshot().single { it.stage == name }
+}
@@ -0,0 +1,111 @@
+package chapter10testinganddebugging
+
+import io.reactivex.Flowable
+import io.reactivex.FlowableSubscriber
+import io.reactivex.Observable
+import io.reactivex.processors.PublishProcessor
+import io.reactivex.subjects.PublishSubject
+import jdk.jfr.Recording
+import jdk.jfr.consumer.RecordedEvent
+import jdk.jfr.consumer.RecordingFile
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.reactivestreams.Subscription
+import java.nio.file.Files
+import java.time.Duration
+
+class RxFlightRecorderTest {
+
+    @BeforeEach
+    fun setUp() {
+        RxFlightRecorder.install()
+    }
+
+    @AfterEach
+    fun tearDown() {
+        RxFlightRecorder.uninstall()
+    }
+
+    @Test
+    fun `records subscribe, dispose and error with one chain id`() {
+
+        val events = record {
+            PublishSubject.create<Int>().map { it }.subscribe().dispose()
+
+            Observable.just(1, 0).map { 10 / it }.subscribe({ }, { })
+        }
+
+        val subscribes = events.filter { it.eventType.name == "rx.Subscribe" }
+        assertEquals(listOf("ObservableMap", "ObservableMap", "ObservableFromArray"), subscribes.map { it.getString("operator") })
+
+        val firstChain = subscribes[0].getLong("chainId")
+        val secondChain = subscribes[1].getLong("chainId")
+        assertTrue(firstChain != secondChain)
+        assertEquals(secondChain, subscribes[2].getLong("chainId"))
+
+        val dispose = events.single { it.eventType.name == "rx.Dispose" && it.getString("operator") == "ObservableMap" }
+        assertEquals(firstChain, dispose.getLong("chainId"))
+
+        val error = events.single { it.eventType.name == "rx.Error" }
+        assertEquals("ObservableMap", error.getString("operator"))
+        assertEquals(ArithmeticException::class.java.name, error.getString("errorClass"))
+        assertEquals(secondChain, error.getLong("chainId"))
+    }
+
+    @Test
+    fun `records a cancelled subscription once`() {
+
+        val events = record {
+            PublishProcessor.create<Int>().map { it }.subscribe(object : FlowableSubscriber<Int> {
+                override fun onSubscribe(s: Subscription) {
+                    s.cancel()
+                    s.cancel()
+                }
+
+                override fun onNext(t: Int) {}
+                override fun onError(t: Throwable) {}
+                override fun onComplete() {}
+            })
+        }
+
+        assertEquals(1, events.count { it.eventType.name == "rx.Dispose" && it.getString("operator") == "FlowableMap" })
+    }
+
+    @Test
+    fun `records only onNext over the threshold`() {
+
+        val events = record {
+            Flowable.range(1, 5)
+                .map { it }
+                .doOnNext { if (it == 3) Thread.sleep(30) }
+                .blockingSubscribe()
+        }
+
+        val slow = events.filter { it.eventType.name == "rx.SlowOnNext" && it.getString("operator") == "FlowableMap" }
+        assertEquals(1, slow.size)
+        assertTrue(slow[0].duration >= Duration.ofMillis(30))
+    }
+
+    private fun record(block: () -> Unit): List<RecordedEvent> {
+
+        val file = Files.createTempFile("rx-test", ".jfr")
+
+        Recording().use { recording ->
+            recording.enable(RxSubscribeEvent::class.java)
+            recording.enable(RxDisposeEvent::class.java)
+            recording.enable(RxErrorEvent::class.java)
+            recording.enable(RxSlowOnNextEvent::class.java).withThreshold(Duration.ofMillis(20))
+            recording.start()
+            block()
+            recording.stop()
+            recording.dump(file)
+        }
+
+        return RecordingFile.readAllEvents(file)
+            .sortedBy { it.startTime }
+            .also { Files.delete(file) }
+    }
+}
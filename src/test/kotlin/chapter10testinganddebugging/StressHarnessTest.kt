@@ -0,0 +1,111 @@
+package chapter10testinganddebugging
+
+import io.reactivex.disposables.Disposables
+import io.reactivex.subjects.PublishSubject
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertThrows
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.atomic.AtomicInteger
+
+class StressHarnessTest {
+
+    @Test
+    fun `every actor runs once per round before the arbiter`() {
+
+        val result = StressTest("counter", batchSize = 100) { AtomicInteger() }
+            .actor { it.incrementAndGet() }
+            .actor { it.addAndGet(10) }
+            .run(1050) { Outcome.acceptable("${it.get()}") }
+
+        assertEquals(mapOf(Outcome.acceptable("11") to 1050), result.outcomes)
+        result.assertNoForbidden()
+    }
+
+    @Test
+    fun `forbidden outcomes fail the test`() {
+
+        val result = StressTest("plain counter") { IntArray(1) }
+            .actor { it[0]++ }
+            .run(10) { Outcome.forbidden("always") }
+
+        assertEquals(10, result.forbiddenCount)
+        assertThrows(AssertionError::class.java) { result.assertNoForbidden() }
+    }
+
+    @Test
+    fun `exception of an actor fails the run`() {
+
+        val stress = StressTest("failing") { Any() }.actor { throw IllegalStateException("actor") }
+
+        val error = assertThrows(IllegalStateException::class.java) { stress.run(10) { Outcome.acceptable("") } }
+        assertEquals("actor", error.message)
+    }
+
+    @Test
+    fun `serialized subject has no violations`() {
+
+        class State {
+            val subject = PublishSubject.create<Int>().toSerialized()
+            val observer = InvariantObserver<Int> { Thread.yield() }.also { subject.subscribe(it) }
+        }
+
+        StressTest("serialized", newState = ::State)
+            .actor { state -> (1..5).forEach { state.subject.onNext(it) } }
+            .actor { state -> (1..5).forEach { state.subject.onNext(it) } }
+            .actor { state -> state.subject.onComplete() }
+            .run(10_000) { state ->
+                state.observer.violationOutcome()
+                    ?: if (state.observer.terminalEvents == 1) Outcome.acceptable("completed") else Outcome.forbidden("lost")
+            }
+            .assertNoForbidden()
+    }
+
+    @Test
+    fun `invariant observer detects overlapping onNext`() {
+
+        val entered = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        val observer = InvariantObserver<Int> {
+            if (it == 1) {
+                entered.countDown()
+                release.await()
+            }
+        }
+        observer.onSubscribe(Disposables.empty())
+
+        val first = Thread { observer.onNext(1) }.apply { start() }
+        entered.await()
+        observer.onNext(2)
+        release.countDown()
+        first.join()
+
+        assertEquals(listOf("onNext while another signal was running"), observer.violations)
+        assertEquals(2, observer.valueCount)
+    }
+
+    @Test
+    fun `invariant observer detects contract violations`() {
+
+        val observer = InvariantObserver<Int>()
+        observer.onNext(1)
+        observer.onSubscribe(Disposables.empty())
+        observer.onSubscribe(Disposables.empty())
+        observer.onComplete()
+        observer.onNext(2)
+        observer.onError(IllegalStateException())
+
+        assertEquals(
+            listOf(
+                "onNext before onSubscribe",
+                "onSubscribe called twice",
+                "onNext after a terminal event",
+                "onError after a terminal event"
+            ),
+            observer.violations
+        )
+        assertEquals(2, observer.terminalEvents)
+        assertTrue(observer.violationOutcome()!!.forbidden)
+    }
+}
@@ -0,0 +1,94 @@
+package chapter10testinganddebugging
+
+import io.reactivex.Flowable
+import io.reactivex.Observable
+import io.reactivex.schedulers.TestScheduler
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import java.util.concurrent.TimeUnit
+
+class SubscriptionLeakDetectorTest {
+
+    private val scheduler = TestScheduler()
+
+    @BeforeEach
+    fun setUp() {
+        SubscriptionLeakDetector.sampleEvery = 1
+        SubscriptionLeakDetector.install()
+    }
+
+    @AfterEach
+    fun tearDown() {
+        SubscriptionLeakDetector.uninstall()
+        SubscriptionLeakDetector.sampleEvery = 1
+    }
+
+    @Test
+    fun `reports live subscriptions grouped by call site`() {
+
+        val before = SubscriptionLeakDetector.liveCount()
+
+        val disposables = (1..3).map { Observable.interval(1, TimeUnit.SECONDS, scheduler).subscribe() }
+        val other = Flowable.never<Int>().subscribe()
+
+        assertEquals(before + 4, SubscriptionLeakDetector.liveCount())
+
+        val sites = SubscriptionLeakDetector.report(0, TimeUnit.MILLISECONDS)
+            .filter { it.site.contains("SubscriptionLeakDetectorTest") }
+
+        assertEquals(listOf(3, 1), sites.map { it.count })
+        assertTrue(sites[0].site.contains("SubscriptionLeakDetectorTest.kt"), sites[0].site)
+
+        disposables.forEach { it.dispose() }
+        other.dispose()
+
+        assertEquals(before, SubscriptionLeakDetector.liveCount())
+    }
+
+    @Test
+    fun `completed subscriptions are not tracked anymore`() {
+
+        val before = SubscriptionLeakDetector.liveCount()
+
+        val testObserver = Observable.intervalRange(0, 3, 1, 1, TimeUnit.SECONDS, scheduler).test()
+        assertEquals(before + 1, SubscriptionLeakDetector.liveCount())
+
+        scheduler.advanceTimeBy(3, TimeUnit.SECONDS)
+
+        testObserver.assertComplete()
+        assertEquals(before, SubscriptionLeakDetector.liveCount())
+    }
+
+    @Test
+    fun `ignores young subscriptions and other sources`() {
+
+        val disposable = Observable.interval(1, TimeUnit.SECONDS, scheduler).subscribe()
+        val just = Observable.just(1).concatWith(Observable.never()).subscribe()
+
+        val sites = SubscriptionLeakDetector.report(1, TimeUnit.HOURS)
+        assertTrue(sites.none { it.site.contains("SubscriptionLeakDetectorTest") })
+
+        // never() is tracked, just() and concatWith() are not
+        assertEquals(2, SubscriptionLeakDetector.report(0, TimeUnit.SECONDS)
+            .filter { it.site.contains("SubscriptionLeakDetectorTest") }
+            .sumBy { it.count })
+
+        disposable.dispose()
+        just.dispose()
+    }
+
+    @Test
+    fun `samples assembled sources`() {
+
+        SubscriptionLeakDetector.sampleEvery = 4
+        val before = SubscriptionLeakDetector.liveCount()
+
+        val disposables = (1..8).map { Observable.interval(1, TimeUnit.SECONDS, scheduler).subscribe() }
+
+        assertEquals(before + 2, SubscriptionLeakDetector.liveCount())
+        disposables.forEach { it.dispose() }
+    }
+}
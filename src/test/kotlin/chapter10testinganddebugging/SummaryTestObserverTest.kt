@@ -0,0 +1,92 @@
+package chapter10testinganddebugging
+
+import io.reactivex.Flowable
+import io.reactivex.Observable
+import io.reactivex.subjects.PublishSubject
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertThrows
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import java.util.concurrent.TimeUnit
+
+class SummaryTestObserverTest {
+
+    @Test
+    fun `keeps first and last values and counts`() {
+
+        Observable.range(1, 100)
+            .testSummary(firstCount = 3, lastCount = 3)
+            .assertNoErrors()
+            .assertComplete()
+            .assertValueCount(100)
+            .assertFirstValues(1, 2, 3)
+            .assertLastValues(98, 99, 100)
+    }
+
+    @Test
+    fun `last values before the ring is full`() {
+
+        val observer = Observable.just("a", "b").testSummary(lastCount = 5)
+
+        assertEquals(listOf("a", "b"), observer.lastValues())
+        assertEquals(listOf("a", "b"), observer.firstValues())
+    }
+
+    @Test
+    fun `checksum depends on values and their order`() {
+
+        val observer = Flowable.range(1, 1000).testSummary()
+
+        observer.assertChecksum(SummaryTestObserver.checksumOf(1..1000))
+
+        val swapped = (1..1000).toMutableList().apply { add(0, removeAt(1)) }
+        assertThrows(AssertionError::class.java) { observer.assertChecksum(SummaryTestObserver.checksumOf(swapped)) }
+        assertThrows(AssertionError::class.java) { observer.assertChecksum(SummaryTestObserver.checksumOf(1..999)) }
+    }
+
+    @Test
+    fun `failed assertions throw AssertionError`() {
+
+        val subject = PublishSubject.create<Int>()
+        val observer = subject.testSummary()
+        subject.onNext(1)
+        subject.onError(IllegalStateException())
+
+        observer.assertError(IllegalStateException::class.java)
+            .assertNotComplete()
+
+        assertThrows(AssertionError::class.java) { observer.assertNoErrors() }
+        assertThrows(AssertionError::class.java) { observer.assertComplete() }
+        assertThrows(AssertionError::class.java) { observer.assertValueCount(2) }
+        assertThrows(AssertionError::class.java) { observer.assertFirstValues(2) }
+    }
+
+    @Test
+    fun `dispose stops the upstream`() {
+
+        val subject = PublishSubject.create<Int>()
+        val observer = subject.testSummary()
+
+        observer.dispose()
+
+        assertTrue(observer.isDisposed)
+        assertTrue(!subject.hasObservers())
+    }
+
+    @Test
+    fun `latency percentiles are within one bucket`() {
+
+        val observer = Observable.range(1, 1000).testSummary { it * 1000L }
+
+        val p50 = observer.latencies.percentileNanos(50.0)
+        val p99 = observer.latencies.percentileNanos(99.0)
+
+        assertTrue(p50 in 500_000L..500_000L + 500_000L / LatencyHistogram.SUB_BUCKETS) { "p50 was $p50" }
+        assertTrue(p99 in 990_000L..990_000L + 990_000L / LatencyHistogram.SUB_BUCKETS) { "p99 was $p99" }
+        assertEquals(1_000_000L, observer.latencies.maxNanos)
+        assertEquals(1_000_000L, observer.latencies.percentileNanos(100.0))
+
+        observer.assertLatencyPercentile(99.0, 2, TimeUnit.MILLISECONDS)
+        assertThrows(AssertionError::class.java) { observer.assertLatencyPercentile(50.0, 100, TimeUnit.MICROSECONDS) }
+    }
+}
@@ -0,0 +1,139 @@
+package chapter10testinganddebugging
+
+import io.reactivex.Observable
+import io.reactivex.Scheduler
+import io.reactivex.schedulers.TestScheduler
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import java.util.Random
+import java.util.concurrent.TimeUnit
+
+class VirtualTimeSchedulerTest {
+
+    @Test
+    fun `runs tasks in time order and same times in schedule order`() {
+
+        // Small wheel so most tasks go through the overflow heap
+        val scheduler = VirtualTimeScheduler(TimeUnit.MILLISECONDS.toNanos(1), 16)
+        val worker = scheduler.createWorker()
+        val random = Random(7)
+
+        val ran = ArrayList<Pair<Long, Int>>()
+        val expected = ArrayList<Pair<Long, Int>>()
+
+        for (i in 0 until 5_000) {
+            val delay = random.nextInt(2_000).toLong() * 100_000
+            expected.add(delay to i)
+            worker.schedule({ ran.add(scheduler.now(TimeUnit.NANOSECONDS) to i) }, delay, TimeUnit.NANOSECONDS)
+        }
+
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS)
+
+        assertEquals(expected.sortedWith(compareBy({ it.first }, { it.second })), ran)
+        assertEquals(0, scheduler.pendingTasks)
+    }
+
+    @Test
+    fun `behaves like TestScheduler`() {
+
+        val testScheduler = TestScheduler()
+        val virtualScheduler = VirtualTimeScheduler()
+
+        fun pipeline(scheduler: Scheduler) = Observable.interval(7, TimeUnit.MILLISECONDS, scheduler)
+            .take(500)
+            .flatMap { Observable.timer(it % 13, TimeUnit.MILLISECONDS, scheduler).map { _ -> it } }
+            .timestamp(TimeUnit.MILLISECONDS, scheduler)
+            .map { "${it.time()} ${it.value()}" }
+            .test()
+
+        val expected = pipeline(testScheduler)
+        val actual = pipeline(virtualScheduler)
+
+        for (step in listOf(1L, 50L, 999L, 10_000L)) {
+            testScheduler.advanceTimeBy(step, TimeUnit.MILLISECONDS)
+            virtualScheduler.advanceTimeBy(step, TimeUnit.MILLISECONDS)
+            assertEquals(expected.values(), actual.values())
+        }
+
+        actual.assertComplete()
+        assertEquals(testScheduler.now(TimeUnit.MILLISECONDS), virtualScheduler.now(TimeUnit.MILLISECONDS))
+    }
+
+    @Test
+    fun `tasks scheduled while running run in the same advance`() {
+
+        val scheduler = VirtualTimeScheduler()
+        val worker = scheduler.createWorker()
+        val order = ArrayList<String>()
+
+        worker.schedule({
+            order.add("a")
+            worker.schedule { order.add("c") }
+            worker.schedule({ order.add("d") }, 1, TimeUnit.MILLISECONDS)
+        }, 5, TimeUnit.MILLISECONDS)
+        worker.schedule({ order.add("b") }, 5, TimeUnit.MILLISECONDS)
+
+        scheduler.advanceTimeBy(5, TimeUnit.MILLISECONDS)
+        assertEquals(listOf("a", "b", "c"), order)
+
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS)
+        assertEquals(listOf("a", "b", "c", "d"), order)
+    }
+
+    @Test
+    fun `disposed tasks and workers do not run`() {
+
+        val scheduler = VirtualTimeScheduler()
+        val worker = scheduler.createWorker()
+        val other = scheduler.createWorker()
+        var ran = 0
+
+        worker.schedule({ ran++ }, 1, TimeUnit.SECONDS).dispose()
+        other.schedule({ ran++ }, 1, TimeUnit.HOURS)
+        other.dispose()
+        worker.schedule({ ran += 10 }, 2, TimeUnit.SECONDS)
+
+        scheduler.advanceTimeBy(2, TimeUnit.HOURS)
+
+        assertEquals(10, ran)
+        assertTrue(other.schedule { ran++ }.isDisposed)
+    }
+
+    @Test
+    fun `simulated arrivals are deterministic and end after the duration`() {
+
+        val scheduler = VirtualTimeScheduler()
+
+        val first = simulatedArrivals(scheduler, Arrivals.poisson(100.0), 10, TimeUnit.SECONDS)
+            .map { scheduler.now(TimeUnit.NANOSECONDS) }
+            .test()
+        val second = simulatedArrivals(scheduler, Arrivals.poisson(100.0), 10, TimeUnit.SECONDS)
+            .map { scheduler.now(TimeUnit.NANOSECONDS) }
+            .test()
+
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS)
+
+        first.assertComplete()
+        assertEquals(first.values(), second.values())
+        assertTrue(first.valueCount() in 900..1100, "arrivals: ${first.valueCount()}")
+        assertTrue(first.values().last() < TimeUnit.SECONDS.toNanos(10))
+    }
+
+    @Test
+    fun `constant arrivals with fixed latency`() {
+
+        val scheduler = VirtualTimeScheduler()
+
+        val testObserver = simulatedArrivals(scheduler, Arrivals.constant(10.0), 1, TimeUnit.SECONDS)
+            .simulateLatency(scheduler, Latency.fixed(250, TimeUnit.MILLISECONDS))
+            .map { scheduler.now(TimeUnit.MILLISECONDS) }
+            .test()
+
+        scheduler.advanceTimeBy(2, TimeUnit.SECONDS)
+
+        // Arrivals at 100 ms to 900 ms, the one at 1 second is already after the duration
+        testObserver.assertValues(350L, 450L, 550L, 650L, 750L, 850L, 950L, 1050L, 1150L)
+        testObserver.assertComplete()
+    }
+}
@@ -0,0 +1,76 @@
+package chapter2observables
+
+import io.reactivex.Observable
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+
+class BatchedCreateTest {
+
+    @Test
+    fun `lists and arrays are emitted as one batch each and empty ones are skipped`() {
+
+        createBatched<Int> { emitter ->
+            emitter.onNextBatch(listOf(1, 2))
+            emitter.onNextBatch(emptyList())
+            emitter.onNextBatch(arrayOf(3))
+            emitter.onNext(4)
+            emitter.onComplete()
+        }
+            .test()
+            .assertResult(listOf(1, 2), listOf(3), listOf(4))
+    }
+
+    @Test
+    fun `batch operators work on every item`() {
+
+        Observable.just(listOf(1, 2, 3), listOf(4, 5))
+            .mapEach { it * 10 }
+            .filterEach { it != 40 && it != 50 }
+            .test()
+            .assertResult(listOf(10, 20, 30))
+    }
+
+    @Test
+    fun `rebatch cuts batches into the given size`() {
+
+        Observable.just(listOf(1), listOf(2, 3, 4, 5, 6), listOf(7))
+            .rebatch(3)
+            .test()
+            .assertResult(listOf(1, 2, 3), listOf(4, 5, 6), listOf(7))
+
+        val rebatched = Observable.just(listOf(1, 2)).rebatch(2)
+        rebatched.test().assertResult(listOf(1, 2))
+        rebatched.test().assertResult(listOf(1, 2))
+    }
+
+    @Test
+    fun `unbatch and forEachItem deliver single items in order`() {
+
+        val batches = Observable.just(listOf("a", "b"), listOf("c"))
+        batches.unbatch().test().assertResult("a", "b", "c")
+
+        val items = ArrayList<String>()
+        var completed = false
+        batches.forEachItem({ items.add(it) }, onComplete = { completed = true })
+
+        assertEquals(listOf("a", "b", "c"), items)
+        assertEquals(true, completed)
+    }
+
+    @Test
+    fun `no batch is emitted after dispose`() {
+
+        val emitted = ArrayList<Boolean>()
+
+        createBatched<Int> { emitter ->
+            emitter.onNextBatch(listOf(1))
+            emitted.add(emitter.isDisposed())
+            emitter.onNextBatch(listOf(2))
+        }
+            .take(1)
+            .test()
+            .assertResult(listOf(1))
+
+        assertEquals(listOf(true), emitted)
+    }
+}
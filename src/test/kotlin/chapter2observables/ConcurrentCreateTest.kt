@@ -0,0 +1,138 @@
+package chapter2observables
+
+import benchmark.runConcurrently
+import io.reactivex.BackpressureOverflowStrategy
+import io.reactivex.exceptions.MissingBackpressureException
+import io.reactivex.functions.Cancellable
+import io.reactivex.observers.TestObserver
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+
+class ConcurrentCreateTest {
+
+    @Test
+    fun `items of many threads are all delivered in order per thread`() {
+
+        val observer = createConcurrent<Pair<Int, Int>> { emitter ->
+            runConcurrently(4) { thread -> repeat(20_000) { emitter.onNext(thread to it) } }
+            emitter.onComplete()
+        }.test()
+
+        observer.assertValueCount(80_000).assertComplete()
+        observer.values().groupBy { it.first }.values.forEach { items ->
+            assertEquals((0 until 20_000).toList(), items.map { it.second })
+        }
+    }
+
+    /**
+     * The observer emits the first item and while it is busy the source emits 3 more that have to be queued
+     */
+    private fun emitWhileBusy(
+        overflow: BackpressureOverflowStrategy,
+        dropped: MutableList<Int> = ArrayList()
+    ): TestObserver<Int> {
+
+        lateinit var emit: (Int) -> Unit
+        val observer = object : TestObserver<Int>() {
+            override fun onNext(t: Int) {
+                super.onNext(t)
+                if (t == 0) {
+                    (1..3).forEach(emit)
+                }
+            }
+        }
+
+        createConcurrent<Int>(capacity = 2, overflow = overflow, onDropped = { dropped.add(it) }) { emitter ->
+            emit = { emitter.onNext(it) }
+            emitter.onNext(0)
+            emitter.onComplete()
+        }.subscribe(observer)
+
+        return observer
+    }
+
+    @Test
+    fun `drop latest drops the items that do not fit`() {
+
+        val dropped = ArrayList<Int>()
+        emitWhileBusy(BackpressureOverflowStrategy.DROP_LATEST, dropped).assertResult(0, 1, 2)
+        assertEquals(listOf(3), dropped)
+    }
+
+    @Test
+    fun `drop oldest drops the oldest queued item`() {
+
+        val dropped = ArrayList<Int>()
+        emitWhileBusy(BackpressureOverflowStrategy.DROP_OLDEST, dropped).assertResult(0, 2, 3)
+        assertEquals(listOf(1), dropped)
+    }
+
+    @Test
+    fun `drop oldest keeps the queue bounded while the consumer is busy`() {
+
+        val dropped = Collections.synchronizedList(ArrayList<Int>())
+        val busy = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        lateinit var emitter: ConcurrentEmitter<Int>
+
+        val observer = object : TestObserver<Int>() {
+            override fun onNext(t: Int) {
+                super.onNext(t)
+                if (t == 0) {
+                    busy.countDown()
+                    release.await()
+                }
+            }
+        }
+
+        createConcurrent<Int>(
+            capacity = 4,
+            overflow = BackpressureOverflowStrategy.DROP_OLDEST,
+            onDropped = { dropped.add(it) }
+        ) { emitter = it }.subscribe(observer)
+
+        val consumer = Thread { emitter.onNext(0) }.apply { start() }
+        busy.await()
+
+        // The consumer still waits for the first item, everything but the newest 4 has to be dropped already
+        (1..1000).forEach { emitter.onNext(it) }
+        assertEquals((1..996).toList(), dropped)
+
+        release.countDown()
+        consumer.join()
+        emitter.onComplete()
+
+        observer.awaitTerminalEvent()
+        observer.assertResult(0, 997, 998, 999, 1000)
+    }
+
+    @Test
+    fun `error fails when the queue is full`() {
+
+        emitWhileBusy(BackpressureOverflowStrategy.ERROR)
+            .assertFailure(MissingBackpressureException::class.java, 0)
+    }
+
+    @Test
+    fun `dispose runs the cancellable and stops emissions`() {
+
+        var cancelled = false
+        lateinit var emitter: ConcurrentEmitter<Int>
+
+        val observer = createConcurrent<Int> {
+            emitter = it
+            it.setCancellable(Cancellable { cancelled = true })
+        }.test()
+
+        emitter.onNext(1)
+        observer.dispose()
+        emitter.onNext(2)
+
+        observer.assertValues(1)
+        assertTrue(cancelled)
+        assertTrue(emitter.isDisposed)
+    }
+}
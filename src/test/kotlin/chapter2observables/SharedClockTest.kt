@@ -0,0 +1,73 @@
+package chapter2observables
+
+import io.reactivex.schedulers.TestScheduler
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import java.util.concurrent.TimeUnit
+
+class SharedClockTest {
+
+    private val scheduler = TestScheduler()
+    private val clock = SharedClock(scheduler)
+
+    @Test
+    fun `subscribers with the same period share one timer`() {
+
+        val first = clock.interval(1, TimeUnit.SECONDS).test()
+        scheduler.advanceTimeBy(200, TimeUnit.MILLISECONDS)
+        val second = clock.interval(1, TimeUnit.SECONDS).test()
+        val other = clock.interval(500, TimeUnit.MILLISECONDS).test()
+
+        scheduler.advanceTimeTo(3, TimeUnit.SECONDS)
+
+        first.assertValues(0, 1, 2)
+        second.assertValues(0, 1, 2)
+        other.assertValueCount(5)
+        assertEquals(2, clock.activeTimers)
+        assertEquals(3 + 5, clock.wakeups)
+        assertEquals(3 + 3 + 5, clock.deliveries)
+    }
+
+    @Test
+    fun `a subscriber starts at the shared tick closest to one period later`() {
+
+        clock.interval(1, TimeUnit.SECONDS).test()
+        scheduler.advanceTimeBy(700, TimeUnit.MILLISECONDS)
+        val late = clock.interval(1, TimeUnit.SECONDS).test()
+
+        scheduler.advanceTimeTo(1000, TimeUnit.MILLISECONDS)
+        late.assertNoValues()
+
+        scheduler.advanceTimeTo(2000, TimeUnit.MILLISECONDS)
+        late.assertValues(0)
+    }
+
+    @Test
+    fun `a phase outside the tolerance starts a new timer`() {
+
+        clock.interval(1, TimeUnit.SECONDS, phaseTolerance = 0).test()
+        scheduler.advanceTimeBy(300, TimeUnit.MILLISECONDS)
+        val shifted = clock.interval(1, TimeUnit.SECONDS, phaseTolerance = 0).test()
+
+        scheduler.advanceTimeTo(1300, TimeUnit.MILLISECONDS)
+
+        shifted.assertValues(0)
+        assertEquals(2, clock.timersStarted)
+    }
+
+    @Test
+    fun `the timer stops with its last subscriber`() {
+
+        val first = clock.interval(1, TimeUnit.SECONDS).test()
+        val second = clock.interval(1, TimeUnit.SECONDS).test()
+
+        first.dispose()
+        assertEquals(1, clock.activeTimers)
+
+        second.dispose()
+        assertEquals(0, clock.activeTimers)
+
+        scheduler.advanceTimeBy(5, TimeUnit.SECONDS)
+        assertEquals(0, clock.wakeups)
+    }
+}
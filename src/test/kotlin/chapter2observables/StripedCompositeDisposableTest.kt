@@ -0,0 +1,113 @@
+package chapter2observables
+
+import benchmark.runConcurrently
+import io.reactivex.disposables.Disposable
+import io.reactivex.disposables.Disposables
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import java.util.concurrent.atomic.AtomicInteger
+
+class StripedCompositeDisposableTest {
+
+    @Test
+    fun `dispose disposes every added Disposable`() {
+
+        val composite = StripedCompositeDisposable(4)
+        val items = List(100) { Disposables.empty() }
+
+        items.forEach { composite.add(it) }
+        assertEquals(100, composite.size())
+
+        composite.dispose()
+
+        assertTrue(composite.isDisposed)
+        assertEquals(0, composite.size())
+        items.forEach { assertTrue(it.isDisposed) }
+    }
+
+    @Test
+    fun `add after dispose disposes immediately`() {
+
+        val composite = StripedCompositeDisposable()
+        composite.dispose()
+
+        val d = Disposables.empty()
+
+        assertFalse(composite.add(d))
+        assertTrue(d.isDisposed)
+    }
+
+    @Test
+    fun `delete does not dispose and remove does`() {
+
+        val composite = StripedCompositeDisposable()
+        val deleted = Disposables.empty()
+        val removed = Disposables.empty()
+
+        composite.addAll(deleted, removed)
+
+        assertTrue(composite.delete(deleted))
+        assertTrue(composite.remove(removed))
+
+        assertFalse(deleted.isDisposed)
+        assertTrue(removed.isDisposed)
+        assertEquals(0, composite.size())
+    }
+
+    @Test
+    fun `clear keeps container usable`() {
+
+        val composite = StripedCompositeDisposable()
+        val first = Disposables.empty()
+        composite.add(first)
+
+        composite.clear()
+
+        assertTrue(first.isDisposed)
+        assertFalse(composite.isDisposed)
+        assertTrue(composite.add(Disposables.empty()))
+        assertEquals(1, composite.size())
+    }
+
+    @Test
+    fun `concurrent add and dispose disposes each Disposable exactly once`() {
+
+        repeat(50) {
+
+            val composite = StripedCompositeDisposable(8)
+            val disposeCount = AtomicInteger()
+            val perThread = 1_000
+            val threads = 4
+
+            runConcurrently(threads + 1) { index ->
+                if (index == threads) {
+                    composite.dispose()
+                } else {
+                    repeat(perThread) {
+                        composite.add(countingDisposable(disposeCount))
+                    }
+                }
+            }
+
+            assertEquals(threads * perThread, disposeCount.get())
+        }
+    }
+
+    /**
+     * Counts every dispose() call, unlike [Disposables.fromAction] which ignores repeated calls
+     */
+    private fun countingDisposable(counter: AtomicInteger): Disposable = object : Disposable {
+
+        @Volatile
+        private var disposed = false
+
+        override fun dispose() {
+            disposed = true
+            counter.incrementAndGet()
+        }
+
+        override fun isDisposed() = disposed
+    }
+}
@@ -0,0 +1,137 @@
+package chapter3basicoperators
+
+import io.reactivex.Observable
+import model.Person
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Test
+
+class IndexedStoreTest {
+
+    private val store = IndexedStore<Int, Person>()
+
+    @Test
+    fun `hash index follows inserts updates and deletes`() {
+
+        val bySurName = store.hashIndex(Person::surName)
+
+        store.put(1, Person("Jane", "Smith"))
+        store.put(2, Person("John", "Smith"))
+        store.put(1, Person("Jane", "Doe"))
+        store.remove(2)
+        store.remove(42)
+
+        assertEquals(emptyList<Person>(), bySurName.lookup("Smith"))
+        assertEquals(listOf(Person("Jane", "Doe")), bySurName.lookup("Doe"))
+        assertEquals(1, store.size)
+        assertNull(store[2])
+    }
+
+    @Test
+    fun `index added later covers existing values`() {
+
+        store.put(1, Person("Jane", "Smith"))
+
+        assertEquals(listOf(Person("Jane", "Smith")), store.hashIndex(Person::surName).lookup("Smith"))
+    }
+
+    @Test
+    fun `watch emits current matches and then deltas`() {
+
+        val bySurName = store.hashIndex(Person::surName)
+        store.put(1, Person("Jane", "Smith"))
+
+        val observer = bySurName.watch("Smith").test()
+
+        store.put(1, Person("Janet", "Smith"))
+        store.put(2, Person("John", "Doe"))
+        store.put(2, Person("John", "Smith"))
+        store.put(1, Person("Janet", "Doe"))
+        observer.dispose()
+        store.remove(2)
+
+        observer.assertValues(
+            IndexDelta.Added(1, Person("Jane", "Smith")),
+            IndexDelta.Updated(1, Person("Jane", "Smith"), Person("Janet", "Smith")),
+            IndexDelta.Added(2, Person("John", "Smith")),
+            IndexDelta.Removed(1, Person("Janet", "Smith"))
+        )
+    }
+
+    @Test
+    fun `sorted index answers ranges and watches them`() {
+
+        val byFirstName = store.sortedIndex(Person::firstName)
+        listOf("Dave", "Bob", "Alice", "Carol").forEachIndexed { id, name -> store.put(id, Person(name, "Smith")) }
+
+        val observer = byFirstName.watchRange("B", "D").test()
+
+        store.put(0, Person("Bert", "Smith"))
+        store.put(1, Person("Bobby", "Smith"))
+        store.remove(3)
+        store.put(2, Person("Alicia", "Smith"))
+
+        assertEquals(listOf("Bert", "Bobby"), byFirstName.range("B", "D").map { it.firstName })
+        assertEquals("Alicia", byFirstName.first()?.firstName)
+        assertEquals("Bobby", byFirstName.last()?.firstName)
+
+        observer.assertValues(
+            IndexDelta.Added(1, Person("Bob", "Smith")),
+            IndexDelta.Added(3, Person("Carol", "Smith")),
+            IndexDelta.Added(0, Person("Bert", "Smith")),
+            IndexDelta.Updated(1, Person("Bob", "Smith"), Person("Bobby", "Smith")),
+            IndexDelta.Removed(3, Person("Carol", "Smith"))
+        )
+    }
+
+    @Test
+    fun `a value changed in place is moved to its new index key`() {
+
+        val bySurName = store.hashIndex(Person::surName)
+        val byFirstName = store.sortedIndex(Person::firstName)
+
+        val person = Person("Jane", "Smith")
+        store.put(1, person)
+        person.firstName = "Janet"
+        person.surName = "Doe"
+        store.put(1, person)
+
+        assertEquals(emptyList<Person>(), bySurName.lookup("Smith"))
+        assertEquals(listOf(person), bySurName.lookup("Doe"))
+        assertEquals(listOf(person), byFirstName.range("A", "Z"))
+
+        store.remove(1)
+        assertEquals(emptyList<Person>(), bySurName.lookup("Doe"))
+        assertNull(byFirstName.first())
+    }
+
+    @Test
+    fun `watchers that dispose on a delta do not hide it from the others`() {
+
+        val bySurName = store.hashIndex(Person::surName)
+        val byFirstName = store.sortedIndex(Person::firstName)
+
+        val hashObservers = (1..3).map { bySurName.watch("Smith").take(1).test() }
+        val rangeObservers = (1..3).map { byFirstName.watchRange("A", "Z").take(1).test() }
+
+        store.put(1, Person("Jane", "Smith"))
+
+        (hashObservers + rangeObservers).forEach { it.assertResult(IndexDelta.Added(1, Person("Jane", "Smith"))) }
+    }
+
+    @Test
+    fun `connect applies a stream of changes`() {
+
+        val bySurName = store.hashIndex(Person::surName)
+
+        store.connect(
+            Observable.just(
+                StoreChange.Put(1, Person("Jane", "Smith")),
+                StoreChange.Put(2, Person("John", "Smith")),
+                StoreChange.Remove(1)
+            )
+        )
+
+        assertEquals(listOf(Person("John", "Smith")), bySurName.lookup("Smith"))
+    }
+}
@@ -0,0 +1,73 @@
+package chapter3basicoperators
+
+import io.reactivex.Observable
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNotSame
+import org.junit.jupiter.api.Assertions.assertSame
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class SignalExceptionsTest {
+
+    @AfterEach
+    fun resetDebug() {
+        SignalExceptions.debug = false
+    }
+
+    @Test
+    fun `signals have no stack trace unless debug mode is on`() {
+
+        assertEquals(0, RecordNotFoundSignal(1).stackTrace.size)
+        assertSame(SignalExceptions.divideByZero(), SignalExceptions.divideByZero())
+
+        SignalExceptions.debug = true
+
+        assertTrue(RecordNotFoundSignal(1).stackTrace.isNotEmpty())
+        assertNotSame(SignalExceptions.divideByZero(), SignalExceptions.divideByZero())
+    }
+
+    @Test
+    fun `onSignalReturn recovers signals only`() {
+
+        Observable.error<Int>(RecordNotFoundSignal(7))
+            .onSignalReturn { (it as RecordNotFoundSignal).key as Int }
+            .test()
+            .assertResult(7)
+
+        Observable.error<Int>(IllegalStateException())
+            .onSignalReturn { -1 }
+            .test()
+            .assertFailure(IllegalStateException::class.java)
+    }
+
+    @Test
+    fun `onSignalResumeNext continues with another source`() {
+
+        Observable.just(1).concatWith(Observable.error(InvalidValueSignal(2, "bad")))
+            .onSignalResumeNext { Observable.just(3, 4) }
+            .test()
+            .assertResult(1, 3, 4)
+    }
+
+    @Test
+    fun `mapRecovering replaces or skips failed items and keeps going`() {
+
+        Observable.just(1, 0, 2, -1, 4)
+            .mapRecovering(
+                { i -> if (i <= 0) throw InvalidValueSignal(i, "not positive") else 8 / i },
+                { item, _ -> if (item == 0) 0 else null }
+            )
+            .test()
+            .assertResult(8, 0, 4, 2)
+    }
+
+    @Test
+    fun `mapRecovering fails on other exceptions`() {
+
+        Observable.just(1, 2)
+            .mapRecovering({ throw IllegalStateException() }, { _, _ -> 0 })
+            .test()
+            .assertFailure(IllegalStateException::class.java)
+    }
+}
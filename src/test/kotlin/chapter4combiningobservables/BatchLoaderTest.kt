@@ -0,0 +1,133 @@
+package chapter4combiningobservables
+
+import io.reactivex.Single
+import io.reactivex.schedulers.TestScheduler
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import java.util.concurrent.TimeUnit
+
+class BatchLoaderTest {
+
+    private val scheduler = TestScheduler()
+    private val batches = ArrayList<Set<Int>>()
+
+    private fun loader(maxBatchSize: Int = 100, values: (Set<Int>) -> Map<Int, String> = { keys -> keys.associateWith { "v$it" } }) =
+        BatchLoader(10, TimeUnit.MILLISECONDS, maxBatchSize, scheduler) { keys: Set<Int> ->
+            batches.add(keys)
+            Single.just(values(keys))
+        }
+
+    @Test
+    fun `keys within the window are loaded with one call`() {
+
+        val loader = loader()
+
+        val first = loader.load(1).test()
+        val second = loader.load(2).test()
+
+        scheduler.advanceTimeBy(9, TimeUnit.MILLISECONDS)
+        first.assertNoValues()
+        assertEquals(emptyList<Set<Int>>(), batches)
+
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS)
+        first.assertResult("v1")
+        second.assertResult("v2")
+        assertEquals(listOf(setOf(1, 2)), batches)
+    }
+
+    @Test
+    fun `duplicate keys are loaded once and every caller gets the value`() {
+
+        val loader = loader()
+
+        val observers = listOf(1, 2, 1, 1).map { loader.load(it).test() }
+        scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS)
+
+        assertEquals(listOf(setOf(1, 2)), batches)
+        assertEquals(listOf("v1", "v2", "v1", "v1"), observers.map { it.values().single() })
+        assertEquals(4, loader.requestCount)
+    }
+
+    @Test
+    fun `full batch is sent without waiting for the window`() {
+
+        val loader = loader(maxBatchSize = 2)
+
+        loader.load(1).test()
+        loader.load(1).test()
+        val second = loader.load(2).test()
+        val third = loader.load(3).test()
+
+        second.assertResult("v2")
+        third.assertNoValues()
+
+        scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS)
+        third.assertResult("v3")
+        assertEquals(listOf(setOf(1, 2), setOf(3)), batches)
+        assertEquals(sortedMapOf(1 to 1L, 2 to 1L), loader.batchSizes())
+    }
+
+    @Test
+    fun `missing keys and batch errors fail the callers`() {
+
+        val loader = loader { keys -> keys.filter { it != 2 }.associateWith { "v$it" } }
+
+        val present = loader.load(1).test()
+        val missing = loader.load(2).test()
+        loader.flush()
+
+        present.assertResult("v1")
+        missing.assertError(NoSuchElementException::class.java)
+
+        val failing = BatchLoader(10, TimeUnit.MILLISECONDS, scheduler = scheduler) { _: Set<Int> ->
+            Single.error<Map<Int, String>>(IllegalStateException())
+        }
+        val observers = listOf(1, 2).map { failing.load(it).test() }
+        scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS)
+        observers.forEach { it.assertError(IllegalStateException::class.java) }
+    }
+
+    @Test
+    fun `key of a disposed caller is not loaded`() {
+
+        val loader = loader(maxBatchSize = 3)
+
+        val disposed = loader.load(1).test()
+        val other = loader.load(1).test()
+        loader.load(2).test().dispose()
+        disposed.dispose()
+
+        // Key 2 was taken out again, so it does not make the batch full either
+        val third = loader.load(3).test()
+        assertEquals(emptyList<Set<Int>>(), batches)
+
+        scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS)
+        assertEquals(listOf(setOf(1, 3)), batches)
+        other.assertResult("v1")
+        third.assertResult("v3")
+        disposed.assertEmpty()
+    }
+
+    @Test
+    fun `window is cancelled when every caller was disposed`() {
+
+        val loader = loader()
+
+        loader.load(1).test().dispose()
+        scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS)
+
+        assertEquals(emptyList<Set<Int>>(), batches)
+    }
+
+    @Test
+    fun `loadMany loads all keys in one batch and keeps their order`() {
+
+        val loader = loader()
+
+        val observer = loader.loadMany(listOf(3, 1, 2)).test()
+        scheduler.advanceTimeBy(10, TimeUnit.MILLISECONDS)
+
+        observer.assertResult(listOf("v3", "v1", "v2"))
+        assertEquals(listOf(setOf(3, 1, 2)), batches)
+    }
+}
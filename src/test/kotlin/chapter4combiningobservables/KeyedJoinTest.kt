@@ -0,0 +1,99 @@
+package chapter4combiningobservables
+
+import io.reactivex.schedulers.TestScheduler
+import io.reactivex.subjects.PublishSubject
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import java.util.concurrent.TimeUnit
+
+class KeyedJoinTest {
+
+    private val left = PublishSubject.create<Pair<String, Long>>()
+    private val right = PublishSubject.create<Pair<String, Long>>()
+    private val metrics = JoinMetrics()
+
+    private fun eventTimeJoin() = left.joinByKeyEventTime(
+        right,
+        leftKey = { it.first }, rightKey = { it.first },
+        leftTime = { it.second }, rightTime = { it.second },
+        within = 10, unit = TimeUnit.MILLISECONDS,
+        metrics = metrics
+    ) { l, r -> "${l.first}:${l.second}-${r.second}" }
+
+    @Test
+    fun `joins items with the same key within the bound in both directions`() {
+
+        val observer = eventTimeJoin().test()
+
+        left.onNext("a" to 0)
+        right.onNext("b" to 1)
+        right.onNext("a" to 5)
+        left.onNext("a" to 8)
+        right.onNext("a" to 15)
+
+        observer.assertValues("a:0-5", "a:8-5", "a:8-15")
+        assertEquals(3, metrics.joined)
+    }
+
+    @Test
+    fun `old entries expire and the state shrinks`() {
+
+        val observer = eventTimeJoin().test()
+
+        left.onNext("a" to 0)
+        left.onNext("b" to 2)
+        assertEquals(2, metrics.leftEntries)
+        assertEquals(2, metrics.keys)
+
+        right.onNext("c" to 11)
+        assertEquals(1, metrics.leftEntries)
+        assertEquals(1, metrics.expired)
+
+        right.onNext("a" to 20)
+        observer.assertNoValues()
+        assertEquals(0, metrics.leftEntries)
+        assertEquals(2, metrics.rightEntries)
+        assertEquals(2, metrics.keys)
+
+        observer.dispose()
+        assertEquals(0, metrics.rightEntries)
+        assertEquals(0, metrics.keys)
+    }
+
+    @Test
+    fun `a late entry expires by its time`() {
+
+        eventTimeJoin().test()
+
+        left.onNext("a" to 20)
+        left.onNext("b" to 2)
+        right.onNext("c" to 21)
+
+        assertEquals(1, metrics.expired)
+        assertEquals(1, metrics.leftEntries)
+        assertEquals(2, metrics.keys)
+    }
+
+    @Test
+    fun `processing time join uses the scheduler clock`() {
+
+        val scheduler = TestScheduler()
+        val observer = left.joinByKey(
+            right,
+            leftKey = { it.first }, rightKey = { it.first },
+            within = 100, unit = TimeUnit.MILLISECONDS,
+            scheduler = scheduler
+        ) { l, r -> l.second + r.second }
+            .test()
+
+        left.onNext("a" to 1)
+        scheduler.advanceTimeBy(100, TimeUnit.MILLISECONDS)
+        right.onNext("a" to 2)
+        scheduler.advanceTimeBy(101, TimeUnit.MILLISECONDS)
+        right.onNext("a" to 3)
+        left.onComplete()
+        right.onComplete()
+
+        observer.assertResult(3L)
+    }
+}
@@ -0,0 +1,82 @@
+package chapter4combiningobservables
+
+import io.reactivex.Flowable
+import io.reactivex.processors.PublishProcessor
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Test
+
+class MergeSortedTest {
+
+    @Test
+    fun `sorted sources are merged in global order`() {
+
+        val sources = (0 until 50).map { source -> Flowable.range(0, 100).map { it * 50 + source } }
+
+        mergeSorted(naturalOrder(), sources, prefetch = 4)
+            .test()
+            .assertValueCount(5000)
+            .assertValueSequence(0 until 5000)
+            .assertComplete()
+    }
+
+    @Test
+    fun `equal items keep the order of their sources`() {
+
+        mergeSorted(
+            compareBy<Pair<Int, String>> { it.first },
+            Flowable.just(1 to "a", 2 to "a"),
+            Flowable.just(1 to "b", 2 to "b")
+        )
+            .map { it.second }
+            .test()
+            .assertResult("a", "b", "a", "b")
+    }
+
+    @Test
+    fun `waits until every active source has a head`() {
+
+        val first = PublishProcessor.create<Int>()
+        val second = PublishProcessor.create<Int>()
+        val subscriber = mergeSorted(naturalOrder(), first, second).test()
+
+        first.onNext(1)
+        first.onNext(5)
+        subscriber.assertNoValues()
+
+        second.onNext(3)
+        subscriber.assertValues(1, 3)
+
+        second.onComplete()
+        subscriber.assertValues(1, 3, 5)
+
+        first.onComplete()
+        subscriber.assertResult(1, 3, 5)
+    }
+
+    @Test
+    fun `respects downstream requests and bounded prefetch`() {
+
+        val requests = ArrayList<Long>()
+        val source = Flowable.range(0, 100).doOnRequest { requests.add(it) }
+        val subscriber = mergeSorted(naturalOrder(), listOf(source), prefetch = 8).test(5)
+
+        subscriber.assertValues(0, 1, 2, 3, 4)
+        assertEquals(listOf(8L), requests)
+
+        subscriber.requestMore(3)
+        assertEquals(listOf(8L, 6L), requests)
+    }
+
+    @Test
+    fun `an error cancels the other sources`() {
+
+        val other = PublishProcessor.create<Int>()
+
+        mergeSorted(naturalOrder(), other, Flowable.error(IllegalStateException()))
+            .test()
+            .assertFailure(IllegalStateException::class.java)
+
+        assertFalse(other.hasSubscribers())
+    }
+}
@@ -0,0 +1,94 @@
+package chapter4combiningobservables
+
+import io.reactivex.Observable
+import io.reactivex.schedulers.TestScheduler
+import io.reactivex.subjects.PublishSubject
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertThrows
+import org.junit.jupiter.api.Test
+
+class PriorityMergeTest {
+
+    private val scheduler = TestScheduler()
+
+    @Test
+    fun `higher lanes are drained first`() {
+
+        val observer = mergeByPriority(
+            listOf(Observable.just("h1", "h2"), Observable.just("l1", "l2")),
+            scheduler
+        ).test()
+
+        observer.assertNoValues()
+        scheduler.triggerActions()
+        observer.assertResult("h1", "h2", "l1", "l2")
+    }
+
+    @Test
+    fun `weights give lower lanes their share`() {
+
+        val metrics = PriorityMergeMetrics(2)
+        val observer = mergeByPriority(
+            listOf(Observable.range(0, 6), Observable.range(100, 3)),
+            scheduler,
+            weights = intArrayOf(2, 1),
+            metrics = metrics
+        ).test()
+
+        scheduler.triggerActions()
+
+        observer.assertResult(0, 1, 100, 2, 3, 101, 4, 5, 102)
+        assertEquals(6, metrics.lanes[0].emitted)
+        assertEquals(3, metrics.lanes[1].emitted)
+        assertEquals(0, metrics.lanes[1].waiting)
+    }
+
+    @Test
+    fun `items arriving later still jump the queue`() {
+
+        val high = PublishSubject.create<Int>()
+        val low = PublishSubject.create<Int>()
+        val metrics = PriorityMergeMetrics(2)
+        val observer = mergeByPriority(listOf(high, low), scheduler, metrics = metrics).test()
+
+        low.onNext(1)
+        low.onNext(2)
+        high.onNext(10)
+        assertEquals(2, metrics.lanes[1].waiting)
+
+        scheduler.triggerActions()
+        observer.assertValues(10, 1, 2)
+
+        high.onComplete()
+        scheduler.triggerActions()
+        observer.assertNotComplete()
+
+        low.onComplete()
+        scheduler.triggerActions()
+        observer.assertComplete()
+    }
+
+    @Test
+    fun `an error is delivered before the waiting items and disposes the other lanes`() {
+
+        val high = PublishSubject.create<Int>()
+        val low = PublishSubject.create<Int>()
+        val observer = mergeByPriority(listOf(high, low), scheduler).test()
+
+        low.onNext(1)
+        high.onError(IllegalStateException())
+        scheduler.triggerActions()
+
+        observer.assertFailure(IllegalStateException::class.java)
+        assertFalse(low.hasObservers())
+    }
+
+    @Test
+    fun `every lane needs a positive weight`() {
+
+        assertThrows(IllegalArgumentException::class.java) {
+            mergeByPriority(listOf(Observable.just(1), Observable.just(2)), scheduler, weights = intArrayOf(1, 0))
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package chapter4combiningobservables
+
+import benchmark.runConcurrently
+import io.reactivex.Observable
+import io.reactivex.subjects.PublishSubject
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Test
+
+class ScalableMergeTest {
+
+    @Test
+    fun `merges every inner source and completes after all of them`() {
+
+        val outer = PublishSubject.create<PublishSubject<Int>>()
+        val first = PublishSubject.create<Int>()
+        val second = PublishSubject.create<Int>()
+        val observer = mergeScalable(outer).test()
+
+        outer.onNext(first)
+        outer.onNext(second)
+        first.onNext(1)
+        second.onNext(2)
+        outer.onComplete()
+        first.onComplete()
+        observer.assertNotComplete()
+
+        second.onNext(3)
+        second.onComplete()
+        observer.assertResult(1, 2, 3)
+    }
+
+    @Test
+    fun `concurrent inner sources lose no items`() {
+
+        val subjects = List(4) { PublishSubject.create<Int>().toSerialized() }
+        val observer = Observable.fromIterable(subjects).flatMapScalable { it }.test()
+
+        runConcurrently(4) { thread ->
+            repeat(10_000) { subjects[thread].onNext(it) }
+            subjects[thread].onComplete()
+        }
+
+        observer.assertValueCount(40_000).assertComplete()
+    }
+
+    @Test
+    fun `an inner error disposes the other inner sources`() {
+
+        val other = PublishSubject.create<Int>()
+
+        Observable.just<Observable<Int>>(other, Observable.error(IllegalStateException()))
+            .flatMapScalable { it }
+            .test()
+            .assertFailure(IllegalStateException::class.java)
+
+        assertFalse(other.hasObservers())
+    }
+
+    @Test
+    fun `a failing mapper disposes the upstream`() {
+
+        val upstream = PublishSubject.create<Int>()
+        val observer = upstream.flatMapScalable<Int, Int> { throw IllegalArgumentException() }.test()
+
+        upstream.onNext(1)
+
+        observer.assertFailure(IllegalArgumentException::class.java)
+        assertFalse(upstream.hasObservers())
+    }
+}
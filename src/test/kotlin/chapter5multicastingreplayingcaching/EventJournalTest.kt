@@ -0,0 +1,216 @@
+package chapter5multicastingreplayingcaching
+
+import io.reactivex.schedulers.Schedulers
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import java.io.RandomAccessFile
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.TimeUnit
+
+class EventJournalTest {
+
+    private val directory: Path = Files.createTempDirectory("journal-test")
+
+    @AfterEach
+    fun tearDown() {
+        Files.list(directory).use { files -> files.forEach { Files.delete(it) } }
+        Files.delete(directory)
+    }
+
+    @Test
+    fun `replays appended values with their offsets`() {
+
+        EventJournal(directory, LongCodec).use { journal ->
+
+            (0L until 100L).forEach { assertEquals(it, journal.append(it * 10)) }
+
+            val records = journal.replay(tail = false).toList().blockingGet()
+
+            assertEquals((0L until 100L).toList(), records.map { it.offset })
+            assertEquals((0L until 100L).map { it * 10 }, records.map { it.value })
+        }
+    }
+
+    @Test
+    fun `replays from an offset`() {
+
+        EventJournal(directory, LongCodec, indexInterval = 4).use { journal ->
+
+            (0L until 50L).forEach { journal.append(it) }
+
+            val values = journal.replay(fromOffset = 37, tail = false)
+                .map { it.value }
+                .toList()
+                .blockingGet()
+
+            assertEquals((37L until 50L).toList(), values)
+        }
+    }
+
+    @Test
+    fun `rolls into new segments`() {
+
+        // 24 byte header + 8 byte payload, 10 records per segment
+        EventJournal(directory, LongCodec, segmentSize = 320, indexInterval = 3).use { journal ->
+
+            (0L until 35L).forEach { journal.append(it) }
+
+            assertEquals(4L, Files.list(directory).use { it.count() })
+            assertEquals((0L until 35L).toList(), journal.replay(tail = false).map { it.value }.toList().blockingGet())
+            assertEquals((18L until 35L).toList(), journal.replay(18, tail = false).map { it.value }.toList().blockingGet())
+        }
+    }
+
+    @Test
+    fun `continues after reopening`() {
+
+        EventJournal(directory, LongCodec, segmentSize = 320).use { journal ->
+            (0L until 15L).forEach { journal.append(it) }
+        }
+
+        EventJournal(directory, LongCodec, segmentSize = 320).use { journal ->
+
+            assertEquals(15L, journal.nextOffset)
+            assertEquals(15L, journal.append(15))
+
+            assertEquals((0L..15L).toList(), journal.replay(tail = false).map { it.value }.toList().blockingGet())
+        }
+    }
+
+    @Test
+    fun `drops a corrupted record at the end`() {
+
+        EventJournal(directory, LongCodec).use { journal ->
+            (0L until 5L).forEach { journal.append(it) }
+        }
+
+        // Flip a byte in the payload of the last record
+        val file = Files.list(directory).use { it.findFirst().get() }
+        RandomAccessFile(file.toFile(), "rw").use { raf ->
+            val position = 4L * 32 + 24
+            raf.seek(position)
+            val byte = raf.read()
+            raf.seek(position)
+            raf.write(byte xor 0xFF)
+        }
+
+        EventJournal(directory, LongCodec).use { journal ->
+
+            assertEquals(4L, journal.nextOffset)
+            assertEquals(4L, journal.append(40))
+
+            assertEquals(listOf(0L, 1L, 2L, 3L, 40L), journal.replay(tail = false).map { it.value }.toList().blockingGet())
+        }
+    }
+
+    @Test
+    fun `records after a corrupted one are not read again`() {
+
+        EventJournal(directory, LongCodec).use { journal ->
+            (0L until 5L).forEach { journal.append(it) }
+        }
+
+        // Flip a byte in the payload of offset 2, the records after it stay valid in the file
+        val file = Files.list(directory).use { it.findFirst().get() }
+        RandomAccessFile(file.toFile(), "rw").use { raf ->
+            val position = 2L * 32 + 24
+            raf.seek(position)
+            val byte = raf.read()
+            raf.seek(position)
+            raf.write(byte xor 0xFF)
+        }
+
+        // A record of the same length ends where the old offset 3 starts
+        EventJournal(directory, LongCodec).use { journal ->
+            assertEquals(2L, journal.append(20))
+            assertEquals(listOf(0L, 1L, 20L), journal.replay(tail = false).map { it.value }.toList().blockingGet())
+        }
+
+        EventJournal(directory, LongCodec).use { journal ->
+            assertEquals(3L, journal.nextOffset)
+            assertEquals(listOf(0L, 1L, 20L), journal.replay(tail = false).map { it.value }.toList().blockingGet())
+        }
+    }
+
+    @Test
+    fun `skips the rest of a corrupted segment before the last one`() {
+
+        EventJournal(directory, LongCodec, segmentSize = 320).use { journal ->
+            (0L until 35L).forEach { journal.append(it) }
+        }
+
+        // Flip a byte in the payload of offset 14, the fifth record of the second segment
+        val file = directory.resolve(String.format("%020d.journal", 10))
+        RandomAccessFile(file.toFile(), "rw").use { raf ->
+            val position = 4L * 32 + 24
+            raf.seek(position)
+            val byte = raf.read()
+            raf.seek(position)
+            raf.write(byte xor 0xFF)
+        }
+
+        EventJournal(directory, LongCodec, segmentSize = 320).use { journal ->
+
+            assertEquals(listOf(14L until 20L), journal.gaps)
+            assertEquals(35L, journal.nextOffset)
+
+            val records = journal.replay(tail = false).toList().blockingGet()
+            assertEquals((0L until 14L) + (20L until 35L), records.map { it.offset })
+            assertEquals(records.map { it.offset }, records.map { it.value })
+
+            assertEquals((12L until 14L) + (20L until 35L), journal.replay(12, tail = false).map { it.value }.toList().blockingGet())
+            assertEquals((20L until 35L).toList(), journal.replay(16, tail = false).map { it.value }.toList().blockingGet())
+        }
+    }
+
+    @Test
+    fun `replays from a timestamp`() {
+
+        EventJournal(directory, LongCodec, indexInterval = 2).use { journal ->
+
+            (0L until 5L).forEach { journal.append(it) }
+            Thread.sleep(20)
+            val timestamp = System.currentTimeMillis()
+            (5L until 10L).forEach { journal.append(it) }
+
+            assertEquals(5L, journal.offsetAtOrAfter(timestamp))
+            assertEquals(
+                (5L until 10L).toList(),
+                journal.replayFromTimestamp(timestamp, tail = false).map { it.value }.toList().blockingGet()
+            )
+        }
+    }
+
+    @Test
+    fun `tail receives new appends and completes on close`() {
+
+        val journal = EventJournal(directory, LongCodec)
+        (0L until 3L).forEach { journal.append(it) }
+
+        val testObserver = journal.replay(scheduler = Schedulers.single())
+            .map { it.value }
+            .test()
+
+        (3L until 6L).forEach { journal.append(it) }
+
+        assertTrue(waitFor { testObserver.valueCount() == 6 })
+        testObserver.assertValues(0L, 1L, 2L, 3L, 4L, 5L)
+        testObserver.assertNotComplete()
+
+        journal.close()
+
+        testObserver.awaitDone(5, TimeUnit.SECONDS)
+        testObserver.assertComplete()
+    }
+
+    private fun waitFor(condition: () -> Boolean): Boolean {
+        val end = System.currentTimeMillis() + 5000
+        while (!condition() && System.currentTimeMillis() < end) {
+            Thread.sleep(10)
+        }
+        return condition()
+    }
+}
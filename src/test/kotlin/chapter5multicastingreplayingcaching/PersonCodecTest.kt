@@ -0,0 +1,69 @@
+package chapter5multicastingreplayingcaching
+
+import model.Person
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertSame
+import org.junit.jupiter.api.Test
+import java.nio.Buffer
+import java.nio.ByteBuffer
+
+class PersonCodecTest {
+
+    @Test
+    fun `round trips ASCII and non ASCII names`() {
+
+        val persons = listOf(
+            Person("James", "Bond"),
+            Person("", ""),
+            Person("Jürgen", "Großmann"),
+            Person("王", "小明"),
+            Person("😀 emoji", "x")
+        )
+
+        val buffer = ByteBuffer.allocate(1024)
+        persons.forEach { person ->
+            val before = buffer.position()
+            PersonCodec.encode(person, buffer)
+            assertEquals(PersonCodec.encodedSize(person), buffer.position() - before)
+        }
+        (buffer as Buffer).flip()
+
+        assertEquals(persons, persons.map { PersonCodec.decode(buffer) })
+        assertEquals(0, buffer.remaining())
+    }
+
+    @Test
+    fun `matches String getBytes`() {
+
+        val name = "Jürgen 😀 \uD800 end"
+        val buffer = ByteBuffer.allocate(256)
+
+        PersonCodec.encode(Person(name, ""), buffer)
+
+        val expected = name.toByteArray(Charsets.UTF_8)
+        assertEquals(expected.size, buffer.getInt(0))
+        assertEquals(expected.toList(), (0 until expected.size).map { buffer.get(4 + it) })
+    }
+
+    @Test
+    fun `flyweight reads names in place`() {
+
+        val buffer = ByteBuffer.allocateDirect(1024)
+        PersonCodec.encode(Person("James", "Bond"), buffer)
+        val second = buffer.position()
+        PersonCodec.encode(Person("Jürgen", "Großmann"), buffer)
+
+        val flyweight = PersonFlyweight()
+
+        assertSame(flyweight, flyweight.wrap(buffer, 0))
+        assertEquals("James", flyweight.firstName.toString())
+        assertEquals('B', flyweight.surName[0])
+        assertEquals("ond", flyweight.surName.subSequence(1, 4).toString())
+        assertEquals(second, flyweight.encodedSize)
+
+        flyweight.wrap(buffer, second)
+        assertEquals(6, flyweight.firstName.length)
+        assertEquals('ü', flyweight.firstName[1])
+        assertEquals(Person("Jürgen", "Großmann"), flyweight.toPerson())
+    }
+}
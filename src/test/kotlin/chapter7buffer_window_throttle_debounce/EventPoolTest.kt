@@ -0,0 +1,196 @@
+package chapter7buffer_window_throttle_debounce
+
+import io.reactivex.Observable
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertSame
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import java.util.concurrent.TimeUnit
+
+class EventPoolTest {
+
+    private class Event : PooledEvent() {
+
+        var value = 0
+
+        override fun reset() {
+            value = 0
+        }
+    }
+
+    private fun events(pool: EventPool<Event>, count: Int): Observable<Event> =
+        Observable.create { emitter ->
+            for (i in 1..count) {
+                // A disposed emitter drops the event, check before acquiring one
+                if (emitter.isDisposed) {
+                    return@create
+                }
+                emitter.onNext(pool.acquire().apply { value = i })
+            }
+            emitter.onComplete()
+        }
+
+    @Test
+    fun `released event is reset and reused`() {
+
+        val pool = EventPool(capacity = 4) { Event() }
+
+        val first = pool.acquire().apply { value = 42 }
+        assertTrue(first.release())
+        assertEquals(0, first.value)
+
+        assertSame(first, pool.acquire())
+        assertEquals(1, pool.created)
+        assertEquals(2, pool.acquired)
+        assertEquals(1, pool.outstanding)
+    }
+
+    @Test
+    fun `event goes back to the pool with its last release`() {
+
+        val pool = EventPool(capacity = 4) { Event() }
+
+        val event = pool.acquire()
+        event.retain()
+        assertEquals(2, event.refCount)
+
+        assertFalse(event.release())
+        assertEquals(1, pool.outstanding)
+
+        assertTrue(event.release())
+        assertEquals(0, pool.outstanding)
+    }
+
+    @Test
+    fun `releasing a released event fails`() {
+
+        val event = EventPool(capacity = 4) { Event() }.acquire()
+        event.release()
+
+        assertThrows<IllegalStateException> { event.release() }
+        assertThrows<IllegalStateException> { event.retain() }
+        assertEquals(0, event.refCount)
+    }
+
+    @Test
+    fun `no more than capacity events are kept`() {
+
+        val pool = EventPool(capacity = 2) { Event() }
+
+        val events = (1..3).map { pool.acquire() }
+        events.forEach { it.release() }
+
+        assertEquals(3, pool.created)
+        assertEquals(3, pool.recycled)
+        assertEquals(0, pool.outstanding)
+    }
+
+    @Test
+    fun `releasing operators release every event`() {
+
+        val pool = EventPool(capacity = 4) { Event() }
+        val values = ArrayList<Int>()
+
+        events(pool, 10)
+            .filterReleasing { it.value % 2 == 0 }
+            .subscribeReleasing({ values.add(it.value) })
+
+        val mapped = events(pool, 5)
+            .mapReleasing { it.value * 10 }
+            .test()
+
+        assertEquals(listOf(2, 4, 6, 8, 10), values)
+        mapped.assertResult(10, 20, 30, 40, 50)
+        assertEquals(1, pool.created)
+        assertEquals(0, pool.outstanding)
+    }
+
+    @Test
+    fun `event is released when onNext throws`() {
+
+        val pool = EventPool(capacity = 4) { Event() }
+        val errors = ArrayList<Throwable>()
+
+        events(pool, 3)
+            .subscribeReleasing({ throw IllegalArgumentException() }, { errors.add(it) })
+
+        assertEquals(1, errors.size)
+        assertTrue(errors[0] is IllegalArgumentException)
+        assertEquals(0, pool.outstanding)
+    }
+
+    @Test
+    fun `leaks show where the events that were not released were acquired`() {
+
+        val pool = EventPool(capacity = 4, debug = true) { Event() }
+
+        events(pool, 10)
+            .filter { it.value <= 6 }
+            .subscribeReleasing({ })
+
+        assertEquals(4, pool.outstanding)
+
+        val leaks = pool.leaks(0, TimeUnit.MILLISECONDS)
+        assertEquals(1, leaks.size)
+        assertEquals(4, leaks[0].outstanding + leaks[0].collected)
+        assertTrue(leaks[0].site.contains("EventPoolTest")) { leaks[0].site }
+    }
+
+    @Test
+    fun `leaked events are still collected and counted`() {
+
+        val pool = EventPool(capacity = 4, debug = true) { Event() }
+
+        repeat(3) { pool.acquire() }
+
+        var leaks = pool.leaks(0, TimeUnit.MILLISECONDS)
+        for (i in 0 until 50) {
+            if (leaks.single().collected == 3L) {
+                break
+            }
+            System.gc()
+            Thread.sleep(10)
+            leaks = pool.leaks(0, TimeUnit.MILLISECONDS)
+        }
+
+        assertEquals(0, leaks.single().outstanding)
+        assertEquals(3L, leaks.single().collected)
+    }
+
+    /**
+     * All events are equal, tracking must not mix them up
+     */
+    private class EqualEvent : PooledEvent() {
+        override fun equals(other: Any?) = other is EqualEvent
+        override fun hashCode() = 1
+    }
+
+    @Test
+    fun `events that override equals are tracked one by one`() {
+
+        val pool = EventPool(capacity = 4, debug = true) { EqualEvent() }
+
+        val first = pool.acquire()
+        val second = pool.acquire()
+        first.release()
+
+        assertEquals(1, pool.leaks(0, TimeUnit.MILLISECONDS).single().outstanding)
+        second.release()
+        assertTrue(pool.leaks(0, TimeUnit.MILLISECONDS).isEmpty())
+    }
+
+    @Test
+    fun `leaks are not tracked without debug`() {
+
+        val pool = EventPool(capacity = 4, debug = false) { Event() }
+
+        events(pool, 10)
+            .filter { it.value <= 6 }
+            .subscribeReleasing({ })
+
+        assertEquals(4, pool.outstanding)
+        assertTrue(pool.leaks(0, TimeUnit.MILLISECONDS).isEmpty())
+    }
+}
@@ -0,0 +1,101 @@
+package chapter7buffer_window_throttle_debounce
+
+import io.reactivex.Observable
+import io.reactivex.subjects.PublishSubject
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertThrows
+import org.junit.jupiter.api.Test
+import java.util.concurrent.TimeUnit
+
+class EventTimeWindowsTest {
+
+    private fun Observable<Long>.countPerWindow(
+        windows: EventTimeWindows,
+        maxOutOfOrderness: Long = 0,
+        allowedLateness: Long = 0,
+        onLate: (Long) -> Unit = {}
+    ) = windowByEventTime(
+        windows, maxOutOfOrderness, TimeUnit.MILLISECONDS,
+        timestamp = { it },
+        initial = { 0 },
+        accumulate = { count, _ -> count + 1 },
+        merge = { a, b -> a + b },
+        allowedLateness = allowedLateness,
+        onLate = onLate
+    )
+
+    @Test
+    fun `tumbling windows are emitted when the watermark passes their end`() {
+
+        val subject = PublishSubject.create<Long>()
+        val observer = subject.countPerWindow(EventTimeWindows.tumbling(10, TimeUnit.MILLISECONDS), maxOutOfOrderness = 5).test()
+
+        listOf(1L, 8L, 12L, 3L, 14L).forEach { subject.onNext(it) }
+        observer.assertNoValues()
+
+        subject.onNext(15)
+        observer.assertValues(WindowResult(0, 10, 3, 3, false))
+
+        subject.onComplete()
+        observer.assertResult(WindowResult(0, 10, 3, 3, false), WindowResult(10, 20, 3, 3, false))
+    }
+
+    @Test
+    fun `late events update windows within the allowed lateness and go to onLate after it`() {
+
+        val late = ArrayList<Long>()
+
+        Observable.just(1L, 12L, 5L, 25L, 6L)
+            .countPerWindow(EventTimeWindows.tumbling(10, TimeUnit.MILLISECONDS), allowedLateness = 10, onLate = { late.add(it) })
+            .test()
+            .assertResult(
+                WindowResult(0, 10, 1, 1, false),
+                WindowResult(0, 10, 2, 2, true),
+                WindowResult(10, 20, 1, 1, false),
+                WindowResult(20, 30, 1, 1, false)
+            )
+
+        assertEquals(listOf(6L), late)
+    }
+
+    @Test
+    fun `sliding windows count every event in each window it belongs to`() {
+
+        Observable.just(5L, 15L, 25L)
+            .countPerWindow(EventTimeWindows.sliding(20, 10, TimeUnit.MILLISECONDS))
+            .map { "${it.start}-${it.end}=${it.value}" }
+            .test()
+            .assertResult("-10-10=1", "0-20=2", "10-30=2", "20-40=1")
+    }
+
+    @Test
+    fun `sessions are split by gaps and merged by events in between`() {
+
+        Observable.just(0L, 5L, 28L, 20L, 12L, 60L)
+            .countPerWindow(EventTimeWindows.session(10, TimeUnit.MILLISECONDS), maxOutOfOrderness = 20)
+            .test()
+            .assertResult(WindowResult(0, 38, 5, 5, false), WindowResult(60, 70, 1, 1, false))
+    }
+
+    @Test
+    fun `sessions need merge`() {
+
+        assertThrows(IllegalArgumentException::class.java) {
+            Observable.just(1L).windowByEventTime(
+                EventTimeWindows.session(1, TimeUnit.SECONDS), 0, TimeUnit.MILLISECONDS,
+                timestamp = { it }, initial = { 0 }, accumulate = { count, _ -> count + 1 }
+            )
+        }
+    }
+
+    @Test
+    fun `windows shorter than a millisecond or with gaps are rejected`() {
+
+        assertThrows(IllegalArgumentException::class.java) { EventTimeWindows.tumbling(500, TimeUnit.MICROSECONDS) }
+        assertThrows(IllegalArgumentException::class.java) { EventTimeWindows.sliding(1, 500, TimeUnit.MICROSECONDS) }
+        assertThrows(IllegalArgumentException::class.java) { EventTimeWindows.session(999, TimeUnit.MICROSECONDS) }
+        assertThrows(IllegalArgumentException::class.java) { EventTimeWindows.sliding(5, 10, TimeUnit.SECONDS) }
+
+        EventTimeWindows.tumbling(1500, TimeUnit.MICROSECONDS)
+    }
+}
@@ -0,0 +1,107 @@
+package chapter8flowable
+
+import io.reactivex.Flowable
+import io.reactivex.processors.PublishProcessor
+import io.reactivex.schedulers.Schedulers
+import io.reactivex.schedulers.TestScheduler
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+
+class AdaptivePrefetchTest {
+
+    @Test
+    fun `emits every item in order`() {
+
+        val testSubscriber = Flowable.range(1, 10_000)
+            .observeOnAdaptive(Schedulers.single())
+            .test()
+
+        testSubscriber.awaitTerminalEvent(5, TimeUnit.SECONDS)
+
+        testSubscriber.assertComplete()
+        testSubscriber.assertValueCount(10_000)
+        assertEquals((1..10_000).toList(), testSubscriber.values())
+    }
+
+    @Test
+    fun `upstream requests stay within bounds`() {
+
+        val requests = CopyOnWriteArrayList<Long>()
+
+        Flowable.range(1, 20_000)
+            .doOnRequest { requests.add(it) }
+            .observeOnAdaptive(Schedulers.single(), minPrefetch = 4, maxPrefetch = 64, initialPrefetch = 32)
+            .doOnNext { if (it % 100 == 0) Thread.sleep(1) }
+            .test()
+            .awaitDone(10, TimeUnit.SECONDS)
+            .assertComplete()
+
+        assertEquals(32L, requests.first())
+        assertTrue(requests.all { it in 1L..64L }, "requests: $requests")
+    }
+
+    @Test
+    fun `honors downstream requests`() {
+
+        val testSubscriber = Flowable.range(1, 1000)
+            .observeOnAdaptive(Schedulers.single())
+            .test(5)
+
+        Thread.sleep(200)
+
+        testSubscriber.assertValues(1, 2, 3, 4, 5)
+        testSubscriber.assertNotComplete()
+
+        testSubscriber.requestMore(995)
+        testSubscriber.awaitTerminalEvent(5, TimeUnit.SECONDS)
+        testSubscriber.assertValueCount(1000)
+    }
+
+    @Test
+    fun `forwards errors`() {
+
+        val scheduler = TestScheduler()
+        val source = PublishProcessor.create<Int>()
+
+        val testSubscriber = source
+            .observeOnAdaptive(scheduler)
+            .test()
+
+        (1..10).forEach { source.onNext(it) }
+        scheduler.triggerActions()
+
+        source.onError(IllegalStateException("failed"))
+        scheduler.triggerActions()
+
+        testSubscriber
+            .assertValues(1, 2, 3, 4, 5, 6, 7, 8, 9, 10)
+            .assertError(IllegalStateException::class.java)
+            .assertNotComplete()
+    }
+
+    @Test
+    fun `error is not delayed behind queued items`() {
+
+        val scheduler = TestScheduler()
+
+        // Items and error arrive before the worker runs, like observeOn(scheduler) the error cuts ahead
+        Flowable.range(1, 10)
+            .concatWith(Flowable.error(IllegalStateException("failed")))
+            .observeOnAdaptive(scheduler)
+            .test()
+            .also { scheduler.triggerActions() }
+            .assertFailure(IllegalStateException::class.java)
+    }
+
+    @Test
+    fun `rejects invalid bounds`() {
+
+        assertThrows<IllegalArgumentException> {
+            Flowable.just(1).observeOnAdaptive(Schedulers.single(), minPrefetch = 10, maxPrefetch = 5)
+        }
+    }
+}
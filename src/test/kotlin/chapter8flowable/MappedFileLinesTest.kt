@@ -0,0 +1,111 @@
+package chapter8flowable
+
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertSame
+import org.junit.jupiter.api.Test
+import java.nio.file.Files
+import java.nio.file.Path
+
+class MappedFileLinesTest {
+
+    private val file: Path = Files.createTempFile("mapped-lines-test", ".txt")
+
+    @AfterEach
+    fun deleteFile() {
+        Files.deleteIfExists(file)
+    }
+
+    @Test
+    fun `emits every line with CRLF and without trailing newline`() {
+
+        Files.write(file, "Alpha\r\nBeta\n\nGamma".toByteArray())
+
+        val lines = MappedFileLines.flowable(file)
+            .map { it.toString() }
+            .toList()
+            .blockingGet()
+
+        assertEquals(listOf("Alpha", "Beta", "", "Gamma"), lines)
+    }
+
+    @Test
+    fun `empty file completes without items`() {
+
+        MappedFileLines.flowable(file)
+            .test()
+            .assertNoValues()
+            .assertComplete()
+    }
+
+    @Test
+    fun `reuses the same CharSequence without copy`() {
+
+        Files.write(file, listOf("Alpha", "Beta"))
+
+        val items = MappedFileLines.flowable(file).toList().blockingGet()
+
+        assertSame(items[0], items[1])
+        assertEquals("Beta", items[1].toString())
+    }
+
+    @Test
+    fun `copy emits independent Strings`() {
+
+        Files.write(file, listOf("Alpha", "Beta"))
+
+        val items = MappedFileLines.observable(file, copy = true).toList().blockingGet()
+
+        assertEquals(listOf<CharSequence>("Alpha", "Beta"), items)
+    }
+
+    @Test
+    fun `non ASCII lines are decoded`() {
+
+        Files.write(file, listOf("Straße", "Çay", "plain"), Charsets.UTF_8)
+
+        val lines = MappedFileLines.flowable(file)
+            .map { it.toString() }
+            .toList()
+            .blockingGet()
+
+        assertEquals(listOf("Straße", "Çay", "plain"), lines)
+    }
+
+    @Test
+    fun `lines crossing window boundaries are remapped`() {
+
+        val expected = (1..500).map { "line number $it" }
+        Files.write(file, expected)
+
+        val lines = MappedFileLines.flowable(file, regionSize = 64)
+            .map { it.toString() }
+            .toList()
+            .blockingGet()
+
+        assertEquals(expected, lines)
+    }
+
+    @Test
+    fun `line longer than window fails`() {
+
+        Files.write(file, listOf("short", "x".repeat(100)))
+
+        MappedFileLines.flowable(file, regionSize = 32)
+            .test()
+            .assertValueCount(1)
+            .assertError(IllegalStateException::class.java)
+    }
+
+    @Test
+    fun `subSequence and get read the mapped bytes`() {
+
+        Files.write(file, listOf("Captain America"))
+
+        val line = MappedFileLines.flowable(file).blockingFirst()
+
+        assertEquals(15, line.length)
+        assertEquals('C', line[0])
+        assertEquals("America", line.subSequence(8, 15).toString())
+    }
+}
@@ -0,0 +1,83 @@
+package chapter8flowable
+
+import io.reactivex.processors.PublishProcessor
+import io.reactivex.schedulers.Schedulers
+import io.reactivex.subscribers.TestSubscriber
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import java.util.concurrent.TimeUnit
+
+class OverflowPolicyTest {
+
+    @Test
+    fun `BUFFER keeps the most recent items up to capacity`() {
+
+        val source = PublishProcessor.create<Int>()
+        var dropped = 0
+
+        val testSubscriber: TestSubscriber<Int> = source
+            .onOverflow(OverflowPolicy.BUFFER, 2) { dropped++ }
+            .test(0)
+
+        (1..5).forEach { source.onNext(it) }
+        testSubscriber.assertNoValues()
+
+        testSubscriber.requestMore(10)
+
+        testSubscriber.assertValues(4, 5)
+        assertEquals(3, dropped)
+    }
+
+    @Test
+    fun `DROP delivers only requested items`() {
+
+        val source = PublishProcessor.create<Int>()
+        val dropped = mutableListOf<Int?>()
+
+        val testSubscriber: TestSubscriber<Int> = source
+            .onOverflow(OverflowPolicy.DROP) { dropped.add(it) }
+            .test(2)
+
+        (1..5).forEach { source.onNext(it) }
+        testSubscriber.requestMore(1)
+        source.onNext(6)
+
+        testSubscriber.assertValues(1, 2, 6)
+        assertEquals(listOf<Int?>(3, 4, 5), dropped)
+    }
+
+    @Test
+    fun `LATEST keeps the last item for the next request`() {
+
+        val source = PublishProcessor.create<Int>()
+
+        val testSubscriber: TestSubscriber<Int> = source
+            .onOverflow(OverflowPolicy.LATEST)
+            .test(0)
+
+        (1..5).forEach { source.onNext(it) }
+        testSubscriber.requestMore(1)
+
+        testSubscriber.assertValues(5)
+    }
+
+    @Test
+    fun `slow consumer with overflow policy does not fail with MissingBackpressureException`() {
+
+        val testSubscriber = io.reactivex.Flowable.interval(1, TimeUnit.MILLISECONDS)
+            .onOverflow(OverflowPolicy.DROP)
+            .observeOn(Schedulers.single(), false, 1)
+            .doOnNext { Thread.sleep(5) }
+            .take(20)
+            .test()
+
+        testSubscriber.awaitTerminalEvent(5, TimeUnit.SECONDS)
+
+        testSubscriber.assertNoErrors()
+        testSubscriber.assertComplete()
+        testSubscriber.assertValueCount(20)
+        // values were skipped because the consumer is slower than the producer
+        assertTrue(testSubscriber.values().last() > 19)
+    }
+}